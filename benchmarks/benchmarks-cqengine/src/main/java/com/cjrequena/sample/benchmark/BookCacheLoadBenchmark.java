@@ -0,0 +1,55 @@
+package com.cjrequena.sample.benchmark;
+
+import com.cjrequena.sample.domain.model.Book;
+import com.cjrequena.sample.persistence.repository.cache.CacheRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Time to bulk load a dataset into an empty book cache repository, for each backend and dataset size.
+ * </p>
+ *
+ * @author cjrequena
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"--add-opens=java.base/java.util=ALL-UNNAMED", "-Xmx8g"})
+public class BookCacheLoadBenchmark {
+
+  @Param({"CQENGINE_ON_HEAP", "CQENGINE_OFF_HEAP", "CQENGINE_DISK", "CAFFEINE"})
+  public BookCacheRepositoryBenchmark.Backend backend;
+
+  @Param({"1000", "100000", "1000000"})
+  public int size;
+
+  private List<Book> books;
+  private CacheRepository<String, Book> repository;
+
+  @Setup(Level.Trial)
+  public void generate() {
+    books = Books.generate(size);
+  }
+
+  @Setup(Level.Iteration)
+  public void setUp() {
+    repository = backend.create();
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDown() throws IOException {
+    backend.close(repository);
+  }
+
+  @Benchmark
+  public CacheRepository<String, Book> load() {
+    repository.load(books);
+    return repository;
+  }
+}
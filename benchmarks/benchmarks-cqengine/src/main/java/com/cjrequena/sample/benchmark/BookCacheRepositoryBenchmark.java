@@ -0,0 +1,104 @@
+package com.cjrequena.sample.benchmark;
+
+import com.cjrequena.sample.configuration.CQEngineConfigurationProperties;
+import com.cjrequena.sample.domain.model.Book;
+import com.cjrequena.sample.persistence.repository.cache.BookCacheCQEngineRepository;
+import com.cjrequena.sample.persistence.repository.cache.BookCacheCaffeineRepository;
+import com.cjrequena.sample.persistence.repository.cache.CacheRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * Read throughput of the in-process book cache repositories, for each backend and dataset size. Run it with several
+ * thread counts ({@code -t 1}, {@code -t 4}, ...) to see how the reads scale under contention.
+ * </p>
+ *
+ * @author cjrequena
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"--add-opens=java.base/java.util=ALL-UNNAMED", "-Xmx8g"})
+public class BookCacheRepositoryBenchmark {
+
+  @Param({"CQENGINE_ON_HEAP", "CQENGINE_OFF_HEAP", "CQENGINE_DISK", "CAFFEINE"})
+  public Backend backend;
+
+  @Param({"1000", "100000", "1000000"})
+  public int size;
+
+  private CacheRepository<String, Book> repository;
+  private Function<String, List<Book>> retrieveByAuthor;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    repository = backend.create();
+    retrieveByAuthor = repository instanceof BookCacheCQEngineRepository cqEngine
+      ? cqEngine::retrieveByAuthor
+      : ((BookCacheCaffeineRepository) repository)::retrieveByAuthor;
+    repository.load(Books.generate(size));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    backend.close(repository);
+  }
+
+  @Benchmark
+  public Book retrieveById() {
+    return repository.retrieveById(Books.isbn(ThreadLocalRandom.current().nextInt(size)));
+  }
+
+  @Benchmark
+  public List<Book> retrieveByAuthor() {
+    return retrieveByAuthor.apply(Books.author(ThreadLocalRandom.current().nextInt(Books.AUTHORS)));
+  }
+
+  @Benchmark
+  public List<Book> retrieve() {
+    return repository.retrieve();
+  }
+
+  public enum Backend {
+    CQENGINE_ON_HEAP,
+    CQENGINE_OFF_HEAP,
+    CQENGINE_DISK,
+    CAFFEINE;
+
+    CacheRepository<String, Book> create() {
+      return switch (this) {
+        case CQENGINE_ON_HEAP -> cqEngine(CQEngineConfigurationProperties.Persistence.ON_HEAP);
+        case CQENGINE_OFF_HEAP -> cqEngine(CQEngineConfigurationProperties.Persistence.OFF_HEAP);
+        case CQENGINE_DISK -> cqEngine(CQEngineConfigurationProperties.Persistence.DISK);
+        case CAFFEINE -> new BookCacheCaffeineRepository();
+      };
+    }
+
+    void close(CacheRepository<String, Book> repository) throws IOException {
+      if (repository instanceof BookCacheCQEngineRepository cqEngine) {
+        cqEngine.close();
+      }
+    }
+
+    private static BookCacheCQEngineRepository cqEngine(CQEngineConfigurationProperties.Persistence persistence) {
+      CQEngineConfigurationProperties properties = new CQEngineConfigurationProperties();
+      properties.setPersistence(persistence);
+      properties.getDisk().setReuseOnStartup(false);
+      try {
+        properties.getDisk().setFile(File.createTempFile("books-cqengine-benchmark", ".db").getAbsolutePath());
+      } catch (IOException ex) {
+        throw new IllegalStateException("Unable to create the CQEngine disk file", ex);
+      }
+      return new BookCacheCQEngineRepository(properties);
+    }
+  }
+}
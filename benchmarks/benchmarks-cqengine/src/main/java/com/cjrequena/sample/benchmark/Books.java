@@ -0,0 +1,37 @@
+package com.cjrequena.sample.benchmark;
+
+import com.cjrequena.sample.domain.model.Book;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * Synthetic benchmark dataset: books with sequential ISBNs spread over a fixed number of authors.
+ * </p>
+ *
+ * @author cjrequena
+ */
+final class Books {
+
+  static final int AUTHORS = 1_000;
+
+  private Books() {
+  }
+
+  static List<Book> generate(int size) {
+    List<Book> books = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      books.add(new Book(isbn(i), "Title " + i, author(i % AUTHORS)));
+    }
+    return books;
+  }
+
+  static String isbn(int i) {
+    return String.format("978-%010d", i);
+  }
+
+  static String author(int i) {
+    return "Author " + i;
+  }
+}
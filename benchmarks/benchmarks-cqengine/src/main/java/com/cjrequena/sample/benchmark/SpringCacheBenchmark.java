@@ -0,0 +1,49 @@
+package com.cjrequena.sample.benchmark;
+
+import com.cjrequena.sample.configuration.CacheConfiguration;
+import com.cjrequena.sample.configuration.CaffeineCacheConfigurationProperties;
+import com.cjrequena.sample.domain.model.Book;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.cache.Cache;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Throughput of the Spring {@code books} cache behind BookServiceV5, configured as in the application: a Caffeine
+ * cache bounded to 10,000 entries, so larger datasets measure the hit ratio as much as the lookup cost.
+ * </p>
+ *
+ * @author cjrequena
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class SpringCacheBenchmark {
+
+  @Param({"1000", "100000", "1000000"})
+  public int size;
+
+  private Cache cache;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    cache = new CacheConfiguration(new CaffeineCacheConfigurationProperties()).cacheManager().getCache("books");
+    Books.generate(size).forEach(book -> cache.put(book.getIsbn(), book));
+  }
+
+  @Benchmark
+  public Book retrieveById() {
+    return cache.get(Books.isbn(ThreadLocalRandom.current().nextInt(size)), Book.class);
+  }
+
+  @Benchmark
+  public void put() {
+    int i = ThreadLocalRandom.current().nextInt(size);
+    cache.put(Books.isbn(i), new Book(Books.isbn(i), "Title " + i, Books.author(i % Books.AUTHORS)));
+  }
+}
@@ -0,0 +1,58 @@
+package com.cjrequena.sample.benchmark;
+
+import com.cjrequena.sample.domain.model.Book;
+import com.cjrequena.sample.persistence.repository.cache.CacheRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Time to bulk load a dataset into an empty Redis book cache repository, for each backend and dataset size.
+ * </p>
+ *
+ * @author cjrequena
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class BookCacheLoadBenchmark {
+
+  @Param({"HASH_OPS", "VALUE_OPS"})
+  public BookCacheRepositoryBenchmark.Backend backend;
+
+  @Param({"1000", "100000", "1000000"})
+  public int size;
+
+  private RedisStandIn redis;
+  private List<Book> books;
+  private CacheRepository<String, Book> repository;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    redis = new RedisStandIn();
+    books = Books.generate(size);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    redis.close();
+  }
+
+  @Setup(Level.Iteration)
+  public void clear() {
+    redis.clear();
+    repository = backend.create(redis);
+  }
+
+  @Benchmark
+  public CacheRepository<String, Book> load() {
+    repository.load(books);
+    return repository;
+  }
+}
@@ -0,0 +1,87 @@
+package com.cjrequena.sample.benchmark;
+
+import com.cjrequena.sample.domain.model.Book;
+import com.cjrequena.sample.persistence.repository.cache.BookCacheRedisHashOpsRepository;
+import com.cjrequena.sample.persistence.repository.cache.BookCacheRedisValueOpsRepository;
+import com.cjrequena.sample.persistence.repository.cache.CacheRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * Read throughput of the Redis book cache repositories, for each backend and dataset size. Run it with several
+ * thread counts ({@code -t 1}, {@code -t 4}, ...) to see how the shared Lettuce connection behaves under contention.
+ * {@code retrieve} and {@code retrieveByAuthor} read the whole dataset, expect them to be slow on the largest sizes.
+ * </p>
+ *
+ * @author cjrequena
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class BookCacheRepositoryBenchmark {
+
+  @Param({"HASH_OPS", "VALUE_OPS"})
+  public Backend backend;
+
+  @Param({"1000", "100000", "1000000"})
+  public int size;
+
+  private RedisStandIn redis;
+  private CacheRepository<String, Book> repository;
+  private Function<String, List<Book>> retrieveByAuthor;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    redis = new RedisStandIn();
+    repository = backend.create(redis);
+    retrieveByAuthor = repository instanceof BookCacheRedisHashOpsRepository hashOps
+      ? hashOps::retrieveByAuthor
+      : ((BookCacheRedisValueOpsRepository) repository)::retrieveByAuthor;
+    repository.load(Books.generate(size));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    redis.clear();
+    redis.close();
+  }
+
+  @Benchmark
+  public Book retrieveById() {
+    return repository.retrieveById(Books.id(ThreadLocalRandom.current().nextInt(size)));
+  }
+
+  @Benchmark
+  public List<Book> retrieveByAuthor() {
+    return retrieveByAuthor.apply(Books.author(ThreadLocalRandom.current().nextInt(Books.AUTHORS)));
+  }
+
+  @Benchmark
+  public List<Book> retrieve() {
+    return repository.retrieve();
+  }
+
+  public enum Backend {
+    HASH_OPS,
+    VALUE_OPS;
+
+    @SuppressWarnings("unchecked")
+    CacheRepository<String, Book> create(RedisStandIn redis) {
+      RedisTemplate<String, Book> redisTemplate = redis.redisConfiguration().redisTemplate(redis.connectionFactory());
+      return switch (this) {
+        case HASH_OPS -> new BookCacheRedisHashOpsRepository(redisTemplate, redis.properties());
+        case VALUE_OPS -> new BookCacheRedisValueOpsRepository(redisTemplate);
+      };
+    }
+  }
+}
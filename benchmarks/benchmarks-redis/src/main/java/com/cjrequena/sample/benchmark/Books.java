@@ -0,0 +1,41 @@
+package com.cjrequena.sample.benchmark;
+
+import com.cjrequena.sample.domain.model.Book;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * Synthetic benchmark dataset: books with sequential ids spread over a fixed number of authors.
+ * </p>
+ *
+ * @author cjrequena
+ */
+final class Books {
+
+  static final int AUTHORS = 1_000;
+
+  private Books() {
+  }
+
+  static List<Book> generate(int size) {
+    List<Book> books = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      books.add(book(i));
+    }
+    return books;
+  }
+
+  static Book book(int i) {
+    return Book.builder().id(id(i)).title("Title " + i).author(author(i % AUTHORS)).build();
+  }
+
+  static String id(int i) {
+    return String.format("%010d", i);
+  }
+
+  static String author(int i) {
+    return "Author " + i;
+  }
+}
@@ -0,0 +1,86 @@
+package com.cjrequena.sample.benchmark;
+
+import com.cjrequena.sample.configuration.RedisConfiguration;
+import com.cjrequena.sample.configuration.RedisConfigurationProperties;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * Redis the benchmarks run against. By default an embedded Redis server started on {@code benchmark.redis.port}
+ * (6390), or an already running one when {@code benchmark.redis.host} is set. Only the {@code books:*} keys are
+ * deleted between runs. The connection factory is built by the application's own {@link RedisConfiguration}, so the
+ * client settings match production.
+ * </p>
+ *
+ * @author cjrequena
+ */
+final class RedisStandIn implements AutoCloseable {
+
+  private static final String KEY_PATTERN = "books:*";
+  private static final int DELETE_BATCH_SIZE = 10_000;
+
+  private final RedisServer server;
+  private final RedisConfigurationProperties properties;
+  private final RedisConfiguration redisConfiguration;
+  private final LettuceConnectionFactory connectionFactory;
+
+  RedisStandIn() throws IOException {
+    String host = System.getProperty("benchmark.redis.host");
+    int port = Integer.getInteger("benchmark.redis.port", host != null ? 6379 : 6390);
+    if (host == null) {
+      server = new RedisServer(port);
+      server.start();
+      host = "localhost";
+    } else {
+      server = null;
+    }
+
+    properties = new RedisConfigurationProperties();
+    properties.setHost(host);
+    properties.setPort(port);
+    redisConfiguration = new RedisConfiguration(properties);
+    connectionFactory = redisConfiguration.redisConnectionFactory();
+    connectionFactory.afterPropertiesSet();
+    connectionFactory.start();
+    clear();
+  }
+
+  /**
+   * Deletes the keys of the book repositories and caches, all of them under {@code books:}.
+   */
+  void clear() {
+    try (RedisConnection connection = connectionFactory.getConnection()) {
+      List<byte[]> keys = new ArrayList<>(connection.keyCommands().keys(KEY_PATTERN.getBytes(StandardCharsets.UTF_8)));
+      for (int from = 0; from < keys.size(); from += DELETE_BATCH_SIZE) {
+        connection.keyCommands().del(keys.subList(from, Math.min(from + DELETE_BATCH_SIZE, keys.size())).toArray(byte[][]::new));
+      }
+    }
+  }
+
+  RedisConfigurationProperties properties() {
+    return properties;
+  }
+
+  RedisConfiguration redisConfiguration() {
+    return redisConfiguration;
+  }
+
+  LettuceConnectionFactory connectionFactory() {
+    return connectionFactory;
+  }
+
+  @Override
+  public void close() throws IOException {
+    connectionFactory.destroy();
+    if (server != null) {
+      server.stop();
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package com.cjrequena.sample.benchmark;
+
+import com.cjrequena.sample.configuration.CacheConfiguration;
+import com.cjrequena.sample.configuration.TieredCacheConfigurationProperties;
+import com.cjrequena.sample.domain.model.Book;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Throughput of the Spring {@code books} cache behind BookServiceV2: the plain Redis cache the service used to rely
+ * on, and the tiered Caffeine L1 + Redis L2 cache, configured as in the application (an L1 bounded to 10,000
+ * entries).
+ * </p>
+ *
+ * @author cjrequena
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class SpringCacheBenchmark {
+
+  @Param({"REDIS", "TIERED"})
+  public Backend backend;
+
+  @Param({"1000", "100000", "1000000"})
+  public int size;
+
+  private RedisStandIn redis;
+  private Cache cache;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    redis = new RedisStandIn();
+    cache = backend.create(redis);
+    Books.generate(size).forEach(book -> cache.put(book.getId(), book));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    redis.clear();
+    redis.close();
+  }
+
+  @Benchmark
+  public Book retrieveById() {
+    return cache.get(Books.id(ThreadLocalRandom.current().nextInt(size)), Book.class);
+  }
+
+  @Benchmark
+  public void put() {
+    int i = ThreadLocalRandom.current().nextInt(size);
+    cache.put(Books.id(i), Books.book(i));
+  }
+
+  public enum Backend {
+    REDIS,
+    TIERED;
+
+    Cache create(RedisStandIn redis) {
+      TieredCacheConfigurationProperties properties = new TieredCacheConfigurationProperties();
+      return switch (this) {
+        case REDIS -> {
+          RedisCacheManager cacheManager = RedisCacheManager.builder(redis.connectionFactory())
+            .cacheDefaults(RedisCacheConfiguration.defaultCacheConfig().entryTtl(Duration.ofMinutes(30)))
+            .build();
+          cacheManager.afterPropertiesSet();
+          yield cacheManager.getCache("books");
+        }
+        case TIERED -> new CacheConfiguration(properties)
+          .cacheManager(redis.connectionFactory(), redis.redisConfiguration().stringRedisTemplate(redis.connectionFactory()))
+          .getCache("books");
+      };
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package com.cjrequena.sample.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * <p>
+ * CQEngine book cache configuration.
+ * </p>
+ *
+ * @author cjrequena
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "cqengine")
+public class CQEngineConfigurationProperties {
+
+  /**
+   * Where the indexed collection keeps its objects.
+   */
+  private Persistence persistence = Persistence.ON_HEAP;
+
+  private Disk disk = new Disk();
+
+  public enum Persistence {
+    /**
+     * Objects and indexes live on the Java heap.
+     */
+    ON_HEAP,
+    /**
+     * Objects and indexes are serialized into an off-heap SQLite database, outside the reach of the GC.
+     */
+    OFF_HEAP,
+    /**
+     * Objects and indexes are serialized into a SQLite file, which survives restarts.
+     */
+    DISK
+  }
+
+  /**
+   *
+   */
+  @Data
+  public static class Disk {
+
+    /**
+     * Base name of the SQLite files backing the collection when the persistence is DISK. A reload is built in
+     * {@code <file>.a} or {@code <file>.b}, whichever is not in use, and the other one is deleted once replaced.
+     */
+    private String file = System.getProperty("java.io.tmpdir") + "/books-cqengine.db";
+
+    /**
+     * Whether to reopen the existing collection on startup instead of reloading it from the database. The collection
+     * is only reused if it holds as many books as the database; rows updated in place while the file was not in use
+     * go unnoticed, so this is for a database that only this application writes and that outlives its restarts.
+     */
+    private boolean reuseOnStartup = false;
+  }
+}
@@ -0,0 +1,40 @@
+package com.cjrequena.sample.configuration;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Spring cache configuration: an in-process Caffeine {@link CaffeineCacheManager} with per-cache TTLs and sizes.
+ *
+ * @author cjrequena
+ */
+@Slf4j
+@Configuration
+@RequiredArgsConstructor(onConstructor = @__(@Autowired))
+public class CacheConfiguration {
+
+  private final CaffeineCacheConfigurationProperties caffeineCacheConfigurationProperties;
+
+  @Bean
+  public CaffeineCacheManager cacheManager() {
+    CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+    cacheManager.setCaffeine(caffeine(caffeineCacheConfigurationProperties.getDefaults()));
+    caffeineCacheConfigurationProperties.getCaches().forEach((name, spec) -> {
+      log.info("Registering cache {} with ttl {} and maximum size {}", name, spec.getTtl(), spec.getMaximumSize());
+      cacheManager.registerCustomCache(name, caffeine(spec).build());
+    });
+    return cacheManager;
+  }
+
+  private static Caffeine<Object, Object> caffeine(CaffeineCacheConfigurationProperties.Spec spec) {
+    return Caffeine.newBuilder()
+      .expireAfterWrite(spec.getTtl())
+      .maximumSize(spec.getMaximumSize())
+      .recordStats();
+  }
+}
@@ -0,0 +1,31 @@
+package com.cjrequena.sample.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * <p>
+ * Book cache miss handling configuration.
+ * </p>
+ *
+ * @author cjrequena
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "cache.miss")
+public class CacheMissConfigurationProperties {
+
+  /**
+   * How long an ISBN found missing in the database is answered as not found without querying it again. Also the
+   * longest a replica can miss a book created by another one, so keep it short.
+   */
+  private Duration notFoundTtl = Duration.ofSeconds(30);
+
+  /**
+   * Maximum number of ISBNs remembered as not found.
+   */
+  private long notFoundMaximumSize = 10_000;
+}
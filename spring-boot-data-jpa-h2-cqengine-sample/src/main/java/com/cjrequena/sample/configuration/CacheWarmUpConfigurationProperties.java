@@ -0,0 +1,28 @@
+package com.cjrequena.sample.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * <p>
+ * Book cache warm-up configuration.
+ * </p>
+ *
+ * @author cjrequena
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "cache.warm-up")
+public class CacheWarmUpConfigurationProperties {
+
+  /**
+   * Number of rows read from the database and inserted into the cache at once. Bounds the warm-up memory.
+   */
+  private int chunkSize = 1_000;
+
+  /**
+   * Number of chunks mapped and inserted into the cache concurrently.
+   */
+  private int parallelism = Runtime.getRuntime().availableProcessors();
+}
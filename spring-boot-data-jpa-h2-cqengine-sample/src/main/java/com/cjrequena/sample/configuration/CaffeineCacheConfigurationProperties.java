@@ -0,0 +1,49 @@
+package com.cjrequena.sample.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Caffeine configuration of the Spring caches used by the annotated services.
+ * </p>
+ *
+ * @author cjrequena
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "cache.caffeine")
+public class CaffeineCacheConfigurationProperties {
+
+  /**
+   * Settings of the caches not listed in {@code caches}.
+   */
+  private Spec defaults = new Spec();
+
+  /**
+   * Per-cache settings, keyed by cache name.
+   */
+  private Map<String, Spec> caches = new LinkedHashMap<>();
+
+  /**
+   *
+   */
+  @Data
+  public static class Spec {
+
+    /**
+     * Time to live of the entries.
+     */
+    private Duration ttl = Duration.ofMinutes(10);
+
+    /**
+     * Maximum number of entries.
+     */
+    private long maximumSize = 10_000;
+  }
+}
@@ -1,10 +1,15 @@
 package com.cjrequena.sample.controller;
 
+import com.cjrequena.sample.controller.dto.BookBatchResultDTO;
 import com.cjrequena.sample.controller.dto.BookDTO;
 import com.cjrequena.sample.controller.exception.NotFoundException;
 import com.cjrequena.sample.domain.exception.BookNotFoundException;
 import com.cjrequena.sample.domain.mapper.BookMapper;
 import com.cjrequena.sample.domain.model.Book;
+import com.cjrequena.sample.domain.model.BookBatchResult;
+import com.cjrequena.sample.domain.model.BookSearchCriteria;
+import com.cjrequena.sample.service.BookBatchService;
+import com.cjrequena.sample.service.BookServiceV1;
 import com.cjrequena.sample.service.BookServiceV4;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
@@ -13,11 +18,13 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 
 import java.util.List;
 
 import static org.springframework.http.HttpHeaders.CACHE_CONTROL;
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON_VALUE;
 
 @RestController
 @RequestMapping("/books")
@@ -25,6 +32,8 @@ import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
 public class BookController {
 
   private final BookServiceV4 bookService;
+  private final BookServiceV1 bookSearchService;
+  private final BookBatchService bookBatchService;
   private final BookMapper bookMapper;
 
   @PostMapping
@@ -33,6 +42,20 @@ public class BookController {
     bookService.create(book);
   }
 
+  /**
+   * Creates or replaces books sent as a JSON array or as newline-delimited JSON. The books are decoded as they arrive
+   * and written in chunks; the outcome of each book is replied in order, streamed when newline-delimited JSON is
+   * accepted.
+   */
+  @PostMapping(
+    path = "/batch",
+    consumes = {APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE},
+    produces = {APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE}
+  )
+  public ResponseEntity<Flux<BookBatchResultDTO>> createAll(@RequestBody Flux<BookDTO> dtos) {
+    return batchResponse(this.bookBatchService.saveAll(dtos.map(this.bookMapper::toDomain)));
+  }
+
   @GetMapping
   public List<BookDTO> retrieve() {
     return this.bookMapper.toDTO(bookService.retrieve());
@@ -53,6 +76,29 @@ public class BookController {
     return this.bookMapper.toDTO(bookService.retrieveByAuthor(author));
   }
 
+  /**
+   * Prefix, substring and ISBN range search answered from the CQEngine indexes.
+   */
+  @GetMapping(path = "/search", params = "!author")
+  public List<BookDTO> search(
+    @RequestParam(name = "title_prefix", required = false) String titlePrefix,
+    @RequestParam(name = "title_contains", required = false) String titleContains,
+    @RequestParam(name = "author_prefix", required = false) String authorPrefix,
+    @RequestParam(name = "author_contains", required = false) String authorContains,
+    @RequestParam(name = "isbn_from", required = false) String isbnFrom,
+    @RequestParam(name = "isbn_to", required = false) String isbnTo
+  ) {
+    final BookSearchCriteria criteria = BookSearchCriteria.builder()
+      .titlePrefix(titlePrefix)
+      .titleContains(titleContains)
+      .authorPrefix(authorPrefix)
+      .authorContains(authorContains)
+      .isbnFrom(isbnFrom)
+      .isbnTo(isbnTo)
+      .build();
+    return this.bookMapper.toDTO(bookSearchService.search(criteria));
+  }
+
   @PutMapping(
     path = "/{isbn}",
     produces = {APPLICATION_JSON_VALUE}
@@ -71,6 +117,18 @@ public class BookController {
     return new ResponseEntity<>(responseHeaders, HttpStatus.NO_CONTENT);
   }
 
+  /**
+   * Deletes books sent like in {@link #createAll}, only their ISBNs are read, e.g. {@code [{"isbn": "978-1-123456001"}]}.
+   */
+  @DeleteMapping(
+    path = "/batch",
+    consumes = {APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE},
+    produces = {APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE}
+  )
+  public ResponseEntity<Flux<BookBatchResultDTO>> deleteAll(@RequestBody Flux<BookDTO> dtos) {
+    return batchResponse(this.bookBatchService.deleteAll(dtos.map(this.bookMapper::toDomain)));
+  }
+
   @DeleteMapping("/{isbn}")
   public boolean deleteBook(@PathVariable String isbn) throws NotFoundException {
     try {
@@ -79,4 +137,11 @@ public class BookController {
       throw new NotFoundException(ex.getMessage());
     }
   }
+
+  private ResponseEntity<Flux<BookBatchResultDTO>> batchResponse(Flux<BookBatchResult> results) {
+    //Headers
+    HttpHeaders responseHeaders = new HttpHeaders();
+    responseHeaders.set(CACHE_CONTROL, "no store, private, max-age=0");
+    return new ResponseEntity<>(results.map(this.bookMapper::toDTO), responseHeaders, HttpStatus.OK);
+  }
 }
@@ -0,0 +1,15 @@
+package com.cjrequena.sample.controller.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BookBatchResultDTO {
+
+    private String isbn;
+    private String outcome;
+    private String message;
+}
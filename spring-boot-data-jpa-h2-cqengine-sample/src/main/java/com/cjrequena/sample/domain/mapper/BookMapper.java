@@ -1,7 +1,9 @@
 package com.cjrequena.sample.domain.mapper;
 
+import com.cjrequena.sample.controller.dto.BookBatchResultDTO;
 import com.cjrequena.sample.controller.dto.BookDTO;
 import com.cjrequena.sample.domain.model.Book;
+import com.cjrequena.sample.domain.model.BookBatchResult;
 import com.cjrequena.sample.persistence.entity.BookEntity;
 import org.mapstruct.Mapper;
 import org.mapstruct.NullValueCheckStrategy;
@@ -18,6 +20,8 @@ public interface BookMapper {
 
   List<BookDTO> toDTO(List<Book> domains);
 
+  BookBatchResultDTO toDTO(BookBatchResult result);
+
   Book toDomain(BookDTO dto);
 
   Book toDomain(BookEntity entity);
@@ -16,7 +16,8 @@ public class Book {
     private String author;
 
     // CQEngine Attributes
-    public static final Attribute<Book, String> ISBN = new SimpleAttribute<>("isbn") {
+    // Primary key attribute, required by the off-heap and disk persistences
+    public static final SimpleAttribute<Book, String> ISBN = new SimpleAttribute<>("isbn") {
         public String getValue(Book book, QueryOptions queryOptions) {
             return book.getIsbn();
         }
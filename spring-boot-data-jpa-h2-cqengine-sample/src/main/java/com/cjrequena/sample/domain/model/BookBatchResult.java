@@ -0,0 +1,38 @@
+package com.cjrequena.sample.domain.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * <p>
+ * Outcome of one book of a batch write, reported in the order the books were sent.
+ * </p>
+ *
+ * @author cjrequena
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BookBatchResult {
+    private String isbn;
+    private Outcome outcome;
+    private String message; // Why the book was not written, if it was not
+
+    public enum Outcome {
+        CREATED,
+        UPDATED,
+        DELETED,
+        NOT_FOUND,
+        INVALID,
+        FAILED
+    }
+
+    public static BookBatchResult of(String isbn, Outcome outcome) {
+        return new BookBatchResult(isbn, outcome, null);
+    }
+
+    public static BookBatchResult of(String isbn, Outcome outcome, String message) {
+        return new BookBatchResult(isbn, outcome, message);
+    }
+}
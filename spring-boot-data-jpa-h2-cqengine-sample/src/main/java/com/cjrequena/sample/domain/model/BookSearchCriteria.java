@@ -0,0 +1,27 @@
+package com.cjrequena.sample.domain.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * <p>
+ * Search criteria for the in-memory book catalog. Every non-blank field narrows the result set,
+ * criteria are combined with a logical AND.
+ * </p>
+ *
+ * @author cjrequena
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BookSearchCriteria {
+  private String titlePrefix;
+  private String titleContains;
+  private String authorPrefix;
+  private String authorContains;
+  private String isbnFrom;
+  private String isbnTo;
+}
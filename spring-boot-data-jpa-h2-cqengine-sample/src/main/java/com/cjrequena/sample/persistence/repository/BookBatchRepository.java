@@ -0,0 +1,32 @@
+package com.cjrequena.sample.persistence.repository;
+
+import com.cjrequena.sample.persistence.entity.BookEntity;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Batched writes of {@link BookRepository}.
+ *
+ * @author cjrequena
+ */
+public interface BookBatchRepository {
+
+  /**
+   * Inserts or updates books with JDBC batching. {@code saveAll} merges each book, which selects it first when it is not
+   * managed yet; here the existing books are read with one query, then the new ones are persisted and the others
+   * merged into their managed copies, so the writes go out in {@code hibernate.jdbc.batch_size} batches. The existing
+   * books are read with the Criteria API, HQL does not parse with the ANTLR runtime CQEngine puts on the classpath.
+   *
+   * @param books the books, one per ISBN
+   * @return the ISBNs of the books that were already stored
+   */
+  Set<String> upsertAll(Collection<BookEntity> books);
+
+  /**
+   * Deletes books with one statement, built with the Criteria API like {@link #upsertAll}.
+   *
+   * @param isbns the ISBNs of the books
+   */
+  void deleteAllByIsbnInBatch(Collection<String> isbns);
+}
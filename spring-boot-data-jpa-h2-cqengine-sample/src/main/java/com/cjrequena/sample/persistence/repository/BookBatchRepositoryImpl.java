@@ -0,0 +1,63 @@
+package com.cjrequena.sample.persistence.repository;
+
+import com.cjrequena.sample.persistence.entity.BookEntity;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaDelete;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * @author cjrequena
+ */
+class BookBatchRepositoryImpl implements BookBatchRepository {
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @Override
+  @Transactional
+  public Set<String> upsertAll(Collection<BookEntity> books) {
+    if (books.isEmpty()) {
+      return Set.of();
+    }
+
+    CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+    CriteriaQuery<BookEntity> query = builder.createQuery(BookEntity.class);
+    Root<BookEntity> root = query.from(BookEntity.class);
+    query.where(root.get("isbn").in(books.stream().map(BookEntity::getIsbn).toList()));
+    Set<String> existing = entityManager.createQuery(query)
+      .getResultStream()
+      .map(BookEntity::getIsbn)
+      .collect(Collectors.toSet());
+
+    for (BookEntity book : books) {
+      if (existing.contains(book.getIsbn())) {
+        entityManager.merge(book);
+      } else {
+        entityManager.persist(book);
+      }
+    }
+    return existing;
+  }
+
+  @Override
+  @Transactional
+  public void deleteAllByIsbnInBatch(Collection<String> isbns) {
+    if (isbns.isEmpty()) {
+      return;
+    }
+
+    CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+    CriteriaDelete<BookEntity> delete = builder.createCriteriaDelete(BookEntity.class);
+    Root<BookEntity> root = delete.from(BookEntity.class);
+    delete.where(root.get("isbn").in(isbns));
+    entityManager.createQuery(delete).executeUpdate();
+  }
+}
@@ -1,12 +1,28 @@
 package com.cjrequena.sample.persistence.repository;
 
 import com.cjrequena.sample.persistence.entity.BookEntity;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 
 import java.util.List;
 import java.util.Optional;
 
-public interface BookRepository extends JpaRepository<BookEntity, String> {
+public interface BookRepository extends JpaRepository<BookEntity, String>, BookBatchRepository {
 
   Optional<List<BookEntity>> findByAuthor(String author);
+
+  /**
+   * Keyset pagination: the next chunk of books after the given ISBN, in ISBN order.
+   */
+  List<BookEntity> findByIsbnGreaterThanOrderByIsbnAsc(String isbn, Limit limit);
+
+  /**
+   * ISBNs of every book, read without loading the other columns.
+   */
+  List<IsbnView> findIsbnsBy();
+
+  interface IsbnView {
+
+    String getIsbn();
+  }
 }
@@ -1,20 +1,49 @@
 package com.cjrequena.sample.persistence.repository.cache;
 
+import com.cjrequena.sample.configuration.CQEngineConfigurationProperties;
 import com.cjrequena.sample.domain.model.Book;
+import com.cjrequena.sample.domain.model.BookSearchCriteria;
 import com.googlecode.cqengine.ConcurrentIndexedCollection;
 import com.googlecode.cqengine.IndexedCollection;
+import com.googlecode.cqengine.index.disk.DiskIndex;
 import com.googlecode.cqengine.index.hash.HashIndex;
+import com.googlecode.cqengine.index.navigable.NavigableIndex;
+import com.googlecode.cqengine.index.offheap.OffHeapIndex;
+import com.googlecode.cqengine.index.radix.RadixTreeIndex;
+import com.googlecode.cqengine.index.suffix.SuffixTreeIndex;
+import com.googlecode.cqengine.persistence.Persistence;
+import com.googlecode.cqengine.persistence.disk.DiskPersistence;
+import com.googlecode.cqengine.persistence.offheap.OffHeapPersistence;
+import com.googlecode.cqengine.persistence.onheap.OnHeapPersistence;
 import com.googlecode.cqengine.query.Query;
+import com.googlecode.cqengine.query.logical.And;
+import com.googlecode.cqengine.resultset.ResultSet;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Repository;
+import org.springframework.util.StringUtils;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+import static com.googlecode.cqengine.query.QueryFactory.all;
+import static com.googlecode.cqengine.query.QueryFactory.between;
+import static com.googlecode.cqengine.query.QueryFactory.contains;
 import static com.googlecode.cqengine.query.QueryFactory.equal;
+import static com.googlecode.cqengine.query.QueryFactory.greaterThanOrEqualTo;
+import static com.googlecode.cqengine.query.QueryFactory.lessThanOrEqualTo;
+import static com.googlecode.cqengine.query.QueryFactory.startsWith;
 
 @Repository
 @Qualifier("bookCacheCQEngineService")
@@ -22,44 +51,348 @@ import static com.googlecode.cqengine.query.QueryFactory.equal;
 @Log4j2
 public class BookCacheCQEngineRepository implements CacheRepository<String, Book> {
 
-  private final IndexedCollection<Book> cache = new ConcurrentIndexedCollection<>();
+  /**
+   * Grace period before the persistence of a replaced collection is closed, so in-flight readers can finish.
+   */
+  private static final long RETIRE_DELAY_SECONDS = 30;
 
-  public BookCacheCQEngineRepository() {
-    cache.addIndex(HashIndex.onAttribute(Book.ISBN));
-    cache.addIndex(HashIndex.onAttribute(Book.TITLE));
-    cache.addIndex(HashIndex.onAttribute(Book.AUTHOR));
+  private final CQEngineConfigurationProperties cqEngineConfigurationProperties;
+  private final boolean reuseOnStartup;
+  private final Object writeMonitor = new Object();
+  /**
+   * Readers always see a fully loaded collection, reloads are published by swapping this reference.
+   */
+  private volatile ConcurrentIndexedCollection<Book> cache;
+  /**
+   * File of the live collection in DISK mode, one of two files a reload alternates between. Null in the other modes.
+   */
+  private File diskFile;
+  /**
+   * Retirement of the collection last replaced, which in DISK mode still holds the file the next reload is built in.
+   */
+  private CompletableFuture<Void> retirement = CompletableFuture.completedFuture(null);
+  /**
+   * Writes applied while a reload is in progress, replayed onto the new collection before it is published.
+   */
+  private List<Consumer<IndexedCollection<Book>>> pendingWrites;
+
+  public BookCacheCQEngineRepository(CQEngineConfigurationProperties cqEngineConfigurationProperties) {
+    this.cqEngineConfigurationProperties = cqEngineConfigurationProperties;
+    this.reuseOnStartup = cqEngineConfigurationProperties.getPersistence() == CQEngineConfigurationProperties.Persistence.DISK
+      && cqEngineConfigurationProperties.getDisk().isReuseOnStartup();
+    this.diskFile = cqEngineConfigurationProperties.getPersistence() == CQEngineConfigurationProperties.Persistence.DISK
+      ? liveDiskFile()
+      : null;
+    this.cache = createCollection(diskFile);
+    log.info("CQEngine cache initialized with {} persistence.", cqEngineConfigurationProperties.getPersistence());
+  }
+
+  private ConcurrentIndexedCollection<Book> createCollection(File file) {
+    ConcurrentIndexedCollection<Book> collection = new ConcurrentIndexedCollection<>(createPersistence(file));
+    switch (cqEngineConfigurationProperties.getPersistence()) {
+      case OFF_HEAP -> {
+        // Equality, range and prefix lookups, kept off the heap
+        collection.addIndex(OffHeapIndex.onAttribute(Book.TITLE));
+        collection.addIndex(OffHeapIndex.onAttribute(Book.AUTHOR));
+      }
+      case DISK -> {
+        // Equality, range and prefix lookups, kept in the same file as the objects
+        collection.addIndex(DiskIndex.onAttribute(Book.TITLE));
+        collection.addIndex(DiskIndex.onAttribute(Book.AUTHOR));
+      }
+      default -> {
+        // Equality lookups
+        collection.addIndex(HashIndex.onAttribute(Book.ISBN));
+        collection.addIndex(HashIndex.onAttribute(Book.TITLE));
+        collection.addIndex(HashIndex.onAttribute(Book.AUTHOR));
+        // Range lookups
+        collection.addIndex(NavigableIndex.onAttribute(Book.ISBN));
+        // Prefix lookups (typed-ahead)
+        collection.addIndex(RadixTreeIndex.onAttribute(Book.TITLE));
+        collection.addIndex(RadixTreeIndex.onAttribute(Book.AUTHOR));
+        // Substring lookups
+        collection.addIndex(SuffixTreeIndex.onAttribute(Book.TITLE));
+        collection.addIndex(SuffixTreeIndex.onAttribute(Book.AUTHOR));
+      }
+    }
+    return collection;
+  }
+
+  /**
+   * The off-heap and disk persistences are keyed by ISBN, which is indexed implicitly. Substring lookups have
+   * no SQLite index and fall back to scanning the collection in those modes.
+   */
+  private Persistence<Book, ?> createPersistence(File file) {
+    return switch (cqEngineConfigurationProperties.getPersistence()) {
+      case OFF_HEAP -> OffHeapPersistence.onPrimaryKey(Book.ISBN);
+      case DISK -> DiskPersistence.onPrimaryKeyInFile(Book.ISBN, file);
+      default -> OnHeapPersistence.<Book>withoutPrimaryKey();
+    };
   }
 
   public void load(List<Book> books) {
-    cache.clear();
-    cache.addAll(books);
+    try (Loading<Book> loading = startLoading()) {
+      loading.addAll(books);
+      loading.publish();
+    }
     log.info("CQEngine cache loaded with {} books.", books.size());
 
   }
 
+  /**
+   * Reloads are built in a new collection off to the side and published with a single reference swap, so readers
+   * never see a partially loaded cache. In DISK mode the new collection is built in the other of the two files
+   * {@code <file>.a} and {@code <file>.b}, and the file of the replaced collection is deleted once it is retired; a
+   * reload started while that retirement is pending waits for it.
+   *
+   * @throws IllegalStateException if a reload is already in progress
+   */
+  public Loading<Book> startLoading() {
+    CompletableFuture<Void> pendingRetirement;
+    File liveFile;
+    synchronized (writeMonitor) {
+      if (pendingWrites != null) {
+        throw new IllegalStateException("A CQEngine cache reload is already in progress");
+      }
+      pendingWrites = new ArrayList<>();
+      pendingRetirement = retirement;
+      liveFile = diskFile;
+    }
+    try {
+      File shadowFile = liveFile != null ? resetDiskFile(alternateDiskFile(liveFile), pendingRetirement) : null;
+      return new ShadowLoading(createCollection(shadowFile), shadowFile);
+    } catch (RuntimeException ex) {
+      synchronized (writeMonitor) {
+        pendingWrites = null;
+      }
+      throw ex;
+    }
+  }
+
   public void add(Book book) {
-    cache.add(book);
+    write(collection -> collection.add(book));
+  }
+
+  public void addAll(List<Book> books) {
+    write(collection -> collection.addAll(books));
   }
 
   public List<Book> retrieve() {
-    return new ArrayList<>(cache);
+    return query(all(Book.class));
   }
 
   public Book retrieveById(String isbn) {
     Query<Book> retrieveByIsbnQry = equal(Book.ISBN, isbn);
-    return cache.retrieve(retrieveByIsbnQry).stream().findFirst().orElse(null);
+    try (ResultSet<Book> resultSet = cache.retrieve(retrieveByIsbnQry)) {
+      return resultSet.stream().findFirst().orElse(null);
+    }
   }
 
   public void removeById(String isbn) {
-    cache.removeIf(book -> book.getIsbn().equals(isbn));
+    write(collection -> collection.removeAll(query(collection, equal(Book.ISBN, isbn))));
   }
 
   public List<Book> retrieveByAuthor(String author) {
     Query<Book> retrieveByAuthorQry = equal(Book.AUTHOR, author);
-    return cache.retrieve(retrieveByAuthorQry).stream().collect(Collectors.toList());
+    return query(retrieveByAuthorQry);
+  }
+
+  /**
+   * Runs an arbitrary CQEngine query against the indexed collection.
+   *
+   * @param query the query to run
+   * @return the matching books
+   */
+  public List<Book> query(Query<Book> query) {
+    return query(cache, query);
+  }
+
+  private static List<Book> query(IndexedCollection<Book> collection, Query<Book> query) {
+    try (ResultSet<Book> resultSet = collection.retrieve(query)) {
+      return resultSet.stream().collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * Translates the search criteria into a CQEngine query, so prefix, substring and range lookups are
+   * answered by the collection indexes instead of scanning it.
+   *
+   * @param criteria the search criteria, when none is set every cached book is returned
+   * @return the matching books
+   */
+  public List<Book> query(BookSearchCriteria criteria) {
+    List<Query<Book>> queries = new ArrayList<>();
+    if (StringUtils.hasText(criteria.getTitlePrefix())) {
+      queries.add(startsWith(Book.TITLE, criteria.getTitlePrefix()));
+    }
+    if (StringUtils.hasText(criteria.getTitleContains())) {
+      queries.add(contains(Book.TITLE, criteria.getTitleContains()));
+    }
+    if (StringUtils.hasText(criteria.getAuthorPrefix())) {
+      queries.add(startsWith(Book.AUTHOR, criteria.getAuthorPrefix()));
+    }
+    if (StringUtils.hasText(criteria.getAuthorContains())) {
+      queries.add(contains(Book.AUTHOR, criteria.getAuthorContains()));
+    }
+    boolean hasIsbnFrom = StringUtils.hasText(criteria.getIsbnFrom());
+    boolean hasIsbnTo = StringUtils.hasText(criteria.getIsbnTo());
+    if (hasIsbnFrom && hasIsbnTo) {
+      queries.add(between(Book.ISBN, criteria.getIsbnFrom(), criteria.getIsbnTo()));
+    } else if (hasIsbnFrom) {
+      queries.add(greaterThanOrEqualTo(Book.ISBN, criteria.getIsbnFrom()));
+    } else if (hasIsbnTo) {
+      queries.add(lessThanOrEqualTo(Book.ISBN, criteria.getIsbnTo()));
+    }
+
+    if (queries.isEmpty()) {
+      return retrieve();
+    }
+    return query(queries.size() == 1 ? queries.get(0) : new And<>(queries));
+  }
+
+  public void clear() {
+    write(IndexedCollection::clear);
   }
 
   public boolean isEmpty() {
     return cache.isEmpty();
   }
+
+  /**
+   * Whether the cache was reopened from an existing disk-backed collection that still matches the database, so the
+   * warm-up from the database can be skipped. The file outlives the database when it is recreated on each start, as
+   * the in-memory H2 seeded by Flyway is, so a collection whose size differs from the book count is reloaded. A book
+   * updated in place is not detected.
+   *
+   * @param bookCount the number of books in the database
+   */
+  public boolean isWarm(long bookCount) {
+    if (!reuseOnStartup || cache.isEmpty()) {
+      return false;
+    }
+    if (cache.size() != bookCount) {
+      log.info("CQEngine collection holds {} books and the database {}, reloading it.", cache.size(), bookCount);
+      return false;
+    }
+    return true;
+  }
+
+  @PreDestroy
+  public void close() throws IOException {
+    close(cache);
+  }
+
+  /**
+   * Applies a write to the live collection and, while a reload is in progress, records it so it is not lost
+   * when the new collection is published.
+   */
+  private void write(Consumer<IndexedCollection<Book>> write) {
+    synchronized (writeMonitor) {
+      write.accept(cache);
+      if (pendingWrites != null) {
+        pendingWrites.add(write);
+      }
+    }
+  }
+
+  /**
+   * The file of the collection to reopen on startup: the most recently written of the two files, the other one being
+   * a leftover of a reload interrupted by a shutdown.
+   */
+  private File liveDiskFile() {
+    String file = cqEngineConfigurationProperties.getDisk().getFile();
+    File a = new File(file + ".a");
+    File b = new File(file + ".b");
+    if (!b.exists()) {
+      return a;
+    }
+    return !a.exists() || b.lastModified() > a.lastModified() ? b : a;
+  }
+
+  /**
+   * Empties the file a reload is built in, once the collection last replaced, which was using it, is retired.
+   */
+  private static File resetDiskFile(File file, CompletableFuture<Void> pendingRetirement) {
+    pendingRetirement.join();
+    try {
+      Files.deleteIfExists(file.toPath());
+      return file;
+    } catch (IOException ex) {
+      throw new UncheckedIOException("Unable to reset the CQEngine file " + file, ex);
+    }
+  }
+
+  private static File alternateDiskFile(File file) {
+    String path = file.getPath();
+    return new File(path.substring(0, path.length() - 1) + (path.endsWith(".a") ? "b" : "a"));
+  }
+
+  private static void close(ConcurrentIndexedCollection<Book> collection) throws IOException {
+    if (collection.getPersistence() instanceof Closeable closeable) {
+      closeable.close();
+    }
+  }
+
+  /**
+   * Closes a collection and deletes its file, if it has one.
+   */
+  private static void discard(ConcurrentIndexedCollection<Book> collection, File file) {
+    try {
+      close(collection);
+      if (file != null) {
+        Files.deleteIfExists(file.toPath());
+      }
+    } catch (IOException ex) {
+      log.warn("Unable to discard the replaced CQEngine collection", ex);
+    }
+  }
+
+  /**
+   * Discards a replaced collection after the grace period of its in-flight readers.
+   */
+  private static CompletableFuture<Void> retire(ConcurrentIndexedCollection<Book> collection, File file) {
+    return CompletableFuture.runAsync(() -> discard(collection, file),
+      CompletableFuture.delayedExecutor(RETIRE_DELAY_SECONDS, TimeUnit.SECONDS));
+  }
+
+  /**
+   * Builds a new collection off to the side and publishes it with a single reference swap.
+   */
+  private class ShadowLoading implements Loading<Book> {
+
+    private final ConcurrentIndexedCollection<Book> shadow;
+    private final File shadowFile;
+    private boolean published;
+
+    ShadowLoading(ConcurrentIndexedCollection<Book> shadow, File shadowFile) {
+      this.shadow = shadow;
+      this.shadowFile = shadowFile;
+    }
+
+    public void addAll(List<Book> books) {
+      shadow.addAll(books);
+    }
+
+    public void publish() {
+      synchronized (writeMonitor) {
+        // Rows read from the database before a concurrent write committed are superseded by that write
+        pendingWrites.forEach(write -> write.accept(shadow));
+        pendingWrites = null;
+        retirement = retire(cache, diskFile);
+        cache = shadow;
+        diskFile = shadowFile;
+        published = true;
+      }
+    }
+
+    public void close() {
+      if (published) {
+        return;
+      }
+      synchronized (writeMonitor) {
+        pendingWrites = null;
+      }
+      discard(shadow, shadowFile); // Never published, so never read
+    }
+  }
 }
@@ -3,42 +3,104 @@ package com.cjrequena.sample.persistence.repository.cache;
 import com.cjrequena.sample.domain.model.Book;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Repository;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * <p>
+ * Caffeine book cache with a secondary index from normalized author to ISBNs. The index is maintained inside the
+ * atomic per-key map operations for writes and from the eviction listener for size and expiry evictions, so it
+ * never points to books the cache no longer holds for long, and author lookups cost O(matches).
+ * </p>
+ *
+ * @author cjrequena
+ */
 @Repository
 @Qualifier("bookCacheCaffeineService")
 @Log4j2
 public class BookCacheCaffeineRepository implements CacheRepository<String,Book> {
 
   private final Cache<String, Book> cache;
+  private final Map<String, Set<String>> authorIndex = new ConcurrentHashMap<>();
+  /**
+   * Bumped after every write and eviction, a snapshot built at an older version is stale.
+   */
+  private final AtomicLong version = new AtomicLong();
+  private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
 
   public BookCacheCaffeineRepository() {
     this.cache = Caffeine.newBuilder()
       .expireAfterAccess(1, TimeUnit.HOURS)
       .maximumSize(10_000)
+      .evictionListener((String isbn, Book book, RemovalCause cause) -> {
+        unindex(isbn, book);
+        version.incrementAndGet();
+      })
       .build();
   }
 
   public void load(List<Book> books) {
-    cache.invalidateAll(); // Clear cache
-    books.forEach(book -> cache.put(book.getIsbn(), book));
+    clear();
+    addAll(books);
     log.info("Caffeine cache loaded with {} books.", books.size());
 
   }
 
+  /**
+   * Caffeine has no cheap way to swap its contents, so entities are loaded straight into the live cache.
+   */
+  public Loading<Book> startLoading() {
+    clear();
+    return new Loading<>() {
+      public void addAll(List<Book> books) {
+        BookCacheCaffeineRepository.this.addAll(books);
+      }
+
+      public void publish() {
+      }
+
+      public void close() {
+      }
+    };
+  }
+
   public void add(Book book) {
-    cache.put(book.getIsbn(), book);
+    cache.asMap().compute(book.getIsbn(), (isbn, previous) -> {
+      unindex(isbn, previous);
+      index(isbn, book);
+      return book;
+    });
+    version.incrementAndGet();
   }
 
+  public void addAll(List<Book> books) {
+    books.forEach(this::add);
+  }
+
+  /**
+   * Returns an immutable snapshot of the cached books, rebuilt only after a write or an eviction.
+   */
   public List<Book> retrieve() {
-    return new ArrayList<>(cache.asMap().values());
+    long current = version.get();
+    Snapshot cached = snapshot.get();
+    if (cached != null && cached.version() == current) {
+      return cached.books();
+    }
+    List<Book> books = List.copyOf(cache.asMap().values());
+    snapshot.set(new Snapshot(current, books));
+    return books;
   }
 
   public Book retrieveById(String isbn) {
@@ -46,16 +108,54 @@ public class BookCacheCaffeineRepository implements CacheRepository<String,Book>
   }
 
   public void removeById(String isbn) {
-    cache.invalidate(isbn);
+    cache.asMap().computeIfPresent(isbn, (key, previous) -> {
+      unindex(key, previous);
+      return null;
+    });
+    version.incrementAndGet();
   }
 
   public List<Book> retrieveByAuthor(String author) {
-    return cache.asMap().values().stream()
-      .filter(book -> book.getAuthor().equalsIgnoreCase(author))
-      .collect(Collectors.toList());
+    Set<String> isbns = authorIndex.get(normalize(author));
+    if (isbns == null) {
+      return new ArrayList<>();
+    }
+    return new ArrayList<>(cache.getAllPresent(isbns).values());
+  }
+
+  public void clear() {
+    cache.asMap().keySet().forEach(this::removeById);
   }
 
   public boolean isEmpty() {
     return cache.asMap().isEmpty();
   }
+
+  private void index(String isbn, Book book) {
+    String author = normalize(book.getAuthor());
+    if (author != null) {
+      authorIndex.compute(author, (key, isbns) -> {
+        Set<String> indexed = isbns == null ? ConcurrentHashMap.newKeySet() : isbns;
+        indexed.add(isbn);
+        return indexed;
+      });
+    }
+  }
+
+  private void unindex(String isbn, Book book) {
+    String author = book == null ? null : normalize(book.getAuthor());
+    if (author != null) {
+      authorIndex.computeIfPresent(author, (key, isbns) -> {
+        isbns.remove(isbn);
+        return isbns.isEmpty() ? null : isbns;
+      });
+    }
+  }
+
+  private static String normalize(String author) {
+    return author == null ? null : author.trim().toLowerCase(Locale.ROOT);
+  }
+
+  private record Snapshot(long version, List<Book> books) {
+  }
 }
@@ -6,13 +6,35 @@ public interface CacheRepository<K, T> {
 
   void load(List<T> entities);
 
+  /**
+   * Starts a bulk load whose entities replace the cache contents once it is published.
+   */
+  Loading<T> startLoading();
+
   void add(T entity);
 
+  void addAll(List<T> entities);
+
   List<T> retrieve();
 
   T retrieveById(K id);
 
   void removeById(K id);
 
+  void clear();
+
   boolean isEmpty();
+
+  /**
+   * A bulk load in progress. Closing it without publishing discards the loaded entities where the cache allows it.
+   */
+  interface Loading<T> extends AutoCloseable {
+
+    void addAll(List<T> entities);
+
+    void publish();
+
+    @Override
+    void close();
+  }
 }
@@ -0,0 +1,91 @@
+package com.cjrequena.sample.service;
+
+import com.cjrequena.sample.domain.model.Book;
+import com.cjrequena.sample.domain.model.BookBatchResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * Batch writes of books streamed in a request body. The books are decoded one at a time as they arrive, grouped in
+ * chunks of {@value BookServiceV4#MAX_BATCH_CHUNK} and applied by {@link BookServiceV4} one chunk after the other on
+ * the bounded elastic scheduler. The body is only read further once a chunk is applied, so at most one chunk of books
+ * is held at a time, whatever the size of the batch.
+ * </p>
+ *
+ * <p>Each book gets an outcome, in the order it was sent. A book without an ISBN is reported as invalid and skipped,
+ * and a chunk that fails is reported as failed book by book while the next chunks are still applied.</p>
+ *
+ * @author cjrequena
+ */
+@Slf4j
+@Service
+public class BookBatchService {
+
+  private final BookServiceV4 bookService;
+
+  public BookBatchService(BookServiceV4 bookService) {
+    this.bookService = bookService;
+  }
+
+  /**
+   * Creates or replaces the books.
+   */
+  public Flux<BookBatchResult> saveAll(Flux<Book> books) {
+    return books
+      .buffer(BookServiceV4.MAX_BATCH_CHUNK)
+      .concatMap(chunk -> apply(chunk, bookService::saveAll));
+  }
+
+  /**
+   * Deletes the books, only their ISBNs are read.
+   */
+  public Flux<BookBatchResult> deleteAll(Flux<Book> books) {
+    return books
+      .buffer(BookServiceV4.MAX_BATCH_CHUNK)
+      .concatMap(chunk -> apply(chunk, valid -> bookService.deleteAllByIsbn(valid.stream().map(Book::getIsbn).toList())));
+  }
+
+  private static Flux<BookBatchResult> apply(List<Book> chunk, Function<List<Book>, List<BookBatchResult>> write) {
+    return Mono.fromCallable(() -> applyChunk(chunk, write))
+      .subscribeOn(Schedulers.boundedElastic())
+      .flatMapIterable(results -> results);
+  }
+
+  /**
+   * Writes the valid books of a chunk and merges their outcomes with the invalid ones, in the order of the chunk.
+   */
+  private static List<BookBatchResult> applyChunk(List<Book> chunk, Function<List<Book>, List<BookBatchResult>> write) {
+    List<Book> valid = chunk.stream().filter(BookBatchService::isValid).toList();
+    List<BookBatchResult> written;
+    try {
+      written = valid.isEmpty() ? List.of() : write.apply(valid);
+    } catch (Exception e) {
+      log.error("Failed to write a chunk of {} books", valid.size(), e);
+      written = valid.stream()
+        .map(book -> BookBatchResult.of(book.getIsbn(), BookBatchResult.Outcome.FAILED, e.getMessage()))
+        .toList();
+    }
+
+    List<BookBatchResult> results = new ArrayList<>(chunk.size());
+    Iterator<BookBatchResult> writtenResults = written.iterator();
+    for (Book book : chunk) {
+      results.add(isValid(book)
+        ? writtenResults.next()
+        : BookBatchResult.of(book.getIsbn(), BookBatchResult.Outcome.INVALID, "Book ISBN cannot be blank"));
+    }
+    return results;
+  }
+
+  private static boolean isValid(Book book) {
+    return book.getIsbn() != null && !book.getIsbn().isBlank();
+  }
+}
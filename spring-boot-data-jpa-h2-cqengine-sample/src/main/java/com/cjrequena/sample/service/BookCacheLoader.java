@@ -0,0 +1,131 @@
+package com.cjrequena.sample.service;
+
+import com.cjrequena.sample.configuration.CacheWarmUpConfigurationProperties;
+import com.cjrequena.sample.domain.mapper.BookMapper;
+import com.cjrequena.sample.domain.model.Book;
+import com.cjrequena.sample.persistence.entity.BookEntity;
+import com.cjrequena.sample.persistence.repository.BookRepository;
+import com.cjrequena.sample.persistence.repository.cache.CacheRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ * Streams the books table into a cache in keyset-paged chunks. Each chunk is mapped and inserted while the next
+ * one is read, and at most {@code parallelism} chunks are in flight, so the warm-up memory is bounded by the chunk
+ * size rather than by the table size. The loaded books are published once every chunk is in.
+ * </p>
+ *
+ * <p>Publishes the {@code book.cache.warmup} timer and the {@code book.cache.warmup.loaded} progress gauge, both
+ * tagged with the cache name.</p>
+ *
+ * @author cjrequena
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BookCacheLoader {
+
+  private final BookRepository bookRepository;
+  private final BookMapper bookMapper;
+  private final CacheWarmUpConfigurationProperties cacheWarmUpConfigurationProperties;
+  private final MeterRegistry meterRegistry;
+  private final Map<String, AtomicLong> progress = new ConcurrentHashMap<>();
+  private final Map<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+  /**
+   * Replaces the cache contents with every book. Concurrent loads of the same cache run one after the other.
+   *
+   * @param cacheRepository the cache to warm up
+   * @return the number of books loaded
+   */
+  public long load(CacheRepository<String, Book> cacheRepository) {
+    final String cacheName = ClassUtils.getUserClass(cacheRepository).getSimpleName();
+    final ReentrantLock lock = locks.computeIfAbsent(cacheName, name -> new ReentrantLock());
+    lock.lock();
+    try {
+      return doLoad(cacheRepository, cacheName);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Recovery path for an empty cache. Concurrent callers share a single load: whoever gets the lock loads, the
+   * others wait for it and find the cache populated.
+   *
+   * @param cacheRepository the cache to warm up
+   * @return the number of books loaded, zero if another caller already loaded them
+   */
+  public long loadIfEmpty(CacheRepository<String, Book> cacheRepository) {
+    final String cacheName = ClassUtils.getUserClass(cacheRepository).getSimpleName();
+    final ReentrantLock lock = locks.computeIfAbsent(cacheName, name -> new ReentrantLock());
+    lock.lock();
+    try {
+      return cacheRepository.isEmpty() ? doLoad(cacheRepository, cacheName) : 0;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private long doLoad(CacheRepository<String, Book> cacheRepository, String cacheName) {
+    final int chunkSize = cacheWarmUpConfigurationProperties.getChunkSize();
+    final int parallelism = Math.max(1, cacheWarmUpConfigurationProperties.getParallelism());
+    final AtomicLong loaded = progress.computeIfAbsent(cacheName,
+      name -> meterRegistry.gauge("book.cache.warmup.loaded", Tags.of("cache", name), new AtomicLong()));
+    final Semaphore inFlight = new Semaphore(parallelism);
+    final List<CompletableFuture<Void>> chunks = new ArrayList<>();
+    final Timer.Sample sample = Timer.start(meterRegistry);
+
+    log.info("Warming up {} in chunks of {} with parallelism {}", cacheName, chunkSize, parallelism);
+    loaded.set(0);
+    try (CacheRepository.Loading<Book> loading = cacheRepository.startLoading();
+         ExecutorService executor = Executors.newFixedThreadPool(parallelism)) {
+      String lastIsbn = "";
+      List<BookEntity> entities;
+      do {
+        entities = bookRepository.findByIsbnGreaterThanOrderByIsbnAsc(lastIsbn, Limit.of(chunkSize));
+        if (entities.isEmpty()) {
+          break;
+        }
+        lastIsbn = entities.get(entities.size() - 1).getIsbn();
+        final List<BookEntity> chunk = entities;
+        inFlight.acquire();
+        chunks.add(CompletableFuture.runAsync(() -> {
+          try {
+            loading.addAll(bookMapper.toDomain(chunk));
+            log.debug("{} warm-up progress: {} books", cacheName, loaded.addAndGet(chunk.size()));
+          } finally {
+            inFlight.release();
+          }
+        }, executor));
+      } while (entities.size() == chunkSize);
+      CompletableFuture.allOf(chunks.toArray(CompletableFuture[]::new)).join();
+      loading.publish();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while warming up " + cacheName, ex);
+    } finally {
+      long nanos = sample.stop(meterRegistry.timer("book.cache.warmup", "cache", cacheName));
+      log.info("{} warmed up with {} books in {} ms", cacheName, loaded.get(), nanos / 1_000_000);
+    }
+    return loaded.get();
+  }
+}
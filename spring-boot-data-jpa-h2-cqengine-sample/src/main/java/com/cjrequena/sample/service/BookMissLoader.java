@@ -0,0 +1,98 @@
+package com.cjrequena.sample.service;
+
+import com.cjrequena.sample.configuration.CacheMissConfigurationProperties;
+import com.cjrequena.sample.domain.exception.BookNotFoundException;
+import com.cjrequena.sample.domain.mapper.BookMapper;
+import com.cjrequena.sample.domain.model.Book;
+import com.cjrequena.sample.persistence.repository.BookRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * <p>
+ * Loads books missing from a cache out of the database. Concurrent misses for the same ISBN share a single in-flight
+ * query and its result, and ISBNs found missing in the database are remembered for a short while, so a burst of
+ * lookups for a popular or a nonexistent ISBN costs one query.
+ * </p>
+ *
+ * <p>Like the caches it fills, the ISBNs found missing are kept in this process, in a bounded Caffeine cache.</p>
+ *
+ * @author cjrequena
+ */
+@Slf4j
+@Component
+public class BookMissLoader {
+
+  private final BookRepository bookRepository;
+  private final BookMapper bookMapper;
+  private final Map<String, CompletableFuture<Optional<Book>>> inFlight = new ConcurrentHashMap<>();
+  private final Cache<String, Boolean> notFound;
+
+  public BookMissLoader(BookRepository bookRepository, BookMapper bookMapper,
+    CacheMissConfigurationProperties cacheMissConfigurationProperties) {
+    this.bookRepository = bookRepository;
+    this.bookMapper = bookMapper;
+    this.notFound = Caffeine.newBuilder()
+      .expireAfterWrite(cacheMissConfigurationProperties.getNotFoundTtl())
+      .maximumSize(cacheMissConfigurationProperties.getNotFoundMaximumSize())
+      .build();
+  }
+
+  public Book load(String isbn) throws BookNotFoundException {
+    return load(isbn, book -> {
+    });
+  }
+
+  /**
+   * Loads a book from the database, joining the load already in flight for the same ISBN if there is one.
+   *
+   * @param isbn     the ISBN of the book
+   * @param onLoaded called once with the loaded book, by the caller that actually queried the database
+   * @return the book
+   * @throws BookNotFoundException if the book does not exist, or was found missing within the not found TTL
+   */
+  public Book load(String isbn, Consumer<Book> onLoaded) throws BookNotFoundException {
+    if (notFound.getIfPresent(isbn) != null) {
+      throw new BookNotFoundException("Book not found with ISBN: " + isbn);
+    }
+
+    CompletableFuture<Optional<Book>> load = new CompletableFuture<>();
+    CompletableFuture<Optional<Book>> running = inFlight.putIfAbsent(isbn, load);
+    if (running == null) {
+      try {
+        Optional<Book> book = bookRepository.findById(isbn).map(bookMapper::toDomain);
+        book.ifPresentOrElse(onLoaded, () -> notFound.put(isbn, Boolean.TRUE));
+        load.complete(book);
+      } catch (RuntimeException ex) {
+        load.completeExceptionally(ex);
+      } finally {
+        inFlight.remove(isbn, load);
+      }
+    } else {
+      log.debug("Joining the in-flight load of book {}", isbn);
+      load = running;
+    }
+
+    try {
+      return load.join().orElseThrow(() -> new BookNotFoundException("Book not found with ISBN: " + isbn));
+    } catch (CompletionException ex) {
+      throw ex.getCause() instanceof RuntimeException cause ? cause : ex;
+    }
+  }
+
+  /**
+   * Forgets that a book was found missing, to be called once it is created.
+   */
+  public void forget(String isbn) {
+    notFound.invalidate(isbn);
+  }
+}
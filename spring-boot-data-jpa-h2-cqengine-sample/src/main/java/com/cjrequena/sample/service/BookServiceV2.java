@@ -16,32 +16,38 @@ public class BookServiceV2 {
 
   private final BookRepository bookRepository;
   private final BookMapper bookMapper;
+  private final BookCacheLoader bookCacheLoader;
+  private final BookMissLoader bookMissLoader;
   private final BookCacheCaffeineRepository bookCacheRepository;
 
   public BookServiceV2(
     BookMapper bookMapper,
     BookRepository bookRepository,
+    BookCacheLoader bookCacheLoader,
+    BookMissLoader bookMissLoader,
     BookCacheCaffeineRepository bookCacheRepository
   ) {
     this.bookRepository = bookRepository;
     this.bookMapper = bookMapper;
+    this.bookCacheLoader = bookCacheLoader;
+    this.bookMissLoader = bookMissLoader;
     this.bookCacheRepository = bookCacheRepository;
   }
 
   @PostConstruct
   public void loadUpCache() {
-    List<Book> books = this.bookMapper.toDomain(bookRepository.findAll());
-    bookCacheRepository.load(books);
+    bookCacheLoader.load(bookCacheRepository);
   }
 
   public void create(Book book) {
     bookRepository.save(this.bookMapper.toEntity(book));
     bookCacheRepository.add(book); // write-through
+    bookMissLoader.forget(book.getIsbn());
   }
 
   public List<Book> retrieve() {
     if (bookCacheRepository.isEmpty()) {
-      loadUpCache(); // recovery logic
+      bookCacheLoader.loadIfEmpty(bookCacheRepository); // recovery logic, a single reload for concurrent callers
     }
     return bookCacheRepository.retrieve();
   }
@@ -49,13 +55,7 @@ public class BookServiceV2 {
   public Book retrieveById(String isbn) throws BookNotFoundException {
     Book book = bookCacheRepository.retrieveById(isbn);
     if (book == null) {
-      book = bookRepository
-        .findById(isbn)
-        .map(bookMapper::toDomain)
-        .orElseThrow(() -> new BookNotFoundException("Book not found with ISBN: " + isbn));
-      if (book != null) {
-        bookCacheRepository.add(book); // cache update
-      }
+      book = bookMissLoader.load(isbn, bookCacheRepository::add); // cache update, a single load for concurrent misses
     }
     return book;
   }
@@ -3,6 +3,7 @@ package com.cjrequena.sample.service;
 import com.cjrequena.sample.domain.exception.BookNotFoundException;
 import com.cjrequena.sample.domain.mapper.BookMapper;
 import com.cjrequena.sample.domain.model.Book;
+import com.cjrequena.sample.domain.model.BookSearchCriteria;
 import com.cjrequena.sample.persistence.repository.BookRepository;
 import com.cjrequena.sample.persistence.repository.cache.BookCacheCQEngineRepository;
 import com.cjrequena.sample.persistence.repository.cache.CacheRepository;
@@ -18,32 +19,41 @@ public class BookServiceV3 {
 
   private final BookRepository bookRepository;
   private final BookMapper bookMapper;
+  private final BookCacheLoader bookCacheLoader;
+  private final BookMissLoader bookMissLoader;
   BookCacheCQEngineRepository bookCacheRepository;
 
   public BookServiceV3(
     BookMapper bookMapper,
     BookRepository bookRepository,
+    BookCacheLoader bookCacheLoader,
+    BookMissLoader bookMissLoader,
     @Qualifier("bookCacheCQEngineService") CacheRepository<String, Book> bookCacheRepository
   ) {
     this.bookRepository = bookRepository;
     this.bookMapper = bookMapper;
+    this.bookCacheLoader = bookCacheLoader;
+    this.bookMissLoader = bookMissLoader;
     this.bookCacheRepository = (BookCacheCQEngineRepository)bookCacheRepository;
   }
 
   @PostConstruct
   public void loadUpCache() {
-    List<Book> books = this.bookMapper.toDomain(bookRepository.findAll());
-    bookCacheRepository.load(books);
+    if (bookCacheRepository.isWarm(bookRepository.count())) {
+      return; // reopened from disk
+    }
+    bookCacheLoader.load(bookCacheRepository);
   }
 
   public void create(Book book) {
     bookRepository.save(this.bookMapper.toEntity(book));
     bookCacheRepository.add(book); // write-through
+    bookMissLoader.forget(book.getIsbn());
   }
 
   public List<Book> retrieve() {
     if (bookCacheRepository.isEmpty()) {
-      loadUpCache(); // recovery logic
+      bookCacheLoader.loadIfEmpty(bookCacheRepository); // recovery logic, a single reload for concurrent callers
     }
     return bookCacheRepository.retrieve();
   }
@@ -51,13 +61,7 @@ public class BookServiceV3 {
   public Book retrieveById(String isbn) throws BookNotFoundException {
     Book book = bookCacheRepository.retrieveById(isbn);
     if (book == null) {
-      book = bookRepository
-        .findById(isbn)
-        .map(bookMapper::toDomain)
-        .orElseThrow(() -> new BookNotFoundException("Book not found with ISBN: " + isbn));
-      if (book != null) {
-        bookCacheRepository.add(book); // cache update
-      }
+      book = bookMissLoader.load(isbn, bookCacheRepository::add); // cache update, a single load for concurrent misses
     }
     return book;
   }
@@ -73,6 +77,13 @@ public class BookServiceV3 {
     return books;
   }
 
+  public List<Book> search(BookSearchCriteria criteria) {
+    if (bookCacheRepository.isEmpty()) {
+      bookCacheLoader.loadIfEmpty(bookCacheRepository); // recovery logic, a single reload for concurrent callers
+    }
+    return bookCacheRepository.query(criteria);
+  }
+
   public void update(Book book) throws BookNotFoundException {
     if (bookRepository.findById(book.getIsbn()).isPresent()) {
       bookRepository.save(bookMapper.toEntity(book));
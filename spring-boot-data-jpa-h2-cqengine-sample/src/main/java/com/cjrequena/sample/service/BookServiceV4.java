@@ -3,6 +3,8 @@ package com.cjrequena.sample.service;
 import com.cjrequena.sample.domain.exception.BookNotFoundException;
 import com.cjrequena.sample.domain.mapper.BookMapper;
 import com.cjrequena.sample.domain.model.Book;
+import com.cjrequena.sample.domain.model.BookBatchResult;
+import com.cjrequena.sample.persistence.entity.BookEntity;
 import com.cjrequena.sample.persistence.repository.BookRepository;
 import com.cjrequena.sample.persistence.repository.cache.BookCacheCaffeineRepository;
 import com.cjrequena.sample.persistence.repository.cache.CacheRepository;
@@ -10,41 +12,55 @@ import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 public class BookServiceV4 {
 
+  public static final int MAX_BATCH_CHUNK = 500;
+
   private final BookRepository bookRepository;
   private final BookMapper bookMapper;
+  private final BookCacheLoader bookCacheLoader;
+  private final BookMissLoader bookMissLoader;
   private final BookCacheCaffeineRepository bookCacheRepository;
 
 
   public BookServiceV4(
     BookMapper bookMapper,
     BookRepository bookRepository,
+    BookCacheLoader bookCacheLoader,
+    BookMissLoader bookMissLoader,
     @Qualifier("bookCacheCaffeineRepository") CacheRepository<String, Book> bookCacheRepository
   ) {
     this.bookRepository = bookRepository;
     this.bookMapper = bookMapper;
+    this.bookCacheLoader = bookCacheLoader;
+    this.bookMissLoader = bookMissLoader;
     this.bookCacheRepository = (BookCacheCaffeineRepository)bookCacheRepository;
   }
 
   @PostConstruct
   public void loadUpCache() {
-    List<Book> books = this.bookMapper.toDomain(bookRepository.findAll());
-    bookCacheRepository.load(books);
+    bookCacheLoader.load(bookCacheRepository);
   }
 
   public void create(Book book) {
     bookRepository.save(this.bookMapper.toEntity(book));
     bookCacheRepository.add(book); // write-through
+    bookMissLoader.forget(book.getIsbn());
   }
 
   public List<Book> retrieve() {
     if (bookCacheRepository.isEmpty()) {
-      loadUpCache(); // recovery logic
+      bookCacheLoader.loadIfEmpty(bookCacheRepository); // recovery logic, a single reload for concurrent callers
     }
     return bookCacheRepository.retrieve();
   }
@@ -52,13 +68,7 @@ public class BookServiceV4 {
   public Book retrieveById(String isbn) throws BookNotFoundException {
     Book book = bookCacheRepository.retrieveById(isbn);
     if (book == null) {
-      book = bookRepository
-        .findById(isbn)
-        .map(bookMapper::toDomain)
-        .orElseThrow(() -> new BookNotFoundException("Book not found with ISBN: " + isbn));
-      if (book != null) {
-        bookCacheRepository.add(book); // cache update
-      }
+      book = bookMissLoader.load(isbn, bookCacheRepository::add); // cache update, a single load for concurrent misses
     }
     return book;
   }
@@ -93,4 +103,69 @@ public class BookServiceV4 {
       throw new BookNotFoundException("Book with ISBN " + isbn + " was not Found");
     }
   }
+
+  /**
+   * Creates or replaces a chunk of books with one query for the books already stored, one batched upsert and one cache
+   * write per book.
+   *
+   * @param books up to {@value #MAX_BATCH_CHUNK} books, a book sent twice is stored as last sent
+   * @return the outcome of each book, in order
+   */
+  public List<BookBatchResult> saveAll(List<Book> books) {
+    validateChunk(books.size());
+    Map<String, Book> lastWrites = new LinkedHashMap<>();
+    for (Book book : books) {
+      if (book == null || book.getIsbn() == null) {
+        throw new IllegalArgumentException("Book ISBN cannot be null");
+      }
+      lastWrites.remove(book.getIsbn());
+      lastWrites.put(book.getIsbn(), book);
+    }
+
+    Set<String> stored = new HashSet<>(bookRepository.upsertAll(bookMapper.toEntity(new ArrayList<>(lastWrites.values()))));
+    bookCacheRepository.addAll(new ArrayList<>(lastWrites.values())); // write-through
+    lastWrites.keySet().forEach(bookMissLoader::forget);
+
+    List<BookBatchResult> results = new ArrayList<>(books.size());
+    for (Book book : books) {
+      results.add(BookBatchResult.of(book.getIsbn(),
+        stored.add(book.getIsbn()) ? BookBatchResult.Outcome.CREATED : BookBatchResult.Outcome.UPDATED));
+    }
+    return results;
+  }
+
+  /**
+   * Deletes a chunk of books with one query for the books stored and one batched delete.
+   *
+   * @param isbns up to {@value #MAX_BATCH_CHUNK} ISBNs
+   * @return the outcome of each ISBN, in order
+   */
+  public List<BookBatchResult> deleteAllByIsbn(List<String> isbns) {
+    validateChunk(isbns.size());
+    if (isbns.contains(null)) {
+      throw new IllegalArgumentException("Book ISBN cannot be null");
+    }
+
+    isbns.forEach(bookCacheRepository::removeById);
+    Set<String> stored = bookRepository.findAllById(isbns).stream()
+      .map(BookEntity::getIsbn)
+      .collect(Collectors.toCollection(HashSet::new));
+    if (!stored.isEmpty()) {
+      bookRepository.deleteAllByIsbnInBatch(stored);
+    }
+
+    List<BookBatchResult> results = new ArrayList<>(isbns.size());
+    for (String isbn : isbns) {
+      results.add(stored.remove(isbn)
+        ? BookBatchResult.of(isbn, BookBatchResult.Outcome.DELETED)
+        : BookBatchResult.of(isbn, BookBatchResult.Outcome.NOT_FOUND, "Book with ISBN " + isbn + " was not Found"));
+    }
+    return results;
+  }
+
+  private static void validateChunk(int size) {
+    if (size > MAX_BATCH_CHUNK) {
+      throw new IllegalArgumentException("At most " + MAX_BATCH_CHUNK + " books per batch chunk: " + size);
+    }
+  }
 }
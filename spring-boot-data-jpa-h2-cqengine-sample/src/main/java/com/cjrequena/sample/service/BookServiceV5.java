@@ -3,43 +3,63 @@ package com.cjrequena.sample.service;
 import com.cjrequena.sample.domain.exception.BookNotFoundException;
 import com.cjrequena.sample.domain.mapper.BookMapper;
 import com.cjrequena.sample.domain.model.Book;
+import com.cjrequena.sample.persistence.entity.BookEntity;
 import com.cjrequena.sample.persistence.repository.BookRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.Cacheable;
-import org.springframework.cache.annotation.Caching;
+import org.springframework.cache.caffeine.CaffeineCache;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * <p>
+ * Spring Cache backed book service. Books are cached one entry per ISBN, and the lists ({@code 'ALL'} and
+ * {@code 'author_' + author}) are cached as ISBN lists resolved against those entries. Updates only replace the
+ * book entry. A create or a delete is applied to the {@code 'ALL'} list in place, and the author lists are evicted when
+ * their membership changes (create, delete, author change). Rebuilding a list reads ISBNs only, and then loads just the
+ * books missing from the cache.
+ * </p>
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class BookServiceV5 {
 
   private static final String CACHE_PREFIX = "books";
+  private static final String ALL_KEY = "ALL";
+  private static final String AUTHOR_KEY_PREFIX = "author_";
 
   private final BookRepository bookRepository;
   private final BookMapper bookMapper;
+  private final CacheManager cacheManager;
+  private final BookMissLoader bookMissLoader;
 
   // --------------------------
   // CREATE
   // --------------------------
 
   /**
-   * New book: save to DB and evict all relevant caches.
+   * New book: save to DB, cache it, add it to the list of every book and evict the author list it joins.
    */
-  @Caching(evict = {
-    @CacheEvict(value = CACHE_PREFIX, key = "'ALL'"),
-    @CacheEvict(value = CACHE_PREFIX, key = "#book.isbn"),
-    @CacheEvict(value = CACHE_PREFIX, key = "'author_' + #book.author")
-  })
   public void create(Book book) {
     log.info("Creating book {}", book.getIsbn());
     bookRepository.save(bookMapper.toEntity(book));
+    Cache cache = cache();
+    cache.put(book.getIsbn(), book);
+    changeAllIsbns(cache, book.getIsbn(), true);
+    bookMissLoader.forget(book.getIsbn());
+    cache.evict(authorKey(book.getAuthor()));
   }
 
 
@@ -47,10 +67,11 @@ public class BookServiceV5 {
   // RETRIEVE ALL BOOKS
   // --------------------------
 
-  @Cacheable(value = CACHE_PREFIX, key = "'ALL'")
   public List<Book> retrieve() {
-    log.info("Cache MISS → fetching ALL books from DB");
-    return bookMapper.toDomain(bookRepository.findAll());
+    return resolve(cache().get(ALL_KEY, () -> {
+      log.info("Cache MISS → fetching ALL ISBNs from DB");
+      return bookRepository.findIsbnsBy().stream().map(BookRepository.IsbnView::getIsbn).collect(Collectors.toCollection(ArrayList::new));
+    }));
   }
 
 
@@ -58,13 +79,13 @@ public class BookServiceV5 {
   // RETRIEVE BY ISBN
   // --------------------------
 
-  @Cacheable(value = CACHE_PREFIX, key = "#isbn")
+  /**
+   * {@code sync} makes concurrent misses for the same ISBN wait for a single load instead of each querying the DB.
+   */
+  @Cacheable(value = CACHE_PREFIX, key = "#isbn", sync = true)
   public Book retrieveById(String isbn) throws BookNotFoundException {
     log.info("Cache MISS → fetching book {} from DB", isbn);
-    return bookRepository
-      .findById(isbn)
-      .map(bookMapper::toDomain)
-      .orElseThrow(() -> new BookNotFoundException("Book not found with ISBN: " + isbn));
+    return bookMissLoader.load(isbn);
   }
 
 
@@ -72,14 +93,20 @@ public class BookServiceV5 {
   // RETRIEVE BY AUTHOR
   // --------------------------
 
-  @Cacheable(value = CACHE_PREFIX, key = "'author_' + #author")
   public List<Book> retrieveByAuthor(String author) {
-    log.info("Cache MISS → fetching books by author {} from DB", author);
-
-    return bookRepository
-      .findByAuthor(author)
-      .map(bookMapper::toDomain)
-      .orElseGet(Collections::emptyList);
+    Cache cache = cache();
+    List<Book> loaded = new ArrayList<>();
+    List<String> isbns = cache.get(authorKey(author), () -> {
+      log.info("Cache MISS → fetching books by author {} from DB", author);
+      loaded.addAll(bookRepository
+        .findByAuthor(author)
+        .map(bookMapper::toDomain)
+        .orElseGet(Collections::emptyList));
+      return loaded.stream().map(Book::getIsbn).collect(Collectors.toCollection(ArrayList::new));
+    });
+    // Filled outside the loader, a cache may not be written to while it computes an entry
+    loaded.forEach(book -> cache.putIfAbsent(book.getIsbn(), book));
+    return resolve(isbns);
   }
 
 
@@ -88,25 +115,21 @@ public class BookServiceV5 {
   // --------------------------
 
   /**
-   * Update DB and update cache entry using @CachePut.
-   * Also evicts ALL + author caches.
+   * Update DB and replace the cached book. The lists hold ISBNs, so they stay valid unless the author changed.
    */
-  @Caching(
-    put = {
-      @CachePut(value = CACHE_PREFIX, key = "#book.isbn", unless = "#book == null")
-    },
-    evict = {
-      @CacheEvict(value = CACHE_PREFIX, key = "'ALL'"),
-      @CacheEvict(value = CACHE_PREFIX, key = "'author_' + #book.author")
-    }
-  )
   public Book update(Book book) throws BookNotFoundException {
-    if (!bookRepository.existsById(book.getIsbn())) {
-      throw new BookNotFoundException("Book with ISBN " + book.getIsbn() + " was not found");
-    }
+    BookEntity previous = bookRepository.findById(book.getIsbn())
+      .orElseThrow(() -> new BookNotFoundException("Book with ISBN " + book.getIsbn() + " was not found"));
+    String previousAuthor = previous.getAuthor();
 
     bookRepository.save(bookMapper.toEntity(book));
-    return book; // @CachePut stores this in cache
+    Cache cache = cache();
+    cache.put(book.getIsbn(), book);
+    if (!Objects.equals(previousAuthor, book.getAuthor())) {
+      cache.evict(authorKey(previousAuthor));
+      cache.evict(authorKey(book.getAuthor()));
+    }
+    return book;
   }
 
 
@@ -114,19 +137,88 @@ public class BookServiceV5 {
   // DELETE
   // --------------------------
 
-  @Caching(evict = {
-    @CacheEvict(value = CACHE_PREFIX, key = "#isbn"),
-    @CacheEvict(value = CACHE_PREFIX, key = "'ALL'"),
-    @CacheEvict(value = CACHE_PREFIX, allEntries = false) // optional: catch author caches
-  })
   public boolean deleteByIsbn(String isbn) throws BookNotFoundException {
-
-    if (!bookRepository.existsById(isbn)) {
-      throw new BookNotFoundException("Book with ISBN " + isbn + " was not found");
-    }
+    BookEntity previous = bookRepository.findById(isbn)
+      .orElseThrow(() -> new BookNotFoundException("Book with ISBN " + isbn + " was not found"));
 
     bookRepository.deleteById(isbn);
+    Cache cache = cache();
+    cache.evict(isbn);
+    changeAllIsbns(cache, isbn, false);
+    cache.evict(authorKey(previous.getAuthor()));
     return true;
   }
 
+  /**
+   * Resolves an ISBN list against the book entries, looked up in one batch, loading the missing books in a single
+   * query. ISBNs that are no longer in the database are skipped.
+   */
+  private List<Book> resolve(List<String> isbns) {
+    Cache cache = cache();
+    Map<Object, Object> cached = cache instanceof CaffeineCache caffeineCache
+      ? caffeineCache.getNativeCache().getAllPresent(isbns)
+      : getAll(cache, isbns);
+    Map<String, Book> books = new LinkedHashMap<>();
+    List<String> misses = new ArrayList<>();
+    for (String isbn : isbns) {
+      Book book = cached.get(isbn) instanceof Book present ? present : null;
+      if (book != null) {
+        books.put(isbn, book);
+      } else {
+        books.put(isbn, null);
+        misses.add(isbn);
+      }
+    }
+    if (!misses.isEmpty()) {
+      log.info("Cache MISS → fetching {} of {} listed books from DB", misses.size(), isbns.size());
+      bookMapper.toDomain(bookRepository.findAllById(misses)).forEach(book -> {
+        cache.putIfAbsent(book.getIsbn(), book);
+        books.put(book.getIsbn(), book);
+      });
+    }
+    return books.values().stream().filter(Objects::nonNull).collect(Collectors.toCollection(ArrayList::new));
+  }
+
+  /**
+   * Adds an ISBN to, or removes it from, the cached list of every book, if it is cached. The list is replaced by a
+   * changed copy in one atomic computation, which waits for a concurrent load of the list to complete, so the change
+   * is not lost to a load that read the DB before it. A cache without atomic computations evicts the list instead.
+   */
+  private static void changeAllIsbns(Cache cache, String isbn, boolean listed) {
+    if (!(cache instanceof CaffeineCache caffeineCache)) {
+      cache.evict(ALL_KEY);
+      return;
+    }
+    caffeineCache.getNativeCache().asMap().computeIfPresent(ALL_KEY, (key, value) -> {
+      if (!(value instanceof List<?> isbns)) {
+        return null;
+      }
+      List<Object> changed = new ArrayList<>(isbns);
+      changed.remove(isbn);
+      if (listed) {
+        changed.add(isbn);
+      }
+      return changed;
+    });
+  }
+
+  private static Map<Object, Object> getAll(Cache cache, List<String> isbns) {
+    Map<Object, Object> cached = new HashMap<>();
+    isbns.forEach(isbn -> {
+      Book book = cache.get(isbn, Book.class);
+      if (book != null) {
+        cached.put(isbn, book);
+      }
+    });
+    return cached;
+  }
+
+  private Cache cache() {
+    return Objects.requireNonNull(cacheManager.getCache(CACHE_PREFIX), "No cache named " + CACHE_PREFIX);
+  }
+
+  private static String authorKey(String author) {
+    return AUTHOR_KEY_PREFIX + author;
+  }
+
 }
@@ -0,0 +1,158 @@
+package com.cjrequena.sample.persistence.repository.cache;
+
+import com.cjrequena.sample.configuration.CQEngineConfigurationProperties;
+import com.cjrequena.sample.domain.model.Book;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("BookCacheCQEngineRepository Unit Tests")
+class BookCacheCQEngineRepositoryTest {
+
+  private BookCacheCQEngineRepository repository;
+
+  @AfterEach
+  void tearDown() throws IOException {
+    if (repository != null) {
+      repository.close();
+    }
+  }
+
+  @Test
+  @DisplayName("Readers see the previous collection until the reload is published")
+  void readersSeePreviousCollectionUntilPublish() {
+    repository = new BookCacheCQEngineRepository(new CQEngineConfigurationProperties());
+    repository.load(List.of(book("1", "Dune"), book("2", "Emma")));
+
+    try (CacheRepository.Loading<Book> loading = repository.startLoading()) {
+      loading.addAll(List.of(book("3", "Persuasion")));
+
+      assertThat(isbns(repository.retrieve())).containsExactlyInAnyOrder("1", "2");
+
+      loading.publish();
+    }
+
+    assertThat(isbns(repository.retrieve())).containsExactly("3");
+  }
+
+  @Test
+  @DisplayName("Writes made during a reload survive the swap")
+  void writesDuringReloadSurviveSwap() {
+    repository = new BookCacheCQEngineRepository(new CQEngineConfigurationProperties());
+    repository.load(List.of(book("1", "Dune")));
+
+    try (CacheRepository.Loading<Book> loading = repository.startLoading()) {
+      loading.addAll(List.of(book("1", "Dune"), book("2", "Emma")));
+      repository.add(book("3", "Persuasion"));
+      repository.removeById("2");
+
+      assertThat(isbns(repository.retrieve())).containsExactlyInAnyOrder("1", "3");
+
+      loading.publish();
+    }
+
+    assertThat(isbns(repository.retrieve())).containsExactlyInAnyOrder("1", "3");
+  }
+
+  @Test
+  @DisplayName("Readers never see a partially loaded collection")
+  void readersNeverSeePartialCollection() {
+    repository = new BookCacheCQEngineRepository(new CQEngineConfigurationProperties());
+    repository.load(books(0, 100));
+    Set<Integer> sizesSeen = ConcurrentHashMap.newKeySet();
+    AtomicBoolean loading = new AtomicBoolean(true);
+    CompletableFuture<Void> reader = CompletableFuture.runAsync(() -> {
+      while (loading.get()) {
+        sizesSeen.add(repository.retrieve().size());
+      }
+    });
+
+    try (CacheRepository.Loading<Book> reload = repository.startLoading()) {
+      for (int from = 0; from < 1_000; from += 10) {
+        reload.addAll(books(from, from + 10));
+      }
+      reload.publish();
+    } finally {
+      loading.set(false);
+    }
+    reader.join();
+
+    assertThat(sizesSeen).isSubsetOf(100, 1_000);
+    assertThat(repository.retrieve()).hasSize(1_000);
+  }
+
+  @Test
+  @DisplayName("A reload started while another one is in progress is refused")
+  void concurrentReloadIsRefused() {
+    repository = new BookCacheCQEngineRepository(new CQEngineConfigurationProperties());
+
+    try (CacheRepository.Loading<Book> loading = repository.startLoading()) {
+      assertThatThrownBy(repository::startLoading).isInstanceOf(IllegalStateException.class);
+    }
+
+    repository.load(List.of(book("1", "Dune")));
+    assertThat(isbns(repository.retrieve())).containsExactly("1");
+  }
+
+  @Test
+  @DisplayName("A reload closed without publishing leaves the cache as it was")
+  void unpublishedReloadIsDiscarded() {
+    repository = new BookCacheCQEngineRepository(new CQEngineConfigurationProperties());
+    repository.load(List.of(book("1", "Dune")));
+
+    try (CacheRepository.Loading<Book> loading = repository.startLoading()) {
+      loading.addAll(List.of(book("2", "Emma")));
+    }
+    repository.add(book("3", "Persuasion"));
+
+    assertThat(isbns(repository.retrieve())).containsExactlyInAnyOrder("1", "3");
+  }
+
+  @Test
+  @DisplayName("In DISK mode a reload is built in the other file and the live one is kept until it is retired")
+  void diskReloadIsBuiltInOtherFile(@TempDir Path dir) {
+    CQEngineConfigurationProperties properties = new CQEngineConfigurationProperties();
+    properties.setPersistence(CQEngineConfigurationProperties.Persistence.DISK);
+    properties.getDisk().setFile(dir.resolve("books.db").toString());
+    repository = new BookCacheCQEngineRepository(properties);
+    repository.add(book("1", "Dune"));
+
+    try (CacheRepository.Loading<Book> loading = repository.startLoading()) {
+      loading.addAll(List.of(book("2", "Emma")));
+      repository.add(book("3", "Persuasion"));
+
+      assertThat(isbns(repository.retrieve())).containsExactlyInAnyOrder("1", "3");
+
+      loading.publish();
+    }
+
+    assertThat(isbns(repository.retrieve())).containsExactlyInAnyOrder("2", "3");
+    assertThat(dir.resolve("books.db.a")).exists();
+    assertThat(dir.resolve("books.db.b")).exists();
+  }
+
+  private static Book book(String isbn, String title) {
+    return new Book(isbn, title, "Author " + isbn);
+  }
+
+  private static List<Book> books(int from, int to) {
+    return IntStream.range(from, to).mapToObj(i -> book(String.format("%05d", i), "Title " + i)).toList();
+  }
+
+  private static List<String> isbns(List<Book> books) {
+    return books.stream().map(Book::getIsbn).toList();
+  }
+}
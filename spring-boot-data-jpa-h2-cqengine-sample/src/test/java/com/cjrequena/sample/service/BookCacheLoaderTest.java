@@ -0,0 +1,95 @@
+package com.cjrequena.sample.service;
+
+import com.cjrequena.sample.configuration.CQEngineConfigurationProperties;
+import com.cjrequena.sample.configuration.CacheWarmUpConfigurationProperties;
+import com.cjrequena.sample.domain.mapper.BookMapper;
+import com.cjrequena.sample.persistence.entity.BookEntity;
+import com.cjrequena.sample.persistence.repository.BookRepository;
+import com.cjrequena.sample.persistence.repository.cache.BookCacheCQEngineRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mapstruct.factory.Mappers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("BookCacheLoader Unit Tests")
+class BookCacheLoaderTest {
+
+  @Mock
+  private BookRepository bookRepository;
+
+  private BookCacheCQEngineRepository cacheRepository;
+
+  private BookCacheLoader loader;
+
+  @BeforeEach
+  void setUp() {
+    CacheWarmUpConfigurationProperties properties = new CacheWarmUpConfigurationProperties();
+    properties.setChunkSize(2);
+    properties.setParallelism(2);
+    loader = new BookCacheLoader(bookRepository, Mappers.getMapper(BookMapper.class), properties, new SimpleMeterRegistry());
+    cacheRepository = new BookCacheCQEngineRepository(new CQEngineConfigurationProperties());
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    cacheRepository.close();
+  }
+
+  @Test
+  @DisplayName("Every book is loaded in keyset-paged chunks and published at once")
+  void loadsEveryChunk() {
+    when(bookRepository.findByIsbnGreaterThanOrderByIsbnAsc(eq(""), any(Limit.class)))
+      .thenReturn(List.of(entity("1"), entity("2")));
+    when(bookRepository.findByIsbnGreaterThanOrderByIsbnAsc(eq("2"), any(Limit.class)))
+      .thenReturn(List.of(entity("3")));
+
+    long loaded = loader.load(cacheRepository);
+
+    assertThat(loaded).isEqualTo(3);
+    assertThat(cacheRepository.retrieve()).hasSize(3);
+  }
+
+  @Test
+  @DisplayName("Concurrent recoveries of an empty cache share a single load")
+  void concurrentRecoveriesShareOneLoad() throws Exception {
+    CountDownLatch reading = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    when(bookRepository.findByIsbnGreaterThanOrderByIsbnAsc(eq(""), any(Limit.class))).thenAnswer(invocation -> {
+      reading.countDown();
+      assertThat(release.await(5, TimeUnit.SECONDS)).isTrue();
+      return List.of(entity("1"));
+    });
+
+    CompletableFuture<Long> first = CompletableFuture.supplyAsync(() -> loader.loadIfEmpty(cacheRepository));
+    assertThat(reading.await(5, TimeUnit.SECONDS)).isTrue();
+    CompletableFuture<Long> second = CompletableFuture.supplyAsync(() -> loader.loadIfEmpty(cacheRepository));
+    release.countDown();
+
+    assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+    assertThat(second.get(5, TimeUnit.SECONDS)).isZero();
+    verify(bookRepository, times(1)).findByIsbnGreaterThanOrderByIsbnAsc(any(), any(Limit.class));
+    assertThat(cacheRepository.retrieve()).hasSize(1);
+  }
+
+  private static BookEntity entity(String isbn) {
+    return new BookEntity(isbn, "Title " + isbn, "Author " + isbn);
+  }
+}
@@ -0,0 +1,60 @@
+package com.cjrequena.sample.configuration;
+
+import com.cjrequena.sample.shared.cache.TieredCacheManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Spring cache configuration: a {@link TieredCacheManager} with a Caffeine L1 per replica in front of a shared
+ * {@link RedisCacheManager} L2, and the listener container that keeps the L1s consistent across replicas.
+ *
+ * @author cjrequena
+ */
+@Slf4j
+@Configuration
+@RequiredArgsConstructor(onConstructor = @__(@Autowired))
+public class CacheConfiguration {
+
+  private final TieredCacheConfigurationProperties tieredCacheConfigurationProperties;
+
+  @Bean
+  public TieredCacheManager cacheManager(RedisConnectionFactory connectionFactory, StringRedisTemplate stringRedisTemplate) {
+    Map<String, RedisCacheConfiguration> l2Configurations = new HashMap<>();
+    tieredCacheConfigurationProperties.getCaches().forEach((name, spec) -> l2Configurations.put(name, l2Configuration(spec)));
+
+    RedisCacheManager l2CacheManager = RedisCacheManager.builder(connectionFactory)
+      .cacheDefaults(l2Configuration(tieredCacheConfigurationProperties.getDefaults()))
+      .withInitialCacheConfigurations(l2Configurations)
+      .build();
+    l2CacheManager.afterPropertiesSet();
+
+    log.info("Configuring tiered cache manager, L1 invalidations on channel {}",
+      tieredCacheConfigurationProperties.getInvalidationChannel());
+    return new TieredCacheManager(l2CacheManager, tieredCacheConfigurationProperties, stringRedisTemplate);
+  }
+
+  @Bean
+  public RedisMessageListenerContainer cacheInvalidationListenerContainer(RedisConnectionFactory connectionFactory,
+    TieredCacheManager cacheManager) {
+    RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+    container.setConnectionFactory(connectionFactory);
+    container.addMessageListener(cacheManager, new ChannelTopic(tieredCacheConfigurationProperties.getInvalidationChannel()));
+    return container;
+  }
+
+  private RedisCacheConfiguration l2Configuration(TieredCacheConfigurationProperties.Spec spec) {
+    return RedisCacheConfiguration.defaultCacheConfig().entryTtl(spec.getL2Ttl());
+  }
+}
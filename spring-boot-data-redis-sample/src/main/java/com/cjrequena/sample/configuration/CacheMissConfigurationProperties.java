@@ -0,0 +1,26 @@
+package com.cjrequena.sample.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * <p>
+ * Book cache miss handling configuration.
+ * </p>
+ *
+ * @author cjrequena
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "cache.miss")
+public class CacheMissConfigurationProperties {
+
+  /**
+   * How long a book id found missing in the database is answered as not found without querying it again. The marker
+   * is kept in Redis and cleared when the book is created.
+   */
+  private Duration notFoundTtl = Duration.ofSeconds(30);
+}
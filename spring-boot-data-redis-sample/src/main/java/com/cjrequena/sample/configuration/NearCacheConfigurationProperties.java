@@ -0,0 +1,30 @@
+package com.cjrequena.sample.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * <p>
+ * Near cache configuration: a local copy of the hot books of the Redis hash cache, kept coherent by the invalidations
+ * Redis pushes through client-side caching.
+ * </p>
+ *
+ * @author cjrequena
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "cache.near")
+public class NearCacheConfigurationProperties {
+
+  /**
+   * Whether to serve the book cache reads from a near cache. Requires a standalone or sentinel Redis 6 or later
+   * speaking RESP3, otherwise the reads go to Redis as without it.
+   */
+  private boolean enabled = false;
+
+  /**
+   * Maximum number of books in the near cache.
+   */
+  private long maximumSize = 10_000;
+}
@@ -1,11 +1,23 @@
 package com.cjrequena.sample.configuration;
 
+import com.cjrequena.sample.domain.model.Book;
+import com.cjrequena.sample.persistence.serializer.BookBinaryRedisSerializer;
+import com.cjrequena.sample.shared.redis.RedisCommandsPool;
+import com.cjrequena.sample.shared.redis.RedisScriptLibrary;
+import com.cjrequena.sample.shared.redis.TrackingNearCache;
+import io.lettuce.core.AbstractRedisClient;
 import io.lettuce.core.RedisClient;
+import io.lettuce.core.api.StatefulConnection;
 import io.lettuce.core.api.StatefulRedisConnection;
-import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.reactive.RedisClusterReactiveCommands;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
@@ -15,18 +27,24 @@ import org.springframework.data.redis.connection.RedisSentinelConfiguration;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.repository.configuration.EnableRedisRepositories;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.util.StringUtils;
 
 import java.time.Duration;
+import java.util.function.Supplier;
 
 /**
  * Redis configuration for standalone, sentinel, and cluster modes.
- * Provides properly configured RedisTemplate, StringRedisTemplate, and RedisCommands beans.
+ * Provides properly configured RedisTemplate, StringRedisTemplate, a RedisScriptLibrary and a RedisCommandsPool, and their
+ * non-blocking counterparts ReactiveRedisTemplate and RedisClusterReactiveCommands, and the opt-in near cache of the
+ * book hash cache.
  *
  * <p>Supports three deployment modes:
  * <ul>
@@ -242,7 +260,7 @@ public class RedisConfiguration {
 
     // Configure serializers
     StringRedisSerializer stringSerializer = new StringRedisSerializer();
-    GenericJackson2JsonRedisSerializer jsonSerializer = new GenericJackson2JsonRedisSerializer();
+    RedisSerializer<Object> valueSerializer = valueSerializer(redisConfigurationProperties.getSerialization().getCodec());
 
     template.setConnectionFactory(connectionFactory);
 
@@ -251,8 +269,8 @@ public class RedisConfiguration {
     template.setHashKeySerializer(stringSerializer);
 
     // Value serializers
-    template.setValueSerializer(jsonSerializer);
-    template.setHashValueSerializer(jsonSerializer);
+    template.setValueSerializer(valueSerializer);
+    template.setHashValueSerializer(valueSerializer);
 
     // Enable transaction support
     template.setEnableTransactionSupport(false);
@@ -260,10 +278,54 @@ public class RedisConfiguration {
     // Initialize the template
     template.afterPropertiesSet();
 
-    log.debug("RedisTemplate configured with JSON serialization");
+    log.debug("RedisTemplate configured with {} serialization", redisConfigurationProperties.getSerialization().getCodec());
     return template;
   }
 
+  /**
+   * Creates a ReactiveRedisTemplate with the same serialization as the {@link #redisTemplate}, so the reactive and
+   * the blocking repositories read each other's values. It shares the Lettuce connection factory, whose native
+   * connection multiplexes the commands of every caller without holding a thread while they are in flight.
+   *
+   * @param connectionFactory the Lettuce connection factory
+   * @return configured ReactiveRedisTemplate
+   */
+  @Bean
+  public ReactiveRedisTemplate<String, Object> reactiveRedisTemplate(LettuceConnectionFactory connectionFactory) {
+    log.info("Configuring ReactiveRedisTemplate");
+
+    StringRedisSerializer stringSerializer = new StringRedisSerializer();
+    RedisSerializer<Object> valueSerializer = valueSerializer(redisConfigurationProperties.getSerialization().getCodec());
+
+    RedisSerializationContext<String, Object> serializationContext = RedisSerializationContext
+      .<String, Object>newSerializationContext(stringSerializer)
+      .key(stringSerializer)
+      .hashKey(stringSerializer)
+      .value(valueSerializer)
+      .hashValue(valueSerializer)
+      .build();
+
+    log.debug("ReactiveRedisTemplate configured with {} serialization", redisConfigurationProperties.getSerialization().getCodec());
+    return new ReactiveRedisTemplate<>(connectionFactory, serializationContext);
+  }
+
+  /**
+   * Creates the value serializer of a codec. Every codec reads JSON values, so a template can switch from JSON to
+   * BINARY without flushing the values it already wrote.
+   *
+   * @param codec the codec to write values with
+   * @return the value serializer
+   */
+  public RedisSerializer<Object> valueSerializer(RedisConfigurationProperties.Serialization.Codec codec) {
+    GenericJackson2JsonRedisSerializer jsonSerializer = new GenericJackson2JsonRedisSerializer();
+    return switch (codec) {
+      case JSON -> jsonSerializer;
+      case BINARY -> new BookBinaryRedisSerializer(jsonSerializer,
+        redisConfigurationProperties.getSerialization().isCompression(),
+        redisConfigurationProperties.getSerialization().getCompressionThreshold());
+    };
+  }
+
   /**
    * Creates a StringRedisTemplate for string-only operations.
    * More efficient than RedisTemplate when working with strings.
@@ -294,44 +356,114 @@ public class RedisConfiguration {
   }
 
   /**
-   * Creates a RedisCommands bean for low-level Lettuce operations.
-   * Required for RediSearch and other advanced Redis modules.
+   * Creates the library of the Lua scripts of the repositories. The scripts run with EVALSHA on the
+   * {@link #stringRedisTemplate}, their arguments being serialized by the caller.
+   *
+   * @param stringRedisTemplate the template to run the scripts on
+   * @return the script library, loaded into the script cache at startup
+   */
+  @Bean
+  public RedisScriptLibrary redisScriptLibrary(StringRedisTemplate stringRedisTemplate) {
+    log.info("Configuring RedisScriptLibrary");
+    return new RedisScriptLibrary(stringRedisTemplate);
+  }
+
+  /**
+   * Creates the pool of connections for the blocking RediSearch and other low-level Lettuce operations.
    *
-   * <p>IMPORTANT: This creates a StatefulRedisConnection that should be reused.
-   * The connection is thread-safe and can handle concurrent operations.
+   * <p>Each operation borrows its own connection, so concurrent searches run in parallel instead of queueing on a
+   * single shared connection, and a slow search does not delay the others. Standalone, sentinel and cluster
+   * clients are supported.
    *
    * @param connectionFactory the Lettuce connection factory
-   * @return RedisCommands instance for sync operations
+   * @param meterRegistry     the registry of the pool metrics
+   * @return the RediSearch commands pool
    */
-  @Bean
-  public RedisCommands<String, String> redisCommands(LettuceConnectionFactory connectionFactory) {
-    log.info("Configuring RedisCommands for RediSearch operations");
+  @Bean(destroyMethod = "close")
+  public RedisCommandsPool redisSearchCommandsPool(LettuceConnectionFactory connectionFactory, MeterRegistry meterRegistry) {
+    log.info("Configuring RedisCommandsPool for RediSearch operations");
+
+    RedisConfigurationProperties.Pool poolProperties = redisConfigurationProperties.getSearch().getPool();
+    GenericObjectPoolConfig<StatefulConnection<String, String>> config = new GenericObjectPoolConfig<>();
+    int maxActive = poolProperties.getMaxActive() != null
+      ? poolProperties.getMaxActive()
+      : Runtime.getRuntime().availableProcessors() * 2;
+    config.setMaxTotal(maxActive);
+    config.setMaxIdle(poolProperties.getMaxIdle() != null ? poolProperties.getMaxIdle() : maxActive);
+    if (poolProperties.getMinIdle() != null) {
+      config.setMinIdle(poolProperties.getMinIdle());
+    }
+    if (poolProperties.getMaxWait() != null) {
+      config.setMaxWait(Duration.ofMillis(poolProperties.getMaxWait()));
+    }
+    // A connection dropped by the server is detected on borrow and replaced
+    config.setTestOnBorrow(true);
+    config.setJmxEnabled(false);
+
+    Supplier<StatefulConnection<String, String>> connectionSupplier = connectionSupplier(connectionFactory);
+    log.debug("RediSearch pool max active: {}, max idle: {}, min idle: {}, max wait: {}",
+      config.getMaxTotal(), config.getMaxIdle(), config.getMinIdle(), config.getMaxWaitDuration());
+    return new RedisCommandsPool("search", connectionSupplier, config, meterRegistry);
+  }
 
-    try {
-      // Get the native Lettuce client
-      RedisClient client = (RedisClient) connectionFactory.getNativeClient();
+  /**
+   * Creates a reactive commands bean, the non-blocking counterpart of {@link #redisSearchCommandsPool}, for
+   * RediSearch operations on the reactive path. A single connection is enough, reactive commands are pipelined on
+   * it without holding a thread.
+   *
+   * @param connectionFactory the Lettuce connection factory
+   * @return RedisClusterReactiveCommands instance for reactive operations, backed by a cluster connection in cluster mode
+   */
+  @Bean
+  public RedisClusterReactiveCommands<String, String> redisReactiveCommands(LettuceConnectionFactory connectionFactory) {
+    log.info("Configuring RedisReactiveCommands for RediSearch operations");
 
-      if (client == null) {
-        throw new IllegalStateException("Unable to get native Redis client from connection factory");
-      }
+    StatefulConnection<String, String> connection = connectionSupplier(connectionFactory).get();
+    RedisClusterReactiveCommands<String, String> commands = connection instanceof StatefulRedisClusterConnection<String, String> clusterConnection
+      ? clusterConnection.reactive()
+      : ((StatefulRedisConnection<String, String>) connection).reactive();
 
-      // Create a stateful connection
-      StatefulRedisConnection<String, String> connection = client.connect();
+    log.info("RedisReactiveCommands configured successfully");
+    return commands;
+  }
 
-      // Return sync commands
-      RedisCommands<String, String> commands = connection.sync();
+  /**
+   * Creates the near cache of the book hash cache, when {@code cache.near.enabled} is set. It reads on its own
+   * tracked connection of the connection factory client, and decodes the books with the {@link #redisTemplate}
+   * serialization.
+   *
+   * @param connectionFactory                the Lettuce connection factory
+   * @param nearCacheConfigurationProperties the near cache size
+   * @param meterRegistry                    the registry of the near cache metrics
+   * @return the near cache, disabled if the server or the deployment mode does not support client tracking
+   */
+  @Bean(destroyMethod = "close")
+  @ConditionalOnProperty(prefix = "cache.near", name = "enabled", havingValue = "true")
+  @SuppressWarnings("unchecked")
+  public TrackingNearCache<Book> bookNearCache(LettuceConnectionFactory connectionFactory,
+    NearCacheConfigurationProperties nearCacheConfigurationProperties, MeterRegistry meterRegistry) {
+    log.info("Configuring the near cache of the book hash cache");
+
+    RedisSerializer<Book> bookSerializer = (RedisSerializer<Book>) (RedisSerializer<?>) valueSerializer(
+      redisConfigurationProperties.getSerialization().getCodec());
+    return new TrackingNearCache<>("books", connectionFactory.getNativeClient(), bookSerializer,
+      nearCacheConfigurationProperties.getMaximumSize(), meterRegistry);
+  }
 
-      log.info("RedisCommands configured successfully");
-      return commands;
+  /**
+   * Opens native connections on the client of the connection factory, a {@link RedisClusterClient} in cluster
+   * mode and a {@link RedisClient} otherwise.
+   */
+  private Supplier<StatefulConnection<String, String>> connectionSupplier(LettuceConnectionFactory connectionFactory) {
+    AbstractRedisClient client = connectionFactory.getNativeClient();
 
-    } catch (ClassCastException e) {
-      log.error("Failed to cast native client to RedisClient. " +
-        "This configuration only supports standalone Redis or Redis with Lettuce client.", e);
-      throw new IllegalStateException("Unsupported Redis client type", e);
-    } catch (Exception e) {
-      log.error("Failed to create RedisCommands bean", e);
-      throw new IllegalStateException("Failed to initialize Redis commands", e);
+    if (client instanceof RedisClusterClient clusterClient) {
+      return clusterClient::connect;
+    }
+    if (client instanceof RedisClient redisClient) {
+      return redisClient::connect;
     }
+    throw new IllegalStateException("Unable to get native Redis client from connection factory");
   }
 
   /**
@@ -4,6 +4,7 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.util.List;
 
 /**
@@ -61,6 +62,16 @@ public class RedisConfigurationProperties {
 
   private Lettuce lettuce;
 
+  private Serialization serialization = new Serialization();
+
+  private Search search = new Search();
+
+  private Hash hash = new Hash();
+
+  private Stream stream = new Stream();
+
+  private WriteBehind writeBehind = new WriteBehind();
+
   @Data
   public static class Pool {
     private Integer maxActive;
@@ -123,4 +134,187 @@ public class RedisConfigurationProperties {
 
   }
 
+  /**
+   *
+   */
+  @Data
+  public static class Search {
+
+    /**
+     * Pool of the connections running the blocking RediSearch commands. Unset values fall back to the pool
+     * defaults: two connections per core, and a borrow that waits indefinitely.
+     */
+    private Pool pool = new Pool();
+
+    /**
+     * How the index is prepared at startup.
+     */
+    private Startup startup = Startup.INCREMENTAL;
+
+    /**
+     * Number of books written per pipelined batch when loading the index.
+     */
+    private int batchSize = 1000;
+
+    /**
+     * Maximum time to wait for the replies of a pipelined batch.
+     */
+    private Duration batchTimeout = Duration.ofSeconds(30);
+
+    public enum Startup {
+      /**
+       * Drop the index and its documents, recreate it and load every book. Required after a schema change.
+       */
+      FULL,
+      /**
+       * Keep the existing index and only write the books that changed since the last load, and remove the deleted
+       * ones. The index is created if it does not exist.
+       */
+      INCREMENTAL
+    }
+  }
+
+  /**
+   *
+   */
+  @Data
+  public static class Hash {
+
+    /**
+     * Number of Redis hashes the books of a hash repository are spread across. Changing it takes a reload of the
+     * cache, the shards above a lowered number are not cleared. With the near cache on, a write evicts the near cached
+     * books of its shard, about 1/shards of them, so more shards keep a better near cache hit rate under writes.
+     */
+    private int shards = 16;
+  }
+
+  /**
+   *
+   */
+  @Data
+  public static class Stream {
+
+    /**
+     * Whether this node processes the book events of the stream. Events are published either way.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Consumer group of the processors. Each event is handled once per group.
+     */
+    private String group = "books-processors";
+
+    /**
+     * Prefix of the names of the consumers of this node, the host name if unset. Keep it stable across restarts.
+     */
+    private String consumerName;
+
+    /**
+     * Number of consumers reading the stream in parallel on this node.
+     */
+    private int consumers = 2;
+
+    /**
+     * Maximum number of events read by a consumer at once.
+     */
+    private int batchSize = 100;
+
+    /**
+     * Maximum time a read blocks waiting for new events.
+     */
+    private Duration pollTimeout = Duration.ofSeconds(2);
+
+    /**
+     * Approximate number of events the stream is trimmed to on publish.
+     */
+    private long maxLength = 100_000;
+
+    /**
+     * How long an event stays pending, unacknowledged, before another consumer reclaims it.
+     */
+    private Duration reclaimIdle = Duration.ofMinutes(1);
+
+    /**
+     * How often the pending events are checked for reclaim.
+     */
+    private Duration reclaimInterval = Duration.ofSeconds(30);
+
+    /**
+     * Number of deliveries after which an event that keeps failing is logged and dropped.
+     */
+    private int maxDeliveries = 5;
+  }
+
+  /**
+   *
+   */
+  @Data
+  public static class WriteBehind {
+
+    /**
+     * Whether book writes land in the cache and a Redis queue, and are flushed to the database in batches, instead of
+     * being written to the database on every call.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Maximum number of queued writes flushed to the database in one transaction.
+     */
+    private int batchSize = 500;
+
+    /**
+     * How often the queue is flushed. A flush goes on with the next batch as long as the previous one was full.
+     */
+    private Duration flushInterval = Duration.ofSeconds(1);
+
+    /**
+     * Attempts after which a write that keeps failing is moved to the dead letter stream.
+     */
+    private int maxAttempts = 5;
+
+    /**
+     * How long the node flushing the queue holds it without renewing. Only one node flushes at a time, so the writes
+     * reach the database in order.
+     */
+    private Duration leaseTtl = Duration.ofSeconds(30);
+
+    /**
+     * Maximum time spent flushing the remaining writes on shutdown, and before loading the cache at startup.
+     */
+    private Duration drainTimeout = Duration.ofSeconds(30);
+  }
+
+  /**
+   *
+   */
+  @Data
+  public static class Serialization {
+
+    /**
+     * Codec of the values written by the redisTemplate. Values written with another codec stay readable.
+     */
+    private Codec codec = Codec.BINARY;
+
+    /**
+     * Whether to LZ4 compress the binary values above the compression threshold.
+     */
+    private boolean compression = true;
+
+    /**
+     * Minimum size, in bytes, of a binary value to compress it.
+     */
+    private int compressionThreshold = 1024;
+
+    public enum Codec {
+      /**
+       * JSON with embedded type metadata.
+       */
+      JSON,
+      /**
+       * Compact binary for books, JSON for any other value.
+       */
+      BINARY
+    }
+  }
+
 }
@@ -0,0 +1,39 @@
+package com.cjrequena.sample.configuration;
+
+import com.cjrequena.sample.persistence.repository.BookRedisRepository;
+import com.cjrequena.sample.service.BookEventHandler;
+import com.cjrequena.sample.shared.redis.StreamConsumerGroupProcessor;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+
+/**
+ * Redis stream configuration: the consumer group processor fanning the book events out to the search index and the
+ * Spring cache, with {@code spring.redis.stream.consumers} consumers on every node.
+ *
+ * @author cjrequena
+ */
+@Slf4j
+@Configuration
+@RequiredArgsConstructor(onConstructor = @__(@Autowired))
+public class StreamConfiguration {
+
+  private final RedisConfigurationProperties redisConfigurationProperties;
+
+  @Bean
+  @ConditionalOnProperty(prefix = "spring.redis.stream", name = "enabled", havingValue = "true", matchIfMissing = true)
+  public StreamConsumerGroupProcessor bookEventStreamProcessor(LettuceConnectionFactory connectionFactory,
+    RedisTemplate<String, Object> redisTemplate, BookEventHandler bookEventHandler, MeterRegistry meterRegistry) {
+    log.info("Configuring the book event stream processor, group {}", redisConfigurationProperties.getStream().getGroup());
+    return new StreamConsumerGroupProcessor(BookRedisRepository.BOOK_STREAM_KEY, redisConfigurationProperties.getStream(),
+      connectionFactory, redisTemplate,
+      record -> bookEventHandler.handle(BookRedisRepository.toBookEvent(record.getValue())),
+      meterRegistry);
+  }
+}
@@ -0,0 +1,64 @@
+package com.cjrequena.sample.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Two-level cache configuration: a local Caffeine L1 in front of the shared Redis L2.
+ * </p>
+ *
+ * @author cjrequena
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "cache.tiered")
+public class TieredCacheConfigurationProperties {
+
+  /**
+   * Redis pub/sub channel used to evict the L1 of the other replicas after a write.
+   */
+  private String invalidationChannel = "books:cache:invalidation";
+
+  /**
+   * Settings of the caches not listed in {@code caches}.
+   */
+  private Spec defaults = new Spec();
+
+  /**
+   * Per-cache settings, keyed by cache name.
+   */
+  private Map<String, Spec> caches = new LinkedHashMap<>();
+
+  public Spec getSpec(String cacheName) {
+    return caches.getOrDefault(cacheName, defaults);
+  }
+
+  /**
+   *
+   */
+  @Data
+  public static class Spec {
+
+    /**
+     * Time to live of the L1 entries. Bounds how long a replica can serve a value whose invalidation message it
+     * missed, so keep it short.
+     */
+    private Duration l1Ttl = Duration.ofMinutes(1);
+
+    /**
+     * Maximum number of entries in the L1.
+     */
+    private long l1MaximumSize = 10_000;
+
+    /**
+     * Time to live of the L2 entries. Zero means no expiration.
+     */
+    private Duration l2Ttl = Duration.ofMinutes(30);
+  }
+}
@@ -1,10 +1,15 @@
 package com.cjrequena.sample.controller;
 
+import com.cjrequena.sample.controller.dto.BookBatchResultDTO;
 import com.cjrequena.sample.controller.dto.BookDTO;
+import com.cjrequena.sample.controller.dto.BookSearchPageDTO;
 import com.cjrequena.sample.controller.exception.NotFoundException;
 import com.cjrequena.sample.domain.exception.BookNotFoundException;
 import com.cjrequena.sample.domain.mapper.BookMapper;
 import com.cjrequena.sample.domain.model.Book;
+import com.cjrequena.sample.domain.model.BookBatchResult;
+import com.cjrequena.sample.domain.model.BookSearchQuery;
+import com.cjrequena.sample.service.BookBatchService;
 import com.cjrequena.sample.service.BookServiceV1;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
@@ -12,12 +17,16 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import static com.cjrequena.sample.shared.common.Constant.VND_SAMPLE_SERVICE_V1;
 import static org.springframework.http.HttpHeaders.CACHE_CONTROL;
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON_VALUE;
 
 @RestController
 @RequestMapping(value = BookController.ENDPOINT, headers = {BookController.ACCEPT_VERSION})
@@ -28,10 +37,12 @@ public class BookController {
   public static final String ACCEPT_VERSION = "Accept-Version=" + VND_SAMPLE_SERVICE_V1;
 
   private final BookServiceV1 bookServiceV1;
+  private final BookBatchService bookBatchService;
   private final BookMapper bookMapper;
 
-  public BookController(BookServiceV1 bookServiceV1, BookMapper bookMapper) {
+  public BookController(BookServiceV1 bookServiceV1, BookBatchService bookBatchService, BookMapper bookMapper) {
     this.bookServiceV1 = bookServiceV1;
+    this.bookBatchService = bookBatchService;
     this.bookMapper = bookMapper;
   }
 
@@ -82,8 +93,115 @@ public class BookController {
     }
   }
 
+  /**
+   * Creates or replaces books sent as a JSON array or as newline-delimited JSON. The books are decoded as they arrive
+   * and written in chunks; the outcome of each book is replied in order, streamed when newline-delimited JSON is
+   * accepted.
+   */
+  @PostMapping(
+    path = "/batch",
+    consumes = {APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE},
+    produces = {APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE}
+  )
+  public ResponseEntity<Flux<BookBatchResultDTO>> createAll(@RequestBody Flux<BookDTO> dtos) {
+    return batchResponse(this.bookBatchService.saveAll(dtos.map(this.bookMapper::toDomain)));
+  }
+
+  /**
+   * Deletes books sent like in {@link #createAll}, only their ids are read, e.g. {@code [{"id": "978-1-123456001"}]}.
+   */
+  @DeleteMapping(
+    path = "/batch",
+    consumes = {APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE},
+    produces = {APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE}
+  )
+  public ResponseEntity<Flux<BookBatchResultDTO>> deleteAll(@RequestBody Flux<BookDTO> dtos) {
+    return batchResponse(this.bookBatchService.deleteAll(dtos.map(this.bookMapper::toDomain)));
+  }
+
+  /**
+   * Searches the books page by page. The full-text query, title and author criteria are all optional and must all
+   * match; {@code fields} lists the fields to return besides the id, e.g. {@code title,author}.
+   */
   @GetMapping("/search")
-  public List<Book> autocomplete(@RequestParam("q") String query) {
-    return bookServiceV1.search(query);
+  public BookSearchPageDTO search(
+    @RequestParam(value = "q", required = false) String query,
+    @RequestParam(value = "title", required = false) String title,
+    @RequestParam(value = "author", required = false) String author,
+    @RequestParam(value = "sort", required = false) String sort,
+    @RequestParam(value = "order", defaultValue = "asc") String order,
+    @RequestParam(value = "offset", defaultValue = "0") int offset,
+    @RequestParam(value = "limit", defaultValue = "" + BookSearchQuery.DEFAULT_LIMIT) int limit,
+    @RequestParam(value = "fields", required = false) List<String> fields,
+    @RequestParam(value = "highlight", defaultValue = "false") boolean highlight) {
+    if (!"asc".equalsIgnoreCase(order) && !"desc".equalsIgnoreCase(order)) {
+      throw new IllegalArgumentException("Invalid sort order: '" + order + "'. Accepted values are: [asc, desc].");
+    }
+    final BookSearchQuery bookSearchQuery = BookSearchQuery.builder()
+      .text(query)
+      .title(title)
+      .author(author)
+      .sortBy(sort != null ? toField(sort) : null)
+      .descending("desc".equalsIgnoreCase(order))
+      .offset(offset)
+      .limit(limit)
+      .fields(fields != null ? fields.stream().map(this::toField).collect(Collectors.toSet()) : null)
+      .highlight(highlight)
+      .build();
+    return this.bookMapper.toDTO(bookServiceV1.search(bookSearchQuery));
+  }
+
+  /**
+   * Suggests the titles starting with a prefix, for autocompletion.
+   */
+  @GetMapping("/suggestions")
+  public List<String> suggest(
+    @RequestParam("prefix") String prefix,
+    @RequestParam(value = "max", defaultValue = "5") int max,
+    @RequestParam(value = "fuzzy", defaultValue = "false") boolean fuzzy) {
+    return bookServiceV1.suggest(prefix, max, fuzzy);
+  }
+
+  /**
+   * Marks books as available or unavailable, e.g. {@code {"978-1-123456001": true, "978-1-123456002": false}}.
+   */
+  @PutMapping("/availability")
+  public ResponseEntity<Void> updateAvailability(@RequestBody Map<String, Boolean> availability) {
+    this.bookServiceV1.updateAvailability(availability);
+    //Headers
+    HttpHeaders responseHeaders = new HttpHeaders();
+    responseHeaders.set(CACHE_CONTROL, "no store, private, max-age=0");
+    return new ResponseEntity<>(responseHeaders, HttpStatus.NO_CONTENT);
+  }
+
+  /**
+   * Checks the availability of the books with the given ids, e.g. {@code ids=978-1-123456001,978-1-123456002}.
+   */
+  @GetMapping("/availability")
+  public Map<String, Boolean> retrieveAvailability(@RequestParam("ids") List<String> ids) {
+    return bookServiceV1.retrieveAvailability(ids);
+  }
+
+  /**
+   * Counts the books marked as available.
+   */
+  @GetMapping("/availability/count")
+  public long countAvailable() {
+    return bookServiceV1.countAvailable();
+  }
+
+  private ResponseEntity<Flux<BookBatchResultDTO>> batchResponse(Flux<BookBatchResult> results) {
+    //Headers
+    HttpHeaders responseHeaders = new HttpHeaders();
+    responseHeaders.set(CACHE_CONTROL, "no store, private, max-age=0");
+    return new ResponseEntity<>(results.map(this.bookMapper::toDTO), responseHeaders, HttpStatus.OK);
+  }
+
+  private BookSearchQuery.Field toField(String field) {
+    try {
+      return BookSearchQuery.Field.valueOf(field.trim().toUpperCase());
+    } catch (IllegalArgumentException ex) {
+      throw new IllegalArgumentException("Invalid book field: '" + field + "'. Accepted values are: [id, title, author].");
+    }
   }
 }
@@ -0,0 +1,90 @@
+package com.cjrequena.sample.controller;
+
+import com.cjrequena.sample.controller.dto.BookDTO;
+import com.cjrequena.sample.controller.exception.NotFoundException;
+import com.cjrequena.sample.domain.exception.BookNotFoundException;
+import com.cjrequena.sample.domain.mapper.BookMapper;
+import com.cjrequena.sample.domain.model.Book;
+import com.cjrequena.sample.service.BookReactiveService;
+import jakarta.validation.Valid;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import static com.cjrequena.sample.shared.common.Constant.VND_SAMPLE_SERVICE_V2;
+import static org.springframework.http.HttpHeaders.CACHE_CONTROL;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+
+/**
+ * <p>
+ * Reactive version of the {@link BookController} API, selected with {@code Accept-Version: }
+ * {@value com.cjrequena.sample.shared.common.Constant#VND_SAMPLE_SERVICE_V2}. Same resources and payloads, served
+ * by the {@link BookReactiveService} without blocking the event loop.
+ * </p>
+ *
+ * @author cjrequena
+ */
+@RestController
+@RequestMapping(value = BookReactiveController.ENDPOINT, headers = {BookReactiveController.ACCEPT_VERSION})
+@Slf4j
+public class BookReactiveController {
+
+  public static final String ENDPOINT = "/api/books";
+  public static final String ACCEPT_VERSION = "Accept-Version=" + VND_SAMPLE_SERVICE_V2;
+
+  private final BookReactiveService bookReactiveService;
+  private final BookMapper bookMapper;
+
+  public BookReactiveController(BookReactiveService bookReactiveService, BookMapper bookMapper) {
+    this.bookReactiveService = bookReactiveService;
+    this.bookMapper = bookMapper;
+  }
+
+  @PostMapping
+  public Mono<Void> create(@RequestBody BookDTO dto) {
+    final Book book = this.bookMapper.toDomain(dto);
+    return bookReactiveService.create(book);
+  }
+
+  @GetMapping
+  public Flux<BookDTO> retrieve() {
+    return bookReactiveService.retrieve().map(this.bookMapper::toDTO);
+  }
+
+  @GetMapping("/{id}")
+  public Mono<BookDTO> retrieveById(@PathVariable String id) {
+    return bookReactiveService.retrieveById(id)
+      .map(this.bookMapper::toDTO)
+      .onErrorMap(BookNotFoundException.class, ex -> new NotFoundException(ex.getMessage()));
+  }
+
+  @PutMapping(
+    path = "/{id}",
+    produces = {APPLICATION_JSON_VALUE}
+  )
+  public Mono<ResponseEntity<Void>> update(@PathVariable(value = "id") String id, @Valid @RequestBody BookDTO dto) {
+    final Book book = this.bookMapper.toDomain(dto);
+    book.setId(id);
+    //Headers
+    HttpHeaders responseHeaders = new HttpHeaders();
+    responseHeaders.set(CACHE_CONTROL, "no store, private, max-age=0");
+    return this.bookReactiveService.update(book)
+      .then(Mono.just(new ResponseEntity<Void>(responseHeaders, HttpStatus.NO_CONTENT)))
+      .onErrorMap(BookNotFoundException.class, ex -> new NotFoundException(ex.getMessage()));
+  }
+
+  @DeleteMapping("/{id}")
+  public Mono<Boolean> deleteBook(@PathVariable String id) {
+    return bookReactiveService.deleteById(id)
+      .onErrorMap(BookNotFoundException.class, ex -> new NotFoundException(ex.getMessage()));
+  }
+
+  @GetMapping("/search")
+  public Flux<Book> autocomplete(@RequestParam("q") String query) {
+    return bookReactiveService.search(query);
+  }
+}
@@ -0,0 +1,17 @@
+package com.cjrequena.sample.controller.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BookSearchPageDTO {
+  private long total;
+  private int offset;
+  private int limit;
+  private List<BookDTO> books;
+}
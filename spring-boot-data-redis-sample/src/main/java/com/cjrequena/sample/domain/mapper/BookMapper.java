@@ -1,7 +1,11 @@
 package com.cjrequena.sample.domain.mapper;
 
+import com.cjrequena.sample.controller.dto.BookBatchResultDTO;
 import com.cjrequena.sample.controller.dto.BookDTO;
+import com.cjrequena.sample.controller.dto.BookSearchPageDTO;
 import com.cjrequena.sample.domain.model.Book;
+import com.cjrequena.sample.domain.model.BookBatchResult;
+import com.cjrequena.sample.domain.model.BookSearchPage;
 import com.cjrequena.sample.persistence.entity.BookEntity;
 import org.mapstruct.Mapper;
 import org.mapstruct.NullValueCheckStrategy;
@@ -18,6 +22,10 @@ public interface BookMapper {
 
   List<BookDTO> toDTO(List<Book> domains);
 
+  BookSearchPageDTO toDTO(BookSearchPage page);
+
+  BookBatchResultDTO toDTO(BookBatchResult result);
+
   Book toDomain(BookDTO dto);
 
   Book toDomain(BookEntity entity);
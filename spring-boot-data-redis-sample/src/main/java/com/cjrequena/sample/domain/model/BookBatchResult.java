@@ -0,0 +1,40 @@
+package com.cjrequena.sample.domain.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * <p>
+ * Outcome of one book of a batch write, reported in the order the books were sent.
+ * </p>
+ *
+ * @author cjrequena
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookBatchResult {
+  private String id;
+  private Outcome outcome;
+  private String message;                                               // Why the book was not written, if it was not
+
+  public enum Outcome {
+    CREATED,
+    UPDATED,
+    DELETED,
+    NOT_FOUND,
+    INVALID,
+    FAILED
+  }
+
+  public static BookBatchResult of(String id, Outcome outcome) {
+    return new BookBatchResult(id, outcome, null);
+  }
+
+  public static BookBatchResult of(String id, Outcome outcome, String message) {
+    return new BookBatchResult(id, outcome, message);
+  }
+}
@@ -0,0 +1,31 @@
+package com.cjrequena.sample.domain.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * <p>
+ * A change of a book, published to the book event stream for the processors of the consumer group.
+ * </p>
+ *
+ * @author cjrequena
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookEvent {
+  private Type type;
+  private String id;
+  private String title;
+  private String author;
+  private String previousAuthor; // Set by an update that changed the author
+
+  public enum Type {
+    CREATED,
+    UPDATED,
+    DELETED
+  }
+}
@@ -0,0 +1,26 @@
+package com.cjrequena.sample.domain.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * <p>
+ * A page of books found by a {@link BookSearchQuery}, with the total number of matches to page through them.
+ * </p>
+ *
+ * @author cjrequena
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookSearchPage {
+  private long total;
+  private int offset;
+  private int limit;
+  private List<Book> books;
+}
@@ -0,0 +1,81 @@
+package com.cjrequena.sample.domain.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Set;
+
+/**
+ * <p>
+ * A page of a book search. The free text, title and author criteria must all match; with none of them every book
+ * matches.
+ * </p>
+ *
+ * @author cjrequena
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookSearchQuery {
+
+  public static final int DEFAULT_LIMIT = 10;
+  public static final int MAX_LIMIT = 100;
+  public static final int MAX_SUGGESTIONS = 20;
+
+  /**
+   * Full-text query, in RediSearch query syntax.
+   */
+  private String text;
+
+  /**
+   * Words the title must contain.
+   */
+  private String title;
+
+  /**
+   * Words the author must contain.
+   */
+  private String author;
+
+  /**
+   * Field to sort by, by relevance if not set.
+   */
+  private Field sortBy;
+
+  private boolean descending;
+
+  @Builder.Default
+  private int offset = 0;
+
+  @Builder.Default
+  private int limit = DEFAULT_LIMIT;
+
+  /**
+   * Fields to return, all if not set. The others are left null in the books found.
+   */
+  private Set<Field> fields;
+
+  /**
+   * Whether to wrap the matched words of the returned title and author in {@code <b>} tags.
+   */
+  private boolean highlight;
+
+  public enum Field {
+    ID("id"),
+    TITLE("title"),
+    AUTHOR("author");
+
+    private final String name;
+
+    Field(String name) {
+      this.name = name;
+    }
+
+    public String getName() {
+      return name;
+    }
+  }
+}
@@ -0,0 +1,155 @@
+package com.cjrequena.sample.persistence.repository;
+
+import com.cjrequena.sample.shared.redis.RedisScriptLibrary;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * <p>
+ * The Ids of every book, cached in Redis as a sorted set, so a book created or deleted is added to or removed from the
+ * cached Ids in one atomic call instead of the whole list being read again from the database.
+ * </p>
+ *
+ * <p>Every change of the Ids bumps a version. A list read from the database is only cached if the version did not move
+ * since before the read, so a change committed meanwhile, and applied while the Ids were not cached yet, is not lost.
+ * The cached Ids expire, which bounds how long an Id can be listed wrongly after a create and a delete of the same book
+ * applied out of order.</p>
+ *
+ * <p>Both keys share the {@code {ids}} hash tag, so in a cluster the scripts touching them run on one node.</p>
+ *
+ * @author cjrequena
+ */
+@Repository
+public class BookIdsRedisRepository {
+
+  private static final String KEY_PREFIX = "books:{ids}:";
+  private static final String IDS_KEY = KEY_PREFIX + "all";         // Ids of every book, all scored 0 so ordered by Id
+  private static final String VERSION_KEY = KEY_PREFIX + "version"; // Bumped by every change of the Ids
+
+  /* =========================================================
+   * Lua Scripts
+   * ========================================================= */
+
+  /**
+   * Replies 'cached' followed by the cached Ids, or an empty reply if they are not cached.
+   */
+  private static final String LUA_FIND_ALL = """
+        if redis.call('EXISTS', KEYS[1]) == 0 then
+            return {}
+        end
+        local reply = redis.call('ZRANGE', KEYS[1], 0, -1)
+        table.insert(reply, 1, 'cached')
+        return reply
+    """;
+
+  /**
+   * Caches the Ids given after the version and the time to live, unless they are cached already or the version moved.
+   * Replies 1 if they were cached.
+   */
+  private static final String LUA_CACHE_ALL = """
+        if (redis.call('GET', KEYS[2]) or '0') ~= ARGV[1] or redis.call('EXISTS', KEYS[1]) == 1 then
+            return 0
+        end
+        for i = 3, #ARGV do
+            redis.call('ZADD', KEYS[1], 0, ARGV[i])
+        end
+        if #ARGV >= 3 then
+            redis.call('PEXPIRE', KEYS[1], ARGV[2])
+        end
+        return 1
+    """;
+
+  /**
+   * Bumps the version and, if the Ids are cached, adds the Id given when ARGV[1] is 1, or removes it otherwise.
+   */
+  private static final String LUA_CHANGE = """
+        redis.call('INCR', KEYS[2])
+        if redis.call('EXISTS', KEYS[1]) == 1 then
+            if ARGV[1] == '1' then
+                redis.call('ZADD', KEYS[1], 0, ARGV[2])
+            else
+                redis.call('ZREM', KEYS[1], ARGV[2])
+            end
+        end
+        return 1
+    """;
+
+  /**
+   * Replies the version, 0 if the Ids never changed.
+   */
+  private static final String LUA_VERSION = """
+        return tonumber(redis.call('GET', KEYS[1]) or '0')
+    """;
+
+  private final RedisScriptLibrary scripts;
+  private final RedisScript<List> findAllScript;
+  private final RedisScript<Long> cacheAllScript;
+  private final RedisScript<Long> changeScript;
+  private final RedisScript<Long> versionScript;
+
+  public BookIdsRedisRepository(RedisScriptLibrary scripts) {
+    this.scripts = scripts;
+    this.findAllScript = scripts.register("books-ids-find-all", LUA_FIND_ALL, List.class);
+    this.cacheAllScript = scripts.register("books-ids-cache-all", LUA_CACHE_ALL, Long.class);
+    this.changeScript = scripts.register("books-ids-change", LUA_CHANGE, Long.class);
+    this.versionScript = scripts.register("books-ids-version", LUA_VERSION, Long.class);
+  }
+
+  /**
+   * Reads the cached Ids.
+   *
+   * @return the Ids ordered by Id, empty if they are not cached
+   */
+  public Optional<List<String>> findAll() {
+    List<?> reply = scripts.execute(findAllScript, List.of(IDS_KEY));
+    if (reply == null || reply.isEmpty()) {
+      return Optional.empty();
+    }
+    return Optional.of(reply.subList(1, reply.size()).stream().map(String::valueOf).toList());
+  }
+
+  /**
+   * Reads the version of the Ids, to pass to {@link #cacheAll} once they are read from the database.
+   */
+  public long version() {
+    Long version = scripts.execute(versionScript, List.of(VERSION_KEY));
+    return version != null ? version : 0;
+  }
+
+  /**
+   * Caches the Ids read from the database, unless they changed since the version was read.
+   *
+   * @param version the version read before the Ids
+   * @param ids     the Ids of every book
+   * @param ttl     how long the Ids stay cached
+   * @return true if the Ids were cached
+   */
+  public boolean cacheAll(long version, Collection<String> ids, Duration ttl) {
+    List<Object> args = new ArrayList<>(ids.size() + 2);
+    args.add(version);
+    args.add(ttl.toMillis());
+    args.addAll(ids);
+    Long cached = scripts.execute(cacheAllScript, List.of(IDS_KEY, VERSION_KEY), args.toArray());
+    return cached != null && cached == 1;
+  }
+
+  /**
+   * Adds a created book to the cached Ids, if they are cached.
+   */
+  public void add(String id) {
+    scripts.execute(changeScript, List.of(IDS_KEY, VERSION_KEY), 1, id);
+  }
+
+  /**
+   * Removes a deleted book from the cached Ids, if they are cached.
+   */
+  public void remove(String id) {
+    scripts.execute(changeScript, List.of(IDS_KEY, VERSION_KEY), 0, id);
+  }
+}
@@ -0,0 +1,42 @@
+package com.cjrequena.sample.persistence.repository;
+
+import com.cjrequena.sample.persistence.entity.BookEntity;
+
+import java.util.Collection;
+
+/**
+ * Batched writes of {@link BookJpaRepository}.
+ *
+ * @author cjrequena
+ */
+public interface BookJpaBatchRepository {
+
+  /**
+   * Inserts or updates books with JDBC batching. {@code saveAll} merges each book, which selects it first when it is not
+   * managed yet; here the existing books are read with one query, then the new ones are persisted and the others
+   * merged into their managed copies, so the writes go out in {@code hibernate.jdbc.batch_size} batches. Joins the
+   * transaction of the caller, if any.
+   *
+   * @param books the books, one per Id
+   */
+  void upsertAll(Collection<BookEntity> books);
+
+  /**
+   * Moves the fence of a write-behind queue to the lease token of the node flushing it, unless a node holding a later
+   * lease already committed. Meant to be called first in the transaction of the flushed writes: the fence row stays
+   * locked until the commit, so two flushes commit one after the other, in the order of their leases.
+   *
+   * @param name  the name of the queue
+   * @param token the lease token of the caller
+   * @return false if a later lease committed, the caller lost its lease and must roll back
+   */
+  boolean advanceFence(String name, long token);
+
+  /**
+   * Reads the fence of a write-behind queue, the token of the last lease whose flush committed.
+   *
+   * @param name the name of the queue
+   * @return the token, 0 if no flush committed yet
+   */
+  long currentFence(String name);
+}
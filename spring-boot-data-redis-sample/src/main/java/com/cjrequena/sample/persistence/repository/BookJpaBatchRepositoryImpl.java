@@ -0,0 +1,61 @@
+package com.cjrequena.sample.persistence.repository;
+
+import com.cjrequena.sample.persistence.entity.BookEntity;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * @author cjrequena
+ */
+class BookJpaBatchRepositoryImpl implements BookJpaBatchRepository {
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @Override
+  @Transactional
+  public void upsertAll(Collection<BookEntity> books) {
+    if (books.isEmpty()) {
+      return;
+    }
+
+    Map<String, BookEntity> existing = entityManager
+      .createQuery("select b from BookEntity b where b.id in :ids", BookEntity.class)
+      .setParameter("ids", books.stream().map(BookEntity::getId).toList())
+      .getResultStream()
+      .collect(Collectors.toMap(BookEntity::getId, Function.identity()));
+
+    for (BookEntity book : books) {
+      if (existing.containsKey(book.getId())) {
+        entityManager.merge(book);
+      } else {
+        entityManager.persist(book);
+      }
+    }
+  }
+
+  @Override
+  public boolean advanceFence(String name, long token) {
+    return entityManager
+      .createNativeQuery("update write_behind_fences set token = :token where name = :name and token <= :token")
+      .setParameter("token", token)
+      .setParameter("name", name)
+      .executeUpdate() == 1;
+  }
+
+  @Override
+  public long currentFence(String name) {
+    List<?> tokens = entityManager
+      .createNativeQuery("select token from write_behind_fences where name = :name")
+      .setParameter("name", name)
+      .getResultList();
+    return tokens.isEmpty() ? 0 : ((Number) tokens.get(0)).longValue();
+  }
+}
@@ -8,7 +8,17 @@ import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface BookJpaRepository extends JpaRepository<BookEntity, String> {
+public interface BookJpaRepository extends JpaRepository<BookEntity, String>, BookJpaBatchRepository {
 
   Optional<List<BookEntity>> findByAuthor(String author);
+
+  /**
+   * Ids of every book, read without loading the other columns.
+   */
+  List<IdView> findIdsBy();
+
+  interface IdView {
+
+    String getId();
+  }
 }
@@ -0,0 +1,117 @@
+package com.cjrequena.sample.persistence.repository;
+
+import com.cjrequena.sample.domain.model.Book;
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.cluster.api.reactive.RedisClusterReactiveCommands;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.output.ArrayOutput;
+import io.lettuce.core.protocol.CommandArgs;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Objects;
+
+import static com.cjrequena.sample.persistence.repository.BookRedisSearchDocuments.INDEX_NAME;
+import static com.cjrequena.sample.persistence.repository.BookRedisSearchDocuments.LUA_DELETE;
+import static com.cjrequena.sample.persistence.repository.BookRedisSearchDocuments.LUA_SAVE;
+import static com.cjrequena.sample.persistence.repository.BookRedisSearchDocuments.SEARCH_LIMIT;
+import static com.cjrequena.sample.persistence.repository.BookRedisSearchDocuments.cmd;
+import static com.cjrequena.sample.persistence.repository.BookRedisSearchDocuments.key;
+import static com.cjrequena.sample.persistence.repository.BookRedisSearchDocuments.saveArgs;
+import static com.cjrequena.sample.persistence.repository.BookRedisSearchDocuments.scriptKeys;
+
+/**
+ * <p>
+ * Non-blocking counterpart of {@link BookRedisSearchRepository} on the Lettuce reactive commands. It works on the
+ * same index and documents; the index itself is created by {@link BookRedisSearchRepository} at startup.
+ * </p>
+ *
+ * @author cjrequena
+ */
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class BookReactiveRedisSearchRepository {
+
+  private final RedisClusterReactiveCommands<String, String> redis;
+
+  /* =========================================================
+   * Write
+   * ========================================================= */
+
+  public Mono<Void> save(Book book) {
+    validateBook(book);
+    return script(LUA_SAVE, scriptKeys(book.getId()), saveArgs(book))
+      .doOnSuccess(changed -> log.debug("Saved book to search index: {}", book.getId()))
+      .then();
+  }
+
+  /* =========================================================
+   * Read
+   * ========================================================= */
+
+  public Mono<Book> retrieve(String id) {
+    return redis.hgetall(key(id))
+      .collectMap(KeyValue::getKey, KeyValue::getValue)
+      .filter(hash -> !hash.isEmpty())
+      .map(BookRedisSearchDocuments::fromHash);
+  }
+
+  /* =========================================================
+   * Search
+   * ========================================================= */
+
+  public Flux<Book> search(String query) {
+    if (query == null || query.trim().isEmpty()) {
+      return Flux.empty();
+    }
+
+    return redis.<List<Object>>dispatch(
+        cmd("FT.SEARCH"),
+        new ArrayOutput<>(StringCodec.UTF8),
+        new CommandArgs<>(StringCodec.UTF8)
+          .add(INDEX_NAME)
+          .add(query)
+          .add("LIMIT").add("0").add(String.valueOf(SEARCH_LIMIT)) // Return the top SEARCH_LIMIT results
+      )
+      .next()
+      .flatMapIterable(BookRedisSearchDocuments::fromSearchResult)
+      .onErrorResume(BookRedisSearchDocuments::isMissingIndex, e -> {
+        log.warn("Full-text search on missing index '{}' for query: {}", INDEX_NAME, query);
+        return Flux.empty();
+      });
+  }
+
+  /* =========================================================
+   * Delete
+   * ========================================================= */
+
+  public Mono<Boolean> delete(String id) {
+    return script(LUA_DELETE, scriptKeys(id), id).map(deleted -> deleted > 0);
+  }
+
+  /* =========================================================
+   * Helpers
+   * ========================================================= */
+
+  /**
+   * Runs one of the scripts shared with {@link BookRedisSearchRepository} by SHA1, sending its source if the server
+   * does not know it.
+   */
+  private Mono<Long> script(String source, String[] keys, String... args) {
+    return redis.<Long>evalsha(redis.digest(source), ScriptOutputType.INTEGER, keys, args)
+      .onErrorResume(RedisNoScriptException.class, e -> redis.eval(source, ScriptOutputType.INTEGER, keys, args))
+      .next();
+  }
+
+  private void validateBook(Book book) {
+    Objects.requireNonNull(book);
+    Objects.requireNonNull(book.getId());
+  }
+}
@@ -1,7 +1,9 @@
 package com.cjrequena.sample.persistence.repository;
 
+import com.cjrequena.sample.configuration.RedisConfigurationProperties;
 import com.cjrequena.sample.persistence.entity.BookEntity;
-import lombok.RequiredArgsConstructor;
+import com.cjrequena.sample.shared.redis.HashShards;
+import com.cjrequena.sample.shared.redis.ShardedHashOperations;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Repository;
@@ -10,19 +12,33 @@ import java.util.Collections;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+/**
+ * <p>
+ * Book entities spread across {@code spring.redis.hash.shards} hashes, see {@link HashShards}. With as many shards as
+ * the book cache, an entity and its cached book share a slot.
+ * </p>
+ *
+ * @author cjrequena
+ */
 @Slf4j
 @Repository
-@RequiredArgsConstructor
 public class BookRedisHashOpsRepository {
 
-  private final RedisTemplate<String, Object> redisTemplate;
+  private final ShardedHashOperations<BookEntity> hashOps;
 
   /* =========================================================
    * Key helpers & constants
    * ========================================================= */
-  private static final String KEY_PREFIX = "books:hash:";
+  private static final String KEY_PREFIX = "books:entity-hash";        // Prefix of the shards
+
+  public BookRedisHashOpsRepository(RedisTemplate<String, Object> redisTemplate,
+    RedisConfigurationProperties redisConfigurationProperties) {
+    this.hashOps = new ShardedHashOperations<>(redisTemplate,
+      new HashShards(KEY_PREFIX, redisConfigurationProperties.getHash().getShards()));
+  }
 
   /* =========================================================
    * HASH Operations
@@ -32,7 +48,7 @@ public class BookRedisHashOpsRepository {
     validateBook(book);
 
     try {
-      redisTemplate.opsForHash().put(KEY_PREFIX, book.getId(), book);
+      hashOps.put(book.getId(), book);
       log.debug("Saved book to hash with Id: {}", book.getId());
     } catch (Exception e) {
       log.error("Failed to save book to hash with Id: {}", book.getId(), e);
@@ -44,8 +60,7 @@ public class BookRedisHashOpsRepository {
     Objects.requireNonNull(id, "Id cannot be null");
 
     try {
-      BookEntity book = (BookEntity) redisTemplate.opsForHash().get(KEY_PREFIX, id);
-      return Optional.ofNullable(book);
+      return Optional.ofNullable(hashOps.get(id));
     } catch (Exception e) {
       log.error("Failed to retrieve book from hash with Id: {}", id, e);
       return Optional.empty();
@@ -54,13 +69,8 @@ public class BookRedisHashOpsRepository {
 
   public Map<String, BookEntity> retrieve() {
     try {
-      Map<Object, Object> raw = redisTemplate.opsForHash().entries(KEY_PREFIX);
-
-      return raw.entrySet().stream()
-        .collect(Collectors.toMap(
-          entry -> (String) entry.getKey(),
-          entry -> (BookEntity) entry.getValue()
-        ));
+      return hashOps.values().stream()
+        .collect(Collectors.toMap(BookEntity::getId, Function.identity(), (existing, replacement) -> replacement));
     } catch (Exception e) {
       log.error("Failed to retrieve all books from hash", e);
       return Collections.emptyMap();
@@ -71,7 +81,7 @@ public class BookRedisHashOpsRepository {
     Objects.requireNonNull(id, "Id cannot be null");
 
     try {
-      Long deleted = redisTemplate.opsForHash().delete(KEY_PREFIX, id);
+      Long deleted = hashOps.delete(id);
       log.debug("Deleted book from hash with Id: {} - Count: {}", id, deleted);
       return deleted;
     } catch (Exception e) {
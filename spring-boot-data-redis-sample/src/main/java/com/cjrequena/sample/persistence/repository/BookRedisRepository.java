@@ -1,20 +1,32 @@
 package com.cjrequena.sample.persistence.repository;
 
+import com.cjrequena.sample.configuration.RedisConfigurationProperties;
+import com.cjrequena.sample.domain.model.BookEvent;
 import com.cjrequena.sample.persistence.entity.BookEntity;
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisConnectionStateListener;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.geo.*;
 import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.connection.RedisStreamCommands;
 import org.springframework.data.redis.connection.stream.MapRecord;
 import org.springframework.data.redis.connection.stream.RecordId;
 import org.springframework.data.redis.connection.stream.StreamOffset;
 import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.*;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Repository;
 
+import java.net.SocketAddress;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -46,16 +58,27 @@ import java.util.stream.Collectors;
 public class BookRedisRepository {
 
   private final RedisTemplate<String, Object> redisTemplate;
+  private final RedisConfigurationProperties redisConfigurationProperties;
   private static final String KEY_PREFIX = "books:";
   private static final String BOOK_HASH_KEY = KEY_PREFIX + "hash";           // Primary storage
   private static final String BOOK_LIST_KEY = KEY_PREFIX + "list";           // Recent books
   private static final String BOOK_SET_KEY = KEY_PREFIX + "set";             // Favorites
   private static final String BOOK_ZSET_KEY = KEY_PREFIX + "zset";           // Rankings
-  private static final String BOOK_BITMAP_KEY = KEY_PREFIX + "bitmap";       // Availability
+  private static final String BOOK_BITMAP_KEY = KEY_PREFIX + "{availability}:bitmap";                // Availability, one bit per offset
+  private static final String BOOK_BITMAP_OFFSETS_KEY = KEY_PREFIX + "{availability}:offsets";        // Id -> bitmap offset
+  private static final String BOOK_BITMAP_OFFSET_SEQUENCE_KEY = KEY_PREFIX + "{availability}:offset-seq"; // Last allocated offset + 1
+  private static final String BOOK_BITMAP_EPOCH_KEY = KEY_PREFIX + "{availability}:epoch";            // Lifetime of the offsets
+  private static final String LEGACY_BOOK_BITMAP_KEY = KEY_PREFIX + "bitmap"; // Former bitmap, offsets were Id hash codes
+  private static final String LEGACY_BOOK_BITMAP_MIGRATION_KEY = "{" + LEGACY_BOOK_BITMAP_KEY + "}:migrating"; // Same slot
+  private static final int LEGACY_BITMAP_MIGRATION_CHUNK = 1_000;
   private static final String BOOK_HLL_KEY = KEY_PREFIX + "hll";             // View counting
   private static final String BOOK_GEO_KEY = KEY_PREFIX + "geo";             // Locations
-  private static final String BOOK_STREAM_KEY = KEY_PREFIX + "stream";       // Event log
+  public static final String BOOK_STREAM_KEY = KEY_PREFIX + "stream";        // Event log
   private static final String BOOK_PUBSUB_CHANNEL = KEY_PREFIX + "pubsub";   // Notifications
+  private static final String BOOK_NOT_FOUND_KEY_PREFIX = KEY_PREFIX + "not-found:"; // Ids found missing in the database
+  private final Map<String, Long> bitmapOffsets = new ConcurrentHashMap<>(); // Allocated offsets never change, within an epoch
+  private volatile String bitmapEpoch;                                        // Epoch of the cached offsets
+  private volatile boolean bitmapEpochUnverified = true;                      // Set on (re)connect
   /* =========================================================
    * Key helpers & constants
    * ========================================================= */
@@ -513,9 +536,122 @@ public class BookRedisRepository {
    * BITMAP Operations
    * ========================================================= */
 
+  /**
+   * Allocates the bitmap offsets of book Ids, given after a new epoch. An Id keeps the offset it got first; new Ids get
+   * the next value of an INCR counter, so the offsets stay dense from 0. The epoch key is set to the new epoch if it is
+   * missing, as when Redis lost the offsets along with it. Replies with the epoch, then the offset of every Id, in
+   * order.
+   */
+  private static final String LUA_ALLOCATE_BITMAP_OFFSETS = """
+        local epoch = redis.call('GET', KEYS[3])
+        if not epoch then
+            epoch = ARGV[1]
+            redis.call('SET', KEYS[3], epoch)
+        end
+        local reply = {epoch}
+        for i = 2, #ARGV do
+            local offset = redis.call('HGET', KEYS[1], ARGV[i])
+            if not offset then
+                offset = redis.call('INCR', KEYS[2]) - 1
+                redis.call('HSET', KEYS[1], ARGV[i], offset)
+            end
+            reply[i] = tonumber(offset)
+        end
+        return reply
+    """;
+
+  @SuppressWarnings("rawtypes")
+  private static final RedisScript<List> ALLOCATE_BITMAP_OFFSETS_SCRIPT = RedisScript.of(LUA_ALLOCATE_BITMAP_OFFSETS, List.class);
+
+  /**
+   * The offsets cached locally are checked against the epoch in Redis before their next use after every (re)connect:
+   * a Redis restarted without persistence, or failed over to a replica that lagged behind, may have lost them and
+   * allocated their bits again.
+   */
+  @PostConstruct
+  void verifyBitmapOffsetsOnReconnect() {
+    if (redisTemplate.getConnectionFactory() instanceof LettuceConnectionFactory lettuceConnectionFactory) {
+      lettuceConnectionFactory.getNativeClient().addListener(new RedisConnectionStateListener() {
+        @Override
+        public void onRedisConnected(RedisChannelHandler<?, ?> connection, SocketAddress socketAddress) {
+          bitmapEpochUnverified = true;
+        }
+      });
+    }
+  }
+
+  /**
+   * Carries the availability of the books over from the bitmap of the former layout, whose offsets were Id hash codes,
+   * then removes it. The former bitmap is first renamed, so it is only migrated once, and a migration interrupted is
+   * resumed from the renamed key on the next start. Only the available books are marked, so a migration run twice, by
+   * two nodes starting together, leaves the same result.
+   *
+   * @param ids the Ids of every book
+   */
+  public void migrateLegacyBitmap(Collection<String> ids) {
+    Objects.requireNonNull(ids, "Ids cannot be null");
+
+    try {
+      if (Boolean.TRUE.equals(redisTemplate.hasKey(LEGACY_BOOK_BITMAP_KEY))) {
+        redisTemplate.rename(LEGACY_BOOK_BITMAP_KEY, LEGACY_BOOK_BITMAP_MIGRATION_KEY);
+      }
+    } catch (Exception e) {
+      log.debug("Legacy availability bitmap {} already claimed", LEGACY_BOOK_BITMAP_KEY, e);
+    }
+
+    try {
+      if (!Boolean.TRUE.equals(redisTemplate.hasKey(LEGACY_BOOK_BITMAP_MIGRATION_KEY))) {
+        return;
+      }
+      long migrated = 0;
+      List<String> chunk = new ArrayList<>(LEGACY_BITMAP_MIGRATION_CHUNK);
+      for (String id : ids) {
+        chunk.add(id);
+        if (chunk.size() == LEGACY_BITMAP_MIGRATION_CHUNK) {
+          migrated += migrateLegacyBits(chunk);
+          chunk.clear();
+        }
+      }
+      migrated += migrateLegacyBits(chunk);
+      redisTemplate.unlink(LEGACY_BOOK_BITMAP_MIGRATION_KEY);
+      log.info("Migrated {} available books of {} from the legacy availability bitmap {}", migrated, ids.size(),
+        LEGACY_BOOK_BITMAP_KEY);
+    } catch (Exception e) {
+      log.error("Failed to migrate the legacy availability bitmap {}, retrying on the next start", LEGACY_BOOK_BITMAP_KEY, e);
+    }
+  }
+
+  /**
+   * Marks the books whose bit is set in the legacy bitmap as available, reading their bits with one pipeline.
+   *
+   * @return the number of books marked as available
+   */
+  private int migrateLegacyBits(List<String> ids) {
+    List<String> offsetIds = ids.stream().filter(id -> id.hashCode() != Integer.MIN_VALUE).toList(); // Had no valid offset
+    if (offsetIds.isEmpty()) {
+      return 0;
+    }
+    List<Object> bits = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+      byte[] key = redisTemplate.getStringSerializer().serialize(LEGACY_BOOK_BITMAP_MIGRATION_KEY);
+      for (String id : offsetIds) {
+        connection.stringCommands().getBit(key, Math.abs(id.hashCode()));
+      }
+      return null;
+    });
+
+    Map<String, Boolean> available = new HashMap<>();
+    for (int i = 0; i < offsetIds.size(); i++) {
+      if (Boolean.TRUE.equals(bits.get(i))) {
+        available.put(offsetIds.get(i), true);
+      }
+    }
+    markBooksAvailable(available);
+    return available.size();
+  }
+
   /**
    * Marks a book as available or unavailable using a bitmap.
-   * Uses the Id hashcode as the bit offset.
+   * The book's bit offset is allocated on first use, unless it is marked unavailable.
    *
    * @param id the book's Id
    * @param available true for available, false for unavailable
@@ -525,8 +661,10 @@ public class BookRedisRepository {
     Objects.requireNonNull(id, "Id cannot be null");
 
     try {
-      long offset = Math.abs((long) id.hashCode());
-      redisTemplate.opsForValue().setBit(BOOK_BITMAP_KEY, offset, available);
+      Long offset = (available ? allocateBitmapOffsets(List.of(id)) : bitmapOffsets(List.of(id))).get(id);
+      if (offset != null) {
+        redisTemplate.opsForValue().setBit(BOOK_BITMAP_KEY, offset, available);
+      }
       log.debug("Marked book {} as available: {}", id, available);
     } catch (Exception e) {
       log.error("Failed to mark book availability for Id: {}", id, e);
@@ -534,6 +672,45 @@ public class BookRedisRepository {
     }
   }
 
+  /**
+   * Marks many books as available or unavailable with a single BITFIELD command.
+   *
+   * @param availability the availability of each book, by Id
+   * @throws IllegalArgumentException if the map, an Id or an availability is null
+   */
+  public void markBooksAvailable(Map<String, Boolean> availability) {
+    Objects.requireNonNull(availability, "Availability cannot be null");
+    availability.forEach((id, available) -> {
+      Objects.requireNonNull(id, "Id cannot be null");
+      Objects.requireNonNull(available, "Availability cannot be null");
+    });
+
+    if (availability.isEmpty()) {
+      return;
+    }
+
+    try {
+      List<String> availableIds = availability.keySet().stream().filter(availability::get).toList();
+      List<String> unavailableIds = availability.keySet().stream().filter(id -> !availability.get(id)).toList();
+      Map<String, Long> offsets = new HashMap<>(allocateBitmapOffsets(availableIds));
+      offsets.putAll(bitmapOffsets(unavailableIds)); // Books never marked available have no bit to clear
+
+      BitFieldSubCommands commands = BitFieldSubCommands.create();
+      for (Map.Entry<String, Long> offset : offsets.entrySet()) {
+        commands = commands.set(BitFieldSubCommands.BitFieldType.unsigned(1))
+          .valueAt(offset.getValue())
+          .to(availability.get(offset.getKey()) ? 1 : 0);
+      }
+      if (!offsets.isEmpty()) {
+        redisTemplate.opsForValue().bitField(BOOK_BITMAP_KEY, commands);
+      }
+      log.debug("Marked availability of {} books", availability.size());
+    } catch (Exception e) {
+      log.error("Failed to mark availability of {} books", availability.size(), e);
+      throw new RedisOperationException("Failed to set books availability", e);
+    }
+  }
+
   /**
    * Checks if a book is marked as available in the bitmap.
    *
@@ -545,8 +722,8 @@ public class BookRedisRepository {
     Objects.requireNonNull(id, "Id cannot be null");
 
     try {
-      long offset = Math.abs((long) id.hashCode());
-      return Boolean.TRUE.equals(
+      Long offset = bitmapOffsets(List.of(id)).get(id);
+      return offset != null && Boolean.TRUE.equals(
         redisTemplate.opsForValue().getBit(BOOK_BITMAP_KEY, offset)
       );
     } catch (Exception e) {
@@ -555,6 +732,162 @@ public class BookRedisRepository {
     }
   }
 
+  /**
+   * Checks the availability of many books, pipelining one GETBIT per book.
+   *
+   * @param ids the books' Ids
+   * @return the availability of each book, by Id in the given order
+   * @throws IllegalArgumentException if the list or an Id is null
+   */
+  public Map<String, Boolean> areBooksAvailable(Collection<String> ids) {
+    Objects.requireNonNull(ids, "Ids cannot be null");
+    ids.forEach(id -> Objects.requireNonNull(id, "Id cannot be null"));
+
+    Map<String, Boolean> availability = new LinkedHashMap<>();
+    ids.forEach(id -> availability.put(id, false));
+
+    try {
+      Map<String, Long> offsets = bitmapOffsets(ids);
+      if (offsets.isEmpty()) {
+        return availability;
+      }
+
+      List<String> offsetIds = new ArrayList<>(offsets.keySet());
+      List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+        byte[] key = redisTemplate.getStringSerializer().serialize(BOOK_BITMAP_KEY);
+        for (String id : offsetIds) {
+          connection.stringCommands().getBit(key, offsets.get(id));
+        }
+        return null;
+      });
+
+      for (int i = 0; i < offsetIds.size(); i++) {
+        availability.put(offsetIds.get(i), Boolean.TRUE.equals(results.get(i)));
+      }
+    } catch (Exception e) {
+      log.error("Failed to check availability of {} books", ids.size(), e);
+    }
+    return availability;
+  }
+
+  /**
+   * Counts the books marked as available, with BITCOUNT.
+   *
+   * @return the number of available books
+   */
+  public long countAvailableBooks() {
+    try {
+      Long count = redisTemplate.execute((RedisCallback<Long>) connection ->
+        connection.stringCommands().bitCount(redisTemplate.getStringSerializer().serialize(BOOK_BITMAP_KEY)));
+      return count != null ? count : 0L;
+    } catch (Exception e) {
+      log.error("Failed to count available books", e);
+      throw new RedisOperationException("Failed to count available books", e);
+    }
+  }
+
+  /**
+   * Gets the bitmap offsets of the Ids that have one, from the local cache or else with a single HMGET.
+   */
+  private Map<String, Long> bitmapOffsets(Collection<String> ids) {
+    Map<String, Long> offsets = new HashMap<>();
+    List<String> missing = cachedBitmapOffsets(ids, offsets);
+
+    if (!missing.isEmpty()) {
+      var serializer = redisTemplate.getStringSerializer();
+      List<byte[]> values = redisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+        connection.hashCommands().hMGet(
+          serializer.serialize(BOOK_BITMAP_OFFSETS_KEY),
+          missing.stream().map(serializer::serialize).toArray(byte[][]::new)));
+
+      for (int i = 0; values != null && i < missing.size(); i++) {
+        String value = serializer.deserialize(values.get(i));
+        if (value != null) {
+          offsets.put(missing.get(i), Long.valueOf(value));
+          bitmapOffsets.put(missing.get(i), Long.valueOf(value));
+        }
+      }
+    }
+    return offsets;
+  }
+
+  /**
+   * Gets the bitmap offsets of the Ids, allocating one to each Id that has none yet.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private Map<String, Long> allocateBitmapOffsets(Collection<String> ids) {
+    Map<String, Long> offsets = new HashMap<>();
+    List<String> missing = cachedBitmapOffsets(ids, offsets);
+
+    if (!missing.isEmpty()) {
+      var serializer = redisTemplate.getStringSerializer();
+      List<Object> args = new ArrayList<>(missing.size() + 1);
+      args.add(UUID.randomUUID().toString());
+      args.addAll(missing);
+      List<Object> allocated = redisTemplate.execute(
+        ALLOCATE_BITMAP_OFFSETS_SCRIPT,
+        serializer,
+        (RedisSerializer<List>) (RedisSerializer<?>) serializer,
+        List.of(BOOK_BITMAP_OFFSETS_KEY, BOOK_BITMAP_OFFSET_SEQUENCE_KEY, BOOK_BITMAP_EPOCH_KEY),
+        args.toArray());
+
+      useBitmapEpoch(String.valueOf(allocated.get(0)));
+      for (int i = 0; i < missing.size(); i++) {
+        Long offset = (Long) allocated.get(i + 1);
+        offsets.put(missing.get(i), offset);
+        bitmapOffsets.put(missing.get(i), offset);
+      }
+    }
+    return offsets;
+  }
+
+  /**
+   * Reads the epoch of the offsets in Redis, starting a new one if it is missing, and drops the cached offsets if it is
+   * not theirs.
+   */
+  private void verifyBitmapEpoch() {
+    bitmapEpochUnverified = false;
+    var serializer = redisTemplate.getStringSerializer();
+    byte[] key = serializer.serialize(BOOK_BITMAP_EPOCH_KEY);
+    String epoch = redisTemplate.execute((RedisCallback<String>) connection -> {
+      connection.stringCommands().setNX(key, serializer.serialize(UUID.randomUUID().toString()));
+      return serializer.deserialize(connection.stringCommands().get(key));
+    });
+    useBitmapEpoch(epoch);
+  }
+
+  /**
+   * Drops the cached offsets if they belong to another epoch than the given one, current in Redis.
+   */
+  private synchronized void useBitmapEpoch(String epoch) {
+    if (!Objects.equals(epoch, bitmapEpoch)) {
+      if (bitmapEpoch != null) {
+        log.warn("Availability bitmap offsets of epoch {} replaced by epoch {}, dropping the cached offsets", bitmapEpoch, epoch);
+      }
+      bitmapOffsets.clear();
+      bitmapEpoch = epoch;
+    }
+  }
+
+  /**
+   * Puts the locally cached offsets of the Ids in {@code offsets}, and returns the Ids that are not cached.
+   */
+  private List<String> cachedBitmapOffsets(Collection<String> ids, Map<String, Long> offsets) {
+    if (bitmapEpochUnverified) {
+      verifyBitmapEpoch();
+    }
+    List<String> missing = new ArrayList<>();
+    for (String id : ids) {
+      Long offset = bitmapOffsets.get(id);
+      if (offset != null) {
+        offsets.put(id, offset);
+      } else {
+        missing.add(id);
+      }
+    }
+    return missing;
+  }
+
   /* =========================================================
    * HYPERLOGLOG Operations
    * ========================================================= */
@@ -686,7 +1019,7 @@ public class BookRedisRepository {
    * ========================================================= */
 
   /**
-   * Publishes a book event to a Redis stream.
+   * Publishes a book event to a Redis stream, as an update of the book.
    *
    * @param book the book entity
    * @return the record ID of the published event
@@ -695,24 +1028,110 @@ public class BookRedisRepository {
   public RecordId publishBookEventToStream(BookEntity book) {
     validateBook(book);
 
+    return publishBookEvent(BookEvent.builder()
+      .type(BookEvent.Type.UPDATED)
+      .id(book.getId())
+      .title(book.getTitle())
+      .author(book.getAuthor())
+      .build());
+  }
+
+  /**
+   * Publishes a book event to a Redis stream, trimmed to about the configured maximum length.
+   *
+   * @param event the book event
+   * @return the record ID of the published event
+   * @throws IllegalArgumentException if event, its type or its Id is null
+   */
+  public RecordId publishBookEvent(BookEvent event) {
+    Objects.requireNonNull(event, "Event cannot be null");
+    Objects.requireNonNull(event.getType(), "Event type cannot be null");
+    Objects.requireNonNull(event.getId(), "Id cannot be null");
+
     try {
-      Map<String, String> body = new HashMap<>();
-      body.put("id", book.getId());
-      body.put("title", book.getTitle());
-      body.put("author", book.getAuthor());
-
-      RecordId recordId = redisTemplate.opsForStream().add(BOOK_STREAM_KEY, body);
-      log.debug("Published book event to stream: {} - RecordId: {}",
-        book.getId(), recordId);
+      RecordId recordId = redisTemplate.opsForStream().add(BOOK_STREAM_KEY, toBody(event),
+        RedisStreamCommands.XAddOptions.maxlen(redisConfigurationProperties.getStream().getMaxLength()).approximateTrimming(true));
+      log.debug("Published book event {} to stream: {} - RecordId: {}",
+        event.getType(), event.getId(), recordId);
       return recordId;
     } catch (Exception e) {
-      log.error("Failed to publish book event for Id: {}", book.getId(), e);
+      log.error("Failed to publish book event for Id: {}", event.getId(), e);
       throw new RedisOperationException("Failed to publish book event", e);
     }
   }
 
   /**
-   * Reads book events from the stream.
+   * Publishes book events to the Redis stream in one pipeline, in order.
+   *
+   * @param events the book events
+   * @throws IllegalArgumentException if events is null
+   */
+  public void publishBookEvents(Collection<BookEvent> events) {
+    Objects.requireNonNull(events, "Events cannot be null");
+    if (events.isEmpty()) {
+      return;
+    }
+
+    try {
+      RedisStreamCommands.XAddOptions options = RedisStreamCommands.XAddOptions
+        .maxlen(redisConfigurationProperties.getStream().getMaxLength()).approximateTrimming(true);
+      redisTemplate.executePipelined(new SessionCallback<Object>() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object execute(RedisOperations operations) {
+          events.forEach(event -> operations.opsForStream().add(BOOK_STREAM_KEY, toBody(event), options));
+          return null;
+        }
+      });
+      log.debug("Published {} book events to stream", events.size());
+    } catch (Exception e) {
+      log.error("Failed to publish {} book events", events.size(), e);
+      throw new RedisOperationException("Failed to publish book events", e);
+    }
+  }
+
+  /**
+   * The stream record body of a book event, read back by {@link #toBookEvent}.
+   *
+   * @param event the book event
+   * @return the stream record body, without the fields the event does not have
+   */
+  public static Map<String, String> toBody(BookEvent event) {
+    Map<String, String> body = new HashMap<>();
+    body.put("type", event.getType().name());
+    body.put("id", event.getId());
+    if (event.getTitle() != null) {
+      body.put("title", event.getTitle());
+    }
+    if (event.getAuthor() != null) {
+      body.put("author", event.getAuthor());
+    }
+    if (event.getPreviousAuthor() != null) {
+      body.put("previousAuthor", event.getPreviousAuthor());
+    }
+    return body;
+  }
+
+  /**
+   * Reads back a book event published by {@link #publishBookEvent}. Events without a type are updates.
+   *
+   * @param body the stream record body
+   * @return the book event
+   */
+  public static BookEvent toBookEvent(Map<String, Object> body) {
+    Object type = body.get("type");
+    return BookEvent.builder()
+      .type(type != null ? BookEvent.Type.valueOf(type.toString()) : BookEvent.Type.UPDATED)
+      .id(Objects.toString(body.get("id"), null))
+      .title(Objects.toString(body.get("title"), null))
+      .author(Objects.toString(body.get("author"), null))
+      .previousAuthor(Objects.toString(body.get("previousAuthor"), null))
+      .build();
+  }
+
+  /**
+   * Reads the oldest book events retained in the stream, outside of any consumer group. The events are processed by
+   * the consumer group of the book event processors, this only peeks at them.
    *
    * @param count the maximum number of events to read
    * @return a list of stream records
@@ -886,6 +1305,63 @@ public class BookRedisRepository {
     }
   }
 
+  /* =========================================================
+   * NOT FOUND Markers
+   * ========================================================= */
+
+  /**
+   * Remembers that a book is missing in the database, for every replica, until the marker expires or is cleared.
+   *
+   * @param id the book's Id
+   * @param ttl how long the marker lives
+   * @throws IllegalArgumentException if Id or ttl is null
+   */
+  public void markNotFound(String id, Duration ttl) {
+    Objects.requireNonNull(id, "Id cannot be null");
+    Objects.requireNonNull(ttl, "TTL cannot be null");
+
+    try {
+      redisTemplate.opsForValue().set(BOOK_NOT_FOUND_KEY_PREFIX + id, Boolean.TRUE, ttl);
+      log.debug("Marked book with Id: {} as not found for {}", id, ttl);
+    } catch (Exception e) {
+      log.error("Failed to mark book with Id: {} as not found", id, e);
+    }
+  }
+
+  /**
+   * Checks if a book was recently found missing in the database.
+   *
+   * @param id the book's Id
+   * @return true if the book is marked as not found, false otherwise or if the marker cannot be read
+   * @throws IllegalArgumentException if Id is null
+   */
+  public boolean isMarkedNotFound(String id) {
+    Objects.requireNonNull(id, "Id cannot be null");
+
+    try {
+      return Boolean.TRUE.equals(redisTemplate.hasKey(BOOK_NOT_FOUND_KEY_PREFIX + id));
+    } catch (Exception e) {
+      log.error("Failed to check the not found marker of Id: {}", id, e);
+      return false;
+    }
+  }
+
+  /**
+   * Clears the not found marker of a book, once it is created.
+   *
+   * @param id the book's Id
+   * @throws IllegalArgumentException if Id is null
+   */
+  public void clearNotFound(String id) {
+    Objects.requireNonNull(id, "Id cannot be null");
+
+    try {
+      redisTemplate.delete(BOOK_NOT_FOUND_KEY_PREFIX + id);
+    } catch (Exception e) {
+      log.error("Failed to clear the not found marker of Id: {}", id, e);
+    }
+  }
+
   /* =========================================================
    * KEY / TTL / SCAN Operations
    * ========================================================= */
@@ -983,6 +1459,8 @@ public class BookRedisRepository {
    */
   public void flushDb() {
     log.warn("DANGEROUS OPERATION: Flushing Redis database");
+    bitmapOffsets.clear();
+    bitmapEpochUnverified = true;
 
     try {
       redisTemplate.execute((RedisCallback<Void>) connection -> {
@@ -0,0 +1,310 @@
+package com.cjrequena.sample.persistence.repository;
+
+import com.cjrequena.sample.domain.model.Book;
+import com.cjrequena.sample.domain.model.BookSearchQuery;
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.ProtocolKeyword;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.zip.CRC32C;
+
+/**
+ * <p>
+ * Layout of the books indexed by RediSearch, shared by the blocking and the reactive search repositories: the key
+ * and index names, the hash fields of a book and the parsing of the FT.SEARCH replies.
+ * </p>
+ *
+ * <p>Next to the documents, a hash outside the indexed prefix maps each indexed book id to the checksum of its
+ * fields, so a load only writes the books whose checksum changed.</p>
+ *
+ * <p>The titles of the indexed books are also kept in a suggestion dictionary for autocompletion. Several books may
+ * share a title, so another hash counts the books behind each suggestion, and a suggestion is only deleted along with
+ * its last book. A book is written and deleted by a Lua script that reads its indexed title, writes or deletes it and
+ * counts its titles in one atomic call, so concurrent writers never miscount a title, and writing a book again with the
+ * same title counts nothing.</p>
+ *
+ * <p>Every key shares the {@code {search}} hash tag, so in a cluster the scripts run on one node, the node holding the
+ * index and all of its documents.</p>
+ *
+ * @author cjrequena
+ */
+@Slf4j
+final class BookRedisSearchDocuments {
+
+  static final String KEY_PREFIX = "books:{search}:";
+  static final String INDEX_NAME = "idx:books:v3";                      // Versioned, so a new schema gets a new index
+  static final List<String> LEGACY_INDEX_NAMES = List.of("idx:books", "idx:books:v2"); // On the untagged keys
+  static final List<String> LEGACY_KEYS = List.of("books:search-checksums", "books:search-suggestions",
+    "books:search-suggestion-refs");
+  static final String CHECKSUMS_KEY = "books:{search}-checksums";        // Outside KEY_PREFIX, so not indexed
+  static final String SUGGESTIONS_KEY = "books:{search}-suggestions";    // FT.SUGADD dictionary of the titles
+  static final String SUGGESTION_REFS_KEY = "books:{search}-suggestion-refs"; // Books per suggested title
+  static final int SEARCH_LIMIT = 50;
+
+  /* =========================================================
+   * Lua Scripts
+   * ========================================================= */
+
+  /**
+   * Writes a book, given as its Id, title, author and checksum, with {@link #scriptKeys}. The checksum is written last,
+   * so a script failing halfway leaves it as it was and the next load writes the book again. Replies 1 if the indexed
+   * title changed.
+   */
+  static final String LUA_SAVE = """
+        local previous = redis.call('HGET', KEYS[1], 'title')
+        redis.call('HSET', KEYS[1], 'id', ARGV[1], 'title', ARGV[2], 'author', ARGV[3])
+        local changed = previous ~= ARGV[2]
+        if changed and string.find(ARGV[2], '%S') and redis.call('HINCRBY', KEYS[3], ARGV[2], 1) == 1 then
+            redis.call('FT.SUGADD', KEYS[4], ARGV[2], '1.0')
+        end
+        if changed and previous and string.find(previous, '%S') and redis.call('HINCRBY', KEYS[3], previous, -1) <= 0 then
+            redis.call('HDEL', KEYS[3], previous)
+            redis.call('FT.SUGDEL', KEYS[4], previous)
+        end
+        redis.call('HSET', KEYS[2], ARGV[1], ARGV[4])
+        return changed and 1 or 0
+    """;
+
+  /**
+   * Deletes a book, given as its Id, with {@link #scriptKeys}. Replies 1 if it was indexed.
+   */
+  static final String LUA_DELETE = """
+        local previous = redis.call('HGET', KEYS[1], 'title')
+        redis.call('HDEL', KEYS[2], ARGV[1])
+        local deleted = redis.call('DEL', KEYS[1])
+        if previous and string.find(previous, '%S') and redis.call('HINCRBY', KEYS[3], previous, -1) <= 0 then
+            redis.call('HDEL', KEYS[3], previous)
+            redis.call('FT.SUGDEL', KEYS[4], previous)
+        end
+        return deleted
+    """;
+
+  private static final String HIGHLIGHT_OPEN_TAG = "<b>";
+  private static final String HIGHLIGHT_CLOSE_TAG = "</b>";
+
+  private BookRedisSearchDocuments() {
+  }
+
+  static ProtocolKeyword cmd(String name) {
+    return () -> name.getBytes(StandardCharsets.UTF_8);
+  }
+
+  static String key(String id) {
+    return KEY_PREFIX + id;
+  }
+
+  /**
+   * The keys of {@link #LUA_SAVE} and {@link #LUA_DELETE}: the document, the checksums, the suggestion counts and the
+   * suggestions.
+   */
+  static String[] scriptKeys(String id) {
+    return new String[]{key(id), CHECKSUMS_KEY, SUGGESTION_REFS_KEY, SUGGESTIONS_KEY};
+  }
+
+  /**
+   * The arguments of {@link #LUA_SAVE}.
+   */
+  static String[] saveArgs(Book book) {
+    return new String[]{book.getId(), book.getTitle() != null ? book.getTitle() : "",
+      book.getAuthor() != null ? book.getAuthor() : "", checksum(book)};
+  }
+
+  /**
+   * Whether a command failed because the index does not exist, as before the first startup or after it was dropped.
+   */
+  static boolean isMissingIndex(Throwable e) {
+    String message = e instanceof RedisCommandExecutionException ? e.getMessage() : null;
+    return message != null
+      && (message.toLowerCase(Locale.ROOT).contains("no such index") || message.toLowerCase(Locale.ROOT).contains("unknown index"));
+  }
+
+  static String checksum(Book book) {
+    CRC32C crc = new CRC32C();
+    for (String field : new String[]{book.getId(), book.getTitle(), book.getAuthor()}) {
+      crc.update((field != null ? field : "").getBytes(StandardCharsets.UTF_8));
+      crc.update(0);
+    }
+    return Long.toHexString(crc.getValue());
+  }
+
+  /* =========================================================
+   * Command arguments
+   * ========================================================= */
+
+  /**
+   * FT.SEARCH arguments of a query. The id is always returned, the other fields only when asked for.
+   */
+  static CommandArgs<String, String> searchArgs(BookSearchQuery query) {
+    CommandArgs<String, String> args = new CommandArgs<>(StringCodec.UTF8)
+      .add(INDEX_NAME)
+      .add(queryString(query));
+
+    Set<BookSearchQuery.Field> fields = query.getFields() == null || query.getFields().isEmpty()
+      ? EnumSet.allOf(BookSearchQuery.Field.class)
+      : EnumSet.copyOf(query.getFields());
+    fields.add(BookSearchQuery.Field.ID);
+    args.add("RETURN").add(fields.size());
+    fields.forEach(field -> args.add(field.getName()));
+
+    Set<BookSearchQuery.Field> highlighted = EnumSet.copyOf(fields);
+    highlighted.remove(BookSearchQuery.Field.ID);
+    if (query.isHighlight() && !highlighted.isEmpty()) {
+      args.add("HIGHLIGHT").add("FIELDS").add(highlighted.size());
+      highlighted.forEach(field -> args.add(field.getName()));
+      args.add("TAGS").add(HIGHLIGHT_OPEN_TAG).add(HIGHLIGHT_CLOSE_TAG);
+    }
+
+    if (query.getSortBy() != null) {
+      args.add("SORTBY").add(query.getSortBy().getName()).add(query.isDescending() ? "DESC" : "ASC");
+    }
+
+    return args.add("LIMIT").add(query.getOffset()).add(query.getLimit());
+  }
+
+  /**
+   * The free text is passed as is, in parentheses so its unions do not swallow the field filters. The title and
+   * author words are escaped, they are matched as plain words.
+   */
+  static String queryString(BookSearchQuery query) {
+    StringJoiner queryString = new StringJoiner(" ");
+    if (hasText(query.getText())) {
+      queryString.add("(" + query.getText().trim() + ")");
+    }
+    if (hasText(query.getTitle())) {
+      queryString.add("@title:(" + escape(query.getTitle().trim()) + ")");
+    }
+    if (hasText(query.getAuthor())) {
+      queryString.add("@author:(" + escape(query.getAuthor().trim()) + ")");
+    }
+    return queryString.length() == 0 ? "*" : queryString.toString();
+  }
+
+  /**
+   * Escapes the RediSearch query syntax, every character but letters, digits, underscores and whitespace.
+   */
+  static String escape(String value) {
+    StringBuilder escaped = new StringBuilder(value.length());
+    value.codePoints().forEach(c -> {
+      if (!Character.isLetterOrDigit(c) && !Character.isWhitespace(c) && c != '_') {
+        escaped.append('\\');
+      }
+      escaped.appendCodePoint(c);
+    });
+    return escaped.toString();
+  }
+
+  static CommandArgs<String, String> suggestionGetArgs(String prefix, int max, boolean fuzzy) {
+    CommandArgs<String, String> args = new CommandArgs<>(StringCodec.UTF8).add(SUGGESTIONS_KEY).add(prefix);
+    if (fuzzy) {
+      args.add("FUZZY");
+    }
+    return args.add("MAX").add(max);
+  }
+
+  private static boolean hasText(String value) {
+    return value != null && !value.isBlank();
+  }
+
+  /* =========================================================
+   * Replies
+   * ========================================================= */
+
+  static Book fromHash(Map<String, String> hash) {
+    Book book = new Book();
+    book.setId(hash.get("id"));
+    book.setTitle(hash.get("title"));
+    book.setAuthor(hash.get("author"));
+    return book;
+  }
+
+  static List<Book> fromSearchResult(List<Object> searchResult) {
+    if (searchResult == null || searchResult.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    List<Book> books = new ArrayList<>();
+
+    for (int i = 0; i < searchResult.size() - 1; i++) {
+      if (!"results".equals(searchResult.get(i))) {
+        continue;
+      }
+
+      Object resultsObj = searchResult.get(i + 1);
+      if (!(resultsObj instanceof List<?> results)) {
+        continue;
+      }
+
+      for (Object resultObj : results) {
+        if (!(resultObj instanceof List<?> result)) {
+          continue;
+        }
+
+        Book book = fromResult(result);
+        if (book != null) {
+          books.add(book);
+        }
+      }
+    }
+
+    log.debug("Parsed {} books from search result", books.size());
+    return books;
+  }
+
+  static long totalResults(List<Object> searchResult) {
+    if (searchResult != null) {
+      for (int i = 0; i < searchResult.size() - 1; i++) {
+        if ("total_results".equals(searchResult.get(i)) && searchResult.get(i + 1) instanceof Number total) {
+          return total.longValue();
+        }
+      }
+    }
+    return 0;
+  }
+
+  static List<String> fromSuggestionResult(List<Object> suggestionResult) {
+    if (suggestionResult == null) {
+      return Collections.emptyList();
+    }
+    return suggestionResult.stream().map(String::valueOf).toList();
+  }
+
+  private static Book fromResult(List<?> result) {
+    for (int i = 0; i < result.size() - 1; i++) {
+      if (!"extra_attributes".equals(result.get(i))) {
+        continue;
+      }
+
+      Object attrsObj = result.get(i + 1);
+      if (!(attrsObj instanceof List<?> attrs)) {
+        return null;
+      }
+
+      Book book = new Book();
+
+      for (int j = 0; j < attrs.size() - 1; j += 2) {
+        String key = String.valueOf(attrs.get(j));
+        String value = String.valueOf(attrs.get(j + 1));
+
+        switch (key) {
+          case "id" -> book.setId(value);
+          case "author" -> book.setAuthor(value);
+          case "title" -> book.setTitle(value);
+        }
+      }
+
+      return book;
+    }
+    return null;
+  }
+}
@@ -1,51 +1,90 @@
 package com.cjrequena.sample.persistence.repository;
 
+import com.cjrequena.sample.configuration.RedisConfigurationProperties;
 import com.cjrequena.sample.domain.model.Book;
+import com.cjrequena.sample.domain.model.BookSearchPage;
+import com.cjrequena.sample.domain.model.BookSearchQuery;
+import com.cjrequena.sample.shared.redis.RedisCommandsPool;
+import com.cjrequena.sample.shared.redis.RedisScriptLibrary;
 import io.lettuce.core.RedisCommandExecutionException;
-import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
 import io.lettuce.core.codec.StringCodec;
 import io.lettuce.core.output.ArrayOutput;
 import io.lettuce.core.output.StatusOutput;
 import io.lettuce.core.protocol.CommandArgs;
-import io.lettuce.core.protocol.ProtocolKeyword;
 import jakarta.annotation.PostConstruct;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Repository;
 
-import java.nio.charset.StandardCharsets;
-import java.util.*;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.cjrequena.sample.persistence.repository.BookRedisSearchDocuments.CHECKSUMS_KEY;
+import static com.cjrequena.sample.persistence.repository.BookRedisSearchDocuments.INDEX_NAME;
+import static com.cjrequena.sample.persistence.repository.BookRedisSearchDocuments.KEY_PREFIX;
+import static com.cjrequena.sample.persistence.repository.BookRedisSearchDocuments.LEGACY_INDEX_NAMES;
+import static com.cjrequena.sample.persistence.repository.BookRedisSearchDocuments.LEGACY_KEYS;
+import static com.cjrequena.sample.persistence.repository.BookRedisSearchDocuments.LUA_DELETE;
+import static com.cjrequena.sample.persistence.repository.BookRedisSearchDocuments.LUA_SAVE;
+import static com.cjrequena.sample.persistence.repository.BookRedisSearchDocuments.SEARCH_LIMIT;
+import static com.cjrequena.sample.persistence.repository.BookRedisSearchDocuments.SUGGESTIONS_KEY;
+import static com.cjrequena.sample.persistence.repository.BookRedisSearchDocuments.SUGGESTION_REFS_KEY;
+import static com.cjrequena.sample.persistence.repository.BookRedisSearchDocuments.checksum;
+import static com.cjrequena.sample.persistence.repository.BookRedisSearchDocuments.cmd;
+import static com.cjrequena.sample.persistence.repository.BookRedisSearchDocuments.fromHash;
+import static com.cjrequena.sample.persistence.repository.BookRedisSearchDocuments.fromSearchResult;
+import static com.cjrequena.sample.persistence.repository.BookRedisSearchDocuments.fromSuggestionResult;
+import static com.cjrequena.sample.persistence.repository.BookRedisSearchDocuments.isMissingIndex;
+import static com.cjrequena.sample.persistence.repository.BookRedisSearchDocuments.key;
+import static com.cjrequena.sample.persistence.repository.BookRedisSearchDocuments.saveArgs;
+import static com.cjrequena.sample.persistence.repository.BookRedisSearchDocuments.scriptKeys;
+import static com.cjrequena.sample.persistence.repository.BookRedisSearchDocuments.searchArgs;
+import static com.cjrequena.sample.persistence.repository.BookRedisSearchDocuments.suggestionGetArgs;
+import static com.cjrequena.sample.persistence.repository.BookRedisSearchDocuments.totalResults;
 
 @Slf4j
 @Repository
-@RequiredArgsConstructor
 public class BookRedisSearchRepository {
 
-  private final RedisCommands<String, String> redis;
-
-  /* =========================================================
-   * Constants
-   * ========================================================= */
-
-  private static final String KEY_PREFIX = "books:search:";
-  private static final String INDEX_NAME = "idx:books";
-  private static final boolean RECREATE_INDEX = true;
-
-  /* =========================================================
-   * RediSearch keyword helper
-   * ========================================================= */
-
-  private static ProtocolKeyword cmd(String name) {
-    return () -> name.getBytes(StandardCharsets.UTF_8);
+  private final RedisCommandsPool redisSearchCommandsPool;
+  private final RedisConfigurationProperties redisConfigurationProperties;
+  private final RedisScriptLibrary scripts;
+  private final RedisScript<Long> saveScript;
+  private final RedisScript<Long> deleteScript;
+
+  public BookRedisSearchRepository(RedisCommandsPool redisSearchCommandsPool,
+    RedisConfigurationProperties redisConfigurationProperties, RedisScriptLibrary scripts) {
+    this.redisSearchCommandsPool = redisSearchCommandsPool;
+    this.redisConfigurationProperties = redisConfigurationProperties;
+    this.scripts = scripts;
+    this.saveScript = scripts.register("books-search-save", LUA_SAVE, Long.class);
+    this.deleteScript = scripts.register("books-search-delete", LUA_DELETE, Long.class);
   }
 
   /* =========================================================
    * Index initialization
    * ========================================================= */
 
+  /**
+   * In {@link RedisConfigurationProperties.Search.Startup#FULL FULL} mode the index is dropped with its documents and
+   * recreated. In {@link RedisConfigurationProperties.Search.Startup#INCREMENTAL INCREMENTAL} mode an existing index
+   * is kept, along with the checksums that let {@link #load} skip the books it already holds.
+   */
   @PostConstruct
   public void createIndexIfNotExists() {
-    if (RECREATE_INDEX) {
+    if (redisConfigurationProperties.getSearch().getStartup() == RedisConfigurationProperties.Search.Startup.FULL) {
       dropIndex();
       createIndex();
       return;
@@ -53,20 +92,31 @@ public class BookRedisSearchRepository {
 
     try {
       // FT.INFO returns an ARRAY → must use ArrayOutput
-      redis.dispatch(
+      redisSearchCommandsPool.execute(redis -> redis.dispatch(
         cmd("FT.INFO"),
         new ArrayOutput<>(StringCodec.UTF8),
         new CommandArgs<>(StringCodec.UTF8).add(INDEX_NAME)
-      );
+      ));
       log.info("RediSearch index '{}' already exists", INDEX_NAME);
     } catch (RedisCommandExecutionException e) {
+      if (!isMissingIndex(e)) {
+        throw e;
+      }
       log.info("RediSearch index '{}' not found, creating it", INDEX_NAME);
       createIndex();
     }
   }
 
+  /**
+   * The checksums and suggestions are cleared along, the documents of a new index must all be written by the next
+   * load. Indexes of a previous schema are dropped with their documents, which were kept under the keys of a previous
+   * layout, and so are the checksums and suggestions of that layout.
+   */
   private void createIndex() {
-    redis.dispatch(
+    LEGACY_INDEX_NAMES.forEach(legacyIndexName -> dropIndex(legacyIndexName, true));
+    redisSearchCommandsPool.execute(redis -> redis.del(LEGACY_KEYS.toArray(String[]::new)));
+    redisSearchCommandsPool.execute(redis -> redis.del(CHECKSUMS_KEY, SUGGESTIONS_KEY, SUGGESTION_REFS_KEY));
+    redisSearchCommandsPool.execute(redis -> redis.dispatch(
       cmd("FT.CREATE"),
       new StatusOutput<>(StringCodec.UTF8),
       new CommandArgs<>(StringCodec.UTF8)
@@ -75,23 +125,28 @@ public class BookRedisSearchRepository {
         .add("PREFIX").add("1").add(KEY_PREFIX)
         .add("SCHEMA")
         .add("id").add("TEXT")
-        .add("title").add("TEXT").add("WEIGHT").add("5.0")
-        .add("author").add("TEXT")
-    );
+        .add("title").add("TEXT").add("WEIGHT").add("5.0").add("SORTABLE")
+        .add("author").add("TEXT").add("SORTABLE")
+    ));
 
     log.info("RediSearch index '{}' created", INDEX_NAME);
   }
 
   private void dropIndex() {
+    dropIndex(INDEX_NAME, true);
+  }
+
+  /**
+   * @param deleteDocuments whether the documents are deleted along with the index
+   */
+  private void dropIndex(String indexName, boolean deleteDocuments) {
+    CommandArgs<String, String> args = new CommandArgs<>(StringCodec.UTF8).add(indexName);
+    if (deleteDocuments) {
+      args.add("DD");
+    }
     try {
-      redis.dispatch(
-        cmd("FT.DROPINDEX"),
-        new StatusOutput<>(StringCodec.UTF8),
-        new CommandArgs<>(StringCodec.UTF8)
-          .add(INDEX_NAME)
-          .add("DD")
-      );
-      log.info("RediSearch index '{}' dropped", INDEX_NAME);
+      redisSearchCommandsPool.execute(redis -> redis.dispatch(cmd("FT.DROPINDEX"), new StatusOutput<>(StringCodec.UTF8), args));
+      log.info("RediSearch index '{}' dropped", indexName);
     } catch (Exception ignored) {
     }
   }
@@ -100,70 +155,201 @@ public class BookRedisSearchRepository {
    * Write
    * ========================================================= */
 
+  /**
+   * Brings the index in line with the given books: writes the books whose checksum differs from the stored one, or
+   * that are not indexed yet, and removes the indexed books that are not in the list. After a full rebuild every book
+   * is written; on an incremental startup only the changes are.
+   *
+   * <p>Writes are pipelined in batches of {@code spring.redis.search.batch-size} books, one round trip per batch.</p>
+   */
   public void load(List<Book> books) {
     if (books == null || books.isEmpty()) {
       log.warn("Attempted to load empty book list");
       return;
     }
 
-    int successCount = 0;
+    Map<String, String> stored = new HashMap<>(redisSearchCommandsPool.execute(redis -> redis.hgetall(CHECKSUMS_KEY)));
+    List<Book> changed = new ArrayList<>();
     for (Book book : books) {
-      try {
-        save(book);
-        successCount++;
-      } catch (Exception e) {
-        log.error("Failed to save book to search index: {}", book.getId(), e);
+      validateBook(book);
+      if (!checksum(book).equals(stored.remove(book.getId()))) {
+        changed.add(book);
       }
     }
+    List<String> removed = new ArrayList<>(stored.keySet());
+
+    int successCount = saveAll(changed);
+    int removedCount = deleteAll(removed);
 
-    log.info("Loaded {}/{} books into RediSearch index", successCount, books.size());
+    log.info("Loaded {}/{} changed books into RediSearch index, removed {}, {} unchanged", successCount, changed.size(),
+      removedCount, books.size() - changed.size());
   }
 
   public void save(Book book) {
     validateBook(book);
 
-    Map<String, String> hash = new HashMap<>();
-    hash.put("id", book.getId());
-    hash.put("title", book.getTitle() != null ? book.getTitle() : "");
-    hash.put("author", book.getAuthor() != null ? book.getAuthor() : "");
-
-    redis.hset(key(book.getId()), hash);
+    scripts.execute(saveScript, List.of(scriptKeys(book.getId())), (Object[]) saveArgs(book));
     log.debug("Saved book to search index: {}", book.getId());
   }
 
+  /**
+   * Pipelines one call of the save script per book, one flush per batch. The script is loaded first on the pipeline
+   * connection, as the load at startup may run before the library loads its scripts. A book whose call failed keeps
+   * the checksum it had, so the next load writes it again.
+   *
+   * @return the number of books written
+   */
+  private int saveAll(List<Book> books) {
+    if (books.isEmpty()) {
+      return 0;
+    }
+    int batchSize = redisConfigurationProperties.getSearch().getBatchSize();
+    Duration batchTimeout = redisConfigurationProperties.getSearch().getBatchTimeout();
+
+    return redisSearchCommandsPool.executePipelined(pipeline -> {
+      RedisClusterAsyncCommands<String, String> redis = pipeline.commands();
+      redis.scriptLoad(LUA_SAVE);
+      int successCount = 0;
+      for (int from = 0; from < books.size(); from += batchSize) {
+        List<Book> batch = books.subList(from, Math.min(from + batchSize, books.size()));
+        List<RedisFuture<Long>> writes = batch.stream()
+          .map(book -> redis.<Long>evalsha(saveScript.getSha1(), ScriptOutputType.INTEGER, scriptKeys(book.getId()), saveArgs(book)))
+          .toList();
+        pipeline.flush();
+
+        long deadline = System.nanoTime() + batchTimeout.toNanos();
+        for (int i = 0; i < batch.size(); i++) {
+          if (await(writes.get(i), deadline, "save book to search index: " + batch.get(i).getId())) {
+            successCount++;
+          }
+        }
+      }
+      return successCount;
+    });
+  }
+
+  /**
+   * Pipelines one call of the delete script per book, one flush per batch.
+   *
+   * @return the number of books removed
+   */
+  private int deleteAll(List<String> ids) {
+    if (ids.isEmpty()) {
+      return 0;
+    }
+    int batchSize = redisConfigurationProperties.getSearch().getBatchSize();
+    Duration batchTimeout = redisConfigurationProperties.getSearch().getBatchTimeout();
+
+    return redisSearchCommandsPool.executePipelined(pipeline -> {
+      RedisClusterAsyncCommands<String, String> redis = pipeline.commands();
+      redis.scriptLoad(LUA_DELETE);
+      int removedCount = 0;
+      for (int from = 0; from < ids.size(); from += batchSize) {
+        List<String> batch = ids.subList(from, Math.min(from + batchSize, ids.size()));
+        List<RedisFuture<Long>> deletes = batch.stream()
+          .map(id -> redis.<Long>evalsha(deleteScript.getSha1(), ScriptOutputType.INTEGER, scriptKeys(id), id))
+          .toList();
+        pipeline.flush();
+
+        long deadline = System.nanoTime() + batchTimeout.toNanos();
+        for (int i = 0; i < batch.size(); i++) {
+          if (await(deletes.get(i), deadline, "remove book from search index: " + batch.get(i))) {
+            removedCount++;
+          }
+        }
+      }
+      return removedCount;
+    });
+  }
+
+  /**
+   * Waits for a pipelined command until the deadline of its batch.
+   *
+   * @return whether the command succeeded in time, a failure is logged
+   */
+  private static boolean await(RedisFuture<?> future, long deadline, String operation) {
+    try {
+      future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.error("Interrupted while waiting to {}", operation, e);
+    } catch (ExecutionException e) {
+      log.error("Failed to {}", operation, e.getCause());
+    } catch (TimeoutException e) {
+      log.error("Timed out waiting to {}", operation, e);
+    }
+    return false;
+  }
+
   /* =========================================================
    * Read
    * ========================================================= */
 
   public Optional<Book> retrieve(String id) {
-    Map<String, String> hash = redis.hgetall(key(id));
-    return hash.isEmpty() ? Optional.empty() : Optional.of(mapFromHash(hash));
+    Map<String, String> hash = redisSearchCommandsPool.execute(redis -> redis.hgetall(key(id)));
+    return hash.isEmpty() ? Optional.empty() : Optional.of(fromHash(hash));
   }
 
   /* =========================================================
    * Search
    * ========================================================= */
 
+  /**
+   * Returns the top {@value BookRedisSearchDocuments#SEARCH_LIMIT} books matching a full-text query.
+   */
   public List<Book> search(String query) {
     if (query == null || query.trim().isEmpty()) {
       return Collections.emptyList();
     }
+    return search(BookSearchQuery.builder().text(query).limit(SEARCH_LIMIT).build()).getBooks();
+  }
 
+  /**
+   * Returns a page of the books matching a query, projected on the fields it asks for. A missing index, before the
+   * first startup created it, reads as no match; any other failure is thrown.
+   */
+  public BookSearchPage search(BookSearchQuery query) {
+    Objects.requireNonNull(query, "Query cannot be null");
+
+    BookSearchPage page = BookSearchPage.builder()
+      .offset(query.getOffset())
+      .limit(query.getLimit())
+      .books(Collections.emptyList())
+      .build();
     try {
-      List<Object> result = redis.dispatch(
+      List<Object> result = redisSearchCommandsPool.execute(redis -> redis.dispatch(
         cmd("FT.SEARCH"),
         new ArrayOutput<>(StringCodec.UTF8),
-        new CommandArgs<>(StringCodec.UTF8)
-          .add(INDEX_NAME)
-          .add(query)
-          .add("LIMIT").add("0").add("50") // Return top 50 results
-      );
-
-      return parseSearchResult(result);
-    } catch (Exception e) {
-      log.error("Full-text search failed for query: {}", query, e);
+        searchArgs(query)
+      ));
+
+      page.setTotal(totalResults(result));
+      page.setBooks(fromSearchResult(result));
+    } catch (RedisCommandExecutionException e) {
+      if (!isMissingIndex(e)) {
+        throw e;
+      }
+      log.warn("Full-text search on missing index '{}' for query: {}", INDEX_NAME, query);
+    }
+    return page;
+  }
+
+  /**
+   * Returns the titles starting with a prefix, from the suggestion dictionary in a single FT.SUGGET.
+   *
+   * @param fuzzy whether to also suggest the titles one typo away from the prefix
+   */
+  public List<String> suggest(String prefix, int max, boolean fuzzy) {
+    if (prefix == null || prefix.isBlank()) {
       return Collections.emptyList();
     }
+
+    return fromSuggestionResult(redisSearchCommandsPool.execute(redis -> redis.dispatch(
+      cmd("FT.SUGGET"),
+      new ArrayOutput<>(StringCodec.UTF8),
+      suggestionGetArgs(prefix, max, fuzzy)
+    )));
   }
 
   /* =========================================================
@@ -171,89 +357,13 @@ public class BookRedisSearchRepository {
    * ========================================================= */
 
   public boolean delete(String id) {
-    return redis.del(key(id)) > 0;
+    return scripts.execute(deleteScript, List.of(scriptKeys(id)), id) > 0;
   }
 
   /* =========================================================
    * Helpers
    * ========================================================= */
 
-  private String key(String id) {
-    return KEY_PREFIX + id;
-  }
-
-  private Book mapFromHash(Map<String, String> hash) {
-    Book book = new Book();
-    book.setId(hash.get("id"));
-    book.setTitle(hash.get("title"));
-    book.setAuthor(hash.get("author"));
-    return book;
-  }
-
-  @SuppressWarnings("unchecked")
-  private Book mapFromResult(List<?> result) {
-    for (int i = 0; i < result.size() - 1; i++) {
-      if (!"extra_attributes".equals(result.get(i))) {
-        continue;
-      }
-
-      Object attrsObj = result.get(i + 1);
-      if (!(attrsObj instanceof List<?> attrs)) {
-        return null;
-      }
-
-      Book book = new Book();
-
-      for (int j = 0; j < attrs.size() - 1; j += 2) {
-        String key = String.valueOf(attrs.get(j));
-        String value = String.valueOf(attrs.get(j + 1));
-
-        switch (key) {
-          case "id" -> book.setId(value);
-          case "author" -> book.setAuthor(value);
-          case "title" -> book.setTitle(value);
-        }
-      }
-
-      return book;
-    }
-    return null;
-  }
-
-  @SuppressWarnings("unchecked")
-  private List<Book> parseSearchResult(List<Object> searchResult) {
-    if (searchResult == null || searchResult.isEmpty()) {
-      return Collections.emptyList();
-    }
-
-    List<Book> books = new ArrayList<>();
-
-    for (int i = 0; i < searchResult.size() - 1; i++) {
-      if (!"results".equals(searchResult.get(i))) {
-        continue;
-      }
-
-      Object resultsObj = searchResult.get(i + 1);
-      if (!(resultsObj instanceof List<?> results)) {
-        continue;
-      }
-
-      for (Object resultObj : results) {
-        if (!(resultObj instanceof List<?> result)) {
-          continue;
-        }
-
-        Book book = mapFromResult(result);
-        if (book != null) {
-          books.add(book);
-        }
-      }
-    }
-
-    log.debug("Parsed {} books from search result", books.size());
-    return books;
-  }
-
   private void validateBook(Book book) {
     Objects.requireNonNull(book);
     Objects.requireNonNull(book.getId());
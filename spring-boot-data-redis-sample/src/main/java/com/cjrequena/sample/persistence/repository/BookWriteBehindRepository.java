@@ -0,0 +1,439 @@
+package com.cjrequena.sample.persistence.repository;
+
+import com.cjrequena.sample.domain.model.BookEvent;
+import com.cjrequena.sample.shared.redis.RedisScriptLibrary;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Repository;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * <p>
+ * Redis side of the write-behind persistence of the books: the queue of the book writes not yet in the database, a
+ * stream whose records are deleted once flushed, and the lease of the node flushing it.
+ * </p>
+ *
+ * <p>A write is queued as the {@link BookEvent} of the write, encoded like the events of the book event stream. A
+ * write that cannot be flushed is moved, as is, to a dead letter stream. Every key shares the {@code {write-behind}}
+ * hash tag, so in a cluster the scripts touching several of them run on one node.</p>
+ *
+ * <p>The last queued write of each book is also kept in a hash of pending writes, in the same call that queues it, and
+ * removed in the same call that removes it from the queue once flushed, unless a later write of the book was queued
+ * meanwhile. A queued delete stays there as a tombstone, so a book read before its writes are flushed is read as last
+ * written, not as the database still holds it.</p>
+ *
+ * <p>Each lease taken gets the next token of a fence counter. The flusher commits with it, see
+ * {@link BookJpaBatchRepository#advanceFence}.</p>
+ *
+ * @author cjrequena
+ */
+@Slf4j
+@Repository
+public class BookWriteBehindRepository {
+
+  private static final String KEY_PREFIX = "books:{write-behind}:";
+  private static final String QUEUE_KEY = KEY_PREFIX + "queue";             // Writes not yet flushed, oldest first
+  private static final String DEAD_LETTERS_KEY = KEY_PREFIX + "dead-letters"; // Writes given up on
+  private static final String LEASE_KEY = KEY_PREFIX + "lease";             // Owner of the flush and its token
+  private static final String FENCE_KEY = KEY_PREFIX + "fence";             // Token of the last lease taken
+  private static final String PENDING_KEY = KEY_PREFIX + "pending";         // Last queued write of each book, by Id
+
+  /* =========================================================
+   * Lua Scripts
+   * ========================================================= */
+
+  /**
+   * Takes the lease if it is free, with the next token of the fence counter, or extends it if the caller already holds
+   * it. The lease is stored as the owner, a space and its token. Replies the token if the caller holds the lease, 0
+   * otherwise.
+   */
+  private static final String LUA_ACQUIRE_LEASE = """
+        local lease = redis.call('GET', KEYS[1])
+        if not lease then
+            local token = redis.call('INCR', KEYS[2])
+            redis.call('SET', KEYS[1], ARGV[1] .. ' ' .. token, 'PX', ARGV[2])
+            return token
+        end
+        if string.sub(lease, 1, #ARGV[1] + 1) == ARGV[1] .. ' ' then
+            redis.call('PEXPIRE', KEYS[1], ARGV[2])
+            return tonumber(string.sub(lease, #ARGV[1] + 2))
+        end
+        return 0
+    """;
+
+  /**
+   * Frees the lease if the caller holds it.
+   */
+  private static final String LUA_RELEASE_LEASE = """
+        local lease = redis.call('GET', KEYS[1])
+        if lease and string.sub(lease, 1, #ARGV[1] + 1) == ARGV[1] .. ' ' then
+            return redis.call('DEL', KEYS[1])
+        end
+        return 0
+    """;
+
+  /**
+   * Raises the fence counter to at least the given token, so the next lease gets a later token than any committed one.
+   */
+  private static final String LUA_RAISE_FENCE = """
+        local token = tonumber(redis.call('GET', KEYS[1]) or '0')
+        if token < tonumber(ARGV[1]) then
+            redis.call('SET', KEYS[1], ARGV[1])
+        end
+        return 1
+    """;
+
+  /**
+   * Queues writes, each given as its book Id, the number of its stream fields and values, and those, and records each
+   * as the pending write of its book, as its record ID, a space and the pending write. Replies the record IDs.
+   */
+  private static final String LUA_ENQUEUE = """
+        local recordIds = {}
+        local i = 1
+        while i <= #ARGV do
+            local count = tonumber(ARGV[i + 2])
+            local recordId = redis.call('XADD', KEYS[1], '*', unpack(ARGV, i + 3, i + 2 + count))
+            redis.call('HSET', KEYS[2], ARGV[i], recordId .. ' ' .. ARGV[i + 1])
+            recordIds[#recordIds + 1] = recordId
+            i = i + 3 + count
+        end
+        return recordIds
+    """;
+
+  /**
+   * Removes flushed writes, given as record ID and book Id pairs, from the queue, and from the pending writes unless a
+   * later write of the book is pending. Replies the number of writes removed from the queue.
+   */
+  private static final String LUA_REMOVE = """
+        local removed = 0
+        for i = 1, #ARGV, 2 do
+            removed = removed + redis.call('XDEL', KEYS[1], ARGV[i])
+            local pending = redis.call('HGET', KEYS[2], ARGV[i + 1])
+            if pending and string.sub(pending, 1, #ARGV[i] + 1) == ARGV[i] .. ' ' then
+                redis.call('HDEL', KEYS[2], ARGV[i + 1])
+            end
+        end
+        return removed
+    """;
+
+  /**
+   * Moves a queued write, with its fields as they are, to the dead letter stream, and drops it from the pending writes
+   * unless a later write of the book is pending. Replies 1 if it was still queued.
+   */
+  private static final String LUA_DEAD_LETTER = """
+        local entries = redis.call('XRANGE', KEYS[1], ARGV[1], ARGV[1])
+        if #entries == 0 then
+            return 0
+        end
+        redis.call('XADD', KEYS[2], '*', 'queued-id', ARGV[1], unpack(entries[1][2]))
+        local pending = redis.call('HGET', KEYS[3], ARGV[2])
+        if pending and string.sub(pending, 1, #ARGV[1] + 1) == ARGV[1] .. ' ' then
+            redis.call('HDEL', KEYS[3], ARGV[2])
+        end
+        return redis.call('XDEL', KEYS[1], ARGV[1])
+    """;
+
+  private final RedisTemplate<String, Object> redisTemplate;
+  private final RedisScriptLibrary scripts;
+  private final RedisScript<Long> acquireLeaseScript;
+  private final RedisScript<Long> releaseLeaseScript;
+  private final RedisScript<Long> raiseFenceScript;
+  private final RedisScript<Long> deadLetterScript;
+  private final RedisScript<List> enqueueScript;
+  private final RedisScript<Long> removeScript;
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  public BookWriteBehindRepository(RedisTemplate<String, Object> redisTemplate, RedisScriptLibrary scripts) {
+    this.redisTemplate = redisTemplate;
+    this.scripts = scripts;
+    this.enqueueScript = scripts.register("books-write-behind-enqueue", LUA_ENQUEUE, List.class);
+    this.removeScript = scripts.register("books-write-behind-remove", LUA_REMOVE, Long.class);
+    this.acquireLeaseScript = scripts.register("books-write-behind-acquire-lease", LUA_ACQUIRE_LEASE, Long.class);
+    this.releaseLeaseScript = scripts.register("books-write-behind-release-lease", LUA_RELEASE_LEASE, Long.class);
+    this.raiseFenceScript = scripts.register("books-write-behind-raise-fence", LUA_RAISE_FENCE, Long.class);
+    this.deadLetterScript = scripts.register("books-write-behind-dead-letter", LUA_DEAD_LETTER, Long.class);
+  }
+
+  /* =========================================================
+   * Queue
+   * ========================================================= */
+
+  /**
+   * Queues a book write and records it as the pending write of the book, in one atomic call.
+   *
+   * @param write the event of the write
+   * @return the record ID of the queued write
+   * @throws IllegalArgumentException if write, its type or its Id is null
+   */
+  public RecordId enqueue(BookEvent write) {
+    validateWrite(write);
+
+    try {
+      RecordId recordId = RecordId.of(enqueueWrites(List.of(write)).get(0));
+      log.debug("Queued book write {} of {} - RecordId: {}", write.getType(), write.getId(), recordId);
+      return recordId;
+    } catch (Exception e) {
+      log.error("Failed to queue book write for Id: {}", write.getId(), e);
+      throw new BookRedisRepository.RedisOperationException("Failed to queue book write", e);
+    }
+  }
+
+  /**
+   * Queues book writes in order, and records them as the pending writes of their books, in one atomic call.
+   *
+   * @param writes the events of the writes
+   * @throws IllegalArgumentException if a write, its type or its Id is null
+   */
+  public void enqueueAll(Collection<BookEvent> writes) {
+    Objects.requireNonNull(writes, "Writes cannot be null");
+    writes.forEach(this::validateWrite);
+    if (writes.isEmpty()) {
+      return;
+    }
+
+    try {
+      enqueueWrites(writes);
+      log.debug("Queued {} book writes", writes.size());
+    } catch (Exception e) {
+      log.error("Failed to queue {} book writes", writes.size(), e);
+      throw new BookRedisRepository.RedisOperationException("Failed to queue book writes", e);
+    }
+  }
+
+  /**
+   * Reads the pending write of a book, its last write not flushed yet.
+   *
+   * @param id the book Id
+   * @return the pending write, a {@link BookEvent.Type#DELETED} write being a tombstone, or empty if every write of
+   * the book is flushed
+   */
+  public Optional<BookEvent> findPending(String id) {
+    Objects.requireNonNull(id, "Id cannot be null");
+    return Optional.ofNullable(findPending(List.of(id)).get(id));
+  }
+
+  /**
+   * Reads the pending writes of some books in one call.
+   *
+   * @param ids the book Ids
+   * @return the pending writes by book Id, without the books whose writes are all flushed
+   */
+  public Map<String, BookEvent> findPending(Collection<String> ids) {
+    Objects.requireNonNull(ids, "Ids cannot be null");
+    if (ids.isEmpty()) {
+      return Collections.emptyMap();
+    }
+
+    List<String> fields = new ArrayList<>(ids);
+    byte[][] rawFields = fields.stream().map(field -> field.getBytes(StandardCharsets.UTF_8)).toArray(byte[][]::new);
+    try {
+      List<byte[]> values = redisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+        connection.hashCommands().hMGet(PENDING_KEY.getBytes(StandardCharsets.UTF_8), rawFields));
+      Map<String, BookEvent> pending = new HashMap<>();
+      for (int i = 0; values != null && i < values.size(); i++) {
+        if (values.get(i) != null) {
+          pending.put(fields.get(i), decodePending(values.get(i)));
+        }
+      }
+      return pending;
+    } catch (Exception e) {
+      log.error("Failed to read the pending writes of {} books", ids.size(), e);
+      throw new BookRedisRepository.RedisOperationException("Failed to read pending book writes", e);
+    }
+  }
+
+  /**
+   * Reads the pending writes of every book in one call.
+   *
+   * @return the pending writes by book Id
+   */
+  public Map<String, BookEvent> findAllPending() {
+    try {
+      Map<byte[], byte[]> entries = redisTemplate.execute((RedisCallback<Map<byte[], byte[]>>) connection ->
+        connection.hashCommands().hGetAll(PENDING_KEY.getBytes(StandardCharsets.UTF_8)));
+      Map<String, BookEvent> pending = new HashMap<>();
+      if (entries != null) {
+        entries.forEach((field, value) -> pending.put(new String(field, StandardCharsets.UTF_8), decodePending(value)));
+      }
+      return pending;
+    } catch (Exception e) {
+      log.error("Failed to read the pending book writes", e);
+      throw new BookRedisRepository.RedisOperationException("Failed to read pending book writes", e);
+    }
+  }
+
+  /**
+   * Reads the oldest queued writes, without removing them.
+   *
+   * @param count the maximum number of writes to read
+   * @return the writes by record ID, oldest first
+   */
+  @SuppressWarnings("unchecked")
+  public Map<RecordId, BookEvent> peek(int count) {
+    if (count <= 0) {
+      throw new IllegalArgumentException("Count must be positive");
+    }
+
+    List<MapRecord<String, Object, Object>> records = redisTemplate.opsForStream()
+      .range(QUEUE_KEY, Range.unbounded(), Limit.limit().count(count));
+    Map<RecordId, BookEvent> writes = new LinkedHashMap<>();
+    if (records != null) {
+      records.forEach(record ->
+        writes.put(record.getId(), BookRedisRepository.toBookEvent((Map<String, Object>) (Map<?, ?>) record.getValue())));
+    }
+    return writes;
+  }
+
+  /**
+   * Removes flushed writes from the queue, and from the pending writes of their books unless a later write of the book
+   * is pending, in one atomic call.
+   *
+   * @param writes the flushed writes by record ID
+   */
+  public void remove(Map<RecordId, BookEvent> writes) {
+    if (writes.isEmpty()) {
+      return;
+    }
+    List<Object> args = new ArrayList<>(writes.size() * 2);
+    writes.forEach((recordId, write) -> {
+      args.add(recordId.getValue());
+      args.add(write.getId());
+    });
+    scripts.execute(removeScript, List.of(QUEUE_KEY, PENDING_KEY), args.toArray());
+  }
+
+  /**
+   * Moves a queued write to the dead letter stream, in one atomic call. The book is then read from the database, unless
+   * a later write of it is pending.
+   *
+   * @param recordId the record ID of the write
+   * @param write    the write
+   * @return true if the write was moved, false if it was no longer queued
+   */
+  public boolean deadLetter(RecordId recordId, BookEvent write) {
+    Long moved = scripts.execute(deadLetterScript, List.of(QUEUE_KEY, DEAD_LETTERS_KEY, PENDING_KEY),
+      recordId.getValue(), write.getId());
+    return moved != null && moved == 1;
+  }
+
+  /**
+   * Counts the writes not flushed yet.
+   *
+   * @return the queue length
+   */
+  public long size() {
+    Long size = redisTemplate.opsForStream().size(QUEUE_KEY);
+    return size != null ? size : 0;
+  }
+
+  /* =========================================================
+   * Lease
+   * ========================================================= */
+
+  /**
+   * Takes or extends the lease of the flush. Every lease taken gets a later token than the previous one, the fencing
+   * token its flushes commit with, so a node that lost its lease cannot commit after the node that took it over.
+   *
+   * @param owner the unique name of the caller, without spaces
+   * @param ttl   how long the lease is held without another call
+   * @return the token of the lease if the caller holds it, 0 otherwise
+   */
+  public long acquireLease(String owner, Duration ttl) {
+    Long token = scripts.execute(acquireLeaseScript, List.of(LEASE_KEY, FENCE_KEY), owner, ttl.toMillis());
+    return token != null ? token : 0;
+  }
+
+  /**
+   * Raises the token of the next leases above a token committed already, e.g. once the fence counter was lost with the
+   * Redis data.
+   *
+   * @param token the last committed token
+   */
+  public void raiseFence(long token) {
+    scripts.execute(raiseFenceScript, List.of(FENCE_KEY), token);
+  }
+
+  /**
+   * Frees the lease of the flush, if the caller holds it.
+   *
+   * @param owner the unique name of the caller
+   */
+  public void releaseLease(String owner) {
+    scripts.execute(releaseLeaseScript, List.of(LEASE_KEY), owner);
+  }
+
+  /* =========================================================
+   * Encoding
+   * ========================================================= */
+
+  /**
+   * Queues writes with the enqueue script, their stream fields serialized like {@code opsForStream().add} does.
+   */
+  @SuppressWarnings("unchecked")
+  private List<String> enqueueWrites(Collection<BookEvent> writes) {
+    RedisSerializer<Object> fieldSerializer = (RedisSerializer<Object>) redisTemplate.getHashKeySerializer();
+    RedisSerializer<Object> valueSerializer = (RedisSerializer<Object>) redisTemplate.getHashValueSerializer();
+    List<Object> args = new ArrayList<>();
+    for (BookEvent write : writes) {
+      Map<String, String> body = BookRedisRepository.toBody(write);
+      args.add(write.getId());
+      args.add(encodePending(write));
+      args.add(body.size() * 2);
+      body.forEach((field, value) -> {
+        args.add(fieldSerializer.serialize(field));
+        args.add(valueSerializer.serialize(value));
+      });
+    }
+    List<?> recordIds = scripts.execute(enqueueScript, List.of(QUEUE_KEY, PENDING_KEY), args.toArray());
+    if (recordIds == null || recordIds.size() != writes.size()) {
+      throw new IllegalStateException("Expected " + writes.size() + " record IDs, got " + recordIds);
+    }
+    return recordIds.stream().map(String::valueOf).toList();
+  }
+
+  private String encodePending(BookEvent write) {
+    try {
+      return objectMapper.writeValueAsString(write);
+    } catch (JsonProcessingException e) {
+      throw new IllegalArgumentException("Failed to encode book write of " + write.getId(), e);
+    }
+  }
+
+  /**
+   * Reads back a pending write, recorded as its record ID, a space and the write.
+   */
+  private BookEvent decodePending(byte[] raw) {
+    String value = new String(raw, StandardCharsets.UTF_8);
+    try {
+      return objectMapper.readValue(value.substring(value.indexOf(' ') + 1), BookEvent.class);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Failed to decode pending book write " + value, e);
+    }
+  }
+
+  private void validateWrite(BookEvent write) {
+    Objects.requireNonNull(write, "Write cannot be null");
+    Objects.requireNonNull(write.getType(), "Write type cannot be null");
+    Objects.requireNonNull(write.getId(), "Id cannot be null");
+  }
+}
@@ -0,0 +1,158 @@
+package com.cjrequena.sample.persistence.repository.cache;
+
+import com.cjrequena.sample.configuration.RedisConfigurationProperties;
+import com.cjrequena.sample.domain.exception.CacheException;
+import com.cjrequena.sample.domain.model.Book;
+import com.cjrequena.sample.shared.redis.HashShards;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.core.ReactiveHashOperations;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Non-blocking Redis cache repository for Book entities.
+ *
+ * <p>Works on the same hash shards as {@link BookCacheRedisHashOpsRepository}, so the blocking and the reactive paths
+ * share one cache. Listing walks every shard with HSCAN at once and emits the books as they arrive instead of reading
+ * whole hashes with HGETALL.</p>
+ *
+ * @author cjrequena
+ */
+@Repository
+@Qualifier("bookCacheReactiveRedisHashOpsRepository")
+@Slf4j
+public class BookCacheReactiveRedisHashOpsRepository implements ReactiveCacheRepository<String, Book> {
+
+  /* =========================================================
+   * Redis Key Constants
+   * ========================================================= */
+  private static final String KEY_PREFIX = "books:";
+  private static final String HASH_KEY = KEY_PREFIX + "hash";           // Primary storage, prefix of its shards shared with the blocking repository
+  private static final int SCAN_COUNT = 1_000;                          // Fields per HSCAN
+
+
+  /* =========================================================
+   * Redis Operations
+   * ========================================================= */
+  private final ReactiveRedisTemplate<String, Object> reactiveRedisTemplate;
+  private final ReactiveHashOperations<String, String, Book> hashOps;
+  private final HashShards shards;
+
+
+  @Autowired
+  public BookCacheReactiveRedisHashOpsRepository(ReactiveRedisTemplate<String, Object> reactiveRedisTemplate,
+    RedisConfigurationProperties redisConfigurationProperties) {
+    this.reactiveRedisTemplate = reactiveRedisTemplate;
+    this.hashOps = reactiveRedisTemplate.opsForHash();
+    this.shards = new HashShards(HASH_KEY, redisConfigurationProperties.getHash().getShards());
+  }
+
+  /* =========================================================
+   * HASH Operations - Primary Storage
+   * ========================================================= */
+
+  @Override
+  public Mono<Void> load(List<Book> books) {
+    Objects.requireNonNull(books, "Books list cannot be null");
+
+    Map<String, Book> bookMap = books.stream()
+      .filter(Objects::nonNull)
+      .filter(book -> book.getId() != null)
+      .collect(Collectors.toMap(
+        Book::getId,
+        book -> book,
+        (existing, replacement) -> replacement
+      ));
+
+    // One key per DEL and HSET, the shards live on different slots
+    return Flux.fromIterable(shards.keys())
+      .concatWithValues(HASH_KEY) // Single hash of the former, unsharded layout
+      .flatMap(reactiveRedisTemplate::delete)
+      .thenMany(Flux.fromIterable(shards.group(bookMap).entrySet()))
+      .flatMap(shard -> hashOps.putAll(shard.getKey(), shard.getValue()))
+      .then()
+      .doOnSuccess(loaded -> log.info("Loaded {} books into {} hash shards", bookMap.size(), shards.keys().size()))
+      .onErrorMap(e -> new CacheException("Failed to load books", e));
+  }
+
+  @Override
+  public Mono<Void> add(Book book) {
+    validateBook(book);
+
+    return hashOps.put(shards.key(book.getId()), book.getId(), book)
+      .doOnSuccess(added -> log.debug("Added book to hash: {}", book.getId()))
+      .onErrorMap(e -> new CacheException("Failed to add book", e))
+      .then();
+  }
+
+  @Override
+  public Flux<Book> retrieve() {
+    return Flux.fromIterable(shards.keys())
+      .flatMap(key -> hashOps.scan(key, ScanOptions.scanOptions().count(SCAN_COUNT).build()))
+      .map(Map.Entry::getValue)
+      .onErrorResume(e -> {
+        log.error("Failed to retrieve books from hash", e);
+        return Flux.empty();
+      });
+  }
+
+  @Override
+  public Mono<Book> retrieveById(String id) {
+    Objects.requireNonNull(id, "Id cannot be null");
+
+    return hashOps.get(shards.key(id), id)
+      .onErrorResume(e -> {
+        log.error("Failed to retrieve book from hash: {}", id, e);
+        return Mono.empty();
+      });
+  }
+
+  @Override
+  public Mono<Void> removeById(String id) {
+    Objects.requireNonNull(id, "Id cannot be null");
+
+    return hashOps.remove(shards.key(id), id)
+      .doOnSuccess(removed -> log.debug("Removed book from hash: {}", id))
+      .onErrorMap(e -> new CacheException("Failed to remove book", e))
+      .then();
+  }
+
+  @Override
+  public Mono<Boolean> isEmpty() {
+    return Flux.fromIterable(shards.keys())
+      .flatMap(hashOps::size)
+      .all(size -> size == 0)
+      .onErrorResume(e -> {
+        log.error("Failed to check if hash is empty", e);
+        return Mono.just(true);
+      });
+  }
+
+  public Flux<Book> retrieveByAuthor(String author) {
+    Objects.requireNonNull(author, "Author cannot be null");
+
+    return retrieve()
+      .filter(book -> book.getAuthor() != null)
+      .filter(book -> book.getAuthor().equalsIgnoreCase(author));
+  }
+
+  /* =========================================================
+   * VALIDATION METHODS
+   * ========================================================= */
+
+  private void validateBook(Book book) {
+    Objects.requireNonNull(book, "Book cannot be null");
+    Objects.requireNonNull(book.getId(), "Book Id cannot be null");
+  }
+
+}
@@ -1,12 +1,18 @@
 package com.cjrequena.sample.persistence.repository.cache;
 
+import com.cjrequena.sample.configuration.RedisConfigurationProperties;
 import com.cjrequena.sample.domain.exception.CacheException;
 import com.cjrequena.sample.domain.model.Book;
+import com.cjrequena.sample.shared.redis.HashShards;
+import com.cjrequena.sample.shared.redis.RedisScriptLibrary;
+import com.cjrequena.sample.shared.redis.ShardedHashOperations;
+import com.cjrequena.sample.shared.redis.TrackingNearCache;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.data.redis.core.HashOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Repository;
 
 import java.util.*;
@@ -15,6 +21,16 @@ import java.util.stream.Collectors;
 /**
  * Comprehensive Redis cache repository for Book entities.
  *
+ * <p>The books are spread across {@code spring.redis.hash.shards} hashes instead of one, so in a cluster the cache and
+ * its traffic spread across the nodes, and no single command reads or writes every book. See {@link HashShards}.</p>
+ *
+ * <p>With {@code cache.near.enabled}, single book reads go through a {@link TrackingNearCache}: a hot book is read
+ * from Redis once, then served locally until a write to its shard, from any instance, invalidates it.</p>
+ *
+ * <p>A book is replaced with a compare-and-set script, in one round trip and without a window where it is missing
+ * from the cache. {@link #swap} is the variant that leaves a book written concurrently in place, for callers that
+ * read it again and retry.</p>
+ *
  * @author cjrequena
  */
 @Repository
@@ -26,20 +42,85 @@ public class BookCacheRedisHashOpsRepository implements CacheRepository<String,
    * Redis Key Constants
    * ========================================================= */
   private static final String KEY_PREFIX = "books:";
-  private static final String HASH_KEY = KEY_PREFIX + "hash";           // Primary storage
+  private static final String HASH_KEY = KEY_PREFIX + "hash";           // Primary storage, prefix of its shards
+
+  /* =========================================================
+   * Lua Scripts
+   * ========================================================= */
+
+  /**
+   * Replaces a field holding the expected value, or no value. A field holding another value was written concurrently
+   * and is deleted, so the next read loads the book again instead of keeping either version. Replies 1 if the field
+   * was replaced, 0 if it was deleted.
+   */
+  private static final String LUA_COMPARE_AND_SET = """
+        local current = redis.call('HGET', KEYS[1], ARGV[1])
+        if not current or current == ARGV[2] then
+            redis.call('HSET', KEYS[1], ARGV[1], ARGV[3])
+            return 1
+        end
+        redis.call('HDEL', KEYS[1], ARGV[1])
+        return 0
+    """;
+
+  /**
+   * Deletes a field holding the expected value. Replies 1 if the field was deleted.
+   */
+  private static final String LUA_COMPARE_AND_DELETE = """
+        if redis.call('HGET', KEYS[1], ARGV[1]) == ARGV[2] then
+            return redis.call('HDEL', KEYS[1], ARGV[1])
+        end
+        return 0
+    """;
+
+  /**
+   * Sets, or deletes if the replacement is empty, a field holding the expected value, an empty expected value standing
+   * for no value. A field holding another value is left as it is. Replies 1 if the field was swapped.
+   */
+  private static final String LUA_SWAP = """
+        local current = redis.call('HGET', KEYS[1], ARGV[1]) or ''
+        if current ~= ARGV[2] then
+            return 0
+        end
+        if ARGV[3] == '' then
+            redis.call('HDEL', KEYS[1], ARGV[1])
+        else
+            redis.call('HSET', KEYS[1], ARGV[1], ARGV[3])
+        end
+        return 1
+    """;
 
+  private static final byte[] NO_VALUE = new byte[0];
 
   /* =========================================================
    * Redis Operations
    * ========================================================= */
   private final RedisTemplate<String, Book> redisTemplate;
-  private final HashOperations<String, String, Book> hashOps;
+  private final ShardedHashOperations<Book> hashOps;
+  private final TrackingNearCache<Book> nearCache;                      // Null when not enabled
+  private final RedisScriptLibrary scripts;
+  private final RedisScript<Long> compareAndSetScript;
+  private final RedisScript<Long> compareAndDeleteScript;
+  private final RedisScript<Long> swapScript;
 
 
+  public BookCacheRedisHashOpsRepository(RedisTemplate<String, Book> redisTemplate,
+    RedisConfigurationProperties redisConfigurationProperties) {
+    this(redisTemplate, redisConfigurationProperties, new RedisScriptLibrary(redisTemplate), Optional.empty());
+  }
+
   @Autowired
-  public BookCacheRedisHashOpsRepository(RedisTemplate<String, Book> redisTemplate) {
+  public BookCacheRedisHashOpsRepository(RedisTemplate<String, Book> redisTemplate,
+    RedisConfigurationProperties redisConfigurationProperties, RedisScriptLibrary scripts,
+    Optional<TrackingNearCache<Book>> nearCache) {
     this.redisTemplate = redisTemplate;
-    this.hashOps = redisTemplate.opsForHash();
+    this.hashOps = new ShardedHashOperations<>(redisTemplate,
+      new HashShards(HASH_KEY, redisConfigurationProperties.getHash().getShards()));
+    this.nearCache = nearCache.filter(TrackingNearCache::isEnabled).orElse(null);
+    this.scripts = scripts;
+    this.compareAndSetScript = scripts.register("books-hash-compare-and-set", LUA_COMPARE_AND_SET, Long.class);
+    this.compareAndDeleteScript = scripts.register("books-hash-compare-and-delete", LUA_COMPARE_AND_DELETE, Long.class);
+    this.swapScript = scripts.register("books-hash-swap", LUA_SWAP, Long.class);
   }
 
   /* =========================================================
@@ -52,7 +133,8 @@ public class BookCacheRedisHashOpsRepository implements CacheRepository<String,
 
     try {
       // Clear existing hash
-      redisTemplate.delete(HASH_KEY);
+      hashOps.clear();
+      redisTemplate.delete(HASH_KEY); // Single hash of the former, unsharded layout
 
       if (books.isEmpty()) {
         log.info("No books to load into Redis cache");
@@ -69,9 +151,9 @@ public class BookCacheRedisHashOpsRepository implements CacheRepository<String,
           (existing, replacement) -> replacement
         ));
 
-      hashOps.putAll(HASH_KEY, bookMap);
+      hashOps.putAll(bookMap);
 
-      log.info("Loaded {} books into hash storage", bookMap.size());
+      log.info("Loaded {} books into {} hash shards", bookMap.size(), hashOps.getShards().keys().size());
     } catch (Exception e) {
       log.error("Failed to load books into hash", e);
       throw new CacheException("Failed to load books", e);
@@ -83,7 +165,8 @@ public class BookCacheRedisHashOpsRepository implements CacheRepository<String,
     validateBook(book);
 
     try {
-      hashOps.put(HASH_KEY, book.getId(), book);
+      hashOps.put(book.getId(), book);
+      evictNearCache(book.getId());
       log.debug("Added book to hash: {}", book.getId());
     } catch (Exception e) {
       log.error("Failed to add book to hash: {}", book.getId(), e);
@@ -91,16 +174,81 @@ public class BookCacheRedisHashOpsRepository implements CacheRepository<String,
     }
   }
 
-  @Override
-  public List<Book> retrieve() {
+  /**
+   * Writes books in one pipeline, the last one of each Id wins.
+   *
+   * @param books the books
+   */
+  public void addAll(Collection<Book> books) {
+    Objects.requireNonNull(books, "Books list cannot be null");
+    books.forEach(this::validateBook);
+
+    try {
+      Map<String, Book> bookMap = new LinkedHashMap<>();
+      books.forEach(book -> bookMap.put(book.getId(), book));
+      hashOps.putAll(bookMap);
+      bookMap.keySet().forEach(this::evictNearCache);
+      log.debug("Added {} books to hash", bookMap.size());
+    } catch (Exception e) {
+      log.error("Failed to add {} books to hash", books.size(), e);
+      throw new CacheException("Failed to add books", e);
+    }
+  }
+
+  /**
+   * Replaces a cached book in one atomic call, if the cache still holds the expected version of it or none.
+   *
+   * @param expected    the book as it was before the write, as last cached
+   * @param replacement the book as written
+   * @return true if the book was replaced, false if the cache held another version, which was evicted
+   */
+  public boolean replace(Book expected, Book replacement) {
+    validateBook(expected);
+    validateBook(replacement);
+    if (!expected.getId().equals(replacement.getId())) {
+      throw new IllegalArgumentException("Cannot replace book " + expected.getId() + " with book " + replacement.getId());
+    }
+
     try {
-      Map<String, Book> bookMap = hashOps.entries(HASH_KEY);
+      Long replaced = scripts.execute(compareAndSetScript, List.of(hashOps.getShards().key(replacement.getId())),
+        replacement.getId(), rawValue(expected), rawValue(replacement));
+      evictNearCache(replacement.getId());
+      log.debug("Replaced book in hash: {} - Result: {}", replacement.getId(), replaced);
+      return replaced != null && replaced == 1;
+    } catch (Exception e) {
+      log.error("Failed to replace book in hash: {}", replacement.getId(), e);
+      throw new CacheException("Failed to replace book", e);
+    }
+  }
 
-      if (bookMap == null || bookMap.isEmpty()) {
-        return Collections.emptyList();
-      }
+  /**
+   * Swaps a cached book in one atomic call, if the cache still holds the expected version of it. Unlike
+   * {@link #replace}, a book written concurrently is left in place.
+   *
+   * @param id          the book Id
+   * @param expected    the book as last read from {@link #peek}, null if it was not cached
+   * @param replacement the book to cache, null to remove it
+   * @return true if the book was swapped, false if the cache held another version
+   */
+  public boolean swap(String id, Book expected, Book replacement) {
+    Objects.requireNonNull(id, "Id cannot be null");
+
+    try {
+      Long swapped = scripts.execute(swapScript, List.of(hashOps.getShards().key(id)), id,
+        expected != null ? rawValue(expected) : NO_VALUE, replacement != null ? rawValue(replacement) : NO_VALUE);
+      evictNearCache(id);
+      log.debug("Swapped book in hash: {} - Result: {}", id, swapped);
+      return swapped != null && swapped == 1;
+    } catch (Exception e) {
+      log.error("Failed to swap book in hash: {}", id, e);
+      throw new CacheException("Failed to swap book", e);
+    }
+  }
 
-      return new ArrayList<>(bookMap.values());
+  @Override
+  public List<Book> retrieve() {
+    try {
+      return hashOps.values();
     } catch (Exception e) {
       log.error("Failed to retrieve books from hash", e);
       return Collections.emptyList();
@@ -112,19 +260,58 @@ public class BookCacheRedisHashOpsRepository implements CacheRepository<String,
     Objects.requireNonNull(id, "Id cannot be null");
 
     try {
-      return hashOps.get(HASH_KEY, id);
+      // While the tracked connection is down, read on the pooled connections instead of waiting for it to reconnect
+      return nearCache != null && nearCache.isTracking() ? nearCache.hget(hashOps.getShards().key(id), id) : hashOps.get(id);
     } catch (Exception e) {
       log.error("Failed to retrieve book from hash: {}", id, e);
       return null;
     }
   }
 
+  /**
+   * Reads a book from Redis, bypassing the near cache, to compare it with {@link #swap}.
+   *
+   * @param id the book Id
+   * @return the cached book, null if it is not cached
+   */
+  public Book peek(String id) {
+    Objects.requireNonNull(id, "Id cannot be null");
+
+    try {
+      return hashOps.get(id);
+    } catch (Exception e) {
+      log.error("Failed to peek book in hash: {}", id, e);
+      throw new CacheException("Failed to peek book", e);
+    }
+  }
+
+  /**
+   * Reads some books in one pipeline.
+   *
+   * @param ids the book Ids
+   * @return the cached books by Id, without the books not cached
+   */
+  public Map<String, Book> retrieveByIds(Collection<String> ids) {
+    Objects.requireNonNull(ids, "Ids cannot be null");
+    if (ids.isEmpty()) {
+      return Collections.emptyMap();
+    }
+
+    try {
+      return hashOps.multiGet(ids);
+    } catch (Exception e) {
+      log.error("Failed to retrieve {} books from hash", ids.size(), e);
+      return Collections.emptyMap();
+    }
+  }
+
   @Override
   public void removeById(String id) {
     Objects.requireNonNull(id, "Id cannot be null");
 
     try {
-      hashOps.delete(HASH_KEY, id);
+      hashOps.delete(id);
+      evictNearCache(id);
       log.debug("Removed book from hash: {}", id);
     } catch (Exception e) {
       log.error("Failed to remove book from hash: {}", id, e);
@@ -132,11 +319,52 @@ public class BookCacheRedisHashOpsRepository implements CacheRepository<String,
     }
   }
 
+  /**
+   * Removes books in one pipeline.
+   *
+   * @param ids the book Ids
+   */
+  public void removeAll(Collection<String> ids) {
+    Objects.requireNonNull(ids, "Ids cannot be null");
+    if (ids.isEmpty()) {
+      return;
+    }
+
+    try {
+      hashOps.deleteAll(ids);
+      ids.forEach(this::evictNearCache);
+      log.debug("Removed {} books from hash", ids.size());
+    } catch (Exception e) {
+      log.error("Failed to remove {} books from hash", ids.size(), e);
+      throw new CacheException("Failed to remove books", e);
+    }
+  }
+
+  /**
+   * Removes a cached book in one atomic call, if the cache holds the expected version of it.
+   *
+   * @param expected the book as it should be cached
+   * @return true if the book was removed
+   */
+  public boolean removeIfUnchanged(Book expected) {
+    validateBook(expected);
+
+    try {
+      Long removed = scripts.execute(compareAndDeleteScript, List.of(hashOps.getShards().key(expected.getId())),
+        expected.getId(), rawValue(expected));
+      evictNearCache(expected.getId());
+      log.debug("Removed book from hash if unchanged: {} - Result: {}", expected.getId(), removed);
+      return removed != null && removed == 1;
+    } catch (Exception e) {
+      log.error("Failed to remove book from hash: {}", expected.getId(), e);
+      throw new CacheException("Failed to remove book", e);
+    }
+  }
+
   @Override
   public boolean isEmpty() {
     try {
-      Long size = hashOps.size(HASH_KEY);
-      return size == null || size == 0;
+      return hashOps.size() == 0;
     } catch (Exception e) {
       log.error("Failed to check if hash is empty", e);
       return true;
@@ -152,6 +380,20 @@ public class BookCacheRedisHashOpsRepository implements CacheRepository<String,
       .collect(Collectors.toList());
   }
 
+  /**
+   * Evicts a book written by this instance from the near cache right away, the invalidation pushed by Redis follows.
+   */
+  private void evictNearCache(String id) {
+    if (nearCache != null) {
+      nearCache.evict(hashOps.getShards().key(id), id);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private byte[] rawValue(Book book) {
+    return ((RedisSerializer<Book>) redisTemplate.getHashValueSerializer()).serialize(book);
+  }
+
   /* =========================================================
    * VALIDATION METHODS
    * ========================================================= */
@@ -1,21 +1,46 @@
 package com.cjrequena.sample.persistence.repository.cache;
 
 import com.cjrequena.sample.domain.model.Book;
+import com.cjrequena.sample.shared.redis.RedisScriptLibrary;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.zset.Tuple;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Repository;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 /**
  * Comprehensive Redis cache repository for Book entities.
  *
+ * <p>Every book is a string key, and the ids of the cached books are kept in a set next to them. Listing walks that
+ * set with SSCAN and reads the values with pipelined MGETs, and bulk loads are pipelined MSETs, so a full listing or
+ * load costs a few round trips and no command ever scans the keyspace.</p>
+ *
+ * <p>Books are also indexed by author, in a sorted set of {@code <author>\0<id>} members read by lexicographic range,
+ * and a hash of the indexed author of every id. A book is written or deleted along with its id and its index entries
+ * by a Lua script, atomically and in one round trip. Every key shares the {@code {value}} hash tag, so in a cluster the
+ * scripts run on one node, which holds the whole value cache.</p>
+ *
  * @author cjrequena
  */
 @Repository
@@ -26,18 +51,76 @@ public class BookCacheRedisValueOpsRepository implements CacheRepository<String,
   /* =========================================================
    * Redis Key Constants
    * ========================================================= */
-  private static final String KEY_PREFIX = "books:";
+  private static final String KEY_PREFIX = "books:{value}:book:";
+  private static final String IDS_KEY = "books:{value}:ids";            // Ids of the cached books
+  private static final String AUTHORS_KEY = "books:{value}:authors";    // Id -> indexed author
+  private static final String AUTHOR_INDEX_KEY = "books:{value}:author-index"; // <author>\0<id>, all scored 0
+  private static final String LEGACY_KEY_PREFIX = "books:value:";      // Books of the former, untagged layout
+  private static final String LEGACY_IDS_KEY = "books:value-ids";       // Ids of the former, untagged layout
+  private static final int BATCH_SIZE = 1_000;                          // Keys per SSCAN, MGET, MSET and DEL
+  private static final long TTL_SECONDS = TimeUnit.HOURS.toSeconds(1);
+
+  /* =========================================================
+   * Lua Scripts
+   * ========================================================= */
+
+  /**
+   * Writes a book with its TTL, adds its id to the id set and moves its index entry to its author, if any.
+   */
+  private static final String LUA_UPSERT = """
+        local previous = redis.call('HGET', KEYS[3], ARGV[1])
+        if previous and previous ~= ARGV[4] then
+            redis.call('ZREM', KEYS[4], previous .. '\\0' .. ARGV[1])
+        end
+        redis.call('SET', KEYS[1], ARGV[2], 'EX', ARGV[3])
+        redis.call('SADD', KEYS[2], ARGV[1])
+        if ARGV[4] == '' then
+            redis.call('HDEL', KEYS[3], ARGV[1])
+        else
+            redis.call('HSET', KEYS[3], ARGV[1], ARGV[4])
+            redis.call('ZADD', KEYS[4], 0, ARGV[4] .. '\\0' .. ARGV[1])
+        end
+        return 1
+    """;
+
+  /**
+   * Deletes books along with their ids and index entries. KEYS[4..] are the book keys, in the order of the ids in
+   * ARGV. Replies with the number of book keys deleted, which leaves out the expired ones.
+   */
+  private static final String LUA_DELETE = """
+        local deleted = 0
+        for i, id in ipairs(ARGV) do
+            deleted = deleted + redis.call('DEL', KEYS[i + 3])
+            redis.call('SREM', KEYS[1], id)
+            local author = redis.call('HGET', KEYS[2], id)
+            if author then
+                redis.call('HDEL', KEYS[2], id)
+                redis.call('ZREM', KEYS[3], author .. '\\0' .. id)
+            end
+        end
+        return deleted
+    """;
 
   /* =========================================================
    * Redis Operations
    * ========================================================= */
   private final RedisTemplate<String, Book> redisTemplate;
   private final ValueOperations<String, Book> opsForValue;
+  private final RedisScriptLibrary scripts;
+  private final RedisScript<Long> upsertScript;
+  private final RedisScript<Long> deleteScript;
 
-  @Autowired
   public BookCacheRedisValueOpsRepository(RedisTemplate<String, Book> redisTemplate) {
+    this(redisTemplate, new RedisScriptLibrary(redisTemplate));
+  }
+
+  @Autowired
+  public BookCacheRedisValueOpsRepository(RedisTemplate<String, Book> redisTemplate, RedisScriptLibrary scripts) {
     this.redisTemplate = redisTemplate;
     this.opsForValue = redisTemplate.opsForValue();
+    this.scripts = scripts;
+    this.upsertScript = scripts.register("books-value-upsert", LUA_UPSERT, Long.class);
+    this.deleteScript = scripts.register("books-value-delete", LUA_DELETE, Long.class);
   }
 
   /* =========================================================
@@ -51,24 +134,87 @@ public class BookCacheRedisValueOpsRepository implements CacheRepository<String,
 
   @Override
   public void load(List<Book> books) {
-    redisTemplate.delete(redisTemplate.keys(KEY_PREFIX + "*"));
-    books.forEach(book -> opsForValue.set(key(book.getId()), book));
+    clear();
+    for (int from = 0; from < books.size(); from += BATCH_SIZE) {
+      List<Book> batch = books.subList(from, Math.min(from + BATCH_SIZE, books.size()));
+      redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+        Map<byte[], byte[]> values = new LinkedHashMap<>();
+        Map<byte[], byte[]> authors = new LinkedHashMap<>();
+        Set<Tuple> authorIndex = new HashSet<>();
+        byte[][] ids = new byte[batch.size()][];
+        for (int i = 0; i < batch.size(); i++) {
+          Book book = batch.get(i);
+          validateBook(book);
+          values.put(rawKey(key(book.getId())), rawValue(book));
+          ids[i] = rawKey(book.getId());
+          String author = authorKey(book.getAuthor());
+          if (!author.isEmpty()) {
+            authors.put(ids[i], rawKey(author));
+            authorIndex.add(Tuple.of(rawKey(author + '\0' + book.getId()), 0d));
+          }
+        }
+        connection.stringCommands().mSet(values);
+        connection.setCommands().sAdd(rawKey(IDS_KEY), ids);
+        if (!authors.isEmpty()) {
+          connection.hashCommands().hMSet(rawKey(AUTHORS_KEY), authors);
+          connection.zSetCommands().zAdd(rawKey(AUTHOR_INDEX_KEY), authorIndex);
+        }
+        return null;
+      });
+    }
     log.info("Redis cache loaded with {} books.", books.size());
   }
 
+  /**
+   * Writes the book with its TTL, its id and its author index entry in one script call.
+   */
   @Override
   public void add(Book book) {
-    String key = key(book.getId());
-    opsForValue.set(key, book, 1, TimeUnit.HOURS); // Optional expiration
+    validateBook(book);
+    scripts.execute(upsertScript, List.of(key(book.getId()), IDS_KEY, AUTHORS_KEY, AUTHOR_INDEX_KEY),
+      book.getId(), rawValue(book), TTL_SECONDS, authorKey(book.getAuthor()));
   }
 
+  /**
+   * Ids whose value expired are dropped from the id set and the author index on the way.
+   */
   @Override
   public List<Book> retrieve() {
-    return redisTemplate
-      .keys(KEY_PREFIX + "*")
-      .stream()
-      .map(opsForValue::get)
-      .collect(Collectors.toList());
+    return retrieve(scanIds(IDS_KEY));
+  }
+
+  private List<Book> retrieve(List<String> ids) {
+    List<Book> books = new ArrayList<>(ids.size());
+    List<String> expired = new ArrayList<>();
+
+    List<Object> batches = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+      for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+        connection.stringCommands().mGet(ids.subList(from, Math.min(from + BATCH_SIZE, ids.size())).stream()
+          .map(id -> rawKey(key(id)))
+          .toArray(byte[][]::new));
+      }
+      return null;
+    });
+
+    int index = 0;
+    for (Object batch : batches) {
+      for (Object value : (List<?>) batch) {
+        if (value instanceof Book book) {
+          books.add(book);
+        } else {
+          expired.add(ids.get(index));
+        }
+        index++;
+      }
+    }
+
+    for (int from = 0; from < expired.size(); from += BATCH_SIZE) {
+      delete(expired.subList(from, Math.min(from + BATCH_SIZE, expired.size())));
+    }
+    if (!expired.isEmpty()) {
+      log.debug("Dropped {} expired ids from the value cache", expired.size());
+    }
+    return books;
   }
 
   @Override
@@ -77,22 +223,99 @@ public class BookCacheRedisValueOpsRepository implements CacheRepository<String,
     return opsForValue.get(key);
   }
 
+  /**
+   * Deletes the book, its id and its author index entry in one script call.
+   */
   @Override
   public void removeById(String id) {
-    String key = key(id);
-    redisTemplate.delete(key);
+    delete(List.of(id));
   }
 
+  /**
+   * Reads the size of the id set, which may still count books whose value expired since the last listing.
+   */
   @Override
   public boolean isEmpty() {
-    return redisTemplate.keys(KEY_PREFIX + "*").isEmpty();
+    Long size = redisTemplate.execute((RedisCallback<Long>) connection -> connection.setCommands().sCard(rawKey(IDS_KEY)));
+    return size == null || size == 0;
   }
 
+  /**
+   * Reads the ids of the author from the index with ZRANGEBYLEX, then only their books.
+   */
   public List<Book> retrieveByAuthor(String author) {
-    return retrieve()
-      .stream()
-      .filter(book -> book.getAuthor().equalsIgnoreCase(author))
-      .collect(Collectors.toList());
+    Objects.requireNonNull(author, "Author cannot be null");
+
+    String prefix = authorKey(author) + '\0';
+    List<String> ids = new ArrayList<>();
+    redisTemplate.execute((RedisCallback<Object>) connection -> {
+      connection.zSetCommands().zRangeByLex(rawKey(AUTHOR_INDEX_KEY),
+          Range.rightOpen(rawKey(prefix), rawKey(authorKey(author) + '\1')), Limit.unlimited())
+        .forEach(member -> ids.add(new String(member, StandardCharsets.UTF_8).substring(prefix.length())));
+      return null;
+    });
+    return retrieve(ids);
+  }
+
+  /**
+   * Deletes every cached book, the id set and the author index, in pipelined batches. The books of the former layout
+   * are deleted one key per DEL, they live on different slots.
+   */
+  private void clear() {
+    List<String> ids = scanIds(IDS_KEY);
+    for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+      List<String> batch = ids.subList(from, Math.min(from + BATCH_SIZE, ids.size()));
+      redisTemplate.execute((RedisCallback<Long>) connection ->
+        connection.keyCommands().del(batch.stream().map(id -> rawKey(key(id))).toArray(byte[][]::new)));
+    }
+    redisTemplate.delete(List.of(IDS_KEY, AUTHORS_KEY, AUTHOR_INDEX_KEY));
+
+    List<String> legacyIds = scanIds(LEGACY_IDS_KEY);
+    redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+      legacyIds.forEach(id -> connection.keyCommands().del(rawKey(LEGACY_KEY_PREFIX + id)));
+      connection.keyCommands().del(rawKey(LEGACY_IDS_KEY));
+      return null;
+    });
+  }
+
+  private void delete(List<String> ids) {
+    List<String> keys = new ArrayList<>(ids.size() + 3);
+    keys.addAll(List.of(IDS_KEY, AUTHORS_KEY, AUTHOR_INDEX_KEY));
+    ids.forEach(id -> keys.add(key(id)));
+    scripts.execute(deleteScript, keys, ids.toArray());
+  }
+
+  /**
+   * The author as indexed, lower-cased so lookups ignore case. Books without an author are not indexed.
+   */
+  private static String authorKey(String author) {
+    return author != null ? author.toLowerCase(Locale.ROOT) : "";
+  }
+
+  /**
+   * Walks the id set with SSCAN, each call returning about {@link #BATCH_SIZE} ids without blocking the server.
+   */
+  private List<String> scanIds(String idsKey) {
+    List<String> ids = new ArrayList<>();
+    redisTemplate.execute((RedisConnection connection) -> {
+      try (Cursor<byte[]> cursor = connection.setCommands().sScan(rawKey(idsKey),
+        ScanOptions.scanOptions().count(BATCH_SIZE).build())) {
+        while (cursor.hasNext()) {
+          ids.add(redisTemplate.getStringSerializer().deserialize(cursor.next()));
+        }
+      }
+      return null;
+    }, true);
+    return ids;
+  }
+
+  private byte[] rawKey(String key) {
+    return redisTemplate.getStringSerializer().serialize(key);
+  }
+
+  @SuppressWarnings("unchecked")
+  private byte[] rawValue(Book book) {
+    return ((RedisSerializer<Book>) redisTemplate.getValueSerializer()).serialize(book);
   }
 
   /* =========================================================
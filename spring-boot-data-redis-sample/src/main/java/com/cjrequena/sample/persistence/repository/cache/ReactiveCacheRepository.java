@@ -0,0 +1,21 @@
+package com.cjrequena.sample.persistence.repository.cache;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+public interface ReactiveCacheRepository<K, T> {
+
+  Mono<Void> load(List<T> entities);
+
+  Mono<Void> add(T entity);
+
+  Flux<T> retrieve();
+
+  Mono<T> retrieveById(K id);
+
+  Mono<Void> removeById(K id);
+
+  Mono<Boolean> isEmpty();
+}
@@ -0,0 +1,177 @@
+package com.cjrequena.sample.persistence.serializer;
+
+import com.cjrequena.sample.domain.model.Book;
+import com.cjrequena.sample.persistence.entity.BookEntity;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary {@link RedisSerializer} for {@link Book} and {@link BookEntity} values.
+ *
+ * <p>A book is written as a header, a type tag, a field count and its fields as length-prefixed UTF-8 strings, with no
+ * type metadata or field names. Payloads above the compression threshold are LZ4 compressed. Any other value is
+ * delegated to the fallback serializer, which also reads every value without the binary header, so values written
+ * before the switch (JSON) stay readable and are rewritten in binary as they are updated.</p>
+ *
+ * <pre>
+ * header   : MAGIC (1 byte) | flags (1 byte, bit 0 = LZ4) [| uncompressed length (varint), if LZ4]
+ * body     : type (1 byte) | field count (1 byte) | fields
+ * field    : length + 1 (varint, 0 = null) | UTF-8 bytes
+ * </pre>
+ *
+ * <p>Readers ignore trailing fields they do not know, so fields can be appended without breaking older readers.</p>
+ *
+ * @author cjrequena
+ */
+public class BookBinaryRedisSerializer implements RedisSerializer<Object> {
+
+  /**
+   * Not a valid first byte of a UTF-8 JSON document, nor of a JDK serialization stream.
+   */
+  static final byte MAGIC = (byte) 0xB1;
+
+  private static final byte FLAG_LZ4 = 0x01;
+  private static final byte TYPE_BOOK = 1;
+  private static final byte TYPE_BOOK_ENTITY = 2;
+  private static final int FIELDS = 3;
+
+  private final RedisSerializer<Object> fallback;
+  private final boolean compression;
+  private final int compressionThreshold;
+  private final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+  private final LZ4FastDecompressor decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+
+  /**
+   * @param fallback             serializer of the other values, and reader of the values written without the header
+   * @param compression          whether to LZ4 compress the payloads above the threshold
+   * @param compressionThreshold minimum payload size, in bytes, to compress
+   */
+  public BookBinaryRedisSerializer(RedisSerializer<Object> fallback, boolean compression, int compressionThreshold) {
+    this.fallback = fallback;
+    this.compression = compression;
+    this.compressionThreshold = compressionThreshold;
+  }
+
+  @Override
+  public byte[] serialize(Object value) throws SerializationException {
+    final byte type;
+    final String[] fields;
+    if (value instanceof Book book) {
+      type = TYPE_BOOK;
+      fields = new String[]{book.getId(), book.getTitle(), book.getAuthor()};
+    } else if (value instanceof BookEntity entity) {
+      type = TYPE_BOOK_ENTITY;
+      fields = new String[]{entity.getId(), entity.getTitle(), entity.getAuthor()};
+    } else {
+      return fallback.serialize(value);
+    }
+
+    ByteArrayOutputStream body = new ByteArrayOutputStream(64);
+    body.write(type);
+    body.write(fields.length);
+    for (String field : fields) {
+      writeString(body, field);
+    }
+    byte[] raw = body.toByteArray();
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length + 8);
+    out.write(MAGIC);
+    if (compression && raw.length >= compressionThreshold) {
+      out.write(FLAG_LZ4);
+      writeVarInt(out, raw.length);
+      out.writeBytes(compressor.compress(raw));
+    } else {
+      out.write(0);
+      out.writeBytes(raw);
+    }
+    return out.toByteArray();
+  }
+
+  @Override
+  public Object deserialize(byte[] bytes) throws SerializationException {
+    if (bytes == null || bytes.length == 0) {
+      return null;
+    }
+    if (bytes[0] != MAGIC) {
+      return fallback.deserialize(bytes);
+    }
+
+    try {
+      ByteBuffer in = ByteBuffer.wrap(bytes, 2, bytes.length - 2);
+      if ((bytes[1] & FLAG_LZ4) != 0) {
+        int length = readVarInt(in);
+        byte[] raw = new byte[length];
+        decompressor.decompress(bytes, in.position(), raw, 0, length);
+        in = ByteBuffer.wrap(raw);
+      }
+
+      byte type = in.get();
+      int count = in.get();
+      String[] fields = new String[FIELDS];
+      for (int i = 0; i < count; i++) {
+        String field = readString(in);
+        if (i < FIELDS) {
+          fields[i] = field;
+        }
+      }
+
+      return switch (type) {
+        case TYPE_BOOK -> Book.builder().id(fields[0]).title(fields[1]).author(fields[2]).build();
+        case TYPE_BOOK_ENTITY -> new BookEntity(fields[0], fields[1], fields[2]);
+        default -> throw new SerializationException("Unknown binary value type " + type);
+      };
+    } catch (RuntimeException ex) {
+      if (ex instanceof SerializationException serializationException) {
+        throw serializationException;
+      }
+      throw new SerializationException("Could not read binary value", ex);
+    }
+  }
+
+  private static void writeString(ByteArrayOutputStream out, String value) {
+    if (value == null) {
+      writeVarInt(out, 0);
+      return;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    writeVarInt(out, bytes.length + 1);
+    out.writeBytes(bytes);
+  }
+
+  private static String readString(ByteBuffer in) {
+    int length = readVarInt(in);
+    if (length == 0) {
+      return null;
+    }
+    String value = new String(in.array(), in.arrayOffset() + in.position(), length - 1, StandardCharsets.UTF_8);
+    in.position(in.position() + length - 1);
+    return value;
+  }
+
+  private static void writeVarInt(ByteArrayOutputStream out, int value) {
+    while ((value & ~0x7F) != 0) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  private static int readVarInt(ByteBuffer in) {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      byte b = in.get();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new SerializationException("Malformed varint");
+  }
+}
@@ -0,0 +1,39 @@
+package com.cjrequena.sample.service;
+
+import com.cjrequena.sample.domain.mapper.BookMapper;
+import com.cjrequena.sample.domain.model.BookEvent;
+import com.cjrequena.sample.persistence.repository.BookJpaRepository;
+import com.cjrequena.sample.persistence.repository.BookRedisSearchRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * <p>
+ * Fans the book events of the stream out to the search index and to the Spring cache of {@link BookServiceV2}.
+ * </p>
+ *
+ * <p>The consumers of the group handle events in parallel, so two events of a book may be handled out of order. The
+ * search index is therefore written from the book as it is in the database when the event is handled, not from the
+ * event, and handling an event twice or late leaves the same result.</p>
+ *
+ * @author cjrequena
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BookEventHandler {
+
+  private final BookJpaRepository bookJpaRepository;
+  private final BookRedisSearchRepository bookRedisSearchRepository;
+  private final BookServiceV2 bookServiceV2;
+  private final BookMapper bookMapper;
+
+  public void handle(BookEvent event) {
+    bookJpaRepository.findById(event.getId())
+      .map(bookMapper::toDomain)
+      .ifPresentOrElse(bookRedisSearchRepository::save, () -> bookRedisSearchRepository.delete(event.getId()));
+    bookServiceV2.evict(event);
+    log.debug("Handled book event {} of {}", event.getType(), event.getId());
+  }
+}
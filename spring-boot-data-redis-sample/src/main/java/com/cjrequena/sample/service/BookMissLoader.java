@@ -0,0 +1,123 @@
+package com.cjrequena.sample.service;
+
+import com.cjrequena.sample.configuration.CacheMissConfigurationProperties;
+import com.cjrequena.sample.configuration.RedisConfigurationProperties;
+import com.cjrequena.sample.domain.exception.BookNotFoundException;
+import com.cjrequena.sample.domain.mapper.BookMapper;
+import com.cjrequena.sample.domain.model.Book;
+import com.cjrequena.sample.domain.model.BookEvent;
+import com.cjrequena.sample.persistence.repository.BookJpaRepository;
+import com.cjrequena.sample.persistence.repository.BookRedisRepository;
+import com.cjrequena.sample.persistence.repository.BookWriteBehindRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * <p>
+ * Loads books missing from a cache out of the database. Concurrent misses for the same id share a single in-flight
+ * query and its result, and ids found missing in the database are remembered for a short while, so a burst of
+ * lookups for a popular or a nonexistent id costs one query.
+ * </p>
+ *
+ * <p>Like the cached books, the ids found missing are kept in Redis, shared by the replicas: a book created on one
+ * replica is no longer answered as not found on the others, and a miss found on one is not queried again by the
+ * others. The in-flight queries are only shared within a replica.</p>
+ *
+ * <p>In write-behind mode the pending write of the book, its last write not flushed to the database yet, is read
+ * before the database: a book whose create is still queued is found, and one whose delete is still queued is not.</p>
+ *
+ * @author cjrequena
+ */
+@Slf4j
+@Component
+public class BookMissLoader {
+
+  private final BookJpaRepository bookJpaRepository;
+  private final BookMapper bookMapper;
+  private final BookWriteBehindRepository bookWriteBehindRepository;   // Null when write-behind is not enabled
+  private final BookRedisRepository bookRedisRepository;
+  private final Map<String, CompletableFuture<Optional<Book>>> inFlight = new ConcurrentHashMap<>();
+  private final Duration notFoundTtl;
+
+  public BookMissLoader(BookJpaRepository bookJpaRepository, BookMapper bookMapper,
+    BookWriteBehindRepository bookWriteBehindRepository, BookRedisRepository bookRedisRepository,
+    RedisConfigurationProperties redisConfigurationProperties, CacheMissConfigurationProperties cacheMissConfigurationProperties) {
+    this.bookJpaRepository = bookJpaRepository;
+    this.bookMapper = bookMapper;
+    this.bookWriteBehindRepository = redisConfigurationProperties.getWriteBehind().isEnabled()
+      ? bookWriteBehindRepository
+      : null;
+    this.bookRedisRepository = bookRedisRepository;
+    this.notFoundTtl = cacheMissConfigurationProperties.getNotFoundTtl();
+  }
+
+  public Book load(String id) throws BookNotFoundException {
+    return load(id, book -> {
+    });
+  }
+
+  /**
+   * Loads a book from the database, joining the load already in flight for the same id if there is one.
+   *
+   * @param id       the id of the book
+   * @param onLoaded called once with the loaded book, by the caller that actually queried the database
+   * @return the book
+   * @throws BookNotFoundException if the book does not exist, or was found missing within the not found TTL
+   */
+  public Book load(String id, Consumer<Book> onLoaded) throws BookNotFoundException {
+    if (bookRedisRepository.isMarkedNotFound(id)) {
+      throw new BookNotFoundException("Book not found with Id: " + id);
+    }
+
+    CompletableFuture<Optional<Book>> load = new CompletableFuture<>();
+    CompletableFuture<Optional<Book>> running = inFlight.putIfAbsent(id, load);
+    if (running == null) {
+      try {
+        Optional<Book> book = find(id);
+        book.ifPresentOrElse(onLoaded, () -> bookRedisRepository.markNotFound(id, notFoundTtl));
+        load.complete(book);
+      } catch (RuntimeException ex) {
+        load.completeExceptionally(ex);
+      } finally {
+        inFlight.remove(id, load);
+      }
+    } else {
+      log.debug("Joining the in-flight load of book {}", id);
+      load = running;
+    }
+
+    try {
+      return load.join().orElseThrow(() -> new BookNotFoundException("Book not found with Id: " + id));
+    } catch (CompletionException ex) {
+      throw ex.getCause() instanceof RuntimeException cause ? cause : ex;
+    }
+  }
+
+  /**
+   * The book as last written: its pending write in write-behind mode, the database otherwise.
+   */
+  private Optional<Book> find(String id) {
+    if (bookWriteBehindRepository != null) {
+      Optional<BookEvent> pending = bookWriteBehindRepository.findPending(id);
+      if (pending.isPresent()) {
+        return BookServiceV1.written(pending.get());
+      }
+    }
+    return bookJpaRepository.findById(id).map(bookMapper::toDomain);
+  }
+
+  /**
+   * Forgets that a book was found missing, to be called once it is created.
+   */
+  public void forget(String id) {
+    bookRedisRepository.clearNotFound(id);
+  }
+}
@@ -0,0 +1,145 @@
+package com.cjrequena.sample.service;
+
+import com.cjrequena.sample.configuration.RedisConfigurationProperties;
+import com.cjrequena.sample.domain.exception.BookNotFoundException;
+import com.cjrequena.sample.domain.mapper.BookMapper;
+import com.cjrequena.sample.domain.model.Book;
+import com.cjrequena.sample.domain.model.BookEvent;
+import com.cjrequena.sample.persistence.entity.BookEntity;
+import com.cjrequena.sample.persistence.repository.BookJpaRepository;
+import com.cjrequena.sample.persistence.repository.BookReactiveRedisSearchRepository;
+import com.cjrequena.sample.persistence.repository.BookRedisRepository;
+import com.cjrequena.sample.persistence.repository.cache.BookCacheReactiveRedisHashOpsRepository;
+import com.cjrequena.sample.persistence.repository.cache.ReactiveCacheRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.Callable;
+
+/**
+ * <p>
+ * Non-blocking counterpart of {@link BookServiceV1}, on the same Redis hash cache and search index. Redis is accessed
+ * reactively, so a request waiting on Redis holds no thread. The database is still JPA, which blocks; its calls are
+ * moved to the bounded elastic scheduler so they never run on the event loop, and a cache hit never reaches them. The
+ * book events of the writes are published from there too.
+ * </p>
+ *
+ * <p>In write-behind mode the writes go through {@link BookServiceV1}, on the bounded elastic scheduler too, so they are
+ * queued and flushed in order with the writes of the blocking path instead of racing them to the database.</p>
+ *
+ * @author cjrequena
+ */
+@Slf4j
+@Service
+public class BookReactiveService {
+
+  private final BookJpaRepository bookJpaRepository;
+  private final BookCacheReactiveRedisHashOpsRepository bookCacheReactiveRedisHashOpsRepository;
+  private final BookReactiveRedisSearchRepository bookReactiveRedisSearchRepository;
+  private final BookRedisRepository bookRedisRepository;
+  private final BookMapper bookMapper;
+  private final BookMissLoader bookMissLoader;
+  private final BookServiceV1 bookServiceV1;                            // Null when write-behind is not enabled
+
+  public BookReactiveService(
+    BookMapper bookMapper,
+    BookJpaRepository bookJpaRepository,
+    BookReactiveRedisSearchRepository bookReactiveRedisSearchRepository,
+    BookRedisRepository bookRedisRepository,
+    BookMissLoader bookMissLoader,
+    BookServiceV1 bookServiceV1,
+    RedisConfigurationProperties redisConfigurationProperties,
+    @Qualifier("bookCacheReactiveRedisHashOpsRepository") ReactiveCacheRepository<String, Book> bookCacheReactiveRedisHashOpsRepository
+  ) {
+    this.bookMapper = bookMapper;
+    this.bookJpaRepository = bookJpaRepository;
+    this.bookReactiveRedisSearchRepository = bookReactiveRedisSearchRepository;
+    this.bookRedisRepository = bookRedisRepository;
+    this.bookMissLoader = bookMissLoader;
+    this.bookServiceV1 = redisConfigurationProperties.getWriteBehind().isEnabled() ? bookServiceV1 : null;
+    this.bookCacheReactiveRedisHashOpsRepository = (BookCacheReactiveRedisHashOpsRepository) bookCacheReactiveRedisHashOpsRepository;
+  }
+
+  public Mono<Void> create(Book book) {
+    if (bookServiceV1 != null) {
+      return blocking(() -> {
+        bookServiceV1.create(book);
+        return book;
+      }).then();
+    }
+    return blocking(() -> {
+      BookEntity saved = bookJpaRepository.save(this.bookMapper.toEntity(book));
+      bookRedisRepository.publishBookEvent(BookServiceV1.event(BookEvent.Type.CREATED, book, null));
+      return saved;
+    })
+      .then(bookCacheReactiveRedisHashOpsRepository.add(book)) // write-through
+      .doOnSuccess(added -> bookMissLoader.forget(book.getId()));
+  }
+
+  public Flux<Book> retrieve() {
+    return bookCacheReactiveRedisHashOpsRepository.isEmpty()
+      .flatMapMany(empty -> empty
+        ? loadUpCache().thenMany(bookCacheReactiveRedisHashOpsRepository.retrieve()) // recovery logic
+        : bookCacheReactiveRedisHashOpsRepository.retrieve());
+  }
+
+  /**
+   * A miss is loaded through the {@link BookMissLoader}, so it joins a load of the same id already in flight on the
+   * blocking path, and is answered as not found without a query if the id was found missing recently.
+   */
+  public Mono<Book> retrieveById(String id) {
+    return bookCacheReactiveRedisHashOpsRepository.retrieveById(id)
+      .switchIfEmpty(Mono.defer(() -> blocking(() -> bookMissLoader.load(id))
+        .flatMap(book -> bookCacheReactiveRedisHashOpsRepository.add(book).thenReturn(book)))); // cache update
+  }
+
+  public Mono<Void> update(Book book) {
+    if (bookServiceV1 != null) {
+      return blocking(() -> bookServiceV1.update(book)).then();
+    }
+    return blocking(() -> {
+      BookEntity previous = bookJpaRepository.findById(book.getId())
+        .orElseThrow(() -> new BookNotFoundException("Book with Id " + book.getId() + " was not Found"));
+      BookEntity saved = bookJpaRepository.save(bookMapper.toEntity(book));
+      bookRedisRepository.publishBookEvent(BookServiceV1.event(BookEvent.Type.UPDATED, book, previous.getAuthor()));
+      return saved;
+    })
+      .then(bookCacheReactiveRedisHashOpsRepository.add(book)); // HSET replaces the cached book
+  }
+
+  public Mono<Boolean> deleteById(String id) {
+    if (bookServiceV1 != null) {
+      return blocking(() -> bookServiceV1.deleteById(id));
+    }
+    return bookCacheReactiveRedisHashOpsRepository.removeById(id)
+      .then(blocking(() -> {
+        BookEntity previous = bookJpaRepository.findById(id)
+          .orElseThrow(() -> new BookNotFoundException("Book with Id " + id + " was not Found"));
+        bookJpaRepository.deleteById(id);
+        bookRedisRepository.publishBookEvent(BookServiceV1.event(BookEvent.Type.DELETED, bookMapper.toDomain(previous), null));
+        bookRedisRepository.markBookAvailable(id, false); // Not counted as available anymore
+        return true;
+      }));
+  }
+
+  public Flux<Book> search(String query) {
+    return bookReactiveRedisSearchRepository.search(query);
+  }
+
+  private Mono<Void> loadUpCache() {
+    return blocking(() -> this.bookMapper.toDomain(bookJpaRepository.findAll()))
+      .flatMap(books -> bookCacheReactiveRedisHashOpsRepository.load(books)
+        .then(Flux.fromIterable(books).flatMap(bookReactiveRedisSearchRepository::save).then()));
+  }
+
+  /**
+   * Runs a blocking database call on the bounded elastic scheduler.
+   */
+  private static <T> Mono<T> blocking(Callable<T> call) {
+    return Mono.fromCallable(call).subscribeOn(Schedulers.boundedElastic());
+  }
+}
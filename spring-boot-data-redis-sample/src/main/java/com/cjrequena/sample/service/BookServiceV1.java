@@ -3,8 +3,14 @@ package com.cjrequena.sample.service;
 import com.cjrequena.sample.domain.exception.BookNotFoundException;
 import com.cjrequena.sample.domain.mapper.BookMapper;
 import com.cjrequena.sample.domain.model.Book;
+import com.cjrequena.sample.domain.model.BookBatchResult;
+import com.cjrequena.sample.domain.model.BookEvent;
+import com.cjrequena.sample.domain.model.BookSearchPage;
+import com.cjrequena.sample.domain.model.BookSearchQuery;
 import com.cjrequena.sample.persistence.repository.BookJpaRepository;
+import com.cjrequena.sample.persistence.repository.BookRedisRepository;
 import com.cjrequena.sample.persistence.repository.BookRedisSearchRepository;
+import com.cjrequena.sample.persistence.repository.BookWriteBehindRepository;
 import com.cjrequena.sample.persistence.repository.cache.BookCacheRedisHashOpsRepository;
 import com.cjrequena.sample.persistence.repository.cache.BookCacheRedisValueOpsRepository;
 import com.cjrequena.sample.persistence.repository.cache.CacheRepository;
@@ -12,21 +18,57 @@ import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
+/**
+ * <p>
+ * Book service on the Redis hash cache, written through to the database.
+ * </p>
+ *
+ * <p>With {@code spring.redis.write-behind.enabled}, writes land in the write-behind queue and in the cache instead,
+ * and {@link BookWriteBehindFlusher} writes them to the database in batches and publishes their events. A write then
+ * costs a few Redis round trips. The pending write of a book, its last write not flushed yet, is checked first for its
+ * existence, so a book whose delete is still queued is not found again in the database. Once queued, a write brings
+ * the cached book in line with the pending write, so of two concurrent writes the cache keeps the one queued last.</p>
+ *
+ * @author cjrequena
+ */
 @Service
 public class BookServiceV1 {
 
+  public static final int MAX_AVAILABILITY_BATCH = 1_000;
+  public static final int MAX_BATCH_CHUNK = 500;
+  private static final int MAX_CACHE_SYNC_ATTEMPTS = 5;
+
   private final BookJpaRepository bookJpaRepository;
   private final BookCacheRedisHashOpsRepository bookCacheRedisHashOpsRepository;
   private final BookCacheRedisValueOpsRepository bookCacheRedisValueOpsRepository;
   private final BookRedisSearchRepository bookRedisSearchRepository;
+  private final BookRedisRepository bookRedisRepository;
   private final BookMapper bookMapper;
+  private final BookMissLoader bookMissLoader;
+  private final BookWriteBehindRepository bookWriteBehindRepository;
+  private final BookWriteBehindFlusher bookWriteBehindFlusher;          // Null when write-behind is not enabled
+  private final Object recoveryLock = new Object();
 
   public BookServiceV1(
     BookMapper bookMapper,
     BookJpaRepository bookJpaRepository,
     BookRedisSearchRepository bookRedisSearchRepository,
+    BookRedisRepository bookRedisRepository,
+    BookMissLoader bookMissLoader,
+    BookWriteBehindRepository bookWriteBehindRepository,
+    Optional<BookWriteBehindFlusher> bookWriteBehindFlusher,
     @Qualifier("bookCacheRedisHashOpsRepository") CacheRepository<String, Book> bookCacheRedisHashOpsRepository,
     @Qualifier("bookCacheRedisValueOpsRepository") CacheRepository<String, Book> bookCacheRedisValueOpsRepository
 
@@ -34,25 +76,69 @@ public class BookServiceV1 {
     this.bookMapper = bookMapper;
     this.bookJpaRepository = bookJpaRepository;
     this.bookRedisSearchRepository = bookRedisSearchRepository;
+    this.bookRedisRepository = bookRedisRepository;
+    this.bookMissLoader = bookMissLoader;
+    this.bookWriteBehindRepository = bookWriteBehindRepository;
+    this.bookWriteBehindFlusher = bookWriteBehindFlusher.orElse(null);
     this.bookCacheRedisHashOpsRepository = (BookCacheRedisHashOpsRepository) bookCacheRedisHashOpsRepository;
     this.bookCacheRedisValueOpsRepository = (BookCacheRedisValueOpsRepository) bookCacheRedisValueOpsRepository;
   }
 
   @PostConstruct
   public void loadUpCache() {
+    if (bookWriteBehindFlusher != null) {
+      bookWriteBehindFlusher.drain(); // The queued writes are in the database before it is read
+    }
     List<Book> books = this.bookMapper.toDomain(bookJpaRepository.findAll());
     bookCacheRedisHashOpsRepository.load(books);
     bookRedisSearchRepository.load(books);
+    bookRedisRepository.migrateLegacyBitmap(books.stream().map(Book::getId).toList());
+  }
+
+  /**
+   * Reloads the cache found empty, once for all the callers finding it empty at the same time. The queue is not drained
+   * on the request path: the books are read from the database with their pending writes laid over them. A book whose
+   * pending write changed while the cache was loaded is then brought in line with its last write.
+   */
+  private void recoverCache() {
+    synchronized (recoveryLock) {
+      if (!bookCacheRedisHashOpsRepository.isEmpty()) {
+        return; // Reloaded by the caller that held the lock
+      }
+      Map<String, BookEvent> pending = bookWriteBehindFlusher != null ? bookWriteBehindRepository.findAllPending() : Map.of();
+      Map<String, Book> books = new LinkedHashMap<>();
+      bookMapper.toDomain(bookJpaRepository.findAll()).forEach(book -> books.put(book.getId(), book));
+      pending.forEach((id, write) -> written(write).ifPresentOrElse(book -> books.put(id, book), () -> books.remove(id)));
+      List<Book> loaded = new ArrayList<>(books.values());
+      bookCacheRedisHashOpsRepository.load(loaded);
+      bookRedisSearchRepository.load(loaded);
+
+      if (bookWriteBehindFlusher != null) {
+        Map<String, BookEvent> pendingAfter = bookWriteBehindRepository.findAllPending();
+        Set<String> changed = new LinkedHashSet<>(pending.keySet());
+        changed.addAll(pendingAfter.keySet());
+        changed.removeIf(id -> Objects.equals(pending.get(id), pendingAfter.get(id)));
+        changed.forEach(this::cacheLastWrite);
+      }
+    }
   }
 
   public void create(Book book) {
+    if (bookWriteBehindFlusher != null) {
+      bookWriteBehindRepository.enqueue(event(BookEvent.Type.CREATED, book, null)); // write-behind, event published on flush
+      cacheLastWrite(book.getId());
+      bookMissLoader.forget(book.getId());
+      return;
+    }
     bookJpaRepository.save(this.bookMapper.toEntity(book));
     bookCacheRedisHashOpsRepository.add(book); // write-through
+    bookMissLoader.forget(book.getId());
+    bookRedisRepository.publishBookEvent(event(BookEvent.Type.CREATED, book, null)); // search indexing, cache invalidation
   }
 
   public List<Book> retrieve() {
     if (bookCacheRedisHashOpsRepository.isEmpty()) {
-      loadUpCache(); // recovery logic
+      recoverCache(); // recovery logic
     }
     return bookCacheRedisHashOpsRepository.retrieve();
   }
@@ -60,41 +146,261 @@ public class BookServiceV1 {
   public Book retrieveById(String id) throws BookNotFoundException {
     Book book = bookCacheRedisHashOpsRepository.retrieveById(id);
     if (book == null) {
-      book = bookJpaRepository
-        .findById(id)
-        .map(bookMapper::toDomain)
-        .orElseThrow(() -> new BookNotFoundException("Book not found with Id: " + id));
-      if (book != null) {
-        bookCacheRedisHashOpsRepository.add(book); // cache update
-      }
+      book = bookMissLoader.load(id, bookCacheRedisHashOpsRepository::add); // cache update, a single load for concurrent misses
     }
     return book;
   }
 
-  public void update(Book book) throws BookNotFoundException {
-    if (bookJpaRepository.findById(book.getId()).isPresent()) {
+  /**
+   * @return the book as it was before the update
+   */
+  public Book update(Book book) throws BookNotFoundException {
+    Optional<Book> previous = findPrevious(book.getId());
+    if (previous.isPresent()) {
+      BookEvent event = event(BookEvent.Type.UPDATED, book, previous.get().getAuthor());
+      if (bookWriteBehindFlusher != null) {
+        bookWriteBehindRepository.enqueue(event);
+        cacheLastWrite(book.getId());
+        return previous.get();
+      }
       bookJpaRepository.save(bookMapper.toEntity(book));
-      bookCacheRedisHashOpsRepository.removeById(book.getId()); // Cleanly replace in cache
-      bookCacheRedisHashOpsRepository.add(book);
+      bookCacheRedisHashOpsRepository.replace(previous.get(), book); // Compare-and-set, no window without the book
+      bookRedisRepository.publishBookEvent(event);
+      return previous.get();
     } else {
       throw new BookNotFoundException("Book with Id " + book.getId() + " was not Found");
     }
   }
 
   public boolean deleteById(String id) throws BookNotFoundException {
-    bookCacheRedisHashOpsRepository.removeById(id);
-    if (bookJpaRepository.existsById(id)) {
-      bookJpaRepository.deleteById(id);
+    Optional<Book> previous = findPrevious(id);
+    if (bookWriteBehindFlusher == null) {
+      bookCacheRedisHashOpsRepository.removeById(id);
+    }
+    if (previous.isPresent()) {
+      BookEvent event = event(BookEvent.Type.DELETED, previous.get(), null);
+      if (bookWriteBehindFlusher != null) {
+        bookWriteBehindRepository.enqueue(event); // A tombstone until flushed
+        cacheLastWrite(id);
+      } else {
+        bookJpaRepository.deleteById(id);
+        bookRedisRepository.publishBookEvent(event);
+      }
+      bookRedisRepository.markBookAvailable(id, false); // Not counted as available anymore
       return true;
     } else {
       throw new BookNotFoundException("Book with Id " + id + " was not Found");
     }
   }
 
-  public List<Book> search(String query) {
-    // Build a RediSearch query for partial matching
-    //String redisQuery = "*" + query + "*"; // Wildcards for partial match
+  /**
+   * Creates or replaces a chunk of books. The books already stored are read at once, then the chunk takes one batched
+   * upsert, one pipelined cache write and one pipelined publish of its events, or in write-behind mode one enqueue
+   * and one pipelined cache write.
+   *
+   * @param books up to {@value #MAX_BATCH_CHUNK} books, a book sent twice is stored as last sent
+   * @return the outcome of each book, in order
+   */
+  public List<BookBatchResult> saveAll(List<Book> books) {
+    validateChunk(books.size());
+    books.forEach(book -> {
+      if (book == null || book.getId() == null) {
+        throw new IllegalArgumentException("Book Id cannot be null");
+      }
+    });
+
+    Map<String, Book> current = findPrevious(books.stream().map(Book::getId).toList());
+    Map<String, Book> lastWrites = new LinkedHashMap<>();
+    List<BookEvent> events = new ArrayList<>(books.size());
+    List<BookBatchResult> results = new ArrayList<>(books.size());
+    for (Book book : books) {
+      Book previous = current.put(book.getId(), book);
+      BookEvent.Type type = previous == null ? BookEvent.Type.CREATED : BookEvent.Type.UPDATED;
+      events.add(event(type, book, previous == null ? null : previous.getAuthor()));
+      results.add(BookBatchResult.of(book.getId(),
+        previous == null ? BookBatchResult.Outcome.CREATED : BookBatchResult.Outcome.UPDATED));
+      lastWrites.remove(book.getId());
+      lastWrites.put(book.getId(), book);
+    }
+
+    if (bookWriteBehindFlusher != null) {
+      bookWriteBehindRepository.enqueueAll(events); // write-behind, events published on flush
+      bookCacheRedisHashOpsRepository.addAll(lastWrites.values());
+    } else {
+      bookJpaRepository.upsertAll(bookMapper.toEntity(new ArrayList<>(lastWrites.values())));
+      bookCacheRedisHashOpsRepository.addAll(lastWrites.values()); // write-through
+      bookRedisRepository.publishBookEvents(events);
+    }
+    lastWrites.keySet().forEach(bookMissLoader::forget);
+    return results;
+  }
+
+  /**
+   * Deletes a chunk of books, with one pipelined cache delete, one batched delete and one pipelined publish of their
+   * events, or in write-behind mode one enqueue instead of the last two.
+   *
+   * @param ids up to {@value #MAX_BATCH_CHUNK} book Ids
+   * @return the outcome of each Id, in order
+   */
+  public List<BookBatchResult> deleteAllById(List<String> ids) {
+    validateChunk(ids.size());
+    if (ids.contains(null)) {
+      throw new IllegalArgumentException("Book Id cannot be null");
+    }
+
+    Map<String, Book> remaining = findPrevious(ids);
+    List<BookEvent> events = new ArrayList<>();
+    List<BookBatchResult> results = new ArrayList<>(ids.size());
+    for (String id : ids) {
+      Book previous = remaining.remove(id);
+      if (previous == null) {
+        results.add(BookBatchResult.of(id, BookBatchResult.Outcome.NOT_FOUND, "Book with Id " + id + " was not Found"));
+      } else {
+        events.add(event(BookEvent.Type.DELETED, previous, null));
+        results.add(BookBatchResult.of(id, BookBatchResult.Outcome.DELETED));
+      }
+    }
+
+    if (bookWriteBehindFlusher == null) {
+      bookCacheRedisHashOpsRepository.removeAll(ids);
+    }
+    if (!events.isEmpty()) {
+      List<String> deleted = events.stream().map(BookEvent::getId).toList();
+      if (bookWriteBehindFlusher != null) {
+        bookWriteBehindRepository.enqueueAll(events); // Tombstones until flushed
+        bookCacheRedisHashOpsRepository.removeAll(deleted);
+      } else {
+        bookJpaRepository.deleteAllByIdInBatch(deleted);
+        bookRedisRepository.publishBookEvents(events);
+      }
+      bookRedisRepository.markBooksAvailable(deleted.stream().collect(Collectors.toMap(id -> id, id -> false)));
+    }
+    return results;
+  }
+
+  public BookSearchPage search(BookSearchQuery query) {
+    if (query.getOffset() < 0) {
+      throw new IllegalArgumentException("Search offset must not be negative: " + query.getOffset());
+    }
+    if (query.getLimit() < 1 || query.getLimit() > BookSearchQuery.MAX_LIMIT) {
+      throw new IllegalArgumentException("Search limit must be between 1 and " + BookSearchQuery.MAX_LIMIT + ": " + query.getLimit());
+    }
     return bookRedisSearchRepository.search(query);
   }
 
+  public List<String> suggest(String prefix, int max, boolean fuzzy) {
+    if (max < 1 || max > BookSearchQuery.MAX_SUGGESTIONS) {
+      throw new IllegalArgumentException("Suggestion max must be between 1 and " + BookSearchQuery.MAX_SUGGESTIONS + ": " + max);
+    }
+    return bookRedisSearchRepository.suggest(prefix, max, fuzzy);
+  }
+
+  public void updateAvailability(Map<String, Boolean> availability) {
+    if (availability.size() > MAX_AVAILABILITY_BATCH) {
+      throw new IllegalArgumentException("At most " + MAX_AVAILABILITY_BATCH + " books per availability update: " + availability.size());
+    }
+    if (availability.containsValue(null)) {
+      throw new IllegalArgumentException("Book availability must be true or false");
+    }
+    bookRedisRepository.markBooksAvailable(availability);
+  }
+
+  public Map<String, Boolean> retrieveAvailability(List<String> ids) {
+    if (ids.size() > MAX_AVAILABILITY_BATCH) {
+      throw new IllegalArgumentException("At most " + MAX_AVAILABILITY_BATCH + " books per availability check: " + ids.size());
+    }
+    return bookRedisRepository.areBooksAvailable(ids);
+  }
+
+  public long countAvailable() {
+    return bookRedisRepository.countAvailableBooks();
+  }
+
+  /**
+   * The book as it is before a write. In write-behind mode its pending write is read first, then the cache, they hold
+   * the writes not flushed yet.
+   */
+  private Optional<Book> findPrevious(String id) {
+    if (bookWriteBehindFlusher != null) {
+      Optional<BookEvent> pending = bookWriteBehindRepository.findPending(id);
+      if (pending.isPresent()) {
+        return written(pending.get());
+      }
+      Book cached = bookCacheRedisHashOpsRepository.retrieveById(id);
+      if (cached != null) {
+        return Optional.of(cached);
+      }
+    }
+    return bookJpaRepository.findById(id).map(bookMapper::toDomain);
+  }
+
+  /**
+   * The books as they are before a chunk of writes, by Id, read like {@link #findPrevious(String)} with one read of
+   * the pending writes, one pipelined cache read and one query.
+   */
+  private Map<String, Book> findPrevious(Collection<String> ids) {
+    Map<String, Book> previous = new HashMap<>();
+    Set<String> missing = new LinkedHashSet<>(ids);
+    if (bookWriteBehindFlusher != null) {
+      bookWriteBehindRepository.findPending(missing).forEach((id, pending) -> {
+        written(pending).ifPresent(book -> previous.put(id, book));
+        missing.remove(id);
+      });
+      previous.putAll(bookCacheRedisHashOpsRepository.retrieveByIds(missing));
+      missing.removeAll(previous.keySet());
+    }
+    if (!missing.isEmpty()) {
+      bookJpaRepository.findAllById(missing).forEach(entity -> previous.put(entity.getId(), bookMapper.toDomain(entity)));
+    }
+    return previous;
+  }
+
+  /**
+   * Brings the cached book in line with its pending write, or with the database once its writes are flushed, after a
+   * write was queued. A compare-and-set that finds the book written concurrently reads both again instead of evicting
+   * it, so of two concurrent writes the cache ends up with the one queued last. The book is evicted only if it keeps
+   * changing, a miss reads its pending write.
+   */
+  private void cacheLastWrite(String id) {
+    for (int attempt = 0; attempt < MAX_CACHE_SYNC_ATTEMPTS; attempt++) {
+      Book cached = bookCacheRedisHashOpsRepository.peek(id);
+      Optional<BookEvent> pending = bookWriteBehindRepository.findPending(id);
+      Book last = pending.isPresent()
+        ? written(pending.get()).orElse(null)
+        : bookJpaRepository.findById(id).map(bookMapper::toDomain).orElse(null);
+      if (Objects.equals(cached, last) || bookCacheRedisHashOpsRepository.swap(id, cached, last)) {
+        return;
+      }
+    }
+    bookCacheRedisHashOpsRepository.removeById(id);
+  }
+
+  /**
+   * The book as a pending write leaves it, empty for a delete.
+   */
+  static Optional<Book> written(BookEvent write) {
+    return write.getType() == BookEvent.Type.DELETED
+      ? Optional.empty()
+      : Optional.of(new Book(write.getId(), write.getTitle(), write.getAuthor()));
+  }
+
+  private static void validateChunk(int size) {
+    if (size > MAX_BATCH_CHUNK) {
+      throw new IllegalArgumentException("At most " + MAX_BATCH_CHUNK + " books per batch chunk: " + size);
+    }
+  }
+
+  /**
+   * The event of a write, with the previous author if the write changed it.
+   */
+  static BookEvent event(BookEvent.Type type, Book book, String previousAuthor) {
+    return BookEvent.builder()
+      .type(type)
+      .id(book.getId())
+      .title(book.getTitle())
+      .author(book.getAuthor())
+      .previousAuthor(Objects.equals(previousAuthor, book.getAuthor()) ? null : previousAuthor)
+      .build();
+  }
+
 }
@@ -1,42 +1,82 @@
 package com.cjrequena.sample.service;
 
+import com.cjrequena.sample.configuration.RedisConfigurationProperties;
+import com.cjrequena.sample.configuration.TieredCacheConfigurationProperties;
 import com.cjrequena.sample.domain.exception.BookNotFoundException;
 import com.cjrequena.sample.domain.mapper.BookMapper;
 import com.cjrequena.sample.domain.model.Book;
+import com.cjrequena.sample.domain.model.BookEvent;
+import com.cjrequena.sample.persistence.entity.BookEntity;
+import com.cjrequena.sample.persistence.repository.BookIdsRedisRepository;
 import com.cjrequena.sample.persistence.repository.BookJpaRepository;
+import com.cjrequena.sample.shared.cache.TieredCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.Cacheable;
-import org.springframework.cache.annotation.Caching;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
 
+/**
+ * <p>
+ * Spring Cache backed book service. Books are cached one entry per id, and the lists are cached as id lists resolved
+ * against those entries. Updates only replace the book entry. The ids of every book are kept in
+ * {@link BookIdsRedisRepository}, where a create or a delete adds or removes its id atomically, so writes do not make
+ * the next read list every id from the database again. The {@code 'author_' + author} lists are evicted when their
+ * membership changes (create, delete, author change). Rebuilding a list reads ids only, and then loads just the books
+ * missing from the cache.
+ * </p>
+ *
+ * <p>In write-behind mode the writes go through {@link BookServiceV1}, so they are queued and flushed in order with its
+ * writes instead of racing them to the database. The id lists are read from the database, so they only list a book
+ * once its create or delete is flushed, and are updated then by its event.</p>
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class BookServiceV2 {
 
   private static final String CACHE_PREFIX = "books";
+  private static final String AUTHOR_KEY_PREFIX = "author_";
 
   private final BookJpaRepository bookJpaRepository;
   private final BookMapper bookMapper;
+  private final CacheManager cacheManager;
+  private final BookMissLoader bookMissLoader;
+  private final BookServiceV1 bookServiceV1;
+  private final RedisConfigurationProperties redisConfigurationProperties;
+  private final TieredCacheConfigurationProperties tieredCacheConfigurationProperties;
+  private final BookIdsRedisRepository bookIdsRedisRepository;
+  private final Object idsLoadLock = new Object();
 
   // --------------------------
   // CREATE
   // --------------------------
 
-  @Caching(evict = {
-    @CacheEvict(value = CACHE_PREFIX, key = "'ALL'"),
-    @CacheEvict(value = CACHE_PREFIX, key = "#book.id"),
-    @CacheEvict(value = CACHE_PREFIX, key = "'author_' + #book.author")
-  })
+  /**
+   * New book: save to DB, cache it, add it to the ids of every book and evict the author list it joins.
+   */
   public void create(Book book) {
     log.info("Creating book {}", book.getId());
-    bookJpaRepository.save(bookMapper.toEntity(book));
+    if (writeBehind()) {
+      bookServiceV1.create(book); // Listed once flushed, by its event
+    } else {
+      bookJpaRepository.save(bookMapper.toEntity(book));
+      bookIdsRedisRepository.add(book.getId());
+    }
+    Cache cache = cache();
+    cache.put(book.getId(), book);
+    bookMissLoader.forget(book.getId());
+    cache.evict(authorKey(book.getAuthor()));
   }
 
 
@@ -44,10 +84,24 @@ public class BookServiceV2 {
   // RETRIEVE ALL BOOKS
   // --------------------------
 
-  @Cacheable(value = CACHE_PREFIX, key = "'ALL'")
   public List<Book> retrieve() {
-    log.info("Cache MISS → fetching ALL books from DB");
-    return bookMapper.toDomain(bookJpaRepository.findAll());
+    return resolve(bookIdsRedisRepository.findAll().orElseGet(this::loadIds));
+  }
+
+  /**
+   * Reads the ids of every book from the DB and caches them, once for the callers of this instance missing them at the
+   * same time.
+   */
+  private List<String> loadIds() {
+    synchronized (idsLoadLock) {
+      return bookIdsRedisRepository.findAll().orElseGet(() -> {
+        log.info("Cache MISS → fetching ALL ids from DB");
+        long version = bookIdsRedisRepository.version();
+        List<String> ids = bookJpaRepository.findIdsBy().stream().map(BookJpaRepository.IdView::getId).toList();
+        bookIdsRedisRepository.cacheAll(version, ids, tieredCacheConfigurationProperties.getSpec(CACHE_PREFIX).getL2Ttl());
+        return ids;
+      });
+    }
   }
 
 
@@ -55,13 +109,13 @@ public class BookServiceV2 {
   // RETRIEVE BY ID
   // --------------------------
 
-  @Cacheable(value = CACHE_PREFIX, key = "#id")
+  /**
+   * {@code sync} makes concurrent misses for the same id wait for a single load instead of each querying the DB.
+   */
+  @Cacheable(value = CACHE_PREFIX, key = "#id", sync = true)
   public Book retrieveById(String id) throws BookNotFoundException {
     log.info("Cache MISS → fetching book {} from DB", id);
-    return bookJpaRepository
-      .findById(id)
-      .map(bookMapper::toDomain)
-      .orElseThrow(() -> new BookNotFoundException("Book not found with Id: " + id));
+    return bookMissLoader.load(id);
   }
 
 
@@ -69,14 +123,20 @@ public class BookServiceV2 {
   // RETRIEVE BY AUTHOR
   // --------------------------
 
-  @Cacheable(value = CACHE_PREFIX, key = "'author_' + #author")
   public List<Book> retrieveByAuthor(String author) {
-    log.info("Cache MISS → fetching books by author {} from DB", author);
-
-    return bookJpaRepository
-      .findByAuthor(author)
-      .map(bookMapper::toDomain)
-      .orElseGet(Collections::emptyList);
+    Cache cache = cache();
+    List<Book> loaded = new ArrayList<>();
+    List<String> ids = cache.get(authorKey(author), () -> {
+      log.info("Cache MISS → fetching books by author {} from DB", author);
+      loaded.addAll(bookJpaRepository
+        .findByAuthor(author)
+        .map(bookMapper::toDomain)
+        .orElseGet(Collections::emptyList));
+      return loaded.stream().map(Book::getId).collect(Collectors.toCollection(ArrayList::new));
+    });
+    // Filled outside the loader, a cache may not be written to while it computes an entry
+    loaded.forEach(book -> cache.putIfAbsent(book.getId(), book));
+    return resolve(ids);
   }
 
 
@@ -84,22 +144,26 @@ public class BookServiceV2 {
   // UPDATE
   // --------------------------
 
-  @Caching(
-    put = {
-      @CachePut(value = CACHE_PREFIX, key = "#book.id", unless = "#book == null")
-    },
-    evict = {
-      @CacheEvict(value = CACHE_PREFIX, key = "'ALL'"),
-      @CacheEvict(value = CACHE_PREFIX, key = "'author_' + #book.author")
-    }
-  )
+  /**
+   * Update DB and replace the cached book. The lists hold ids, so they stay valid unless the author changed.
+   */
   public Book update(Book book) throws BookNotFoundException {
-    if (!bookJpaRepository.existsById(book.getId())) {
-      throw new BookNotFoundException("Book with Id " + book.getId() + " was not found");
+    String previousAuthor;
+    if (writeBehind()) {
+      previousAuthor = bookServiceV1.update(book).getAuthor();
+    } else {
+      BookEntity previous = bookJpaRepository.findById(book.getId())
+        .orElseThrow(() -> new BookNotFoundException("Book with Id " + book.getId() + " was not found"));
+      previousAuthor = previous.getAuthor();
+      bookJpaRepository.save(bookMapper.toEntity(book));
     }
-
-    bookJpaRepository.save(bookMapper.toEntity(book));
-    return book; // @CachePut stores this in cache
+    Cache cache = cache();
+    cache.put(book.getId(), book);
+    if (!Objects.equals(previousAuthor, book.getAuthor())) {
+      cache.evict(authorKey(previousAuthor));
+      cache.evict(authorKey(book.getAuthor()));
+    }
+    return book;
   }
 
 
@@ -107,19 +171,99 @@ public class BookServiceV2 {
   // DELETE
   // --------------------------
 
-  @Caching(evict = {
-    @CacheEvict(value = CACHE_PREFIX, key = "#id"),
-    @CacheEvict(value = CACHE_PREFIX, key = "'ALL'"),
-    @CacheEvict(value = CACHE_PREFIX, allEntries = false) // optional: catch author caches
-  })
   public boolean deleteById(String id) throws BookNotFoundException {
+    String previousAuthor;
+    if (writeBehind()) {
+      previousAuthor = bookServiceV1.retrieveById(id).getAuthor();
+      bookServiceV1.deleteById(id);
+    } else {
+      BookEntity previous = bookJpaRepository.findById(id)
+        .orElseThrow(() -> new BookNotFoundException("Book with Id " + id + " was not found"));
+      previousAuthor = previous.getAuthor();
+      bookJpaRepository.deleteById(id);
+      bookIdsRedisRepository.remove(id);
+    }
+    Cache cache = cache();
+    cache.evict(id);
+    cache.evict(authorKey(previousAuthor));
+    return true;
+  }
+
+  // --------------------------
+  // INVALIDATION
+  // --------------------------
 
-    if (!bookJpaRepository.existsById(id)) {
-      throw new BookNotFoundException("Book with Id " + id + " was not found");
+  /**
+   * Evicts the entries a change made elsewhere, e.g. through {@link BookServiceV1}, leaves stale: the book, the lists
+   * whose membership it changed, and the lists of its previous author. A create or a delete is applied to the ids of
+   * every book as the DB holds the book when the event is handled, as events may be handled out of order.
+   */
+  public void evict(BookEvent event) {
+    Cache cache = cache();
+    cache.evict(event.getId());
+    if (event.getType() != BookEvent.Type.UPDATED) {
+      if (bookJpaRepository.existsById(event.getId())) {
+        bookIdsRedisRepository.add(event.getId());
+      } else {
+        bookIdsRedisRepository.remove(event.getId());
+      }
     }
+    if (event.getType() != BookEvent.Type.UPDATED || event.getPreviousAuthor() != null) {
+      cache.evict(authorKey(event.getAuthor()));
+      cache.evict(authorKey(event.getPreviousAuthor()));
+    }
+  }
 
-    bookJpaRepository.deleteById(id);
-    return true;
+  /**
+   * Resolves an id list against the book entries, looked up in one batch, loading the missing books in a single
+   * query. Ids that are no longer in the database are skipped.
+   */
+  private List<Book> resolve(List<String> ids) {
+    Cache cache = cache();
+    Map<Object, Cache.ValueWrapper> cached = cache instanceof TieredCache tieredCache ? tieredCache.getAll(ids) : getAll(cache, ids);
+    Map<String, Book> books = new LinkedHashMap<>();
+    List<String> misses = new ArrayList<>();
+    for (String id : ids) {
+      Cache.ValueWrapper wrapper = cached.get(id);
+      Book book = wrapper != null ? (Book) wrapper.get() : null;
+      if (book != null) {
+        books.put(id, book);
+      } else {
+        books.put(id, null);
+        misses.add(id);
+      }
+    }
+    if (!misses.isEmpty()) {
+      log.info("Cache MISS → fetching {} of {} listed books from DB", misses.size(), ids.size());
+      bookMapper.toDomain(bookJpaRepository.findAllById(misses)).forEach(book -> {
+        cache.putIfAbsent(book.getId(), book);
+        books.put(book.getId(), book);
+      });
+    }
+    return books.values().stream().filter(Objects::nonNull).collect(Collectors.toCollection(ArrayList::new));
+  }
+
+  private static Map<Object, Cache.ValueWrapper> getAll(Cache cache, List<String> ids) {
+    Map<Object, Cache.ValueWrapper> cached = new HashMap<>();
+    ids.forEach(id -> {
+      Cache.ValueWrapper wrapper = cache.get(id);
+      if (wrapper != null) {
+        cached.put(id, wrapper);
+      }
+    });
+    return cached;
+  }
+
+  private boolean writeBehind() {
+    return redisConfigurationProperties.getWriteBehind().isEnabled();
+  }
+
+  private Cache cache() {
+    return Objects.requireNonNull(cacheManager.getCache(CACHE_PREFIX), "No cache named " + CACHE_PREFIX);
+  }
+
+  private static String authorKey(String author) {
+    return AUTHOR_KEY_PREFIX + author;
   }
 
 }
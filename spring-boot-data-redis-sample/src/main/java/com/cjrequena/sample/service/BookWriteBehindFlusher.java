@@ -0,0 +1,313 @@
+package com.cjrequena.sample.service;
+
+import com.cjrequena.sample.configuration.RedisConfigurationProperties;
+import com.cjrequena.sample.domain.model.Book;
+import com.cjrequena.sample.domain.model.BookEvent;
+import com.cjrequena.sample.persistence.entity.BookEntity;
+import com.cjrequena.sample.persistence.repository.BookJpaRepository;
+import com.cjrequena.sample.persistence.repository.BookRedisRepository;
+import com.cjrequena.sample.persistence.repository.BookWriteBehindRepository;
+import com.cjrequena.sample.persistence.repository.cache.BookCacheRedisHashOpsRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Flushes the book writes queued by {@link BookServiceV1} in write-behind mode to the database, in batches of up to
+ * {@code spring.redis.write-behind.batch-size} writes per transaction, every
+ * {@code spring.redis.write-behind.flush-interval}. Only the node holding the lease of the queue flushes it, so the
+ * writes of a book reach the database in the order they were queued.
+ * </p>
+ *
+ * <p>A node whose batch stalls past the lease TTL may see another node take the lease over and flush the same writes
+ * and later ones. Each lease has a fencing token, and a batch first moves the fence kept in the database to its token,
+ * in its own transaction: that row lock orders the commits of two nodes, and a batch whose lease was taken over and
+ * committed with a later token is rolled back. The lease is also checked before the transaction and before the writes
+ * leave the queue, a batch that lost it is abandoned to the new holder, which flushes it again.</p>
+ *
+ * <p>A batch is collapsed to the last write of each book, then written with {@link BookJpaRepository#upsertAll} and
+ * one batched delete. The book events of the writes are published once committed, so the event handlers read the
+ * books as written, and the writes are only removed from the queue after that. A crash replays them, and an upsert, a
+ * delete or an event handled twice leaves the same result.</p>
+ *
+ * <p>A read missing the cache reads the pending write of the book before the database, so a book whose delete is still
+ * queued is not loaded again. Once a delete is committed, the book is still removed from the cache if it is cached as
+ * it was deleted. The pending write of a book is dropped with its last flushed write.</p>
+ *
+ * <p>A failed batch is retried one write at a time, in order, up to the first write that fails again. That write is
+ * retried on the next flushes and moved to the dead letter stream once it has failed
+ * {@code spring.redis.write-behind.max-attempts} times.</p>
+ *
+ * <p>Metrics: {@code books.write-behind.flushed}, {@code books.write-behind.failed} (failed flush attempts) and
+ * {@code books.write-behind.dead-lettered}.</p>
+ *
+ * @author cjrequena
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "spring.redis.write-behind", name = "enabled", havingValue = "true")
+public class BookWriteBehindFlusher implements SmartLifecycle {
+
+  private static final String FENCE = "books"; // Name of the fence of the queue in the database
+
+  private final BookWriteBehindRepository bookWriteBehindRepository;
+  private final BookJpaRepository bookJpaRepository;
+  private final BookRedisRepository bookRedisRepository;
+  private final BookCacheRedisHashOpsRepository bookCacheRedisHashOpsRepository;
+  private final TransactionTemplate transactionTemplate;
+  private final RedisConfigurationProperties.WriteBehind properties;
+  private final String owner = "flusher-" + UUID.randomUUID();
+  private final ScheduledExecutorService scheduler;
+  private final Map<RecordId, Integer> attempts = new LinkedHashMap<>(); // Failed attempts of the head of the queue
+  private volatile boolean running;
+
+  private final Counter flushed;
+  private final Counter failed;
+  private final Counter deadLettered;
+
+  public BookWriteBehindFlusher(BookWriteBehindRepository bookWriteBehindRepository, BookJpaRepository bookJpaRepository,
+    BookRedisRepository bookRedisRepository, BookCacheRedisHashOpsRepository bookCacheRedisHashOpsRepository,
+    PlatformTransactionManager transactionManager,
+    RedisConfigurationProperties redisConfigurationProperties, MeterRegistry meterRegistry) {
+    this.bookWriteBehindRepository = bookWriteBehindRepository;
+    this.bookJpaRepository = bookJpaRepository;
+    this.bookRedisRepository = bookRedisRepository;
+    this.bookCacheRedisHashOpsRepository = bookCacheRedisHashOpsRepository;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.properties = redisConfigurationProperties.getWriteBehind();
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+      .name("books-write-behind").daemon(true).factory());
+
+    this.flushed = Counter.builder("books.write-behind.flushed").register(meterRegistry);
+    this.failed = Counter.builder("books.write-behind.failed").register(meterRegistry);
+    this.deadLettered = Counter.builder("books.write-behind.dead-lettered").register(meterRegistry);
+  }
+
+  @Override
+  public void start() {
+    long interval = properties.getFlushInterval().toMillis();
+    scheduler.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    running = true;
+    log.info("Flushing the book write-behind queue every {} in batches of {}", properties.getFlushInterval(),
+      properties.getBatchSize());
+  }
+
+  /**
+   * Stops the scheduled flushes, drains the queue and frees the lease. Runs after the web server stopped taking
+   * requests, so no write is queued behind the drain, and before the connection factory is stopped.
+   */
+  @Override
+  public void stop() {
+    running = false;
+    scheduler.shutdown();
+    try {
+      if (!scheduler.awaitTermination(properties.getDrainTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+        log.warn("The last scheduled flush of the book write-behind queue did not finish in time");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    drain();
+    try {
+      bookWriteBehindRepository.releaseLease(owner);
+    } catch (Exception e) {
+      log.warn("Failed to release the lease of the book write-behind queue", e);
+    }
+    log.info("Stopped flushing the book write-behind queue");
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  /**
+   * Below the phase of the web server, so stopped after it.
+   */
+  @Override
+  public int getPhase() {
+    return SmartLifecycle.DEFAULT_PHASE - 4096;
+  }
+
+  /**
+   * Flushes the queue until it is empty, waiting for the lease if another node holds it, for up to the drain timeout.
+   *
+   * @return true if the queue was drained
+   */
+  public synchronized boolean drain() {
+    long deadline = System.nanoTime() + properties.getDrainTimeout().toNanos();
+    try {
+      while (bookWriteBehindRepository.size() > 0) {
+        if (System.nanoTime() > deadline) {
+          log.warn("Gave up draining the book write-behind queue, {} writes left", bookWriteBehindRepository.size());
+          return false;
+        }
+        long token = bookWriteBehindRepository.acquireLease(owner, properties.getLeaseTtl());
+        if (token == 0) {
+          Thread.sleep(properties.getFlushInterval().toMillis());
+        } else if (flushBatch(token) == 0) {
+          Thread.sleep(properties.getFlushInterval().toMillis()); // The head write failed, retry it later
+        }
+      }
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (Exception e) {
+      log.error("Failed to drain the book write-behind queue", e);
+      return false;
+    }
+  }
+
+  /**
+   * Flushes full batches for as long as this node holds the lease.
+   */
+  synchronized void flush() {
+    try {
+      int written;
+      do {
+        long token = bookWriteBehindRepository.acquireLease(owner, properties.getLeaseTtl());
+        if (token == 0) {
+          return;
+        }
+        written = flushBatch(token);
+      } while (written == properties.getBatchSize() && running);
+    } catch (Exception e) {
+      log.error("Failed to flush the book write-behind queue", e);
+    }
+  }
+
+  /**
+   * Flushes the oldest batch of the queue under the lease of the given token.
+   *
+   * @return the number of writes flushed
+   */
+  private int flushBatch(long token) {
+    Map<RecordId, BookEvent> batch = bookWriteBehindRepository.peek(properties.getBatchSize());
+    if (batch.isEmpty()) {
+      return 0;
+    }
+
+    try {
+      write(batch, token);
+      return batch.size();
+    } catch (LeaseLostException e) {
+      log.warn("Abandoned a batch of {} book writes: {}", batch.size(), e.getMessage());
+      return 0;
+    } catch (Exception e) {
+      failed.increment();
+      log.warn("Failed to flush a batch of {} book writes, retrying them one at a time", batch.size(), e);
+    }
+
+    int written = 0;
+    for (Map.Entry<RecordId, BookEvent> write : batch.entrySet()) {
+      try {
+        write(Map.of(write.getKey(), write.getValue()), token);
+        written++;
+      } catch (LeaseLostException e) {
+        log.warn("Abandoned the retry of a batch of {} book writes: {}", batch.size(), e.getMessage());
+        break;
+      } catch (Exception e) {
+        failed.increment();
+        retryLater(write.getKey(), write.getValue(), e);
+        break;
+      }
+    }
+    return written;
+  }
+
+  /**
+   * Commits the writes under the fence of the lease, publishes their events and removes them from the queue.
+   *
+   * @throws LeaseLostException if the lease was taken over, nothing is published nor removed then
+   */
+  private void write(Map<RecordId, BookEvent> batch, long token) {
+    Map<String, BookEvent> lastWrites = new LinkedHashMap<>();
+    batch.values().forEach(write -> {
+      lastWrites.remove(write.getId()); // Keep the books in the order of their last write
+      lastWrites.put(write.getId(), write);
+    });
+
+    List<BookEntity> upserts = new ArrayList<>();
+    List<BookEvent> deletes = new ArrayList<>();
+    lastWrites.values().forEach(write -> {
+      if (write.getType() == BookEvent.Type.DELETED) {
+        deletes.add(write);
+      } else {
+        upserts.add(new BookEntity(write.getId(), write.getTitle(), write.getAuthor()));
+      }
+    });
+
+    checkLease(token);
+    transactionTemplate.executeWithoutResult(status -> {
+      if (!bookJpaRepository.advanceFence(FENCE, token)) {
+        long committed = bookJpaRepository.currentFence(FENCE);
+        bookWriteBehindRepository.raiseFence(committed); // In case the fence counter was lost with the Redis data
+        throw new LeaseLostException("a later lease, of token " + committed + ", committed before lease " + token);
+      }
+      bookJpaRepository.upsertAll(upserts);
+      if (!deletes.isEmpty()) {
+        bookJpaRepository.deleteAllByIdInBatch(deletes.stream().map(BookEvent::getId).toList());
+      }
+    });
+    deletes.forEach(delete ->
+      bookCacheRedisHashOpsRepository.removeIfUnchanged(new Book(delete.getId(), delete.getTitle(), delete.getAuthor())));
+
+    checkLease(token);
+    bookRedisRepository.publishBookEvents(batch.values());
+    bookWriteBehindRepository.remove(batch);
+    batch.keySet().forEach(attempts::remove);
+    flushed.increment(batch.size());
+    log.debug("Flushed {} book writes, {} upserts and {} deletes", batch.size(), upserts.size(), deletes.size());
+  }
+
+  /**
+   * Extends the lease, and checks it is still the lease of the token.
+   */
+  private void checkLease(long token) {
+    long held = bookWriteBehindRepository.acquireLease(owner, properties.getLeaseTtl());
+    if (held != token) {
+      throw new LeaseLostException("lease " + token + " was taken over");
+    }
+  }
+
+  private void retryLater(RecordId recordId, BookEvent write, Exception e) {
+    int failures = attempts.merge(recordId, 1, Integer::sum);
+    if (failures < properties.getMaxAttempts()) {
+      log.warn("Failed to flush book write {} of {}, attempt {} of {}", write.getType(), write.getId(), failures,
+        properties.getMaxAttempts(), e);
+      return;
+    }
+    if (bookWriteBehindRepository.deadLetter(recordId, write)) {
+      deadLettered.increment();
+    }
+    attempts.remove(recordId);
+    log.error("Moved book write {} of {} to the dead letters after {} attempts", write.getType(), write.getId(), failures, e);
+  }
+
+  /**
+   * The lease of a batch was taken over by another node, which flushes the batch again.
+   */
+  private static class LeaseLostException extends RuntimeException {
+
+    LeaseLostException(String message) {
+      super(message);
+    }
+  }
+}
@@ -0,0 +1,189 @@
+package com.cjrequena.sample.shared.cache;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * <p>
+ * Cache made of a local Caffeine L1 in front of a shared L2. Reads are served from the L1 and fall through to the L2
+ * on a miss. Writes go to the L2 first, then to the local L1, and are finally broadcast so the other replicas drop
+ * their L1 copy.
+ * </p>
+ *
+ * <p>L1 misses are filled inside the per-key Caffeine computation, so an eviction racing with a fill waits for it
+ * and then removes the value it loaded, instead of the fill resurrecting a stale value after the eviction.</p>
+ *
+ * <p>{@link #getAll} reads the L1 misses of several keys from the L2 at once, its lookups sent together instead of one
+ * round trip after the other. Those fills happen outside the per-key computation, so every write and eviction bumps a
+ * counter, and a batch that saw it move while it read drops the values it filled.</p>
+ *
+ * @author cjrequena
+ */
+public class TieredCache implements Cache {
+
+  private final String name;
+  private final com.github.benmanes.caffeine.cache.Cache<String, ValueWrapper> l1;
+  private final Cache l2;
+  private final Consumer<String> invalidationPublisher;
+  private final AtomicLong invalidations = new AtomicLong();
+
+  /**
+   * @param name                  the cache name
+   * @param l1                    the local near cache
+   * @param l2                    the shared cache
+   * @param invalidationPublisher notifies the other replicas that a key changed, a null key means the whole cache
+   */
+  public TieredCache(String name, com.github.benmanes.caffeine.cache.Cache<String, ValueWrapper> l1, Cache l2,
+    Consumer<String> invalidationPublisher) {
+    this.name = name;
+    this.l1 = l1;
+    this.l2 = l2;
+    this.invalidationPublisher = invalidationPublisher;
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public Object getNativeCache() {
+    return l1;
+  }
+
+  @Override
+  public ValueWrapper get(Object key) {
+    return l1.get(l1Key(key), k -> l2.get(key));
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T get(Object key, Class<T> type) {
+    ValueWrapper wrapper = get(key);
+    Object value = wrapper != null ? wrapper.get() : null;
+    if (value != null && type != null && !type.isInstance(value)) {
+      throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+    }
+    return (T) value;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T get(Object key, Callable<T> valueLoader) {
+    ValueWrapper wrapper = l1.get(l1Key(key), k -> {
+      ValueWrapper cached = l2.get(key);
+      return cached != null ? cached : new SimpleValueWrapper(l2.get(key, valueLoader));
+    });
+    return (T) wrapper.get();
+  }
+
+  /**
+   * Looks up several keys, the L1 misses read from the L2 in one batch of asynchronous lookups. An L2 that cannot
+   * look up asynchronously is read one key after the other.
+   *
+   * @return the cached values by key, without the keys not cached
+   */
+  public Map<Object, ValueWrapper> getAll(Collection<?> keys) {
+    Map<Object, ValueWrapper> values = new LinkedHashMap<>();
+    Map<Object, CompletableFuture<?>> lookups = new LinkedHashMap<>();
+    long invalidationsBefore = invalidations.get();
+    for (Object key : keys) {
+      ValueWrapper cached = l1.getIfPresent(l1Key(key));
+      if (cached != null) {
+        values.put(key, cached);
+      } else {
+        lookups.putIfAbsent(key, retrieveL2(key));
+      }
+    }
+
+    List<String> filled = new ArrayList<>();
+    lookups.forEach((key, lookup) -> {
+      Object value = lookup.join();
+      if (value != null) {
+        ValueWrapper wrapper = value instanceof ValueWrapper cached ? cached : new SimpleValueWrapper(value);
+        values.put(key, wrapper);
+        if (l1.asMap().putIfAbsent(l1Key(key), wrapper) == null) {
+          filled.add(l1Key(key));
+        }
+      }
+    });
+    // A write or eviction after the L2 reads may have been overtaken by the fills: drop them, the next read refills
+    if (invalidations.get() != invalidationsBefore) {
+      l1.invalidateAll(filled);
+    }
+    return values;
+  }
+
+  @Override
+  public void put(Object key, Object value) {
+    l2.put(key, value);
+    invalidations.incrementAndGet();
+    l1.put(l1Key(key), new SimpleValueWrapper(value));
+    invalidationPublisher.accept(l1Key(key));
+  }
+
+  @Override
+  public ValueWrapper putIfAbsent(Object key, Object value) {
+    ValueWrapper existing = l2.putIfAbsent(key, value);
+    invalidations.incrementAndGet();
+    l1.invalidate(l1Key(key));
+    return existing;
+  }
+
+  @Override
+  public void evict(Object key) {
+    l2.evict(key);
+    invalidations.incrementAndGet();
+    l1.invalidate(l1Key(key));
+    invalidationPublisher.accept(l1Key(key));
+  }
+
+  @Override
+  public void clear() {
+    l2.clear();
+    invalidations.incrementAndGet();
+    l1.invalidateAll();
+    invalidationPublisher.accept(null);
+  }
+
+  /**
+   * Drops a key from the L1 only, in reaction to a write made by another replica.
+   */
+  public void evictLocal(String key) {
+    invalidations.incrementAndGet();
+    l1.invalidate(key);
+  }
+
+  /**
+   * Drops the whole L1 only, in reaction to a clear made by another replica.
+   */
+  public void clearLocal() {
+    invalidations.incrementAndGet();
+    l1.invalidateAll();
+  }
+
+  private CompletableFuture<?> retrieveL2(Object key) {
+    try {
+      return l2.retrieve(key);
+    } catch (UnsupportedOperationException ex) {
+      return CompletableFuture.completedFuture(l2.get(key));
+    }
+  }
+
+  /**
+   * The L2 stores keys by their string form, the L1 does the same so that invalidation messages can address them.
+   */
+  private static String l1Key(Object key) {
+    return String.valueOf(key);
+  }
+}
@@ -0,0 +1,106 @@
+package com.cjrequena.sample.shared.cache;
+
+import com.cjrequena.sample.configuration.TieredCacheConfigurationProperties;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * {@link CacheManager} of {@link TieredCache}s, a Caffeine L1 per cache in front of the caches of the given L2
+ * manager. Every replica publishes the keys it writes to the invalidation channel and, as a {@link MessageListener}
+ * of that channel, drops from its own L1 the keys written by the others.
+ * </p>
+ *
+ * <p>Messages are {@code origin|cache|key}, or {@code origin|cache} to clear a whole cache. A replica ignores its own
+ * messages. Pub/sub delivery is at most once, a replica that misses a message serves the stale value until its L1
+ * entry expires, which is what the L1 TTL is for.</p>
+ *
+ * @author cjrequena
+ */
+@Slf4j
+public class TieredCacheManager implements CacheManager, MessageListener {
+
+  private static final String SEPARATOR = "|";
+
+  private final CacheManager l2CacheManager;
+  private final TieredCacheConfigurationProperties tieredCacheConfigurationProperties;
+  private final StringRedisTemplate stringRedisTemplate;
+  private final String origin = UUID.randomUUID().toString();
+  private final Map<String, TieredCache> caches = new ConcurrentHashMap<>();
+
+  public TieredCacheManager(CacheManager l2CacheManager, TieredCacheConfigurationProperties tieredCacheConfigurationProperties,
+    StringRedisTemplate stringRedisTemplate) {
+    this.l2CacheManager = l2CacheManager;
+    this.tieredCacheConfigurationProperties = tieredCacheConfigurationProperties;
+    this.stringRedisTemplate = stringRedisTemplate;
+  }
+
+  @Override
+  public Cache getCache(String name) {
+    return caches.computeIfAbsent(name, this::createCache);
+  }
+
+  @Override
+  public Collection<String> getCacheNames() {
+    return Collections.unmodifiableSet(caches.keySet());
+  }
+
+  @Override
+  public void onMessage(Message message, byte[] pattern) {
+    String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split("\\" + SEPARATOR, 3);
+    if (parts.length < 2 || origin.equals(parts[0])) {
+      return;
+    }
+    TieredCache cache = caches.get(parts[1]);
+    if (cache == null) {
+      return;
+    }
+    if (parts.length == 2) {
+      cache.clearLocal();
+    } else {
+      cache.evictLocal(parts[2]);
+    }
+    log.debug("L1 invalidation from {}: cache {}, key {}", parts[0], parts[1], parts.length == 2 ? "*" : parts[2]);
+  }
+
+  private TieredCache createCache(String name) {
+    Cache l2 = l2CacheManager.getCache(name);
+    if (l2 == null) {
+      throw new IllegalStateException("No L2 cache named " + name);
+    }
+    TieredCacheConfigurationProperties.Spec spec = tieredCacheConfigurationProperties.getSpec(name);
+    log.info("Creating tiered cache {} with L1 ttl {} and maximum size {}", name, spec.getL1Ttl(), spec.getL1MaximumSize());
+    return new TieredCache(name,
+      Caffeine.newBuilder()
+        .expireAfterWrite(spec.getL1Ttl())
+        .maximumSize(spec.getL1MaximumSize())
+        .build(),
+      l2,
+      key -> publish(name, key));
+  }
+
+  /**
+   * A failed publication is not fatal: the L2 already holds the new value and the other replicas converge when their
+   * L1 entry expires.
+   */
+  private void publish(String cacheName, String key) {
+    String message = origin + SEPARATOR + cacheName + (key != null ? SEPARATOR + key : "");
+    try {
+      stringRedisTemplate.convertAndSend(tieredCacheConfigurationProperties.getInvalidationChannel(), message);
+    } catch (Exception ex) {
+      log.warn("Failed to publish the L1 invalidation {}", message, ex);
+    }
+  }
+}
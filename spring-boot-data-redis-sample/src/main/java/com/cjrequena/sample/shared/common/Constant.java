@@ -11,6 +11,7 @@ package com.cjrequena.sample.shared.common;
 public class Constant {
   /** */
   public static final String VND_SAMPLE_SERVICE_V1 = "application/vnd.sample-service.v1";
+  public static final String VND_SAMPLE_SERVICE_V2 = "application/vnd.sample-service.v2";
   public static final String ISO_LOCAL_DATE_TIME = "yyyy-MM-dd'T'HH:mm:ss";       // no offset
   public static final String ISO_OFFSET_DATE_TIME = "yyyy-MM-dd'T'HH:mm:ss.SSSXXXXX"; // date + time + offset
   public static final String ISO_DATE = "yyyy-MM-dd";
@@ -0,0 +1,81 @@
+package com.cjrequena.sample.shared.redis;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * <p>
+ * Layout of a logical hash spread across a fixed number of Redis hashes, so no single key holds every field. A field
+ * lives in the shard {@code hash(field) % shards}, under the key {@code <prefix>:{<shard>}}.
+ * </p>
+ *
+ * <p>The shard number is the hash tag of the key, so in a cluster the shards land on different slots and spread across
+ * the nodes, while the same shard of two layouts with the same number of shards shares a slot: a field has the same
+ * shard in both, and a multi-key command over its two hashes stays on one node.</p>
+ *
+ * @author cjrequena
+ */
+public class HashShards {
+
+  private final String keyPrefix;
+  private final List<String> keys;
+
+  /**
+   * @param keyPrefix the prefix of the shard keys
+   * @param shards    the number of shards
+   */
+  public HashShards(String keyPrefix, int shards) {
+    if (shards < 1) {
+      throw new IllegalArgumentException("Number of hash shards must be positive: " + shards);
+    }
+    this.keyPrefix = Objects.requireNonNull(keyPrefix, "Key prefix cannot be null");
+    List<String> shardKeys = new ArrayList<>(shards);
+    for (int shard = 0; shard < shards; shard++) {
+      shardKeys.add(keyPrefix + ":{" + shard + "}");
+    }
+    this.keys = Collections.unmodifiableList(shardKeys);
+  }
+
+  public String getKeyPrefix() {
+    return keyPrefix;
+  }
+
+  /**
+   * The key of the shard holding a field. {@link String#hashCode()} is specified, so a field keeps its shard across
+   * restarts and instances.
+   */
+  public String key(String field) {
+    Objects.requireNonNull(field, "Field cannot be null");
+    return keys.get(Math.floorMod(field.hashCode(), keys.size()));
+  }
+
+  /**
+   * The keys of every shard.
+   */
+  public List<String> keys() {
+    return keys;
+  }
+
+  /**
+   * Splits entries by the key of the shard holding them.
+   */
+  public <V> Map<String, Map<String, V>> group(Map<String, V> entries) {
+    Map<String, Map<String, V>> shards = new LinkedHashMap<>();
+    entries.forEach((field, value) -> shards.computeIfAbsent(key(field), key -> new LinkedHashMap<>()).put(field, value));
+    return shards;
+  }
+
+  /**
+   * Splits fields by the key of the shard holding them.
+   */
+  public Map<String, List<String>> groupFields(Collection<String> fields) {
+    Map<String, List<String>> shards = new LinkedHashMap<>();
+    fields.forEach(field -> shards.computeIfAbsent(key(field), key -> new ArrayList<>()).add(field));
+    return shards;
+  }
+}
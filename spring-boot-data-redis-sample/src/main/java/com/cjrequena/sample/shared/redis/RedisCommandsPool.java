@@ -0,0 +1,150 @@
+package com.cjrequena.sample.shared.redis;
+
+import io.lettuce.core.api.StatefulConnection;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.cluster.api.sync.RedisClusterCommands;
+import io.lettuce.core.support.ConnectionPoolSupport;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ * Pool of Lettuce connections for blocking commands. Each call borrows a connection for its duration, so a slow
+ * command only holds its own connection instead of queueing every other caller behind it on a shared one.
+ * </p>
+ *
+ * <p>Connections may be standalone or cluster connections; callers get their sync API as
+ * {@link RedisClusterCommands}, or their async API as {@link RedisClusterAsyncCommands} in a {@link Pipeline} to
+ * pipeline commands, the command sets both kinds have in common.</p>
+ *
+ * <p>Metrics, tagged with the pool name: {@code redis.pool.active}, {@code redis.pool.idle},
+ * {@code redis.pool.pending} (threads waiting for a connection), {@code redis.pool.max} and the
+ * {@code redis.pool.borrow} timer of the wait for a connection.</p>
+ *
+ * @author cjrequena
+ */
+@Slf4j
+public class RedisCommandsPool implements AutoCloseable {
+
+  private final String name;
+  private final GenericObjectPool<StatefulConnection<String, String>> pool;
+  private final Timer borrowTimer;
+
+  /**
+   * @param name               the pool name, used as the metrics tag
+   * @param connectionSupplier opens a new connection
+   * @param config             the pool sizing and borrow wait
+   * @param meterRegistry      the registry of the pool metrics
+   */
+  public RedisCommandsPool(String name, Supplier<StatefulConnection<String, String>> connectionSupplier,
+    GenericObjectPoolConfig<StatefulConnection<String, String>> config, MeterRegistry meterRegistry) {
+    this.name = name;
+    this.pool = ConnectionPoolSupport.createGenericObjectPool(connectionSupplier, config);
+
+    Tags tags = Tags.of("pool", name);
+    Gauge.builder("redis.pool.active", pool, GenericObjectPool::getNumActive).tags(tags).register(meterRegistry);
+    Gauge.builder("redis.pool.idle", pool, GenericObjectPool::getNumIdle).tags(tags).register(meterRegistry);
+    Gauge.builder("redis.pool.pending", pool, GenericObjectPool::getNumWaiters).tags(tags).register(meterRegistry);
+    Gauge.builder("redis.pool.max", pool, GenericObjectPool::getMaxTotal).tags(tags).register(meterRegistry);
+    this.borrowTimer = Timer.builder("redis.pool.borrow").tags(tags).register(meterRegistry);
+
+    log.info("Redis commands pool '{}' created with max {} connections", name, config.getMaxTotal());
+  }
+
+  /**
+   * Runs an action on a pooled connection, returned to the pool once the action completes.
+   *
+   * @param action the commands to run
+   * @return the action result
+   * @throws IllegalStateException if no connection could be borrowed within the configured wait
+   */
+  public <T> T execute(Function<RedisClusterCommands<String, String>, T> action) {
+    StatefulConnection<String, String> connection = borrow();
+
+    // Closing a pooled connection returns it to the pool
+    try (connection) {
+      return action.apply(sync(connection));
+    }
+  }
+
+  /**
+   * Runs an action on the async API of a pooled connection with auto flush disabled, so the commands it issues are
+   * buffered and written to Redis in one go each time it calls {@link Pipeline#flush()}. Whatever the action left
+   * buffered is flushed, and auto flush restored, before the connection goes back to the pool.
+   *
+   * @param action the commands to pipeline, in charge of flushing and awaiting them
+   * @return the action result
+   * @throws IllegalStateException if no connection could be borrowed within the configured wait
+   */
+  public <T> T executePipelined(Function<Pipeline, T> action) {
+    StatefulConnection<String, String> connection = borrow();
+
+    try (connection) {
+      connection.setAutoFlushCommands(false);
+      try {
+        return action.apply(new Pipeline(async(connection), connection));
+      } finally {
+        connection.flushCommands();
+        connection.setAutoFlushCommands(true);
+      }
+    }
+  }
+
+  /**
+   * The async API of a pooled connection whose commands are buffered, and the connection they are flushed on.
+   *
+   * @param commands   the commands to buffer
+   * @param connection the connection of the commands
+   */
+  public record Pipeline(RedisClusterAsyncCommands<String, String> commands, StatefulConnection<String, String> connection) {
+
+    /**
+     * Writes the buffered commands to Redis.
+     */
+    public void flush() {
+      connection.flushCommands();
+    }
+  }
+
+  @Override
+  public void close() {
+    pool.close();
+    log.info("Redis commands pool '{}' closed", name);
+  }
+
+  private StatefulConnection<String, String> borrow() {
+    long start = System.nanoTime();
+    try {
+      return pool.borrowObject();
+    } catch (Exception e) {
+      throw new IllegalStateException("Unable to borrow a connection from the Redis commands pool '" + name + "'", e);
+    } finally {
+      borrowTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private static RedisClusterAsyncCommands<String, String> async(StatefulConnection<String, String> connection) {
+    if (connection instanceof StatefulRedisClusterConnection<String, String> clusterConnection) {
+      return clusterConnection.async();
+    }
+    return ((StatefulRedisConnection<String, String>) connection).async();
+  }
+
+  private static RedisClusterCommands<String, String> sync(StatefulConnection<String, String> connection) {
+    if (connection instanceof StatefulRedisClusterConnection<String, String> clusterConnection) {
+      return clusterConnection.sync();
+    }
+    return ((StatefulRedisConnection<String, String>) connection).sync();
+  }
+}
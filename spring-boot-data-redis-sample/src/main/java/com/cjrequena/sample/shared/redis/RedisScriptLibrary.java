@@ -0,0 +1,105 @@
+package com.cjrequena.sample.shared.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * Lua scripts registered by name and invoked by SHA1. Scripts are loaded into the script cache with
+ * {@code SCRIPT LOAD} once the application has started, so a call only sends the SHA1, the keys and the arguments
+ * with {@code EVALSHA}. A server that lost its script cache, after a restart or a failover, replies {@code NOSCRIPT}
+ * and the call is sent once more with the script source, which loads it again.
+ * </p>
+ *
+ * <p>A script runs atomically, so a write touching several keys takes one round trip and no other client sees it half
+ * done. In a cluster every key of a call must hash to the same slot.</p>
+ *
+ * <p>Arguments are sent as is when they are {@code byte[]}, such as values serialized by the caller, and as their
+ * UTF-8 string otherwise.</p>
+ *
+ * @author cjrequena
+ */
+@Slf4j
+public class RedisScriptLibrary implements SmartInitializingSingleton {
+
+  private final RedisTemplate<String, ?> redisTemplate;
+  private final Map<String, RedisScript<?>> scripts = new ConcurrentHashMap<>(); // By name
+  private volatile boolean loaded;
+
+  public RedisScriptLibrary(RedisTemplate<String, ?> redisTemplate) {
+    this.redisTemplate = redisTemplate;
+  }
+
+  /**
+   * Registers a script, loaded right away if the library is already loaded.
+   *
+   * @param name       the script name, unique in the library
+   * @param source     the Lua source
+   * @param resultType the type of the script reply
+   * @return the script, to pass to {@link #execute}
+   */
+  public <T> RedisScript<T> register(String name, String source, Class<T> resultType) {
+    RedisScript<T> script = RedisScript.of(source, resultType);
+    RedisScript<?> registered = scripts.putIfAbsent(name, script);
+    if (registered != null && !registered.getSha1().equals(script.getSha1())) {
+      throw new IllegalStateException("Another Lua script is already registered as " + name);
+    }
+    if (loaded) {
+      load(name, script);
+    }
+    return script;
+  }
+
+  /**
+   * Loads every registered script into the script cache.
+   */
+  @Override
+  public void afterSingletonsInstantiated() {
+    scripts.forEach(this::load);
+    loaded = true;
+  }
+
+  /**
+   * Runs a script with EVALSHA, falling back to EVAL if the server does not know it.
+   *
+   * @param script the registered script
+   * @param keys   the keys the script reads or writes
+   * @param args   the script arguments
+   * @return the script reply, with bulk strings read as UTF-8 strings
+   */
+  public <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+    Object[] rawArgs = new Object[args.length];
+    for (int i = 0; i < args.length; i++) {
+      rawArgs[i] = args[i] instanceof byte[] raw ? raw : String.valueOf(args[i]).getBytes(StandardCharsets.UTF_8);
+    }
+    @SuppressWarnings("unchecked")
+    RedisSerializer<T> resultSerializer = (RedisSerializer<T>) RedisSerializer.string();
+    return redisTemplate.execute(script, RedisSerializer.byteArray(), resultSerializer, keys, rawArgs);
+  }
+
+  /**
+   * A script that fails to load is only logged, EVAL loads it on its first call.
+   */
+  private void load(String name, RedisScript<?> script) {
+    try {
+      String sha1 = redisTemplate.execute((RedisCallback<String>) connection ->
+        connection.scriptingCommands().scriptLoad(script.getScriptAsString().getBytes(StandardCharsets.UTF_8)));
+      if (!Objects.equals(sha1, script.getSha1())) {
+        log.warn("Lua script {} loaded as {} instead of {}", name, sha1, script.getSha1());
+      }
+      log.debug("Loaded Lua script {} as {}", name, sha1);
+    } catch (Exception e) {
+      log.warn("Failed to load Lua script {}, it is loaded on its first call", name, e);
+    }
+  }
+}
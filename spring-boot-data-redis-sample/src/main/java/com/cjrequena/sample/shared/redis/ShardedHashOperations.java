@@ -0,0 +1,193 @@
+package com.cjrequena.sample.shared.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * <p>
+ * Blocking hash operations on a logical hash laid out by {@link HashShards}. Single fields go to their shard; the
+ * operations over the whole hash address every shard at once instead of one key after the other: writes, sizes and
+ * deletes are pipelined, and listing scatters one HSCAN per shard on virtual threads and gathers their values, so it
+ * takes about as long as the largest shard.
+ * </p>
+ *
+ * @param <V> the type of the hash values
+ * @author cjrequena
+ */
+@Slf4j
+public class ShardedHashOperations<V> {
+
+  private static final int BATCH_SIZE = 1_000;                          // Fields per HSCAN and per HSET
+
+  private final HashShards shards;
+  private final RedisTemplate<String, ?> redisTemplate;
+  private final HashOperations<String, String, V> hashOps;
+
+  public ShardedHashOperations(RedisTemplate<String, ?> redisTemplate, HashShards shards) {
+    this.redisTemplate = redisTemplate;
+    this.hashOps = redisTemplate.opsForHash();
+    this.shards = shards;
+  }
+
+  public HashShards getShards() {
+    return shards;
+  }
+
+  public void put(String field, V value) {
+    hashOps.put(shards.key(field), field, value);
+  }
+
+  public V get(String field) {
+    return hashOps.get(shards.key(field), field);
+  }
+
+  public Long delete(String field) {
+    return hashOps.delete(shards.key(field), field);
+  }
+
+  /**
+   * Writes the entries in one pipeline, an HSET of up to {@value #BATCH_SIZE} fields per shard and batch.
+   */
+  public void putAll(Map<String, V> entries) {
+    Map<String, Map<String, V>> entriesByShard = shards.group(entries);
+    redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+      entriesByShard.forEach((key, shardEntries) -> {
+        Map<byte[], byte[]> batch = new LinkedHashMap<>();
+        for (Map.Entry<String, V> entry : shardEntries.entrySet()) {
+          batch.put(rawHashKey(entry.getKey()), rawHashValue(entry.getValue()));
+          if (batch.size() == BATCH_SIZE) {
+            connection.hashCommands().hMSet(rawKey(key), batch);
+            batch = new LinkedHashMap<>();
+          }
+        }
+        if (!batch.isEmpty()) {
+          connection.hashCommands().hMSet(rawKey(key), batch);
+        }
+      });
+      return null;
+    });
+  }
+
+  /**
+   * Reads the values of some fields in one pipeline, an HMGET per shard.
+   *
+   * @return the values by field, without the fields not found
+   */
+  @SuppressWarnings("unchecked")
+  public Map<String, V> multiGet(Collection<String> fields) {
+    Map<String, List<String>> fieldsByShard = shards.groupFields(fields);
+    List<Object> replies = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+      fieldsByShard.forEach((key, shardFields) ->
+        connection.hashCommands().hMGet(rawKey(key), shardFields.stream().map(this::rawHashKey).toArray(byte[][]::new)));
+      return null;
+    }, redisTemplate.getHashValueSerializer());
+
+    Map<String, V> values = new LinkedHashMap<>();
+    int shard = 0;
+    for (List<String> shardFields : fieldsByShard.values()) {
+      List<V> shardValues = (List<V>) replies.get(shard++);
+      for (int i = 0; i < shardFields.size(); i++) {
+        if (shardValues.get(i) != null) {
+          values.put(shardFields.get(i), shardValues.get(i));
+        }
+      }
+    }
+    return values;
+  }
+
+  /**
+   * Deletes some fields in one pipeline, an HDEL per shard.
+   */
+  public void deleteAll(Collection<String> fields) {
+    Map<String, List<String>> fieldsByShard = shards.groupFields(fields);
+    redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+      fieldsByShard.forEach((key, shardFields) ->
+        connection.hashCommands().hDel(rawKey(key), shardFields.stream().map(this::rawHashKey).toArray(byte[][]::new)));
+      return null;
+    });
+  }
+
+  /**
+   * Reads every value, scanning the shards concurrently.
+   */
+  public List<V> values() {
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      List<Future<List<V>>> scans = shards.keys().stream()
+        .map(key -> executor.submit(() -> scan(key)))
+        .toList();
+
+      List<V> values = new ArrayList<>();
+      for (Future<List<V>> scan : scans) {
+        values.addAll(scan.get());
+      }
+      return values;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RedisSystemException("Interrupted while scanning the shards of " + shards.getKeyPrefix(), e);
+    } catch (ExecutionException e) {
+      throw new RedisSystemException("Failed to scan the shards of " + shards.getKeyPrefix(), e.getCause());
+    }
+  }
+
+  /**
+   * Sums the number of fields of every shard, read in one pipeline.
+   */
+  public long size() {
+    return redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+        shards.keys().forEach(key -> connection.hashCommands().hLen(rawKey(key)));
+        return null;
+      }).stream()
+      .mapToLong(size -> size instanceof Long length ? length : 0)
+      .sum();
+  }
+
+  /**
+   * Deletes every shard, in one pipeline.
+   */
+  public void clear() {
+    redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+      shards.keys().forEach(key -> connection.keyCommands().del(rawKey(key)));
+      return null;
+    });
+  }
+
+  private List<V> scan(String key) {
+    List<V> values = new ArrayList<>();
+    try (Cursor<Map.Entry<String, V>> cursor = hashOps.scan(key, ScanOptions.scanOptions().count(BATCH_SIZE).build())) {
+      cursor.forEachRemaining(entry -> values.add(entry.getValue()));
+    }
+    log.trace("Scanned {} fields from hash shard {}", values.size(), key);
+    return values;
+  }
+
+  @SuppressWarnings("unchecked")
+  private byte[] rawKey(String key) {
+    return ((RedisSerializer<String>) redisTemplate.getKeySerializer()).serialize(key);
+  }
+
+  @SuppressWarnings("unchecked")
+  private byte[] rawHashKey(String field) {
+    return ((RedisSerializer<String>) redisTemplate.getHashKeySerializer()).serialize(field);
+  }
+
+  @SuppressWarnings("unchecked")
+  private byte[] rawHashValue(V value) {
+    return ((RedisSerializer<V>) redisTemplate.getHashValueSerializer()).serialize(value);
+  }
+}
@@ -0,0 +1,320 @@
+package com.cjrequena.sample.shared.redis;
+
+import com.cjrequena.sample.configuration.RedisConfigurationProperties;
+import io.lettuce.core.StreamMessage;
+import io.lettuce.core.XAutoClaimArgs;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.models.stream.ClaimedMessages;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.stream.StreamMessageListenerContainer;
+import org.springframework.data.redis.stream.StreamMessageListenerContainer.StreamMessageListenerContainerOptions;
+import org.springframework.data.redis.stream.StreamMessageListenerContainer.StreamReadRequest;
+
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Processes the records of a Redis stream in a consumer group, so each record is handled by one consumer of the
+ * group, once, and the consumers of every node share the work. Records are read by a
+ * {@link StreamMessageListenerContainer} with batched {@code XREADGROUP}s, and acknowledged with {@code XACK} once
+ * the handler returns. A consumer only reads its next batch after handling the current one, so a slow handler slows
+ * the reads down instead of piling records up in memory.
+ * </p>
+ *
+ * <p>A record whose handler failed, or whose consumer crashed, stays pending in the group. It is reclaimed with
+ * {@code XAUTOCLAIM} once it has been pending longer than the reclaim idle time, by any node, and handled again. A
+ * record delivered more than the maximum number of times is logged and acknowledged without handling it.</p>
+ *
+ * <p>Metrics, tagged with the stream and the group: {@code redis.stream.processed}, {@code redis.stream.failed},
+ * {@code redis.stream.reclaimed} and {@code redis.stream.dropped} (records given up after too many deliveries).</p>
+ *
+ * @author cjrequena
+ */
+@Slf4j
+public class StreamConsumerGroupProcessor implements SmartLifecycle {
+
+  private static final String START_CURSOR = "0-0";
+
+  private final String streamKey;
+  private final RedisConfigurationProperties.Stream properties;
+  private final RedisTemplate<String, Object> redisTemplate;
+  private final java.util.function.Consumer<MapRecord<String, String, Object>> handler;
+  private final String consumerName;
+  private final StreamMessageListenerContainer<String, MapRecord<String, String, Object>> container;
+  private final ScheduledExecutorService reclaimer;
+  private volatile boolean running;
+
+  private final Counter processed;
+  private final Counter failed;
+  private final Counter reclaimed;
+  private final Counter dropped;
+
+  /**
+   * @param streamKey         the stream to process
+   * @param properties        the group, consumers, batching and reclaim settings
+   * @param connectionFactory the factory of the connections reading the stream
+   * @param redisTemplate     the template the records were written with, whose serializers decode them
+   * @param handler           handles a record, a record is only acknowledged if it returns normally
+   * @param meterRegistry     the registry of the processor metrics
+   */
+  @SuppressWarnings("unchecked")
+  public StreamConsumerGroupProcessor(String streamKey, RedisConfigurationProperties.Stream properties,
+    RedisConnectionFactory connectionFactory, RedisTemplate<String, Object> redisTemplate,
+    java.util.function.Consumer<MapRecord<String, String, Object>> handler, MeterRegistry meterRegistry) {
+    this.streamKey = streamKey;
+    this.properties = properties;
+    this.redisTemplate = redisTemplate;
+    this.handler = handler;
+    this.consumerName = properties.getConsumerName() != null ? properties.getConsumerName() : hostName();
+
+    // Each consumer blocks in its own polling loop
+    SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("stream-" + properties.getGroup() + "-");
+    executor.setVirtualThreads(true);
+    StreamMessageListenerContainerOptions<String, MapRecord<String, String, Object>> options = StreamMessageListenerContainerOptions
+      .builder()
+      .batchSize(properties.getBatchSize())
+      .pollTimeout(properties.getPollTimeout())
+      .executor(executor)
+      .keySerializer(redisTemplate.getStringSerializer())
+      .hashKeySerializer(redisTemplate.getStringSerializer())
+      .<String, Object>hashValueSerializer((RedisSerializer<Object>) redisTemplate.getHashValueSerializer())
+      .errorHandler(this::readFailed)
+      .build();
+    this.container = StreamMessageListenerContainer.create(connectionFactory, options);
+    this.reclaimer = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+      .name("stream-" + properties.getGroup() + "-reclaimer").daemon(true).factory());
+
+    Tags tags = Tags.of("stream", streamKey, "group", properties.getGroup());
+    this.processed = Counter.builder("redis.stream.processed").tags(tags).register(meterRegistry);
+    this.failed = Counter.builder("redis.stream.failed").tags(tags).register(meterRegistry);
+    this.reclaimed = Counter.builder("redis.stream.reclaimed").tags(tags).register(meterRegistry);
+    this.dropped = Counter.builder("redis.stream.dropped").tags(tags).register(meterRegistry);
+  }
+
+  /**
+   * Creates the consumer group if it does not exist yet, starts the consumers of this node and schedules the reclaim
+   * of the stalled records. A new group only gets the records added from then on.
+   */
+  @Override
+  public void start() {
+    createGroup();
+
+    for (int i = 0; i < properties.getConsumers(); i++) {
+      Consumer consumer = Consumer.from(properties.getGroup(), consumerName + "-" + i);
+      container.register(
+        StreamReadRequest.builder(StreamOffset.create(streamKey, ReadOffset.lastConsumed()))
+          .consumer(consumer)
+          .autoAcknowledge(false)
+          .cancelOnError(e -> false) // Keep polling after a read error, e.g. while Redis restarts
+          .build(),
+        this::process);
+    }
+    container.start();
+    running = true;
+
+    long interval = properties.getReclaimInterval().toMillis();
+    reclaimer.scheduleWithFixedDelay(this::reclaim, interval, interval, TimeUnit.MILLISECONDS);
+
+    log.info("Processing the stream {} in group {} with {} consumers named {}-*, batches of {}", streamKey,
+      properties.getGroup(), properties.getConsumers(), consumerName, properties.getBatchSize());
+  }
+
+  /**
+   * Stops the consumers and the reclaim. Being a lifecycle bean, the processor is stopped before the connection
+   * factory it reads with.
+   */
+  @Override
+  public void stop() {
+    running = false;
+    reclaimer.shutdownNow();
+    container.stop();
+    log.info("Stopped processing the stream {} in group {}", streamKey, properties.getGroup());
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  /**
+   * Claims the records pending longer than the reclaim idle time, from every consumer of the group, and handles them
+   * again. Runs until the whole pending list has been walked.
+   */
+  void reclaim() {
+    try {
+      String cursor = START_CURSOR;
+      do {
+        ClaimedMessages<byte[], byte[]> claimed = autoClaim(cursor);
+        handleClaimed(claimed.getMessages());
+        cursor = claimed.getId();
+      } while (!START_CURSOR.equals(cursor));
+      acknowledgeTrimmed();
+    } catch (Exception e) {
+      log.error("Failed to reclaim the pending records of the stream {} in group {}", streamKey, properties.getGroup(), e);
+    }
+  }
+
+  /**
+   * Acknowledges the pending records trimmed away from the stream, the ones older than its first record. Redis 7
+   * drops them from the pending list in {@code XAUTOCLAIM}, Redis 6.2 keeps them there.
+   */
+  private void acknowledgeTrimmed() {
+    List<MapRecord<String, Object, Object>> first = redisTemplate.opsForStream().range(streamKey, Range.unbounded(), Limit.limit().count(1));
+    Range<String> trimmed = first == null || first.isEmpty()
+      ? Range.unbounded()
+      : Range.of(Range.Bound.unbounded(), Range.Bound.exclusive(first.getFirst().getId().getValue()));
+
+    RecordId[] ids = redisTemplate.opsForStream().pending(streamKey, properties.getGroup(), trimmed, properties.getBatchSize())
+      .stream()
+      .map(PendingMessage::getId)
+      .toArray(RecordId[]::new);
+    if (ids.length > 0) {
+      redisTemplate.opsForStream().acknowledge(streamKey, properties.getGroup(), ids);
+      log.info("Acknowledged {} pending records trimmed from the stream {}", ids.length, streamKey);
+    }
+  }
+
+  /**
+   * Reads still in flight when the processor stops fail as their connections close, nothing to report then.
+   */
+  private void readFailed(Throwable e) {
+    if (running) {
+      log.error("Failed to read the stream {} in group {}", streamKey, properties.getGroup(), e);
+    } else {
+      log.debug("Read of the stream {} interrupted by the processor stop", streamKey, e);
+    }
+  }
+
+  private void process(MapRecord<String, String, Object> record) {
+    try {
+      handler.accept(record);
+      redisTemplate.opsForStream().acknowledge(properties.getGroup(), record);
+      processed.increment();
+    } catch (Exception e) {
+      // Left pending, to be reclaimed
+      failed.increment();
+      log.warn("Failed to process the record {} of the stream {}", record.getId(), streamKey, e);
+    }
+  }
+
+  private void handleClaimed(List<StreamMessage<byte[], byte[]>> messages) {
+    if (messages.isEmpty()) {
+      return;
+    }
+    reclaimed.increment(messages.size());
+    Map<RecordId, Long> deliveries = deliveries(messages);
+
+    for (StreamMessage<byte[], byte[]> message : messages) {
+      RecordId id = RecordId.of(message.getId());
+      if (message.getBody() == null || message.getBody().isEmpty()) {
+        // Trimmed away while pending, nothing left to handle
+        redisTemplate.opsForStream().acknowledge(streamKey, properties.getGroup(), id);
+      } else if (deliveries.getOrDefault(id, 0L) > properties.getMaxDeliveries()) {
+        redisTemplate.opsForStream().acknowledge(streamKey, properties.getGroup(), id);
+        dropped.increment();
+        log.error("Dropped the record {} of the stream {} after {} deliveries: {}", id, streamKey,
+          deliveries.get(id), toRecord(message).getValue());
+      } else {
+        process(toRecord(message));
+      }
+    }
+  }
+
+  /**
+   * Delivery counts of the claimed records, from a single {@code XPENDING} over their id range.
+   */
+  private Map<RecordId, Long> deliveries(List<StreamMessage<byte[], byte[]>> messages) {
+    Map<RecordId, Long> deliveries = new HashMap<>();
+    redisTemplate.opsForStream().pending(streamKey, Consumer.from(properties.getGroup(), reclaimerName()),
+        Range.closed(messages.getFirst().getId(), messages.getLast().getId()), messages.size())
+      .forEach((PendingMessage pending) -> deliveries.put(pending.getId(), pending.getTotalDeliveryCount()));
+    return deliveries;
+  }
+
+  @SuppressWarnings("unchecked")
+  private ClaimedMessages<byte[], byte[]> autoClaim(String cursor) {
+    RedisSerializer<String> serializer = redisTemplate.getStringSerializer();
+    XAutoClaimArgs<byte[]> args = XAutoClaimArgs.Builder
+      .xautoclaim(io.lettuce.core.Consumer.from(serializer.serialize(properties.getGroup()), serializer.serialize(reclaimerName())),
+        properties.getReclaimIdle(), cursor)
+      .count(properties.getBatchSize());
+
+    return redisTemplate.execute((RedisCallback<ClaimedMessages<byte[], byte[]>>) connection -> {
+      RedisClusterAsyncCommands<byte[], byte[]> commands = (RedisClusterAsyncCommands<byte[], byte[]>) connection.getNativeConnection();
+      try {
+        return commands.xautoclaim(serializer.serialize(streamKey), args).get(properties.getPollTimeout().toMillis(), TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RedisSystemException("Interrupted while reclaiming the pending records of " + streamKey, e);
+      } catch (Exception e) {
+        throw new RedisSystemException("Failed to reclaim the pending records of " + streamKey, e);
+      }
+    });
+  }
+
+  private MapRecord<String, String, Object> toRecord(StreamMessage<byte[], byte[]> message) {
+    Map<String, Object> body = new LinkedHashMap<>();
+    message.getBody().forEach((field, value) -> body.put(
+      redisTemplate.getStringSerializer().deserialize(field),
+      redisTemplate.getHashValueSerializer().deserialize(value)));
+    return StreamRecords.newRecord().in(streamKey).withId(message.getId()).ofMap(body);
+  }
+
+  private String reclaimerName() {
+    return consumerName + "-reclaimer";
+  }
+
+  private static String hostName() {
+    try {
+      return InetAddress.getLocalHost().getHostName();
+    } catch (Exception e) {
+      return UUID.randomUUID().toString();
+    }
+  }
+
+  private void createGroup() {
+    try {
+      redisTemplate.opsForStream().createGroup(streamKey, ReadOffset.latest(), properties.getGroup());
+      log.info("Created the consumer group {} of the stream {}", properties.getGroup(), streamKey);
+    } catch (Exception e) {
+      if (!String.valueOf(rootMessage(e)).contains("BUSYGROUP")) {
+        throw e;
+      }
+      log.debug("Consumer group {} of the stream {} already exists", properties.getGroup(), streamKey);
+    }
+  }
+
+  private static String rootMessage(Throwable e) {
+    while (e.getCause() != null) {
+      e = e.getCause();
+    }
+    return e.getMessage();
+  }
+}
@@ -0,0 +1,304 @@
+package com.cjrequena.sample.shared.redis;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.lettuce.core.AbstractRedisClient;
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisConnectionStateListener;
+import io.lettuce.core.StatefulRedisConnectionImpl;
+import io.lettuce.core.TrackingArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.push.PushListener;
+import io.lettuce.core.api.push.PushMessage;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.protocol.ProtocolVersion;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Local copy of Redis hash fields, kept coherent with Redis by client-side caching. Fields are read on a dedicated
+ * RESP3 connection with {@code CLIENT TRACKING} on, so Redis remembers the keys it read and pushes an invalidation
+ * on that connection as soon as any client writes one of them; the invalidation evicts every cached field of the
+ * key. A field read again before that is served locally, without network I/O.
+ * </p>
+ *
+ * <p>Invalidations are per key: a write to a field evicts all the cached fields of its hash, so it pays off on hashes
+ * read much more often than written. The cached fields are indexed by key, so an invalidation evicts exactly the fields
+ * of its key, in time proportional to their number. On hashes sharded across N keys, a write evicts about 1/N of the
+ * cached fields: the hit rate under writes grows with the number of shards.</p>
+ *
+ * <p>Tracking is only set up on a standalone or sentinel connection speaking RESP3, to a Redis 6 or later. Otherwise
+ * the near cache stays disabled and callers are expected to read from Redis as usual. While the connection is down
+ * the cached fields are dropped and {@link #isTracking()} is false, until tracking is on again after the reconnect;
+ * callers then read from Redis on their own connections, as a read on the tracked connection would wait for it to
+ * reconnect.</p>
+ *
+ * <p>Metrics, tagged with the cache name: {@code redis.near-cache.hits}, {@code redis.near-cache.misses},
+ * {@code redis.near-cache.invalidations} (invalidated keys), {@code redis.near-cache.size} and
+ * {@code redis.near-cache.tracking} (1 while the cached fields are kept coherent).</p>
+ *
+ * @param <V> the type of the hash values
+ * @author cjrequena
+ */
+@Slf4j
+public class TrackingNearCache<V> implements AutoCloseable {
+
+  private static final char KEY_SEPARATOR = '\0';
+
+  private final String name;
+  private final RedisSerializer<V> valueSerializer;
+  private final Cache<String, V> fields;
+  private final Map<String, Set<String>> fieldsByKey = new ConcurrentHashMap<>(); // Cached fields of each key
+  private final AbstractRedisClient client;
+  private final StatefulRedisConnection<byte[], byte[]> connection;
+  private final RedisConnectionStateListener connectionStateListener = new ConnectionStateListener();
+
+  /**
+   * Incremented before every eviction by an invalidation, so a read racing with one can tell it may hold a stale value.
+   */
+  private final AtomicLong generation = new AtomicLong();
+  private volatile boolean tracking;
+
+  private final Counter hits;
+  private final Counter misses;
+  private final Counter invalidations;
+
+  /**
+   * @param name            the cache name, used as the metrics tag
+   * @param client          the client to open the tracked connection on
+   * @param valueSerializer the serializer of the hash values
+   * @param maximumSize     the maximum number of cached fields
+   * @param meterRegistry   the registry of the cache metrics
+   */
+  public TrackingNearCache(String name, AbstractRedisClient client, RedisSerializer<V> valueSerializer, long maximumSize,
+    MeterRegistry meterRegistry) {
+    this.name = name;
+    this.client = client;
+    this.valueSerializer = valueSerializer;
+    this.fields = Caffeine.newBuilder()
+      .maximumSize(maximumSize)
+      .<String, V>evictionListener((cacheKey, value, cause) -> unindex(cacheKey)) // Run atomically with the eviction
+      .build();
+    this.connection = openTrackedConnection(client);
+
+    Tags tags = Tags.of("cache", name);
+    this.hits = Counter.builder("redis.near-cache.hits").tags(tags).register(meterRegistry);
+    this.misses = Counter.builder("redis.near-cache.misses").tags(tags).register(meterRegistry);
+    this.invalidations = Counter.builder("redis.near-cache.invalidations").tags(tags).register(meterRegistry);
+    Gauge.builder("redis.near-cache.size", fields, Cache::estimatedSize).tags(tags).register(meterRegistry);
+    Gauge.builder("redis.near-cache.tracking", this, cache -> cache.tracking ? 1 : 0).tags(tags).register(meterRegistry);
+  }
+
+  /**
+   * Whether the near cache could be set up. When it could not, callers read from Redis without it.
+   */
+  public boolean isEnabled() {
+    return connection != null;
+  }
+
+  /**
+   * Whether the tracked connection is up with tracking on, so {@link #hget} can be called without waiting on a
+   * reconnect.
+   */
+  public boolean isTracking() {
+    return tracking && connection.isOpen();
+  }
+
+  /**
+   * Reads a hash field, from the near cache if it holds it, from Redis on the tracked connection otherwise. Meant to be
+   * called while {@link #isTracking()}.
+   *
+   * @return the value, null if the field does not exist
+   * @throws IllegalStateException if the near cache is not enabled
+   */
+  public V hget(String key, String field) {
+    if (connection == null) {
+      throw new IllegalStateException("Near cache '" + name + "' is not enabled");
+    }
+    String cacheKey = cacheKey(key, field);
+    V value = fields.getIfPresent(cacheKey);
+    if (value != null) {
+      hits.increment();
+      return value;
+    }
+
+    misses.increment();
+    boolean tracked = tracking;
+    long readGeneration = generation.get();
+    value = valueSerializer.deserialize(connection.sync().hget(bytes(key), bytes(field)));
+    if (tracked && value != null) {
+      V cached = value;
+      fields.asMap().compute(cacheKey, (k, previous) -> {
+        fieldsByKey.computeIfAbsent(key, unused -> ConcurrentHashMap.newKeySet()).add(field);
+        return cached;
+      });
+      // An invalidation that arrived since the read may have run before the put, drop the value it missed
+      if (generation.get() != readGeneration || !tracking) {
+        fields.asMap().remove(cacheKey, value);
+      }
+    }
+    return value;
+  }
+
+  /**
+   * Evicts a field right away, for the writes of this instance, without waiting for the invalidation of its key.
+   */
+  public void evict(String key, String field) {
+    generation.incrementAndGet();
+    fields.asMap().computeIfPresent(cacheKey(key, field), (cacheKey, value) -> {
+      unindex(cacheKey);
+      return null;
+    });
+  }
+
+  @Override
+  public void close() {
+    if (connection != null) {
+      client.removeListener(connectionStateListener);
+      connection.close();
+      invalidateAll();
+      log.info("Near cache '{}' closed", name);
+    }
+  }
+
+  /**
+   * Opens the tracked connection, or returns null if tracking is not available.
+   */
+  private StatefulRedisConnection<byte[], byte[]> openTrackedConnection(AbstractRedisClient client) {
+    if (!(client instanceof RedisClient redisClient)) {
+      log.warn("Near cache '{}' disabled: client-side caching is only set up on standalone and sentinel connections", name);
+      return null;
+    }
+
+    StatefulRedisConnection<byte[], byte[]> trackedConnection = redisClient.connect(ByteArrayCodec.INSTANCE);
+    try {
+      // Without RESP3, Redis only sends invalidations to a connection redirected to, which this one is not
+      if (trackedConnection instanceof StatefulRedisConnectionImpl<byte[], byte[]> connectionImpl
+        && connectionImpl.getConnectionState().getNegotiatedProtocolVersion() != ProtocolVersion.RESP3) {
+        log.warn("Near cache '{}' disabled: the connection does not speak RESP3", name);
+        trackedConnection.close();
+        return null;
+      }
+      trackedConnection.addListener(new InvalidationListener());
+      trackedConnection.sync().clientTracking(TrackingArgs.Builder.enabled());
+    } catch (RuntimeException e) {
+      log.warn("Near cache '{}' disabled: client tracking is not supported by the server", name, e);
+      trackedConnection.close();
+      return null;
+    }
+
+    tracking = true;
+    redisClient.addListener(connectionStateListener);
+    log.info("Near cache '{}' enabled, tracking the keys read on connection {}", name,
+      ((StatefulRedisConnectionImpl<byte[], byte[]>) trackedConnection).getConnectionState().getConnectionId());
+    return trackedConnection;
+  }
+
+  private void invalidateAll() {
+    generation.incrementAndGet();
+    fields.invalidateAll();
+    fieldsByKey.clear();
+  }
+
+  /**
+   * Evicts the cached fields of a key.
+   */
+  private void invalidate(String key) {
+    Set<String> keyFields = fieldsByKey.remove(key);
+    if (keyFields != null) {
+      keyFields.forEach(field -> fields.invalidate(cacheKey(key, field)));
+    }
+  }
+
+  /**
+   * Drops an evicted field from the index of its key, and the key once it has no cached field left. Called under the
+   * lock of the cache entry, so it does not race with a fill of the same field.
+   */
+  private void unindex(String cacheKey) {
+    int separator = cacheKey.indexOf(KEY_SEPARATOR);
+    String field = cacheKey.substring(separator + 1);
+    fieldsByKey.computeIfPresent(cacheKey.substring(0, separator), (key, keyFields) -> {
+      keyFields.remove(field);
+      return keyFields.isEmpty() ? null : keyFields;
+    });
+  }
+
+  private static String cacheKey(String key, String field) {
+    return key + KEY_SEPARATOR + field;
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Evicts the fields of the keys Redis invalidates. A null list of keys, sent when Redis is flushed, evicts them all.
+   */
+  private class InvalidationListener implements PushListener {
+
+    @Override
+    public void onPushMessage(PushMessage message) {
+      if (!"invalidate".equals(message.getType())) {
+        return;
+      }
+
+      List<Object> content = message.getContent(StringCodec.UTF8::decodeKey);
+      if (content.size() < 2 || !(content.get(1) instanceof List<?> keys)) {
+        log.debug("Near cache '{}' invalidated by a flush", name);
+        invalidateAll();
+        return;
+      }
+
+      generation.incrementAndGet();
+      keys.forEach(key -> invalidate(key.toString()));
+      invalidations.increment(keys.size());
+    }
+  }
+
+  /**
+   * Tracking does not survive a reconnect: the cached fields are dropped on disconnect, as their invalidations may be
+   * lost, and tracking is turned on again once reconnected.
+   */
+  private class ConnectionStateListener implements RedisConnectionStateListener {
+
+    @Override
+    public void onRedisDisconnected(RedisChannelHandler<?, ?> disconnected) {
+      if (disconnected == connection) {
+        tracking = false;
+        invalidateAll();
+        log.warn("Near cache '{}' bypassed, its connection was lost", name);
+      }
+    }
+
+    @Override
+    public void onRedisConnected(RedisChannelHandler<?, ?> connected, SocketAddress socketAddress) {
+      if (connected != connection || connection == null) {
+        return;
+      }
+      connection.async().clientTracking(TrackingArgs.Builder.enabled()).whenComplete((reply, e) -> {
+        if (e != null) {
+          log.error("Near cache '{}' still bypassed, unable to turn client tracking on again", name, e);
+          return;
+        }
+        invalidateAll();
+        tracking = true;
+        log.info("Near cache '{}' tracking again after reconnect", name);
+      });
+    }
+  }
+}
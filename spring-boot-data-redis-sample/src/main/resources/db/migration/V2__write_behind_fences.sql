@@ -0,0 +1,7 @@
+-- Token of the last lease whose write-behind flush committed, so a node that lost its lease cannot commit after it
+CREATE TABLE IF NOT EXISTS write_behind_fences (
+    name VARCHAR(64) PRIMARY KEY,
+    token BIGINT NOT NULL
+);
+
+INSERT INTO write_behind_fences (name, token) VALUES ('books', 0);
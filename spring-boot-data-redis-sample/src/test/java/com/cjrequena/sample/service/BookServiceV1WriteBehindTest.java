@@ -0,0 +1,189 @@
+package com.cjrequena.sample.service;
+
+import com.cjrequena.sample.configuration.CacheMissConfigurationProperties;
+import com.cjrequena.sample.configuration.RedisConfigurationProperties;
+import com.cjrequena.sample.domain.exception.BookNotFoundException;
+import com.cjrequena.sample.domain.mapper.BookMapper;
+import com.cjrequena.sample.domain.model.Book;
+import com.cjrequena.sample.domain.model.BookEvent;
+import com.cjrequena.sample.persistence.entity.BookEntity;
+import com.cjrequena.sample.persistence.repository.BookJpaRepository;
+import com.cjrequena.sample.persistence.repository.BookRedisRepository;
+import com.cjrequena.sample.persistence.repository.BookRedisSearchRepository;
+import com.cjrequena.sample.persistence.repository.BookWriteBehindRepository;
+import com.cjrequena.sample.persistence.repository.cache.BookCacheRedisHashOpsRepository;
+import com.cjrequena.sample.persistence.repository.cache.BookCacheRedisValueOpsRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mapstruct.factory.Mappers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.data.redis.connection.stream.RecordId;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+@DisplayName("BookServiceV1 write-behind Unit Tests")
+class BookServiceV1WriteBehindTest {
+
+  @Mock
+  private BookJpaRepository bookJpaRepository;
+
+  @Mock
+  private BookRedisSearchRepository bookRedisSearchRepository;
+
+  @Mock
+  private BookRedisRepository bookRedisRepository;
+
+  @Mock
+  private BookWriteBehindRepository bookWriteBehindRepository;
+
+  @Mock
+  private BookWriteBehindFlusher bookWriteBehindFlusher;
+
+  @Mock
+  private BookCacheRedisHashOpsRepository bookCacheRedisHashOpsRepository;
+
+  @Mock
+  private BookCacheRedisValueOpsRepository bookCacheRedisValueOpsRepository;
+
+  private final BookMapper bookMapper = Mappers.getMapper(BookMapper.class);
+  private final Map<String, BookEvent> pending = new HashMap<>();    // Last queued write of each book
+  private final List<BookEvent> queue = new ArrayList<>();
+  private final Map<String, Book> cache = new HashMap<>();
+  private BookServiceV1 bookService;
+
+  @BeforeEach
+  void setUp() {
+    RedisConfigurationProperties redisConfigurationProperties = new RedisConfigurationProperties();
+    redisConfigurationProperties.getWriteBehind().setEnabled(true);
+    BookMissLoader bookMissLoader = new BookMissLoader(bookJpaRepository, bookMapper, bookWriteBehindRepository,
+      bookRedisRepository, redisConfigurationProperties, new CacheMissConfigurationProperties());
+    bookService = new BookServiceV1(bookMapper, bookJpaRepository, bookRedisSearchRepository, bookRedisRepository,
+      bookMissLoader, bookWriteBehindRepository, Optional.of(bookWriteBehindFlusher),
+      bookCacheRedisHashOpsRepository, bookCacheRedisValueOpsRepository);
+
+    when(bookWriteBehindRepository.enqueue(any())).thenAnswer(invocation -> {
+      BookEvent write = invocation.getArgument(0);
+      queue.add(write);
+      pending.put(write.getId(), write);
+      return RecordId.autoGenerate();
+    });
+    when(bookWriteBehindRepository.findPending(anyString()))
+      .thenAnswer(invocation -> Optional.ofNullable(pending.get(invocation.<String>getArgument(0))));
+    when(bookWriteBehindRepository.findAllPending()).thenAnswer(invocation -> new HashMap<>(pending));
+    when(bookCacheRedisHashOpsRepository.isEmpty()).thenAnswer(invocation -> cache.isEmpty());
+    when(bookCacheRedisHashOpsRepository.retrieve()).thenAnswer(invocation -> new ArrayList<>(cache.values()));
+    doAnswer(invocation -> {
+      cache.clear();
+      invocation.<List<Book>>getArgument(0).forEach(book -> cache.put(book.getId(), book));
+      return null;
+    }).when(bookCacheRedisHashOpsRepository).load(any());
+    when(bookCacheRedisHashOpsRepository.peek(anyString())).thenAnswer(invocation -> cache.get(invocation.<String>getArgument(0)));
+    when(bookCacheRedisHashOpsRepository.retrieveById(anyString()))
+      .thenAnswer(invocation -> cache.get(invocation.<String>getArgument(0)));
+    when(bookCacheRedisHashOpsRepository.swap(anyString(), any(), any())).thenAnswer(invocation -> {
+      String id = invocation.getArgument(0);
+      if (!Objects.equals(cache.get(id), invocation.getArgument(1))) {
+        return false;
+      }
+      Book replacement = invocation.getArgument(2);
+      if (replacement == null) {
+        cache.remove(id);
+      } else {
+        cache.put(id, replacement);
+      }
+      return true;
+    });
+  }
+
+  @Test
+  @DisplayName("An update after a queued delete is not found, even with the book still in the database")
+  void updateAfterQueuedDeleteIsNotFound() throws Exception {
+    Book book = new Book("1", "Dune", "Frank Herbert");
+    cache.put("1", book);
+    when(bookJpaRepository.findById("1")).thenReturn(Optional.of(new BookEntity("1", "Dune", "Frank Herbert")));
+
+    assertThat(bookService.deleteById("1")).isTrue();
+
+    assertThat(cache).doesNotContainKey("1");
+    assertThatThrownBy(() -> bookService.update(new Book("1", "Dune Messiah", "Frank Herbert")))
+      .isInstanceOf(BookNotFoundException.class);
+    assertThatThrownBy(() -> bookService.retrieveById("1")).isInstanceOf(BookNotFoundException.class);
+    assertThat(queue).extracting(BookEvent::getType).containsExactly(BookEvent.Type.DELETED);
+    assertThat(cache).doesNotContainKey("1");
+  }
+
+  @Test
+  @DisplayName("An unflushed create is found even once it is no longer cached")
+  void unflushedCreateIsFoundWithoutCache() throws Exception {
+    Book book = new Book("1", "Dune", "Frank Herbert");
+
+    bookService.create(book);
+    cache.clear();
+
+    assertThat(bookService.retrieveById("1")).isEqualTo(book);
+    verify(bookJpaRepository, never()).findById("1");
+  }
+
+  @Test
+  @DisplayName("An update whose compare-and-set conflicts reads the cache again and caches the last queued write")
+  void conflictingUpdateIsCachedNotEvicted() throws Exception {
+    Book created = new Book("1", "Dune", "Frank Herbert");
+    Book concurrent = new Book("1", "Dune (concurrent)", "Frank Herbert");
+    Book updated = new Book("1", "Dune Messiah", "Frank Herbert");
+    bookService.create(created);
+    assertThat(cache).containsEntry("1", created);
+
+    // A concurrent writer changes the cached book between the read and the compare-and-set of the update
+    when(bookCacheRedisHashOpsRepository.peek("1"))
+      .thenAnswer(invocation -> {
+        Book current = cache.get("1");
+        cache.put("1", concurrent);
+        return current;
+      })
+      .thenAnswer(invocation -> cache.get("1"));
+
+    assertThat(bookService.update(updated)).isEqualTo(created);
+
+    assertThat(cache).containsEntry("1", updated);
+    verify(bookCacheRedisHashOpsRepository, never()).removeById(anyString());
+    verify(bookCacheRedisHashOpsRepository, times(2)).swap(eq("1"), any(), eq(updated));
+    assertThat(bookService.retrieveById("1")).isEqualTo(updated);
+    assertThat(queue).extracting(BookEvent::getType).containsExactly(BookEvent.Type.CREATED, BookEvent.Type.UPDATED);
+  }
+
+  @Test
+  @DisplayName("A cache found empty is rebuilt from the database and the pending writes, without draining the queue")
+  void emptyCacheIsRebuiltWithPendingWrites() throws Exception {
+    when(bookJpaRepository.findAll()).thenReturn(List.of(
+      new BookEntity("1", "Dune", "Frank Herbert"),
+      new BookEntity("2", "Emma", "Jane Austen")));
+    when(bookJpaRepository.findById("1")).thenReturn(Optional.of(new BookEntity("1", "Dune", "Frank Herbert")));
+    bookService.deleteById("1");
+    bookService.create(new Book("3", "Ulysses", "James Joyce"));
+    cache.clear();
+
+    assertThat(bookService.retrieve()).containsExactlyInAnyOrder(
+      new Book("2", "Emma", "Jane Austen"),
+      new Book("3", "Ulysses", "James Joyce"));
+    verify(bookWriteBehindFlusher, never()).drain();
+    verify(bookCacheRedisHashOpsRepository, times(1)).load(any());
+  }
+}
@@ -0,0 +1,141 @@
+package com.cjrequena.sample.service;
+
+import com.cjrequena.sample.configuration.RedisConfigurationProperties;
+import com.cjrequena.sample.domain.model.Book;
+import com.cjrequena.sample.domain.model.BookEvent;
+import com.cjrequena.sample.persistence.entity.BookEntity;
+import com.cjrequena.sample.persistence.repository.BookJpaRepository;
+import com.cjrequena.sample.persistence.repository.BookRedisRepository;
+import com.cjrequena.sample.persistence.repository.BookWriteBehindRepository;
+import com.cjrequena.sample.persistence.repository.cache.BookCacheRedisHashOpsRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("BookWriteBehindFlusher Unit Tests")
+class BookWriteBehindFlusherTest {
+
+  @Mock
+  private BookWriteBehindRepository bookWriteBehindRepository;
+
+  @Mock
+  private BookJpaRepository bookJpaRepository;
+
+  @Mock
+  private BookRedisRepository bookRedisRepository;
+
+  @Mock
+  private BookCacheRedisHashOpsRepository bookCacheRedisHashOpsRepository;
+
+  @Mock
+  private PlatformTransactionManager transactionManager;
+
+  private BookWriteBehindFlusher flusher;
+
+  @BeforeEach
+  void setUp() {
+    flusher = new BookWriteBehindFlusher(bookWriteBehindRepository, bookJpaRepository, bookRedisRepository,
+      bookCacheRedisHashOpsRepository, transactionManager, new RedisConfigurationProperties(), new SimpleMeterRegistry());
+    when(bookWriteBehindRepository.acquireLease(any(), any())).thenReturn(1L);
+    lenient().when(bookJpaRepository.advanceFence(any(), anyLong())).thenReturn(true);
+  }
+
+  @Test
+  @DisplayName("A batch is flushed as the last write of each book, in queue order, before leaving the queue")
+  @SuppressWarnings("unchecked")
+  void flushesLastWriteOfEachBookInOrder() {
+    Map<RecordId, BookEvent> batch = new LinkedHashMap<>();
+    batch.put(RecordId.of("1-0"), write(BookEvent.Type.CREATED, "1", "Dune"));
+    batch.put(RecordId.of("2-0"), write(BookEvent.Type.DELETED, "2", "Emma"));
+    batch.put(RecordId.of("3-0"), write(BookEvent.Type.UPDATED, "1", "Dune Messiah"));
+    batch.put(RecordId.of("4-0"), write(BookEvent.Type.CREATED, "2", "Persuasion"));
+    when(bookWriteBehindRepository.peek(anyInt())).thenReturn(batch);
+
+    flusher.flush();
+
+    ArgumentCaptor<Collection<BookEntity>> upserts = ArgumentCaptor.forClass(Collection.class);
+    ArgumentCaptor<Collection<BookEvent>> events = ArgumentCaptor.forClass(Collection.class);
+    InOrder inOrder = inOrder(bookJpaRepository, bookRedisRepository, bookWriteBehindRepository);
+    inOrder.verify(bookJpaRepository).upsertAll(upserts.capture());
+    inOrder.verify(bookRedisRepository).publishBookEvents(events.capture());
+    inOrder.verify(bookWriteBehindRepository).remove(batch);
+    assertThat(upserts.getValue()).containsExactly(
+      new BookEntity("1", "Dune Messiah", "Frank Herbert"), new BookEntity("2", "Persuasion", "Frank Herbert"));
+    assertThat(events.getValue()).containsExactlyElementsOf(batch.values());
+    verify(bookJpaRepository, never()).deleteAllByIdInBatch(any());
+  }
+
+  @Test
+  @DisplayName("A delete queued last is flushed as a delete, and the book is removed from the cache if unchanged")
+  void flushesDeleteQueuedLast() {
+    Map<RecordId, BookEvent> batch = new LinkedHashMap<>();
+    batch.put(RecordId.of("1-0"), write(BookEvent.Type.UPDATED, "1", "Dune"));
+    batch.put(RecordId.of("2-0"), write(BookEvent.Type.DELETED, "1", "Dune"));
+    when(bookWriteBehindRepository.peek(anyInt())).thenReturn(batch);
+
+    flusher.flush();
+
+    verify(bookJpaRepository).upsertAll(List.of());
+    verify(bookJpaRepository).deleteAllByIdInBatch(List.of("1"));
+    verify(bookCacheRedisHashOpsRepository).removeIfUnchanged(new Book("1", "Dune", "Frank Herbert"));
+    verify(bookWriteBehindRepository).remove(batch);
+  }
+
+  @Test
+  @DisplayName("A batch whose lease was taken over and committed with a later token is rolled back and left queued")
+  void batchOfLostLeaseIsNotCommitted() {
+    Map<RecordId, BookEvent> batch = new LinkedHashMap<>();
+    batch.put(RecordId.of("1-0"), write(BookEvent.Type.UPDATED, "1", "Dune"));
+    when(bookWriteBehindRepository.peek(anyInt())).thenReturn(batch);
+    when(bookJpaRepository.advanceFence("books", 1L)).thenReturn(false);
+    when(bookJpaRepository.currentFence("books")).thenReturn(2L);
+
+    flusher.flush();
+
+    verify(bookJpaRepository, never()).upsertAll(any());
+    verify(bookWriteBehindRepository).raiseFence(2L);
+    verify(bookRedisRepository, never()).publishBookEvents(any());
+    verify(bookWriteBehindRepository, never()).remove(any());
+    verify(bookWriteBehindRepository, never()).deadLetter(any(), any());
+  }
+
+  @Test
+  @DisplayName("A batch whose lease was lost while it committed is left queued for the new holder")
+  void batchIsNotRemovedOnceLeaseLost() {
+    Map<RecordId, BookEvent> batch = new LinkedHashMap<>();
+    batch.put(RecordId.of("1-0"), write(BookEvent.Type.UPDATED, "1", "Dune"));
+    when(bookWriteBehindRepository.peek(anyInt())).thenReturn(batch);
+    when(bookWriteBehindRepository.acquireLease(any(), any())).thenReturn(1L, 1L, 2L, 0L);
+
+    flusher.flush();
+
+    verify(bookJpaRepository).upsertAll(any());
+    verify(bookRedisRepository, never()).publishBookEvents(any());
+    verify(bookWriteBehindRepository, never()).remove(any());
+    verify(bookWriteBehindRepository, never()).deadLetter(any(), any());
+  }
+
+  private static BookEvent write(BookEvent.Type type, String id, String title) {
+    return BookServiceV1.event(type, new Book(id, title, "Frank Herbert"), null);
+  }
+}
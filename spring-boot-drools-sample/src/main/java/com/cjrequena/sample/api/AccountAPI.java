@@ -0,0 +1,118 @@
+package com.cjrequena.sample.api;
+
+import com.cjrequena.sample.configuration.AccountBatchConfigurationProperties;
+import com.cjrequena.sample.domain.Transaction;
+import com.cjrequena.sample.exception.api.ApiException;
+import com.cjrequena.sample.exception.api.BadRequestApiException;
+import com.cjrequena.sample.exception.api.ConflictApiException;
+import com.cjrequena.sample.exception.api.NotFoundApiException;
+import com.cjrequena.sample.exception.api.ServiceUnavailableApiException;
+import com.cjrequena.sample.exception.service.AccountLaneSaturatedServiceException;
+import com.cjrequena.sample.exception.service.AccountNotFoundServiceException;
+import com.cjrequena.sample.exception.service.OptimisticConcurrencyServiceException;
+import com.cjrequena.sample.exception.service.ServiceException;
+import com.cjrequena.sample.service.AccountLaneExecutor;
+import com.cjrequena.sample.service.AccountService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+import static org.springframework.http.HttpHeaders.CACHE_CONTROL;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+
+@Slf4j
+@RestController
+@RequestMapping(value = AccountAPI.ENDPOINT)
+@RequiredArgsConstructor(onConstructor = @__(@Autowired))
+public class AccountAPI {
+
+  public static final String ENDPOINT = "/account-service/rest";
+
+  private final AccountService accountService;
+  private final AccountLaneExecutor accountLaneExecutor;
+  private final AccountBatchConfigurationProperties accountBatchConfigurationProperties;
+
+  /**
+   * Processes a transaction on the lane of its account, after the transactions of the account submitted before it.
+   */
+  @PostMapping(
+    path = "/transactions",
+    consumes = {APPLICATION_JSON_VALUE},
+    produces = {APPLICATION_JSON_VALUE}
+  )
+  public ResponseEntity<Transaction> process(@RequestBody Transaction transaction) throws ApiException, ServiceException {
+    if (transaction.getAccountId() == null) {
+      throw new BadRequestApiException("The transaction must have an account id");
+    }
+    try {
+      HttpHeaders responseHeaders = new HttpHeaders();
+      responseHeaders.set(CACHE_CONTROL, "no store, private, max-age=0");
+      Transaction processed = this.accountLaneExecutor.execute(transaction.getAccountId(), () -> this.accountService.process(transaction));
+      return new ResponseEntity<>(processed, responseHeaders, HttpStatus.OK);
+    } catch (AccountNotFoundServiceException ex) {
+      throw new NotFoundApiException(ex.getMessage());
+    } catch (OptimisticConcurrencyServiceException ex) {
+      throw new ConflictApiException(ex.getMessage());
+    } catch (AccountLaneSaturatedServiceException ex) {
+      throw new ServiceUnavailableApiException(ex.getMessage());
+    }
+  }
+
+  /**
+   * Processes a batch of transactions, e.g. an end-of-day settlement, and returns them with their status and reason.
+   * Batches larger than {@code account.batch.max-size} are refused. The transactions are split by account lane and
+   * each part runs on its lane, so it is serialized with the single transactions of its accounts. A part is retried up
+   * to {@code account.batch.conflict-retries} times if an account still changed meanwhile; the parts already applied
+   * stay applied when another one fails.
+   */
+  @PostMapping(
+    path = "/transactions/batch",
+    consumes = {APPLICATION_JSON_VALUE},
+    produces = {APPLICATION_JSON_VALUE}
+  )
+  public ResponseEntity<List<Transaction>> processBatch(@RequestBody List<Transaction> transactions) throws ApiException, ServiceException {
+    if (transactions == null || transactions.isEmpty()) {
+      throw new BadRequestApiException("The batch must contain at least one transaction");
+    }
+    int maxSize = this.accountBatchConfigurationProperties.getMaxSize();
+    if (transactions.size() > maxSize) {
+      throw new BadRequestApiException("At most " + maxSize + " transactions per batch: " + transactions.size());
+    }
+    try {
+      HttpHeaders responseHeaders = new HttpHeaders();
+      responseHeaders.set(CACHE_CONTROL, "no store, private, max-age=0");
+      List<Transaction> processed = this.accountLaneExecutor.executeByLane(transactions, Transaction::getAccountId, this::processRetryingConflicts);
+      return new ResponseEntity<>(processed, responseHeaders, HttpStatus.OK);
+    } catch (OptimisticConcurrencyServiceException ex) {
+      throw new ConflictApiException(ex.getMessage());
+    } catch (AccountLaneSaturatedServiceException ex) {
+      throw new ServiceUnavailableApiException(ex.getMessage());
+    }
+  }
+
+  // --- Private helpers ---
+
+  private List<Transaction> processRetryingConflicts(List<Transaction> transactions) throws OptimisticConcurrencyServiceException {
+    int retries = this.accountBatchConfigurationProperties.getConflictRetries();
+    for (int attempt = 0; ; attempt++) {
+      try {
+        return this.accountService.process(transactions);
+      } catch (OptimisticConcurrencyServiceException ex) {
+        if (attempt >= retries) {
+          throw ex;
+        }
+        log.warn("Retrying {} transactions after a concurrent change: {}", transactions.size(), ex.getMessage());
+      }
+    }
+  }
+
+}
@@ -0,0 +1,30 @@
+package com.cjrequena.sample.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * <p>
+ * Limits of the transaction batches.
+ * </p>
+ *
+ * @author cjrequena
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "account.batch")
+public class AccountBatchConfigurationProperties {
+
+  /**
+   * Transactions a batch may hold. A batch is loaded, evaluated and written in one database transaction per account
+   * lane, so larger batches are refused rather than holding the locks and the memory they would need.
+   */
+  private int maxSize = 1000;
+
+  /**
+   * Times the transactions of a lane are processed again after an account changed meanwhile, e.g. from another
+   * instance, before the batch gets a 409.
+   */
+  private int conflictRetries = 2;
+}
@@ -0,0 +1,35 @@
+package com.cjrequena.sample.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * <p>
+ * The execution lanes that serialize the transactions of an account.
+ * </p>
+ *
+ * @author cjrequena
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "account.lanes")
+public class AccountLaneConfigurationProperties {
+
+  /**
+   * Lanes the accounts are hashed onto. Each one applies its transactions one at a time, on a virtual thread.
+   */
+  private int count = Runtime.getRuntime().availableProcessors() * 2;
+
+  /**
+   * Transactions a lane holds waiting for their turn.
+   */
+  private int queueCapacity = 1000;
+
+  /**
+   * How long a caller waits for room in a full lane before the transaction is refused.
+   */
+  private Duration submitTimeout = Duration.ofMillis(500);
+}
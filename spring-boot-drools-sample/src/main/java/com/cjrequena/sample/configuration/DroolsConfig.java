@@ -1,30 +1,88 @@
 package com.cjrequena.sample.configuration;
 
+import lombok.extern.slf4j.Slf4j;
+import org.drools.model.Model;
+import org.drools.modelcompiler.KieBaseBuilder;
+import org.kie.api.KieBase;
 import org.kie.api.KieServices;
 import org.kie.api.builder.KieBuilder;
 import org.kie.api.builder.KieFileSystem;
-import org.kie.api.builder.KieModule;
-import org.kie.api.runtime.KieContainer;
+import org.kie.api.builder.Message;
 import org.kie.internal.io.ResourceFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * The knowledge base of the transaction rules, built once and shared by every session. By default it is built from the
+ * executable model the kie-maven-plugin compiles the DRL to, so no DRL is parsed or compiled at startup. The model is
+ * read from the {@code drools-model} index the plugin writes, and not through the classpath kmodule.xml, which Drools
+ * cannot read from the nested jars of a Spring Boot jar. Without it, the DRL is built at startup.
+ * </p>
+ *
+ * @author cjrequena
+ */
+@Slf4j
 @Configuration
 public class DroolsConfig {
-    
-    private static final String RULES_FILE = "rules/transaction-rules.drl";
-
-    @Bean
-    public KieContainer kieContainer() {
-        KieServices kieServices = KieServices.Factory.get();
-        
-        KieFileSystem kieFileSystem = kieServices.newKieFileSystem();
-        kieFileSystem.write(ResourceFactory.newClassPathResource(RULES_FILE));
-        kieFileSystem.write(ResourceFactory.newClassPathResource(RULES_FILE));
-        KieBuilder kieBuilder = kieServices.newKieBuilder(kieFileSystem);
-        kieBuilder.buildAll();
-        
-        KieModule kieModule = kieBuilder.getKieModule();
-        return kieServices.newKieContainer(kieModule.getReleaseId());
+
+  private static final String RULES_FILE = "rules/transaction-rules.drl";
+  private static final String EXECUTABLE_MODEL_INDEX = "classpath*:META-INF/kie/*/*/drools-model"; // <groupId>/<artifactId>
+  private static final String EXECUTABLE_MODEL_VERSION = "Drools-Model-Version:";
+
+  @Bean
+  public KieBase kieBase(DroolsConfigurationProperties droolsConfigurationProperties) throws IOException {
+    if (droolsConfigurationProperties.isExecutableModel()) {
+      List<Model> models = loadExecutableModels();
+      if (!models.isEmpty()) {
+        log.info("Loaded the executable model of the rules compiled at build time");
+        return KieBaseBuilder.createKieBaseFromModel(models);
+      }
+      log.warn("No executable model of the rules found on the classpath, building {} at startup", RULES_FILE);
+    }
+
+    KieServices kieServices = KieServices.Factory.get();
+    KieFileSystem kieFileSystem = kieServices.newKieFileSystem();
+    kieFileSystem.write(ResourceFactory.newClassPathResource(RULES_FILE));
+    KieBuilder kieBuilder = kieServices.newKieBuilder(kieFileSystem);
+    kieBuilder.buildAll();
+    if (kieBuilder.getResults().hasMessages(Message.Level.ERROR)) {
+      throw new IllegalStateException("Failed to build " + RULES_FILE + ": " + kieBuilder.getResults().getMessages());
+    }
+    return kieServices.newKieContainer(kieBuilder.getKieModule().getReleaseId()).getKieBase();
+  }
+
+  /**
+   * Instantiates the model classes listed by the {@code drools-model} indexes, one class name per line after the
+   * version header.
+   */
+  private static List<Model> loadExecutableModels() throws IOException {
+    List<Model> models = new ArrayList<>();
+    for (Resource index : new PathMatchingResourcePatternResolver().getResources(EXECUTABLE_MODEL_INDEX)) {
+      try (InputStream in = index.getInputStream()) {
+        for (String line : new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\\R")) {
+          if (!line.isBlank() && !line.startsWith(EXECUTABLE_MODEL_VERSION)) {
+            models.add(instantiate(line.trim()));
+          }
+        }
+      }
+    }
+    return models;
+  }
+
+  private static Model instantiate(String className) {
+    try {
+      return (Model) Class.forName(className).getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Failed to instantiate the executable rule model " + className, e);
     }
+  }
 }
@@ -0,0 +1,45 @@
+package com.cjrequena.sample.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * <p>
+ * How the transaction rules are loaded and how a transaction is run through them.
+ * </p>
+ *
+ * @author cjrequena
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "drools")
+public class DroolsConfigurationProperties {
+
+  /**
+   * Whether to load the executable model of the rules compiled at build time by the kie-maven-plugin. When false, or
+   * when the build did not generate it, the DRL is parsed and compiled at startup.
+   */
+  private boolean executableModel = true;
+
+  /**
+   * How the rules are applied to a transaction.
+   */
+  private SessionMode sessionMode = SessionMode.STATELESS;
+
+  /**
+   * Sessions kept in the pool in {@link SessionMode#POOLED} mode.
+   */
+  private int poolSize = Runtime.getRuntime().availableProcessors() * 2;
+
+  public enum SessionMode {
+    /**
+     * One shared, thread-safe stateless session; every call runs in a working memory of its own.
+     */
+    STATELESS,
+    /**
+     * Stateful sessions borrowed from a bounded pool, reset when returned.
+     */
+    POOLED
+  }
+}
@@ -0,0 +1,13 @@
+package com.cjrequena.sample.exception.service;
+
+/**
+ *
+ * <p></p>
+ * <p></p>
+ * @author cjrequena
+ */
+public class AccountLaneSaturatedServiceException extends RuntimeServiceException {
+  public AccountLaneSaturatedServiceException(String message) {
+    super(message);
+  }
+}
@@ -3,6 +3,7 @@ package com.cjrequena.sample.mapper;
 import com.cjrequena.sample.domain.Account;
 import com.cjrequena.sample.entity.AccountEntity;
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
 import org.mapstruct.MappingTarget;
 import org.mapstruct.NullValueCheckStrategy;
 
@@ -23,6 +24,10 @@ public interface AccountMapper {
 
   Account toDomain(AccountEntity entity);
 
+  // Leaves the lazy transactions of the account unloaded
+  @Mapping(target = "transactions", ignore = true)
+  Account toDomainWithoutTransactions(AccountEntity entity);
+
   void updateEntity(Account account, @MappingTarget AccountEntity entity);
 
 
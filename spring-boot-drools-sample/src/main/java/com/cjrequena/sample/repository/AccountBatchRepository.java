@@ -0,0 +1,27 @@
+package com.cjrequena.sample.repository;
+
+import com.cjrequena.sample.entity.AccountEntity;
+import com.cjrequena.sample.entity.TransactionEntity;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * <p>
+ * Batched JDBC writes of the accounts and the transactions of a settlement batch. The transaction ids are generated by
+ * identity columns, which keeps Hibernate from batching their inserts, so the batch is written through JDBC instead.
+ * </p>
+ *
+ * @author cjrequena
+ */
+public interface AccountBatchRepository {
+
+  /**
+   * Writes the balance of every account and increments its version, as long as the version is still the one loaded.
+   *
+   * @return the ids of the accounts whose version had changed, and were not updated
+   */
+  List<Long> updateBalancesInBatch(Collection<AccountEntity> accounts);
+
+  void insertTransactionsInBatch(Collection<TransactionEntity> transactions);
+}
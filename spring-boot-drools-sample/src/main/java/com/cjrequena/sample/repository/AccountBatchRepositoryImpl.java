@@ -0,0 +1,64 @@
+package com.cjrequena.sample.repository;
+
+import com.cjrequena.sample.entity.AccountEntity;
+import com.cjrequena.sample.entity.TransactionEntity;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * <p>
+ * Picked up by Spring Data as the implementation of the {@link AccountBatchRepository} fragment of
+ * {@link AccountRepository}. It runs on the connection of the surrounding JPA transaction.
+ * </p>
+ *
+ * @author cjrequena
+ */
+@RequiredArgsConstructor(onConstructor = @__(@Autowired))
+public class AccountBatchRepositoryImpl implements AccountBatchRepository {
+
+  private static final int BATCH_SIZE = 500;
+  private static final String UPDATE_BALANCE_SQL = "UPDATE account SET balance = ?, version = version + 1, updated_at = CURRENT_TIMESTAMP WHERE id = ? AND version = ?";
+  private static final String INSERT_TRANSACTION_SQL = "INSERT INTO transaction (account_id, amount, timestamp, type, status, reason) VALUES (?, ?, COALESCE(?, CURRENT_TIMESTAMP), ?, ?, ?)";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  @Override
+  public List<Long> updateBalancesInBatch(Collection<AccountEntity> accounts) {
+    List<AccountEntity> batch = List.copyOf(accounts);
+    int[][] counts = jdbcTemplate.batchUpdate(UPDATE_BALANCE_SQL, batch, BATCH_SIZE, (ps, account) -> {
+      ps.setDouble(1, account.getBalance());
+      ps.setLong(2, account.getId());
+      ps.setLong(3, account.getVersion());
+    });
+
+    List<Long> stale = new ArrayList<>();
+    int index = 0;
+    for (int[] chunk : counts) {
+      for (int count : chunk) {
+        if (count == 0) {
+          stale.add(batch.get(index).getId());
+        }
+        index++;
+      }
+    }
+    return stale;
+  }
+
+  @Override
+  public void insertTransactionsInBatch(Collection<TransactionEntity> transactions) {
+    jdbcTemplate.batchUpdate(INSERT_TRANSACTION_SQL, transactions, BATCH_SIZE, (ps, transaction) -> {
+      ps.setLong(1, transaction.getAccountId());
+      ps.setDouble(2, transaction.getAmount());
+      ps.setTimestamp(3, transaction.getTimestamp() != null ? Timestamp.valueOf(transaction.getTimestamp()) : null);
+      ps.setString(4, transaction.getType());
+      ps.setString(5, transaction.getStatus());
+      ps.setString(6, transaction.getReason());
+    });
+  }
+}
@@ -1,10 +1,19 @@
 package com.cjrequena.sample.repository;
 
 import com.cjrequena.sample.entity.AccountEntity;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 
+import jakarta.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
-public interface AccountRepository extends JpaRepository<AccountEntity, Long> {
+public interface AccountRepository extends JpaRepository<AccountEntity, Long>, AccountBatchRepository {
     Optional<AccountEntity> findByAccountNumber(String accountNumber);
+
+    // Read-only: the entities are neither dirty checked nor flushed, their changes are written in batch through JDBC
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    List<AccountEntity> findAllByIdIn(Collection<Long> ids);
 }
@@ -0,0 +1,193 @@
+package com.cjrequena.sample.service;
+
+import com.cjrequena.sample.configuration.AccountLaneConfigurationProperties;
+import com.cjrequena.sample.exception.service.AccountLaneSaturatedServiceException;
+import com.cjrequena.sample.exception.service.ServiceException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * Serializes the work on an account in process. Account ids are hashed onto a fixed set of lanes, each a single virtual
+ * thread over a bounded queue, so the transactions of an account are applied in order and never race for its version,
+ * while accounts on different lanes proceed in parallel. A caller finding its lane full waits up to
+ * {@code account.lanes.submit-timeout} for room, and is then refused with {@link AccountLaneSaturatedServiceException}.
+ * </p>
+ * <p>
+ * A batch touching many accounts is split by lane, see {@link #executeByLane}, so it is serialized against the single
+ * transactions of its accounts instead of racing them for their versions.
+ * </p>
+ * <p>
+ * Metrics: {@code account.lanes.queue.depth} per lane, and {@code account.lanes.rejected}.
+ * </p>
+ *
+ * @author cjrequena
+ */
+@Slf4j
+@Component
+public class AccountLaneExecutor implements DisposableBean {
+
+  private final ThreadPoolExecutor[] lanes;
+  private final long submitTimeoutMillis;
+  private final Counter rejected;
+
+  public AccountLaneExecutor(AccountLaneConfigurationProperties accountLaneConfigurationProperties, MeterRegistry meterRegistry) {
+    this.submitTimeoutMillis = accountLaneConfigurationProperties.getSubmitTimeout().toMillis();
+    this.rejected = Counter.builder("account.lanes.rejected")
+      .description("Transactions refused because their lane stayed full")
+      .register(meterRegistry);
+    this.lanes = new ThreadPoolExecutor[accountLaneConfigurationProperties.getCount()];
+    for (int i = 0; i < lanes.length; i++) {
+      ThreadPoolExecutor lane = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(accountLaneConfigurationProperties.getQueueCapacity()),
+        Thread.ofVirtual().name("account-lane-" + i).factory(),
+        waitForRoom());
+      Gauge.builder("account.lanes.queue.depth", lane, executor -> executor.getQueue().size())
+        .description("Transactions waiting in the lane")
+        .tag("lane", String.valueOf(i))
+        .register(meterRegistry);
+      lanes[i] = lane;
+    }
+    log.info("Serializing the transactions of each account on {} lanes", lanes.length);
+  }
+
+  /**
+   * Runs the task on the lane of the account and waits for its result.
+   *
+   * @param accountId The account the task works on
+   * @param task The task, e.g. processing a transaction of the account
+   * @return The result of the task
+   * @throws AccountLaneSaturatedServiceException If the lane stayed full for longer than the submit timeout
+   */
+  public <T> T execute(Long accountId, Callable<T> task) throws ServiceException {
+    return await(lanes[laneOf(accountId)].submit(task));
+  }
+
+  /**
+   * Runs a batch split by lane: the items of the accounts hashed onto a lane are run as one task on that lane, after the
+   * work already queued there, and the lanes proceed in parallel. The batch is therefore only atomic per lane: when a
+   * task fails, the tasks of the other lanes that already ran stay applied, and the failure is thrown once they are done.
+   * Items without an account id go to the first lane.
+   *
+   * @param items The items of the batch, e.g. transactions
+   * @param accountIdOf The account an item works on
+   * @param task The task run on the items of a lane, returning one result per item in the order given
+   * @return The results, in the order of the items
+   * @throws AccountLaneSaturatedServiceException If a lane stayed full for longer than the submit timeout, in which case
+   *                                              the tasks not started yet are cancelled
+   */
+  public <E, T> List<T> executeByLane(List<E> items, Function<E, Long> accountIdOf, LaneTask<E, T> task) throws ServiceException {
+    Map<Integer, List<Integer>> indexesByLane = new LinkedHashMap<>();
+    for (int i = 0; i < items.size(); i++) {
+      indexesByLane.computeIfAbsent(laneOf(accountIdOf.apply(items.get(i))), lane -> new ArrayList<>()).add(i);
+    }
+
+    Map<List<Integer>, Future<List<T>>> futures = new LinkedHashMap<>();
+    try {
+      indexesByLane.forEach((lane, indexes) -> {
+        List<E> laneItems = indexes.stream().map(items::get).toList();
+        futures.put(indexes, lanes[lane].submit(() -> task.run(laneItems)));
+      });
+    } catch (AccountLaneSaturatedServiceException ex) {
+      futures.values().forEach(future -> future.cancel(false));
+      throw ex;
+    }
+
+    Object[] results = new Object[items.size()];
+    ServiceException serviceFailure = null;
+    RuntimeException runtimeFailure = null;
+    for (Map.Entry<List<Integer>, Future<List<T>>> entry : futures.entrySet()) {
+      try {
+        List<T> laneResults = await(entry.getValue());
+        for (int i = 0; i < laneResults.size(); i++) {
+          results[entry.getKey().get(i)] = laneResults.get(i);
+        }
+      } catch (ServiceException ex) {
+        serviceFailure = serviceFailure != null ? serviceFailure : ex;
+      } catch (RuntimeException ex) {
+        runtimeFailure = runtimeFailure != null ? runtimeFailure : ex;
+      }
+    }
+    if (serviceFailure != null) {
+      throw serviceFailure;
+    }
+    if (runtimeFailure != null) {
+      throw runtimeFailure;
+    }
+    @SuppressWarnings("unchecked")
+    List<T> ordered = (List<T>) Arrays.asList(results);
+    return ordered;
+  }
+
+  @Override
+  public void destroy() {
+    for (ThreadPoolExecutor lane : lanes) {
+      lane.shutdown();
+    }
+  }
+
+  /**
+   * A task run on the items of a batch that share a lane.
+   */
+  @FunctionalInterface
+  public interface LaneTask<E, T> {
+
+    List<T> run(List<E> items) throws ServiceException;
+  }
+
+  // --- Private helpers ---
+
+  private int laneOf(Long accountId) {
+    return Math.floorMod(Objects.hashCode(accountId), lanes.length);
+  }
+
+  private <T> T await(Future<T> future) throws ServiceException {
+    try {
+      return future.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      future.cancel(false);
+      throw new IllegalStateException("Interrupted while waiting on an account lane", ex);
+    } catch (ExecutionException ex) {
+      switch (ex.getCause()) {
+        case ServiceException serviceException -> throw serviceException;
+        case RuntimeException runtimeException -> throw runtimeException;
+        case Error error -> throw error;
+        default -> throw new IllegalStateException(ex.getCause());
+      }
+    }
+  }
+
+  private RejectedExecutionHandler waitForRoom() {
+    return (task, executor) -> {
+      try {
+        if (!executor.isShutdown() && executor.getQueue().offer(task, submitTimeoutMillis, TimeUnit.MILLISECONDS)) {
+          return;
+        }
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      rejected.increment();
+      throw new AccountLaneSaturatedServiceException("The account lane is full, try again later");
+    };
+  }
+}
@@ -5,10 +5,12 @@ import com.cjrequena.sample.domain.Transaction;
 import com.cjrequena.sample.domain.TransactionStatus;
 import com.cjrequena.sample.domain.TransactionType;
 import com.cjrequena.sample.entity.AccountEntity;
+import com.cjrequena.sample.entity.TransactionEntity;
 import com.cjrequena.sample.exception.service.AccountNotFoundServiceException;
 import com.cjrequena.sample.exception.service.OptimisticConcurrencyServiceException;
 import com.cjrequena.sample.exception.service.ServiceException;
 import com.cjrequena.sample.mapper.AccountMapper;
+import com.cjrequena.sample.mapper.TransactionMapper;
 import com.cjrequena.sample.repository.AccountRepository;
 import jakarta.persistence.OptimisticLockException;
 import lombok.RequiredArgsConstructor;
@@ -20,7 +22,10 @@ import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -32,6 +37,7 @@ public class AccountService {
   private final AccountRepository accountRepository;
   private final RuleService ruleService;
   private final AccountMapper accountMapper;
+  private final TransactionMapper transactionMapper;
 
   public Account create(Account account) {
     AccountEntity entity = accountMapper.toEntity(account);
@@ -113,6 +119,66 @@ public class AccountService {
     return transaction;
   }
 
+  /**
+   * Process a batch of financial transactions, such as an end-of-day settlement. The affected accounts are loaded in one
+   * query, the transactions of each account are evaluated in order in a single rule session, the balances are applied
+   * in memory, and the accounts and the completed transactions are written with batched JDBC statements.
+   * Transactions of an unknown account are rejected, the whole batch is rolled back if any account changed meanwhile.
+   *
+   * @param transactions The transactions to process, applied per account in the order given
+   * @return The processed transactions, in the order given, with status and reason (if applicable)
+   */
+  @Transactional
+  public List<Transaction> process(List<Transaction> transactions) throws OptimisticConcurrencyServiceException {
+    log.info("Processing a batch of {} transactions", transactions.size());
+
+    Map<Long, List<Transaction>> transactionsByAccount = new LinkedHashMap<>();
+    for (Transaction transaction : transactions) {
+      transaction.setStatus(null).setReason(null);
+      if (transaction.getAccountId() != null) {
+        transactionsByAccount.computeIfAbsent(transaction.getAccountId(), accountId -> new ArrayList<>()).add(transaction);
+      }
+    }
+
+    Map<Long, AccountEntity> entities = accountRepository.findAllByIdIn(transactionsByAccount.keySet()).stream()
+      .collect(Collectors.toMap(AccountEntity::getId, Function.identity()));
+
+    List<AccountEntity> updatedEntities = new ArrayList<>();
+    List<TransactionEntity> completedTransactions = new ArrayList<>();
+    transactionsByAccount.forEach((accountId, accountTransactions) -> {
+      AccountEntity entity = entities.get(accountId);
+      if (entity == null) {
+        return;
+      }
+      Account account = accountMapper.toDomainWithoutTransactions(entity);
+      int completed = completedTransactions.size();
+      ruleService.applyRules(account, accountTransactions, transaction -> {
+        if (TransactionStatus.COMPLETED.getStatus().equalsIgnoreCase(transaction.getStatus())) {
+          updateBalance(account, transaction);
+          completedTransactions.add(transactionMapper.toEntity(transaction));
+        }
+      });
+      if (completedTransactions.size() > completed) {
+        entity.setBalance(account.getBalance());
+        updatedEntities.add(entity);
+      }
+    });
+
+    List<Long> staleAccountIds = accountRepository.updateBalancesInBatch(updatedEntities);
+    if (!staleAccountIds.isEmpty()) {
+      throw new OptimisticConcurrencyServiceException("Optimistic concurrency control error for account IDs " + staleAccountIds);
+    }
+    accountRepository.insertTransactionsInBatch(completedTransactions);
+
+    for (Transaction transaction : transactions) {
+      if (transaction.getStatus() == null) {
+        transaction.setStatus(TransactionStatus.REJECTED.getStatus()).setReason("Account not found");
+      }
+    }
+    log.info("Batch processed. Transactions completed: {}, accounts updated: {}", completedTransactions.size(), updatedEntities.size());
+    return transactions;
+  }
+
   // --- Private helpers ---
 
   private void updateBalance(Account account, Transaction transaction) {
@@ -1,27 +1,97 @@
 package com.cjrequena.sample.service;
 
+import com.cjrequena.sample.configuration.DroolsConfigurationProperties;
 import com.cjrequena.sample.domain.Account;
 import com.cjrequena.sample.domain.Transaction;
-import org.kie.api.runtime.KieContainer;
+import lombok.extern.slf4j.Slf4j;
+import org.kie.api.KieBase;
 import org.kie.api.runtime.KieSession;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.kie.api.runtime.KieSessionsPool;
+import org.kie.api.runtime.StatelessKieSession;
+import org.kie.api.runtime.rule.FactHandle;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * <p>
+ * Applies the transaction rules. The knowledge base is built once, and a transaction never creates a session of its
+ * own: depending on {@code drools.session-mode} it runs through one shared stateless session, or through a stateful
+ * session borrowed from a pool of {@code drools.pool-size} sessions, which is reset when disposed and kept for the next
+ * transaction. A batch runs all the transactions of an account through one stateful session, borrowed from the pool in
+ * pooled mode.
+ * </p>
+ *
+ * @author cjrequena
+ */
+@Slf4j
 @Service
-public class RuleService {
-
-    @Autowired
-    private KieContainer kieContainer;
-
-    public Transaction applyRules(Transaction transaction, Account account) {
-        KieSession kieSession = kieContainer.newKieSession();
-        try {
-            kieSession.insert(transaction);
-            kieSession.insert(account);
-            kieSession.fireAllRules();
-        } finally {
-            kieSession.dispose();
-        }
-        return transaction;
+public class RuleService implements DisposableBean {
+
+  private final KieBase kieBase;
+  private final StatelessKieSession statelessKieSession;    // Null in pooled mode
+  private final KieSessionsPool kieSessionsPool;            // Null in stateless mode
+
+  public RuleService(KieBase kieBase, DroolsConfigurationProperties droolsConfigurationProperties) {
+    this.kieBase = kieBase;
+    if (droolsConfigurationProperties.getSessionMode() == DroolsConfigurationProperties.SessionMode.POOLED) {
+      this.kieSessionsPool = kieBase.newKieSessionsPool(droolsConfigurationProperties.getPoolSize());
+      this.statelessKieSession = null;
+    } else {
+      this.kieSessionsPool = null;
+      this.statelessKieSession = kieBase.newStatelessKieSession();
+    }
+    log.info("Applying the transaction rules in {} mode", droolsConfigurationProperties.getSessionMode());
+  }
+
+  public Transaction applyRules(Transaction transaction, Account account) {
+    if (kieSessionsPool == null) {
+      statelessKieSession.execute(List.of(transaction, account));
+      return transaction;
+    }
+
+    KieSession kieSession = kieSessionsPool.newKieSession();
+    try {
+      kieSession.insert(transaction);
+      kieSession.insert(account);
+      kieSession.fireAllRules();
+    } finally {
+      kieSession.dispose(); // Resets the session and returns it to the pool
+    }
+    return transaction;
+  }
+
+  /**
+   * Applies the rules to the transactions of one account, in order, in a single stateful session. The rules do not tell
+   * accounts apart, so a session never holds more than one. {@code onEvaluated} receives every transaction once its
+   * rules have fired, and the account fact is then refreshed, so the next transaction sees the balance it left.
+   *
+   * @param account The account the transactions belong to
+   * @param transactions The transactions of the account, in the order they are applied
+   * @param onEvaluated Applies an evaluated transaction to the account
+   */
+  public void applyRules(Account account, List<Transaction> transactions, Consumer<Transaction> onEvaluated) {
+    KieSession kieSession = kieSessionsPool != null ? kieSessionsPool.newKieSession() : kieBase.newKieSession();
+    try {
+      FactHandle accountHandle = kieSession.insert(account);
+      for (Transaction transaction : transactions) {
+        FactHandle transactionHandle = kieSession.insert(transaction);
+        kieSession.fireAllRules();
+        kieSession.delete(transactionHandle);
+        onEvaluated.accept(transaction);
+        kieSession.update(accountHandle, account);
+      }
+    } finally {
+      kieSession.dispose();
+    }
+  }
+
+  @Override
+  public void destroy() {
+    if (kieSessionsPool != null) {
+      kieSessionsPool.shutdown();
     }
+  }
 }
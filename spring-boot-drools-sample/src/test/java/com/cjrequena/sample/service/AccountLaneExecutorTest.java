@@ -0,0 +1,155 @@
+package com.cjrequena.sample.service;
+
+import com.cjrequena.sample.configuration.AccountLaneConfigurationProperties;
+import com.cjrequena.sample.exception.service.AccountLaneSaturatedServiceException;
+import com.cjrequena.sample.exception.service.ServiceException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("AccountLaneExecutor Unit Tests")
+class AccountLaneExecutorTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private final ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor();
+
+  private AccountLaneExecutor executor;
+
+  @AfterEach
+  void tearDown() {
+    callers.shutdownNow();
+    if (executor != null) {
+      executor.destroy();
+    }
+  }
+
+  @Test
+  @DisplayName("The tasks of an account run one at a time, in the order they were submitted")
+  void tasksOfAccountRunInOrder() throws Exception {
+    executor = executor(4, 100, Duration.ofSeconds(1));
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CompletableFuture<String> blocker = submit(1L, () -> {
+      started.countDown();
+      release.await(5, TimeUnit.SECONDS);
+      return Thread.currentThread().getName();
+    });
+    assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+    Queue<Integer> applied = new ConcurrentLinkedQueue<>();
+    Queue<String> threads = new ConcurrentLinkedQueue<>();
+    List<CompletableFuture<Integer>> tasks = IntStream.range(0, 10).mapToObj(i -> {
+      CompletableFuture<Integer> task = submit(1L, () -> {
+        applied.add(i);
+        threads.add(Thread.currentThread().getName());
+        return i;
+      });
+      awaitQueueDepth(1, i + 1);
+      return task;
+    }).toList();
+    release.countDown();
+
+    CompletableFuture.allOf(tasks.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+    assertThat(applied).containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+    assertThat(threads).containsOnly(blocker.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  @DisplayName("Accounts on different lanes proceed in parallel")
+  void accountsOnDifferentLanesRunInParallel() throws Exception {
+    executor = executor(2, 100, Duration.ofSeconds(1));
+    CountDownLatch bothRunning = new CountDownLatch(2);
+
+    CompletableFuture<Boolean> first = submit(0L, () -> {
+      bothRunning.countDown();
+      return bothRunning.await(5, TimeUnit.SECONDS);
+    });
+    CompletableFuture<Boolean> second = submit(1L, () -> {
+      bothRunning.countDown();
+      return bothRunning.await(5, TimeUnit.SECONDS);
+    });
+
+    assertThat(first.get(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(second.get(10, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @Test
+  @DisplayName("A task finding its lane full past the submit timeout is refused")
+  void fullLaneRefusesAfterSubmitTimeout() throws Exception {
+    executor = executor(1, 1, Duration.ofMillis(50));
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CompletableFuture<Boolean> blocker = submit(1L, () -> {
+      started.countDown();
+      return release.await(5, TimeUnit.SECONDS);
+    });
+    assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+    CompletableFuture<Boolean> queued = submit(2L, () -> true);
+    awaitQueueDepth(0, 1);
+
+    long before = System.nanoTime();
+    assertThatThrownBy(() -> executor.execute(3L, () -> true))
+      .isInstanceOf(AccountLaneSaturatedServiceException.class);
+    assertThat(Duration.ofNanos(System.nanoTime() - before)).isGreaterThanOrEqualTo(Duration.ofMillis(50));
+    assertThat(meterRegistry.get("account.lanes.rejected").counter().count()).isEqualTo(1);
+
+    release.countDown();
+    assertThat(blocker.get(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(queued.get(5, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @Test
+  @DisplayName("A batch split by lane returns its results in the order of its items")
+  void batchResultsKeepItemOrder() throws ServiceException {
+    executor = executor(2, 100, Duration.ofSeconds(1));
+
+    List<String> results = executor.executeByLane(List.of(1L, 2L, 3L, 4L, 5L), id -> id,
+      ids -> ids.stream().map(id -> "done-" + id).toList());
+
+    assertThat(results).containsExactly("done-1", "done-2", "done-3", "done-4", "done-5");
+  }
+
+  private AccountLaneExecutor executor(int count, int queueCapacity, Duration submitTimeout) {
+    AccountLaneConfigurationProperties properties = new AccountLaneConfigurationProperties();
+    properties.setCount(count);
+    properties.setQueueCapacity(queueCapacity);
+    properties.setSubmitTimeout(submitTimeout);
+    return new AccountLaneExecutor(properties, meterRegistry);
+  }
+
+  private <T> CompletableFuture<T> submit(Long accountId, Callable<T> task) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return executor.execute(accountId, task);
+      } catch (ServiceException ex) {
+        throw new CompletionException(ex);
+      }
+    }, callers);
+  }
+
+  private void awaitQueueDepth(int lane, int depth) {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (meterRegistry.get("account.lanes.queue.depth").tag("lane", String.valueOf(lane)).gauge().value() < depth) {
+      assertThat(System.nanoTime()).as("queue depth %d reached", depth).isLessThan(deadline);
+      Thread.onSpinWait();
+    }
+  }
+}